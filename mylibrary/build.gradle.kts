@@ -30,6 +30,14 @@ android {
     kotlinOptions {
         jvmTarget = "17"
     }
+    testOptions {
+        unitTests.all {
+            // Timing runs take minutes; run them with -Pbenchmark.
+            if (!project.hasProperty("benchmark")) {
+                it.exclude("**/*Benchmark.class")
+            }
+        }
+    }
 }
 
 dependencies {
@@ -0,0 +1,19 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.mapapi.clusterutil.clustering
+
+/**
+ * 带类别的Marker点
+ * An item in one or more categories, so clusters can be asked for some categories only, see
+ * Algorithm.getClusters(zoom, categories). Items that don't implement this are in every
+ * category.
+ * @author aking
+ */
+interface CategorizedClusterItem : ClusterItem {
+    /**
+     * 返回类别掩码
+     * @return the categories of the item, one bit each. Update the item when they change.
+     */
+    val categories: Long
+}
@@ -17,4 +17,11 @@ interface Cluster<T : ClusterItem> {
 
 
     val size: Int
+
+    /**
+     * 返回聚合时计算的统计值
+     * @return the value reducer computed for this cluster, or null if the algorithm was not
+     *     given reducer
+     */
+    fun <A> getReducedValue(reducer: ClusterReducer<in T, A>): A? = null
 }
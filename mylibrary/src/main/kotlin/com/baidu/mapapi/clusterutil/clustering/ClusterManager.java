@@ -6,6 +6,8 @@ package com.baidu.mapapi.clusterutil.clustering;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.Nullable;
 import com.baidu.mapapi.clusterutil.clustering.algo.Algorithm;
 import com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
@@ -44,8 +46,24 @@ public class ClusterManager<T extends ClusterItem>
   private BaiduMap mMap;
   private MapStatus mPreviousCameraPosition;
   private ClusterTask mClusterTask;
+  private volatile long mCategories = Algorithm.ALL_CATEGORIES;
   private final ReadWriteLock mClusterTaskLock = new ReentrantReadWriteLock();
 
+  /** Clusters again when the algorithm's clusters change on their own, on the main thread. */
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+  private final Algorithm.OnClustersChangedListener mClustersChangedListener =
+      new Algorithm.OnClustersChangedListener() {
+        @Override
+        public void onClustersChanged() {
+          mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              cluster();
+            }
+          });
+        }
+      };
+
   private OnClusterItemClickListener<T> mOnClusterItemClickListener;
   private OnClusterInfoWindowClickListener<T> mOnClusterInfoWindowClickListener;
   private OnClusterItemInfoWindowClickListener<T> mOnClusterItemInfoWindowClickListener;
@@ -64,6 +82,7 @@ public class ClusterManager<T extends ClusterItem>
     mAlgorithm =
         new ScreenBasedAlgorithmAdapter<>(
             new PreCachingAlgorithmDecorator<T>(new NonHierarchicalDistanceBasedAlgorithm<T>()));
+    mAlgorithm.setOnClustersChangedListener(mClustersChangedListener);
 
     mClusterTask = new ClusterTask();
     mRenderer.onAdd();
@@ -135,6 +154,7 @@ public class ClusterManager<T extends ClusterItem>
       mAlgorithm = algorithm;
 
       if (oldAlgorithm != null) {
+        oldAlgorithm.setOnClustersChangedListener(null);
         oldAlgorithm.lock();
         try {
           algorithm.addItems(oldAlgorithm.getItems());
@@ -149,6 +169,7 @@ public class ClusterManager<T extends ClusterItem>
     if (mAlgorithm.shouldReclusterOnMapMovement()) {
       mAlgorithm.onMapStatusChange(mMap.getMapStatus());
     }
+    mAlgorithm.setOnClustersChangedListener(mClustersChangedListener);
 
     cluster();
   }
@@ -170,6 +191,9 @@ public class ClusterManager<T extends ClusterItem>
    * Adds items to clusters. After calling this method you must invoke {@link #cluster()} for the
    * state of the clusters to be updated on the map.
    *
+   * <p>Large batches are bulk loaded into the algorithm's index in one pass, so prefer this over
+   * calling {@link #addItem(ClusterItem)} in a loop.
+   *
    * @param items items to add to clusters
    * @return true if the cluster manager contents changed as a result of the call
    */
@@ -234,6 +258,23 @@ public class ClusterManager<T extends ClusterItem>
     }
   }
 
+  /**
+   * 设置显示的类别
+   * Shows only the items in at least one of the given categories, see {@link
+   * CategorizedClusterItem}, and re-clusters. The algorithm must support filtering by category
+   * unless the categories are {@link Algorithm#ALL_CATEGORIES}.
+   *
+   * @param categories the categories shown, one bit each
+   */
+  public void setCategories(long categories) {
+    mCategories = categories;
+    cluster();
+  }
+
+  public long getCategories() {
+    return mCategories;
+  }
+
   /** Force a re-cluster. You may want to call this after adding new item(s). */
   public void cluster() {
     mClusterTaskLock.writeLock().lock();
@@ -265,6 +306,24 @@ public class ClusterManager<T extends ClusterItem>
     }
   }
 
+  /**
+   * Updates items in clusters in one batch, which costs less than updating them one by one. After
+   * calling this method you must invoke {@link #cluster()} for the state of the clusters to be
+   * updated on the map.
+   *
+   * @param items items to update in clusters
+   * @return true if any of the items was updated in the cluster manager
+   */
+  public boolean updateItems(Collection<T> items) {
+    final Algorithm<T> algorithm = getAlgorithm();
+    algorithm.lock();
+    try {
+      return algorithm.updateItems(items);
+    } finally {
+      algorithm.unlock();
+    }
+  }
+
   @Override
   public void onMapStatusChangeStart(MapStatus mapStatus) {
 
@@ -329,9 +388,14 @@ public class ClusterManager<T extends ClusterItem>
     @Override
     protected Set<? extends Cluster<T>> doInBackground(Float... zoom) {
       final Algorithm<T> algorithm = getAlgorithm();
+      if (algorithm.isClusteringThreadSafe()) {
+        // Holding the algorithm lock here would keep addItem() and friends waiting for the whole
+        // pass.
+        return algorithm.getClusters(zoom[0], mCategories);
+      }
       algorithm.lock();
       try {
-        return algorithm.getClusters(zoom[0]);
+        return algorithm.getClusters(zoom[0], mCategories);
       } finally {
         algorithm.unlock();
       }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.mapapi.clusterutil.clustering
+
+/**
+ * 聚合统计
+ * Reduces the items of a cluster to one value, such as a total or a maximum, while the
+ * algorithm forms its clusters. Register it with [com.baidu.mapapi.clusterutil.clustering.algo.Algorithm.addReducer]
+ * and read the values with [Cluster.getReducedValue].
+ * @author aking
+ */
+interface ClusterReducer<T : ClusterItem, A> {
+    /**
+     * 单个Marker点的值
+     * @return the value of a cluster holding only item
+     */
+    fun map(item: T): A
+
+    /**
+     * 加入一个Marker点
+     * @return the value of a cluster worth value once item joins it
+     */
+    fun accumulate(value: A, item: T): A
+
+    /**
+     * 合并两个cluster的值
+     * @return the value of two disjoint clusters together
+     */
+    fun combine(a: A, b: A): A
+}
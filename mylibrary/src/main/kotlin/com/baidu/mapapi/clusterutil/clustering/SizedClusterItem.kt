@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.mapapi.clusterutil.clustering
+
+/**
+ * 带图标尺寸的Marker点
+ * An item that knows the size of its marker icon, so footprint based clustering doesn't need to
+ * look at its bitmap.
+ * @author aking
+ */
+interface SizedClusterItem : ClusterItem {
+    /**
+     * 返回图标宽度
+     * @return the width of the marker icon in dp
+     */
+    val markerWidth: Int
+
+    /**
+     * 返回图标高度
+     * @return the height of the marker icon in dp
+     */
+    val markerHeight: Int
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.mapapi.clusterutil.clustering
+
+/**
+ * 带时间戳的Marker点
+ * An item that is only shown for a while after it happened, see TimeWindowBasedAlgorithm.
+ * @author aking
+ */
+interface TimedClusterItem : ClusterItem {
+    /**
+     * 返回时间戳
+     * @return when the item happened, in milliseconds since the epoch. Update the item when it
+     *     changes.
+     */
+    val timestamp: Long
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+package com.baidu.mapapi.clusterutil.clustering
+
+/**
+ * 带权重的Marker点
+ * An item that counts for more, or less, than others when a cluster is placed at the weighted
+ * centroid of its items.
+ * @author aking
+ */
+interface WeightedClusterItem : ClusterItem {
+    /**
+     * 返回权重, 应大于0
+     * @return the weight of the item, greater than 0
+     */
+    val weight: Double
+}
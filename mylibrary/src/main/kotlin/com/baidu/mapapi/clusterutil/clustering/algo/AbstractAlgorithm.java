@@ -1,6 +1,15 @@
 package com.baidu.mapapi.clusterutil.clustering.algo;
 
+import com.baidu.mapapi.clusterutil.clustering.CategorizedClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -12,6 +21,8 @@ public abstract class AbstractAlgorithm<T extends ClusterItem> implements Algori
 
   private final ReadWriteLock mLock = new ReentrantReadWriteLock();
 
+  private final List<ClusterReducer<? super T, ?>> mReducers = new CopyOnWriteArrayList<>();
+
   @Override
   public void lock() {
     this.mLock.writeLock().lock();
@@ -21,4 +32,77 @@ public abstract class AbstractAlgorithm<T extends ClusterItem> implements Algori
   public void unlock() {
     this.mLock.writeLock().unlock();
   }
+
+  /**
+   * Filtering isn't supported unless a subclass overrides this.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    if (categories != ALL_CATEGORIES) {
+      throw new UnsupportedOperationException(
+          getClass().getSimpleName() + " can't filter items by category");
+    }
+    return getClusters(zoom);
+  }
+
+  /**
+   * @return the categories of an item, every one of them if it is not a {@link
+   *     CategorizedClusterItem}.
+   */
+  static long getCategories(ClusterItem item) {
+    return item instanceof CategorizedClusterItem
+        ? ((CategorizedClusterItem) item).getCategories()
+        : ALL_CATEGORIES;
+  }
+
+  /**
+   * @param itemCategories the categories of an item, see {@link #getCategories(ClusterItem)}
+   * @param categories the categories shown
+   * @return whether the item is shown. {@link #ALL_CATEGORIES} shows even the items in no
+   *     category.
+   */
+  static boolean isShown(long itemCategories, long categories) {
+    return categories == ALL_CATEGORIES || (itemCategories & categories) != 0;
+  }
+
+  /**
+   * Updates the items one by one unless a subclass overrides this.
+   */
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    boolean updated = false;
+    for (T item : items) {
+      updated |= updateItem(item);
+    }
+    return updated;
+  }
+
+  @Override
+  public void addReducer(ClusterReducer<? super T, ?> reducer) {
+    if (!mReducers.contains(reducer)) {
+      mReducers.add(reducer);
+    }
+  }
+
+  @Override
+  public void removeReducer(ClusterReducer<? super T, ?> reducer) {
+    mReducers.remove(reducer);
+  }
+
+  /**
+   * @return whether reducer was added and not removed since.
+   */
+  boolean hasReducer(ClusterReducer<?, ?> reducer) {
+    return mReducers.contains(reducer);
+  }
+
+  /**
+   * @return the reducers added so far, a list later changes leave alone.
+   */
+  protected List<ClusterReducer<? super T, ?>> getReducers() {
+    if (mReducers.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(new ArrayList<ClusterReducer<? super T, ?>>(mReducers));
+  }
 }
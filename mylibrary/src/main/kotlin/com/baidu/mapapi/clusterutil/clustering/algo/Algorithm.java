@@ -6,6 +6,7 @@ package com.baidu.mapapi.clusterutil.clustering.algo;
 
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
 import java.util.Collection;
 import java.util.Set;
 
@@ -17,6 +18,9 @@ import java.util.Set;
  */
 public interface Algorithm<T extends ClusterItem> {
 
+  /** 显示所有类别 The category mask that shows every item, even those in no category. */
+  long ALL_CATEGORIES = -1L;
+
   boolean addItem(T item);
 
   boolean addItems(Collection<T> collection);
@@ -25,12 +29,44 @@ public interface Algorithm<T extends ClusterItem> {
 
   Set<? extends Cluster<T>> getClusters(double zoom);
 
+  /**
+   * 按类别聚合
+   * Clusters only the items in at least one of the given categories, see {@link
+   * com.baidu.mapapi.clusterutil.clustering.CategorizedClusterItem}. The items stay indexed, so
+   * changing the categories costs one clustering pass.
+   *
+   * @param categories the categories shown, one bit each, or {@link #ALL_CATEGORIES}
+   * @throws UnsupportedOperationException if the algorithm can't filter by category and the
+   *     categories aren't {@link #ALL_CATEGORIES}
+   */
+  Set<? extends Cluster<T>> getClusters(double zoom, long categories);
+
   Collection<T> getItems();
 
   int getMaxDistanceBetweenClusteredItems();
 
   void lock();
 
+  /**
+   * 聚合是否与写操作同步
+   * Whether {@link #getClusters} may run while other threads add, remove or update items. If not,
+   * callers hold {@link #lock()} around it, and writers wait for the whole pass.
+   */
+  default boolean isClusteringThreadSafe() {
+    return false;
+  }
+
+  /**
+   * 聚合结果自行变化时的回调
+   * Sets a listener told when the clusters change without a call on this algorithm, such as
+   * when a build in the background completes, so the caller can cluster again. Algorithms whose
+   * clusters only change through calls never tell it.
+   *
+   * @param listener the listener, or null to stop telling one; it may be told on any thread
+   */
+  default void setOnClustersChangedListener(OnClustersChangedListener listener) {
+  }
+
   boolean removeItem(T item);
 
   boolean removeItems(Collection<T> collection);
@@ -40,4 +76,26 @@ public interface Algorithm<T extends ClusterItem> {
   void unlock();
 
   boolean updateItem(T item);
+
+  /**
+   * 批量更新
+   * Updates the items like {@link #updateItem} does for each, in one batch.
+   *
+   * @return true if any of the items was updated
+   */
+  boolean updateItems(Collection<T> items);
+
+  /**
+   * 添加聚合统计
+   * Computes reducer for the clusters found from now on, while they are formed. Read the values
+   * with {@link Cluster#getReducedValue}.
+   */
+  void addReducer(ClusterReducer<? super T, ?> reducer);
+
+  void removeReducer(ClusterReducer<? super T, ?> reducer);
+
+  /** Told when the clusters of an algorithm change on their own. */
+  interface OnClustersChangedListener {
+    void onClustersChanged();
+  }
 }
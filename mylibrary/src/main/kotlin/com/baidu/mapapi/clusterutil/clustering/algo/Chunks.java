@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 分块并行执行
+ * Runs a pass over [0, count) split into contiguous chunks, on the common {@link ForkJoinPool}
+ * if there is more than one.
+ */
+final class Chunks {
+
+  private Chunks() {
+  }
+
+  /**
+   * A part of a pass over items or cells.
+   */
+  interface Task {
+    void run(int from, int to);
+  }
+
+  static void run(int chunks, final int count, final Task task) {
+    if (chunks <= 1) {
+      task.run(0, count);
+      return;
+    }
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      final int from = (int) ((long) count * i / chunks);
+      final int to = (int) ((long) count * (i + 1) / chunks);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          task.run(from, to);
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
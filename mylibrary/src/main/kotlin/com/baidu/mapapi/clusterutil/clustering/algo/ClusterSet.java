@@ -0,0 +1,87 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * 带版本的聚合结果
+ * The clusters of one clustering pass, stamped with what they were computed from: the algorithm,
+ * the version of its items and a key for everything else the pass depended on, such as the
+ * clustering span. Clustering is deterministic, so two sets with the same stamp hold equal
+ * clusters and {@link #equals(Object)} tells them apart in O(1). Sets without a key only equal
+ * other sets by content.
+ *
+ * <p>The set can't be modified.
+ */
+public final class ClusterSet<T extends ClusterItem> extends AbstractSet<Cluster<T>> {
+
+  private final Set<? extends Cluster<T>> mClusters;
+
+  private final Object mSource;
+
+  private final long mVersion;
+
+  private final Object mKey;
+
+  /**
+   * @param source the algorithm that made the clusters
+   * @param version the version of its items
+   * @param key what else the clusters depend on, compared with equals, or null to stamp the set
+   *     as unlike any other
+   */
+  ClusterSet(Set<? extends Cluster<T>> clusters, Object source, long version, Object key) {
+    mClusters = clusters;
+    mSource = source;
+    mVersion = version;
+    mKey = key;
+  }
+
+  /**
+   * @return whether both sets were computed from the same items with the same settings, which
+   *     makes them equal.
+   */
+  public boolean hasSameStamp(ClusterSet<?> other) {
+    return other == this
+        || (mKey != null && mSource == other.mSource && mVersion == other.mVersion
+            && mKey.equals(other.mKey));
+  }
+
+  /**
+   * @return whether the stamp matches the given one.
+   */
+  boolean isStamped(Object source, long version, Object key) {
+    return mKey != null && mSource == source && mVersion == version && mKey.equals(key);
+  }
+
+  @Override
+  public Iterator<Cluster<T>> iterator() {
+    return Collections.<Cluster<T>>unmodifiableSet(mClusters).iterator();
+  }
+
+  @Override
+  public int size() {
+    return mClusters.size();
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return mClusters.contains(o);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof ClusterSet<?> && hasSameStamp((ClusterSet<?>) o)) {
+      return true;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode();
+  }
+}
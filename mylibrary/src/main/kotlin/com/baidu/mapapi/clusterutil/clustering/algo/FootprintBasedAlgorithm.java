@@ -0,0 +1,262 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import android.graphics.Bitmap;
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.clusterutil.clustering.SizedClusterItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialHash;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialIndex;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按图标大小聚合
+ * Clusters items by the room their markers take on screen rather than by a fixed distance, so
+ * that no two markers drawn overlap.
+ *
+ * <p>Markers are anchored at the middle of their bottom edge, as the Baidu SDK draws them. The
+ * candidates are tried in the same order as {@link NonHierarchicalDistanceBasedAlgorithm} tries
+ * them. Each one that overlaps no marker placed so far becomes a marker. It reserves room for its
+ * own icon, or for a cluster icon if that is larger, since other items may join it later. A
+ * candidate that overlaps placed markers joins the one whose anchor is closest.
+ *
+ * <p>An item's marker size comes from {@link SizedClusterItem} if it implements it, then from the
+ * bitmap of its {@link ClusterItem#getBitmapDescriptor()}, then from the default item size. The
+ * size is looked up once per item; update an item whose icon changes. Footprints are measured at
+ * the integer zoom level. Markers are then drawn no larger at any zoom between that level and the
+ * next, so they never overlap there either.
+ *
+ * <p>Clusters stay on the item they were created for, whatever the center mode, since moving them
+ * could make them overlap. The maximum distance between clustered items is not used. The
+ * renderer must draw every cluster as one marker, e.g. with a minimum cluster size of 1.
+ */
+public class FootprintBasedAlgorithm<T extends ClusterItem>
+    extends NonHierarchicalDistanceBasedAlgorithm<T> {
+
+  /** 默认图标大小, in dp. */
+  private static final int DEFAULT_MARKER_SIZE = 48;
+
+  /** The cached footprint of an item without a size of its own. */
+  private static final int DEFAULT_FOOTPRINT = -1;
+
+  private final float mDensity;
+
+  private volatile int mItemWidth = DEFAULT_MARKER_SIZE;
+  private volatile int mItemHeight = DEFAULT_MARKER_SIZE;
+  private volatile int mClusterWidth = DEFAULT_MARKER_SIZE;
+  private volatile int mClusterHeight = DEFAULT_MARKER_SIZE;
+
+  /**
+   * @param density the screen density, to turn the pixel size of marker bitmaps into dp
+   */
+  public FootprintBasedAlgorithm(float density) {
+    mDensity = density;
+  }
+
+  /**
+   * Sets the marker size of items that neither implement {@link SizedClusterItem} nor have a
+   * bitmap. Takes effect on the next clustering.
+   *
+   * @param width marker width in dp
+   * @param height marker height in dp
+   */
+  public void setDefaultItemSize(int width, int height) {
+    mItemWidth = width;
+    mItemHeight = height;
+  }
+
+  /**
+   * Sets the size of the icon the renderer draws for clusters. Takes effect on the next
+   * clustering.
+   *
+   * @param width cluster icon width in dp
+   * @param height cluster icon height in dp
+   */
+  public void setClusterSize(int width, int height) {
+    mClusterWidth = width;
+    mClusterHeight = height;
+  }
+
+  @Override
+  Object getResultKey(double zoom) {
+    return Arrays.asList((int) zoom, mItemWidth, mItemHeight, mClusterWidth, mClusterHeight);
+  }
+
+  @Override
+  Set<? extends Cluster<T>> getClusters(
+      SpatialIndex<QuadItem<T>> quadTree, double zoom, int idCount, long version) {
+    List<QuadItem<T>> candidates = getCandidates(quadTree, zoom, version);
+    int count = candidates.size();
+    if (count == 0) {
+      return new HashSet<>();
+    }
+    // dp 到投影坐标的换算
+    final double unit = 1 / Math.pow(2.0, (int) zoom) / 256.0;
+    final int clusterWidth = mClusterWidth;
+    final int clusterHeight = mClusterHeight;
+    final int defaultFootprint = pack(mItemWidth, mItemHeight);
+
+    // The room each candidate reserves: its own icon or a cluster icon, whichever is larger.
+    double[] widths = new double[count];
+    double[] heights = new double[count];
+    double maxWidth = 0;
+    double maxHeight = 0;
+    for (int i = 0; i < count; i++) {
+      int footprint = footprint(candidates.get(i));
+      if (footprint == DEFAULT_FOOTPRINT) {
+        footprint = defaultFootprint;
+      }
+      widths[i] = Math.max(footprint >>> 16, clusterWidth) * unit;
+      heights[i] = Math.max(footprint & 0xffff, clusterHeight) * unit;
+      maxWidth = Math.max(maxWidth, widths[i]);
+      maxHeight = Math.max(maxHeight, heights[i]);
+    }
+
+    List<ClusterReducer<? super T, ?>> reducers = getReducers();
+    SpatialHash<Marker<T>> placed = new SpatialHash<>(Math.max(maxWidth, maxHeight));
+    List<Marker<T>> markers = new ArrayList<>();
+    OverlapVisitor<T> overlap = new OverlapVisitor<>();
+    for (int i = 0; i < count; i++) {
+      QuadItem<T> candidate = candidates.get(i);
+      Point point = candidate.getPoint();
+      double width = widths[i];
+      double height = heights[i];
+      overlap.begin(point, width, height);
+      // Any marker overlapping this one has its anchor in here.
+      placed.search(point.x - (width + maxWidth) / 2, point.x + (width + maxWidth) / 2,
+          point.y - height, point.y + maxHeight, overlap);
+      if (overlap.mClosest == null) {
+        Marker<T> marker = new Marker<>(candidate, width, height, markers.size());
+        placed.add(marker);
+        markers.add(marker);
+      } else {
+        overlap.mClosest.join(candidate, reducers);
+      }
+    }
+
+    Set<Cluster<T>> results = new HashSet<>(markers.size() * 2);
+    for (Marker<T> marker : markers) {
+      results.add(marker.mCluster != null ? marker.mCluster : marker.mItem);
+    }
+    return results;
+  }
+
+  /**
+   * @return the marker width and height of an item in dp, packed into an int, or
+   *     DEFAULT_FOOTPRINT if it has no size of its own.
+   */
+  private int footprint(QuadItem<T> quadItem) {
+    int footprint = quadItem.mFootprint;
+    if (footprint == 0) {
+      footprint = measure(quadItem.getItems().iterator().next());
+      quadItem.mFootprint = footprint;
+    }
+    return footprint;
+  }
+
+  private int measure(T item) {
+    if (item instanceof SizedClusterItem) {
+      SizedClusterItem sized = (SizedClusterItem) item;
+      return pack(sized.getMarkerWidth(), sized.getMarkerHeight());
+    }
+    BitmapDescriptor descriptor = item.getBitmapDescriptor();
+    Bitmap bitmap = descriptor == null ? null : descriptor.getBitmap();
+    if (bitmap == null) {
+      return DEFAULT_FOOTPRINT;
+    }
+    return pack((int) Math.ceil(bitmap.getWidth() / mDensity),
+        (int) Math.ceil(bitmap.getHeight() / mDensity));
+  }
+
+  private static int pack(int width, int height) {
+    return (clamp(width, 0x7fff) << 16) | clamp(height, 0xffff);
+  }
+
+  private static int clamp(int size, int max) {
+    return Math.min(max, Math.max(1, size));
+  }
+
+  /** 已放置的Marker A marker placed on the map, with the room it reserves. */
+  private static final class Marker<T extends ClusterItem> implements PointQuadTree.Item {
+    private final QuadItem<T> mItem;
+    private final Point mPoint;
+    private final double mWidth;
+    private final double mHeight;
+    private final int mOrder;
+
+    /** Created once a second item joins. */
+    private StaticCluster<T> mCluster;
+
+    Marker(QuadItem<T> item, double width, double height, int order) {
+      mItem = item;
+      mPoint = item.getPoint();
+      mWidth = width;
+      mHeight = height;
+      mOrder = order;
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+
+    void join(QuadItem<T> item, List<ClusterReducer<? super T, ?>> reducers) {
+      if (mCluster == null) {
+        mCluster = new StaticCluster<T>(
+            mItem.getPosition(), 0, StaticCluster.CenterMode.FIRST, reducers);
+        add(mItem);
+      }
+      add(item);
+    }
+
+    private void add(QuadItem<T> item) {
+      Point point = item.getPoint();
+      mCluster.add(item.getItems().iterator().next(), point.x, point.y);
+    }
+  }
+
+  /** Finds the placed marker closest to a candidate among those it overlaps, earlier on ties. */
+  private static final class OverlapVisitor<T extends ClusterItem>
+      implements PointQuadTree.Visitor<Marker<T>> {
+    private Point mPoint;
+    private double mWidth;
+    private double mHeight;
+    private Marker<T> mClosest;
+    private double mDistance;
+
+    void begin(Point point, double width, double height) {
+      mPoint = point;
+      mWidth = width;
+      mHeight = height;
+      mClosest = null;
+      mDistance = Double.MAX_VALUE;
+    }
+
+    @Override
+    public boolean visit(Marker<T> marker) {
+      Point point = marker.mPoint;
+      // Boxes that only touch don't overlap.
+      if (Math.abs(point.x - mPoint.x) >= (marker.mWidth + mWidth) / 2
+          || point.y - marker.mHeight >= mPoint.y
+          || mPoint.y - mHeight >= point.y) {
+        return true;
+      }
+      double dx = point.x - mPoint.x;
+      double dy = point.y - mPoint.y;
+      double distance = dx * dx + dy * dy;
+      if (distance < mDistance
+          || (distance == mDistance && marker.mOrder < mClosest.mOrder)) {
+        mClosest = marker;
+        mDistance = distance;
+      }
+      return true;
+    }
+  }
+}
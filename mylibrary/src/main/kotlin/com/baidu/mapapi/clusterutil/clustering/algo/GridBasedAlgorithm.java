@@ -1,17 +1,30 @@
 package com.baidu.mapapi.clusterutil.clustering.algo;
 
-import android.util.LongSparseArray;
+import com.baidu.mapapi.clusterutil.clustering.CategorizedClusterItem;
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.clusterutil.collections.LongIntMap;
 import com.baidu.mapapi.clusterutil.projection.Point;
 import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Groups markers into a grid.
+ * 网格聚合算法
+ * Groups markers into a grid of square cells {@code maxDistance} pixels wide. It is the cheapest
+ * algorithm in this package, linear in the number of items, and fits very large item sets at low
+ * zoom levels.
+ *
+ * <p>Each item is projected once per pass and its cell is packed into a {@code long} key, which a
+ * primitive {@link LongIntMap} turns into a cluster index. The items are then grouped by cluster
+ * with a counting sort, so every cluster is filled in one linear pass. In parallel mode, large
+ * item sets are projected and the clusters filled on the common {@link ForkJoinPool}.
  *
  * @author: aking @CreateDate: 2022/4/29 11:04 @UpdateUser: 更新者 @UpdateDate: 2022/4/29
  *     11:04 @UpdateRemark: 更新说明 @Version: 1.0
@@ -20,10 +33,29 @@ public class GridBasedAlgorithm<T extends ClusterItem> extends AbstractAlgorithm
 
   private static final int DEFAULT_GRID_SIZE = 100;
 
+  /** In parallel mode, passes over at least this many items are split across threads. */
+  private static final int PARALLEL_THRESHOLD = 50_000;
+
+  private static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
   private int mGridSize = DEFAULT_GRID_SIZE;
 
   private final Set<T> mItems = Collections.synchronizedSet(new HashSet<T>());
 
+  private final boolean mParallel;
+
+  public GridBasedAlgorithm() {
+    this(false);
+  }
+
+  /**
+   * @param parallel true to bucket large item sets on several threads.
+   */
+  public GridBasedAlgorithm(boolean parallel) {
+    mParallel = parallel;
+  }
+
   /**
    * Adds an item to the algorithm
    *
@@ -104,15 +136,100 @@ public class GridBasedAlgorithm<T extends ClusterItem> extends AbstractAlgorithm
     return mGridSize;
   }
 
+  /** Clustering is synchronized with the writes, see {@link Algorithm#isClusteringThreadSafe()}. */
+  @Override
+  public boolean isClusteringThreadSafe() {
+    return true;
+  }
+
   @Override
   public Set<? extends Cluster<T>> getClusters(double zoom) {
-    long numCells = (long) Math.ceil(256 * Math.pow(2, zoom) / mGridSize);
-    SphericalMercatorProjection proj = new SphericalMercatorProjection(numCells);
+    return getClusters(zoom, ALL_CATEGORIES);
+  }
 
-    HashSet<Cluster<T>> clusters = new HashSet<Cluster<T>>();
+  /**
+   * The items are kept in a plain set, those in other categories are skipped one by one.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    final long numCells = (long) Math.ceil(256 * Math.pow(2, zoom) / mGridSize);
+    final SphericalMercatorProjection proj = new SphericalMercatorProjection(numCells);
 
+    final Object[] items = inCategories(mItems.toArray(), categories);
+    final int count = items.length;
+    final List<ClusterReducer<? super T, ?>> reducers = getReducers();
+    final int chunks = mParallel && count >= PARALLEL_THRESHOLD
+        ? Math.max(1, ForkJoinPool.getCommonPoolParallelism())
+        : 1;
+
+    // 1. Project every item to its cell.
+    final long[] keys = new long[count];
+    Chunks.run(chunks, count, new Chunks.Task() {
+      @Override
+      public void run(int from, int to) {
+        for (int i = from; i < to; i++) {
+          Point point = PROJECTION.toPoint(((T) items[i]).getPosition());
+          keys[i] = getCoord(numCells, point.x * numCells, point.y * numCells);
+        }
+      }
+    });
 
-    return clusters;
+    // 2. Number the occupied cells in order of first appearance.
+    LongIntMap cellIndex = new LongIntMap();
+    final int[] cellOfItem = new int[count];
+    long[] cellKeys = new long[16];
+    int cellCount = 0;
+    for (int i = 0; i < count; i++) {
+      int cell = cellIndex.get(keys[i], -1);
+      if (cell < 0) {
+        cell = cellCount++;
+        cellIndex.put(keys[i], cell);
+        if (cell == cellKeys.length) {
+          cellKeys = Arrays.copyOf(cellKeys, cell * 2);
+        }
+        cellKeys[cell] = keys[i];
+      }
+      cellOfItem[i] = cell;
+    }
+
+    // 3. Group the items by cell.
+    final int[] start = new int[cellCount + 1];
+    for (int i = 0; i < count; i++) {
+      start[cellOfItem[i] + 1]++;
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      start[cell + 1] += start[cell];
+    }
+    final Object[] grouped = new Object[count];
+    int[] next = Arrays.copyOf(start, cellCount);
+    for (int i = 0; i < count; i++) {
+      grouped[next[cellOfItem[i]]++] = items[i];
+    }
+
+    // 4. One cluster per cell, centered on the cell.
+    final long[] centers = cellKeys;
+    final Object[] clusters = new Object[cellCount];
+    Chunks.run(cellCount >= chunks ? chunks : 1, cellCount, new Chunks.Task() {
+      @Override
+      public void run(int from, int to) {
+        for (int cell = from; cell < to; cell++) {
+          long key = centers[cell];
+          StaticCluster<T> cluster = new StaticCluster<T>(
+              proj.toLatLng(new Point((int) (key >> 32) + .5, (int) key + .5)),
+              start[cell + 1] - start[cell], StaticCluster.CenterMode.FIRST, reducers);
+          for (int i = start[cell]; i < start[cell + 1]; i++) {
+            cluster.add((T) grouped[i]);
+          }
+          clusters[cell] = cluster;
+        }
+      }
+    });
+    HashSet<Cluster<T>> results = new HashSet<Cluster<T>>(cellCount * 2);
+    for (Object cluster : clusters) {
+      results.add((Cluster<T>) cluster);
+    }
+    return results;
   }
 
   @Override
@@ -120,7 +237,29 @@ public class GridBasedAlgorithm<T extends ClusterItem> extends AbstractAlgorithm
     return mItems;
   }
 
+  /**
+   * @return the items in at least one of the given categories, in the same order.
+   */
+  private static Object[] inCategories(Object[] items, long categories) {
+    if (categories == ALL_CATEGORIES) {
+      return items;
+    }
+    int count = 0;
+    for (Object item : items) {
+      if (!(item instanceof CategorizedClusterItem)
+          || (((CategorizedClusterItem) item).getCategories() & categories) != 0) {
+        items[count++] = item;
+      }
+    }
+    return Arrays.copyOf(items, count);
+  }
+
+  /**
+   * Packs the column and row of the cell holding (x, y), in cells, into one key.
+   */
   private static long getCoord(long numCells, double x, double y) {
-    return (long) (numCells * Math.floor(x) + Math.floor(y));
+    long column = Math.min(numCells - 1, Math.max(0, (long) Math.floor(x)));
+    long row = Math.min(numCells - 1, Math.max(0, (long) Math.floor(y)));
+    return (column << 32) | row;
   }
 }
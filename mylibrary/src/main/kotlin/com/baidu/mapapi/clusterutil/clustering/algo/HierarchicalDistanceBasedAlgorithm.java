@@ -0,0 +1,882 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.clusterutil.quadtree.KdTree;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree;
+import com.baidu.mapapi.map.MapStatus;
+import com.baidu.mapapi.model.LatLng;
+import com.baidu.mapapi.model.LatLngBounds;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分层聚合算法
+ * A clustering algorithm that computes the clusters of every zoom level from {@link #MIN_ZOOM} to
+ * {@link #MAX_ZOOM} at once, bottom up, the way Supercluster does: the clusters of a level are
+ * made by merging the clusters of the level below that are within the clustering distance of
+ * each other. Each level is kept in its own {@link KdTree}, so {@link #getClusters(double)} only
+ * looks up the clusters in the visible area, in O(log n + k), instead of clustering again.
+ *
+ * <p>Clusters are placed at the weighted centroid of their items. Above {@link #MAX_ZOOM} every
+ * item is a cluster of its own.
+ *
+ * <p>Every merge records the fractional zoom at which each of the merged clusters comes within
+ * the clustering distance of the cluster it joins. Between two levels, {@link
+ * #getClusters(double)} splits the clusters of the lower level into the parts that have joined
+ * at the given zoom. That costs a pass over the children of the visible clusters, so the
+ * clusters can follow a pinch zoom smoothly without clustering again.
+ *
+ * <p>Changing the items or the distance starts a rebuild on a background daemon thread and
+ * returns at once; changes made while a rebuild runs are folded into the next one. {@link
+ * #getClusters(double)} serves the latest complete hierarchy and only waits for the first one,
+ * so a steady stream of changes never holds up the clustering task. Each completed rebuild is
+ * told to the listener set with {@link #setOnClustersChangedListener}, which {@link
+ * com.baidu.mapapi.clusterutil.clustering.ClusterManager} uses to cluster again. Call {@link
+ * #awaitBuild()} first to see the clusters of every change made so far.
+ *
+ * <p>The hierarchy holds only the items in the categories last asked for with {@link
+ * #getClusters(double, long)}. Asking for other categories rebuilds it over the items in those,
+ * and that call waits for the rebuild.
+ *
+ * <p>Clusters are seeded in the scattered order of a sequence number each item gets when added
+ * and keeps when updated, so removing an item doesn't reorder the others.
+ *
+ * <p>Results come as a {@link ClusterSet}. Asking again for the same zoom and area with nothing
+ * changed returns the same set.
+ */
+public class HierarchicalDistanceBasedAlgorithm<T extends ClusterItem> extends AbstractAlgorithm<T>
+    implements ScreenBasedAlgorithm<T> {
+
+  /** The lowest zoom level with its own clusters, lower zoom levels share them. */
+  public static final int MIN_ZOOM = 3;
+
+  /** The highest zoom level with its own clusters. */
+  public static final int MAX_ZOOM = 21;
+
+  /** // essentially 100 dp. */
+  private static final int DEFAULT_MAX_DISTANCE_AT_ZOOM = 100;
+
+  private static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
+  private static final Bounds[] WORLD = {new Bounds(0, 1, 0, 1)};
+
+  /** Orders nodes by x, then y. */
+  private static final Comparator<Node<?>> BY_POINT = new Comparator<Node<?>>() {
+    @Override
+    public int compare(Node<?> a, Node<?> b) {
+      int byX = Double.compare(a.mPoint.x, b.mPoint.x);
+      return byX != 0 ? byX : Double.compare(a.mPoint.y, b.mPoint.y);
+    }
+  };
+
+  /**
+   * The items and their sequence numbers. Any access should be synchronized on mItems, which also
+   * guards the build state below.
+   */
+  private final Map<T, Long> mItems = new LinkedHashMap<>();
+
+  private long mNextSequence;
+
+  private int mMaxDistance = DEFAULT_MAX_DISTANCE_AT_ZOOM;
+
+  /** The categories the hierarchy is built for. */
+  private long mCategories = ALL_CATEGORIES;
+
+  /** Bumped by every change to the items, the distance or the categories. */
+  private long mVersion;
+
+  /** Whether a rebuild is queued or running. */
+  private boolean mBuildScheduled;
+
+  /** Why the last rebuild failed, or null once another one is scheduled. */
+  private volatile RuntimeException mBuildError;
+
+  /** The latest complete hierarchy, or null before the first build. */
+  private volatile Hierarchy<T> mHierarchy;
+
+  /** The last result, handed out again while the hierarchy and the query stay the same. */
+  private volatile ClusterSet<T> mLastResult;
+
+  /** Told after each rebuild, see {@link #setOnClustersChangedListener}. */
+  private volatile OnClustersChangedListener mOnClustersChangedListener;
+
+  /** The visible area in the unit projection, two boxes when it spans the date line. */
+  private volatile Bounds[] mVisibleBounds = WORLD;
+
+  /** Runs one rebuild at a time, its thread ends when idle. */
+  private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(
+      1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "HierarchicalDistanceBasedAlgorithm");
+          // Don't keep the process alive for a hierarchy nobody will ask for.
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  {
+    mExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  private final Runnable mBuildTask = new Runnable() {
+    @Override
+    public void run() {
+      rebuild();
+    }
+  };
+
+  @Override
+  public boolean addItem(T item) {
+    synchronized (mItems) {
+      return changed(add(item));
+    }
+  }
+
+  @Override
+  public boolean addItems(Collection<T> items) {
+    synchronized (mItems) {
+      boolean added = false;
+      for (T item : items) {
+        added |= add(item);
+      }
+      return changed(added);
+    }
+  }
+
+  @Override
+  public void clearItems() {
+    synchronized (mItems) {
+      changed(!mItems.isEmpty());
+      mItems.clear();
+    }
+  }
+
+  @Override
+  public boolean removeItem(T item) {
+    synchronized (mItems) {
+      return changed(mItems.remove(item) != null);
+    }
+  }
+
+  @Override
+  public boolean removeItems(Collection<T> items) {
+    synchronized (mItems) {
+      return changed(mItems.keySet().removeAll(items));
+    }
+  }
+
+  @Override
+  public boolean updateItem(T item) {
+    synchronized (mItems) {
+      // Only add the item if it was removed (to help prevent accidental duplicates on map)
+      return changed(update(item));
+    }
+  }
+
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    synchronized (mItems) {
+      boolean updated = false;
+      for (T item : items) {
+        updated |= update(item);
+      }
+      return changed(updated);
+    }
+  }
+
+  @Override
+  public Collection<T> getItems() {
+    synchronized (mItems) {
+      return new ArrayList<T>(mItems.keySet());
+    }
+  }
+
+  /** Must hold the lock on mItems. */
+  private boolean add(T item) {
+    if (mItems.containsKey(item)) {
+      return false;
+    }
+    mItems.put(item, mNextSequence++);
+    return true;
+  }
+
+  /**
+   * Replaces the item with the given one, which keeps its sequence number. Must hold the lock on
+   * mItems.
+   */
+  private boolean update(T item) {
+    Long sequence = mItems.remove(item);
+    if (sequence == null) {
+      return false;
+    }
+    mItems.put(item, sequence);
+    return true;
+  }
+
+  @Override
+  public void setMaxDistanceBetweenClusteredItems(int maxDistance) {
+    synchronized (mItems) {
+      changed(mMaxDistance != maxDistance);
+      mMaxDistance = maxDistance;
+    }
+  }
+
+  @Override
+  public int getMaxDistanceBetweenClusteredItems() {
+    synchronized (mItems) {
+      return mMaxDistance;
+    }
+  }
+
+  /** Clustering is synchronized with the writes, see {@link Algorithm#isClusteringThreadSafe()}. */
+  @Override
+  public boolean isClusteringThreadSafe() {
+    return true;
+  }
+
+  /** The hierarchy is built again with the values of the new reducers. */
+  @Override
+  public void addReducer(ClusterReducer<? super T, ?> reducer) {
+    synchronized (mItems) {
+      super.addReducer(reducer);
+      changed(true);
+    }
+  }
+
+  @Override
+  public void removeReducer(ClusterReducer<? super T, ?> reducer) {
+    synchronized (mItems) {
+      super.removeReducer(reducer);
+      changed(true);
+    }
+  }
+
+  @Override
+  public boolean shouldReclusterOnMapMovement() {
+    return true;
+  }
+
+  @Override
+  public void onMapStatusChange(MapStatus mapStatus) {
+    setVisibleBounds(mapStatus.bound);
+  }
+
+  /**
+   * Limits {@link #getClusters(double)} to the clusters inside the given area.
+   *
+   * @param bounds the visible area, or null for the whole world
+   */
+  public void setVisibleBounds(LatLngBounds bounds) {
+    if (bounds == null || bounds.northeast == null || bounds.southwest == null) {
+      mVisibleBounds = WORLD;
+      return;
+    }
+    Point northeast = PROJECTION.toPoint(bounds.northeast);
+    Point southwest = PROJECTION.toPoint(bounds.southwest);
+    if (southwest.x <= northeast.x) {
+      mVisibleBounds = new Bounds[] {
+          new Bounds(southwest.x, northeast.x, northeast.y, southwest.y)};
+    } else {
+      // Handle wrapping around international date line
+      mVisibleBounds = new Bounds[] {
+          new Bounds(southwest.x, 1, northeast.y, southwest.y),
+          new Bounds(0, northeast.x, northeast.y, southwest.y)};
+    }
+  }
+
+  /**
+   * @return the clusters of the given zoom level inside the visible area.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom) {
+    return getClusters(zoom, ALL_CATEGORIES);
+  }
+
+  /**
+   * @return the clusters of the items in the given categories at the given zoom level, inside
+   *     the visible area.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    Hierarchy<T> hierarchy = awaitHierarchy(categories);
+    if (hierarchy == null) {
+      return Collections.emptySet();
+    }
+    int level = (int) Math.max(MIN_ZOOM, Math.min(Math.floor(zoom), MAX_ZOOM + 1));
+    boolean wholeLevel = zoom <= level || level > MAX_ZOOM;
+    Bounds[] visibleBounds = mVisibleBounds;
+    // A new visible area comes in a new array.
+    Object key = Arrays.asList(wholeLevel ? level : zoom, visibleBounds);
+    ClusterSet<T> last = mLastResult;
+    if (last != null && last.isStamped(this, hierarchy.version, key)) {
+      return last;
+    }
+    Set<Cluster<T>> results = wholeLevel
+        ? getLevel(hierarchy, level, visibleBounds)
+        : splitLevel(hierarchy, level, zoom, visibleBounds);
+    ClusterSet<T> result = new ClusterSet<T>(results, this, hierarchy.version, key);
+    mLastResult = result;
+    return result;
+  }
+
+  private Set<Cluster<T>> getLevel(Hierarchy<T> hierarchy, int level, Bounds[] visibleBounds) {
+    // 整数级别, 直接返回该层的cluster
+    KdTree<Node<T>> index = hierarchy.levels.get(level - MIN_ZOOM);
+    Set<Cluster<T>> results = new HashSet<Cluster<T>>();
+    for (Bounds bounds : visibleBounds) {
+      results.addAll(index.search(bounds));
+    }
+    return results;
+  }
+
+  private Set<Cluster<T>> splitLevel(
+      Hierarchy<T> hierarchy, int level, double zoom, Bounds[] visibleBounds) {
+    KdTree<Node<T>> index = hierarchy.levels.get(level - MIN_ZOOM);
+    Set<Cluster<T>> results = new HashSet<Cluster<T>>();
+    // The parts of a cluster lie within its span, look that much further out.
+    double halfSpan = hierarchy.maxDistance / Math.pow(2.0, level) / 256.0 / 2;
+    Set<Node<T>> nodes = new HashSet<Node<T>>();
+    for (Bounds bounds : visibleBounds) {
+      nodes.addAll(index.search(new Bounds(bounds.minX - halfSpan, bounds.maxX + halfSpan,
+          bounds.minY - halfSpan, bounds.maxY + halfSpan)));
+    }
+    List<Node<T>> parts = new ArrayList<Node<T>>();
+    for (Node<T> node : nodes) {
+      parts.clear();
+      node.split(zoom, parts);
+      for (Node<T> part : parts) {
+        for (Bounds bounds : visibleBounds) {
+          if (bounds.contains(part.mPoint)) {
+            results.add(part);
+            break;
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * @return the number of clusters of each zoom level from {@link #MIN_ZOOM} to one above
+   *     {@link #MAX_ZOOM}, over the whole world, for the categories last asked for.
+   */
+  public int[] getClusterCounts() {
+    long categories;
+    synchronized (mItems) {
+      categories = mCategories;
+    }
+    Hierarchy<T> hierarchy = awaitHierarchy(categories);
+    int[] counts = new int[MAX_ZOOM + 2 - MIN_ZOOM];
+    for (int i = 0; hierarchy != null && i < counts.length; i++) {
+      counts[i] = hierarchy.levels.get(i).size();
+    }
+    return counts;
+  }
+
+  /** Told on the build thread once a rebuild is served by {@link #getClusters(double)}. */
+  @Override
+  public void setOnClustersChangedListener(OnClustersChangedListener listener) {
+    mOnClustersChangedListener = listener;
+  }
+
+  /**
+   * Records a change and makes sure a rebuild will pick it up. Must hold the lock on mItems.
+   *
+   * @return whether anything changed.
+   */
+  private boolean changed(boolean changed) {
+    if (changed) {
+      mVersion++;
+      scheduleBuild();
+    }
+    return changed;
+  }
+
+  /** Must hold the lock on mItems. */
+  private void scheduleBuild() {
+    // The new build may succeed where the last one failed.
+    mBuildError = null;
+    if (!mBuildScheduled) {
+      mBuildScheduled = true;
+      mExecutor.execute(mBuildTask);
+    }
+  }
+
+  /**
+   * Waits until the hierarchy covers every change made so far, so the next {@link
+   * #getClusters(double)} shows them.
+   *
+   * @throws IllegalStateException if the rebuild failed
+   */
+  public void awaitBuild() {
+    synchronized (mItems) {
+      long version = mVersion;
+      while (mHierarchy == null || mHierarchy.version < version) {
+        checkBuild();
+        if (!await()) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the latest complete hierarchy of the given categories, waiting only if there is none
+   *     yet, or null if that wait was interrupted.
+   */
+  private Hierarchy<T> awaitHierarchy(long categories) {
+    Hierarchy<T> hierarchy = mHierarchy;
+    if (hierarchy != null && hierarchy.categories == categories && mBuildError == null) {
+      return hierarchy;
+    }
+    synchronized (mItems) {
+      while (mHierarchy == null || mHierarchy.categories != categories) {
+        if (mCategories != categories) {
+          mCategories = categories;
+          changed(true);
+        }
+        checkBuild();
+        if (!await()) {
+          break;
+        }
+      }
+      checkBuild();
+      hierarchy = mHierarchy;
+      return hierarchy != null && hierarchy.categories == categories ? hierarchy : null;
+    }
+  }
+
+  /** Must hold the lock on mItems. */
+  private void checkBuild() {
+    if (mBuildError != null) {
+      throw new IllegalStateException("Building the cluster hierarchy failed", mBuildError);
+    }
+    if (mHierarchy == null || mHierarchy.version != mVersion) {
+      scheduleBuild();
+    }
+  }
+
+  /**
+   * Waits for a rebuild to end. Must hold the lock on mItems.
+   *
+   * @return false if the wait was interrupted.
+   */
+  private boolean await() {
+    try {
+      mItems.wait();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Builds hierarchies until one matches the latest items.
+   */
+  private void rebuild() {
+    while (true) {
+      List<T> items;
+      long[] sequences;
+      long version;
+      long categories;
+      int maxDistance;
+      List<ClusterReducer<? super T, ?>> reducers;
+      synchronized (mItems) {
+        if (mHierarchy != null && mHierarchy.version == mVersion) {
+          mBuildScheduled = false;
+          mItems.notifyAll();
+          return;
+        }
+        // Only the items shown are clustered.
+        categories = mCategories;
+        items = new ArrayList<T>(mItems.size());
+        sequences = new long[mItems.size()];
+        for (Map.Entry<T, Long> entry : mItems.entrySet()) {
+          if (isShown(getCategories(entry.getKey()), categories)) {
+            sequences[items.size()] = entry.getValue();
+            items.add(entry.getKey());
+          }
+        }
+        sequences = Arrays.copyOf(sequences, items.size());
+        version = mVersion;
+        maxDistance = mMaxDistance;
+        reducers = getReducers();
+      }
+      Hierarchy<T> hierarchy;
+      try {
+        hierarchy = build(items, sequences, version, categories, maxDistance, reducers);
+      } catch (RuntimeException e) {
+        synchronized (mItems) {
+          if (mVersion != version) {
+            // Changed meanwhile, the next build may succeed.
+            continue;
+          }
+          mBuildError = e;
+          mBuildScheduled = false;
+          mItems.notifyAll();
+        }
+        return;
+      }
+      synchronized (mItems) {
+        mHierarchy = hierarchy;
+        mBuildError = null;
+        mItems.notifyAll();
+      }
+      OnClustersChangedListener listener = mOnClustersChangedListener;
+      if (listener != null) {
+        listener.onClustersChanged();
+      }
+    }
+  }
+
+  private static <T extends ClusterItem> Hierarchy<T> build(List<T> items, long[] sequences,
+      long version, long categories, int maxDistance,
+      List<ClusterReducer<? super T, ?>> reducers) {
+    // Seed clusters in scattered insertion order, like the non hierarchical algorithm.
+    List<T> sorted = NonHierarchicalDistanceBasedAlgorithm.scatterOrder(items, sequences);
+    List<Node<T>> nodes = new ArrayList<Node<T>>(items.size());
+    for (T item : sorted) {
+      nodes.add(new Node<T>(item, PROJECTION.toPoint(item.getPosition()), reducers));
+    }
+
+    // Filled from the top level down.
+    List<KdTree<Node<T>>> levels =
+        new ArrayList<KdTree<Node<T>>>(Collections.nCopies(MAX_ZOOM + 2 - MIN_ZOOM,
+            (KdTree<Node<T>>) null));
+    KdTree<Node<T>> index = new KdTree<Node<T>>();
+    index.addAll(nodes);
+    levels.set(MAX_ZOOM + 1 - MIN_ZOOM, index.snapshot());
+    for (int zoom = MAX_ZOOM; zoom >= MIN_ZOOM; zoom--) {
+      nodes = cluster(nodes, levels.get(zoom + 1 - MIN_ZOOM), zoom, maxDistance, reducers);
+      index = new KdTree<Node<T>>();
+      index.addAll(nodes);
+      levels.set(zoom - MIN_ZOOM, index.snapshot());
+    }
+    return new Hierarchy<T>(levels, version, categories, maxDistance);
+  }
+
+  /**
+   * Merges the clusters of the level above that are within the clustering distance of each
+   * other.
+   *
+   * @return the clusters of the given zoom level.
+   */
+  private static <T extends ClusterItem> List<Node<T>> cluster(List<Node<T>> nodes,
+      KdTree<Node<T>> index, final int zoom, int maxDistance,
+      List<ClusterReducer<? super T, ?>> reducers) {
+    final double halfSpan = maxDistance / Math.pow(2.0, zoom) / 256.0 / 2;
+    final List<Node<T>> neighbours = new ArrayList<Node<T>>();
+    PointQuadTree.Visitor<Node<T>> visitor = new PointQuadTree.Visitor<Node<T>>() {
+      @Override
+      public boolean visit(Node<T> node) {
+        if (node.mVisitedZoom > zoom) {
+          node.mVisitedZoom = zoom;
+          neighbours.add(node);
+        }
+        return true;
+      }
+    };
+
+    List<Node<T>> results = new ArrayList<Node<T>>();
+    for (Node<T> node : nodes) {
+      if (node.mVisitedZoom <= zoom) {
+        continue;
+      }
+      node.mVisitedZoom = zoom;
+      Point point = node.mPoint;
+      neighbours.clear();
+      index.search(
+          point.x - halfSpan, point.x + halfSpan, point.y - halfSpan, point.y + halfSpan, visitor);
+      if (neighbours.isEmpty()) {
+        results.add(node);
+        continue;
+      }
+      // Summed in a fixed order, the same parts found in another order get the same centroid.
+      Collections.sort(neighbours, BY_POINT);
+      int count = node.mCount;
+      double sumX = point.x * node.mCount;
+      double sumY = point.y * node.mCount;
+      Node<T>[] children = Node.newArray(neighbours.size() + 1);
+      children[0] = node;
+      for (int i = 0; i < neighbours.size(); i++) {
+        Node<T> neighbour = neighbours.get(i);
+        count += neighbour.mCount;
+        sumX += neighbour.mPoint.x * neighbour.mCount;
+        sumY += neighbour.mPoint.y * neighbour.mCount;
+        neighbour.mJoinZoom = joinZoom(point, neighbour.mPoint, zoom, maxDistance);
+        children[i + 1] = neighbour;
+      }
+      results.add(
+          new Node<T>(children, new Point(sumX / count, sumY / count), count, reducers));
+    }
+    return results;
+  }
+
+  /**
+   * 两个cluster开始合并的缩放级别
+   * The search around a center takes a point once {@code maxDistance / 2^z / 256 / 2} reaches
+   * their distance along x or y, so that is the zoom they merge at. It lies between the level
+   * they merged at and the next one.
+   */
+  private static double joinZoom(Point center, Point point, int zoom, int maxDistance) {
+    double distance = Math.max(Math.abs(point.x - center.x), Math.abs(point.y - center.y));
+    double joinZoom = Math.log(maxDistance / 512.0 / distance) / Math.log(2);
+    // Rounding may put it just outside, and a point on the center merges at any zoom.
+    return Math.max(zoom, Math.min(joinZoom, Math.nextDown(zoom + 1.0)));
+  }
+
+  /**
+   * One version of the clusters of every zoom level.
+   */
+  private static final class Hierarchy<T extends ClusterItem> {
+    /** The clusters of each zoom level from MIN_ZOOM to MAX_ZOOM + 1. */
+    final List<KdTree<Node<T>>> levels;
+
+    final long version;
+
+    /** The categories of the items clustered. */
+    final long categories;
+
+    /** The distance the levels were clustered with. */
+    final int maxDistance;
+
+    Hierarchy(List<KdTree<Node<T>>> levels, long version, long categories, int maxDistance) {
+      this.levels = levels;
+      this.version = version;
+      this.categories = categories;
+      this.maxDistance = maxDistance;
+    }
+  }
+
+  /**
+   * 层级聚合中的一个簇
+   * A cluster of one level, made of clusters of the level above, or a single item. Its items
+   * are collected from the tree below it when asked for.
+   */
+  private static final class Node<T extends ClusterItem>
+      implements Cluster<T>, PointQuadTree.Item {
+    private final T mItem;
+
+    private final Node<T>[] mChildren;
+
+    private final Point mPoint;
+
+    private final int mCount;
+
+    /** The lowest zoom level that has already taken this node into a cluster while building. */
+    private int mVisitedZoom = Integer.MAX_VALUE;
+
+    /**
+     * The zoom at and below which this node is part of its parent. The first child is the
+     * center the others join, and is part of its parent at any zoom.
+     */
+    private double mJoinZoom = Double.POSITIVE_INFINITY;
+
+    private LatLng mPosition;
+
+    private final List<ClusterReducer<? super T, ?>> mReducers;
+
+    /** The value of each reducer, combined from the children's. */
+    private final Object[] mReduced;
+
+    /** See {@link #hashCode()}, 0 until first asked for. */
+    private int mHash;
+
+    @SuppressWarnings("unchecked")
+    Node(T item, Point point, List<ClusterReducer<? super T, ?>> reducers) {
+      mItem = item;
+      mChildren = null;
+      mPoint = point;
+      mCount = 1;
+      mPosition = item.getPosition();
+      mReducers = reducers;
+      mReduced = new Object[reducers.size()];
+      for (int i = 0; i < mReduced.length; i++) {
+        mReduced[i] = ((ClusterReducer<? super T, Object>) reducers.get(i)).map(item);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    Node(Node<T>[] children, Point point, int count,
+        List<ClusterReducer<? super T, ?>> reducers) {
+      mItem = null;
+      mChildren = children;
+      mPoint = point;
+      mCount = count;
+      mReducers = reducers;
+      mReduced = new Object[reducers.size()];
+      for (int i = 0; i < mReduced.length; i++) {
+        ClusterReducer<? super T, Object> reducer =
+            (ClusterReducer<? super T, Object>) reducers.get(i);
+        Object value = children[0].mReduced[i];
+        for (int j = 1; j < children.length; j++) {
+          value = reducer.combine(value, children[j].mReduced[i]);
+        }
+        mReduced[i] = value;
+      }
+    }
+
+    /**
+     * 按缩放级别拆分
+     * Adds the clusters this node makes at a zoom between its level and the next: itself once
+     * all its children have joined, else the center with the children that have, and each
+     * child that hasn't.
+     */
+    void split(double zoom, List<Node<T>> parts) {
+      if (mChildren == null) {
+        parts.add(this);
+        return;
+      }
+      int joined = 0;
+      for (Node<T> child : mChildren) {
+        if (child.mJoinZoom >= zoom) {
+          joined++;
+        }
+      }
+      if (joined == mChildren.length) {
+        parts.add(this);
+        return;
+      }
+      if (joined == 1) {
+        Collections.addAll(parts, mChildren);
+        return;
+      }
+      Node<T>[] children = Node.newArray(joined);
+      int count = 0;
+      double sumX = 0;
+      double sumY = 0;
+      joined = 0;
+      for (Node<T> child : mChildren) {
+        if (child.mJoinZoom >= zoom) {
+          children[joined++] = child;
+          count += child.mCount;
+          sumX += child.mPoint.x * child.mCount;
+          sumY += child.mPoint.y * child.mCount;
+        } else {
+          parts.add(child);
+        }
+      }
+      parts.add(new Node<T>(children, new Point(sumX / count, sumY / count), count, mReducers));
+    }
+
+    /** Children arrays hold nothing but nodes of the same item type. */
+    @SuppressWarnings("unchecked")
+    static <T extends ClusterItem> Node<T>[] newArray(int length) {
+      return (Node<T>[]) new Node<?>[length];
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      if (mPosition == null) {
+        mPosition = PROJECTION.toLatLng(mPoint);
+      }
+      return mPosition;
+    }
+
+    @Override
+    public Collection<T> getItems() {
+      if (mItem != null) {
+        return Collections.singleton(mItem);
+      }
+      List<T> items = new ArrayList<T>(mCount);
+      collect(items);
+      return items;
+    }
+
+    private void collect(List<T> items) {
+      if (mItem != null) {
+        items.add(mItem);
+        return;
+      }
+      for (Node<T> child : mChildren) {
+        child.collect(items);
+      }
+    }
+
+    @Override
+    public int getSize() {
+      return mCount;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A> A getReducedValue(ClusterReducer<? super T, A> reducer) {
+      int index = mReducers.indexOf(reducer);
+      return index < 0 ? null : (A) mReduced[index];
+    }
+
+    /**
+     * Hashes the point and the items, like {@link StaticCluster}, so a node of the next build
+     * with the same items in the same place is equal and keeps its marker.
+     */
+    @Override
+    public int hashCode() {
+      int hash = mHash;
+      if (hash == 0) {
+        hash = 31 * Double.hashCode(mPoint.x) + Double.hashCode(mPoint.y) + itemsHash();
+        mHash = hash;
+      }
+      return hash;
+    }
+
+    /** The hash of the set of items, a sum that doesn't depend on their order. */
+    private int itemsHash() {
+      if (mItem != null) {
+        return mItem.hashCode();
+      }
+      int hash = 0;
+      for (Node<T> child : mChildren) {
+        hash += child.itemsHash();
+      }
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof Node<?>)) {
+        return false;
+      }
+      Node<?> other = (Node<?>) o;
+      return mCount == other.mCount && mPoint.x == other.mPoint.x && mPoint.y == other.mPoint.y
+          && hashCode() == other.hashCode()
+          && new HashSet<Object>(getItems()).equals(new HashSet<Object>(other.getItems()));
+    }
+
+    @Override
+    public String toString() {
+      return "Node{" + "mPosition=" + getPosition() + ", mCount=" + mCount + '}';
+    }
+  }
+}
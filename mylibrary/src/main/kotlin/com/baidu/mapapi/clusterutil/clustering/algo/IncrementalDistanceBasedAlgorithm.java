@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 增量聚合算法
+ * A distance based clustering algorithm that keeps the clusters of the last zoom level it was
+ * asked for and patches them as items come and go, instead of clustering every item again.
+ *
+ * <p>Clusters are formed as in {@link NonHierarchicalDistanceBasedAlgorithm}: each is centered on
+ * one of its items and holds the items within the clustering span of that center that are not
+ * closer to another center. An added item joins the nearest center whose span covers it, or
+ * becomes a center itself and takes over the items that are closer to it. Removing a center
+ * dissolves its cluster and adds its other items again. Only the clusters within the span of a
+ * change are touched. A new zoom level or distance clusters every item once more.
+ *
+ * <p>Only the items in the categories asked for with {@link #getClusters(double, long)} are
+ * clustered; the others stay indexed and are skipped. New categories cluster every shown item
+ * once more, like a new zoom level.
+ *
+ * <p>Unchanged clusters are returned as the same objects by every call to {@link
+ * #getClusters(double)}, and {@link #takeChanges()} tells which clusters were replaced since it
+ * was last called, so a renderer can patch only those. Do not wrap this algorithm in a {@link
+ * PreCachingAlgorithmDecorator}, which throws its clusters away on every change.
+ */
+public class IncrementalDistanceBasedAlgorithm<T extends ClusterItem>
+    extends AbstractAlgorithm<T> {
+
+  /** // essentially 100 dp. */
+  private static final int DEFAULT_MAX_DISTANCE_AT_ZOOM = 100;
+
+  private static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
+  /** Any access to the fields below should be synchronized on mEntries. */
+  private final Map<T, Entry<T>> mEntries = new HashMap<>();
+
+  /** Every item. */
+  private final PointQuadTree<Entry<T>> mItemTree = new PointQuadTree<>(0, 1, 0, 1);
+
+  /** The cluster centers. */
+  private final PointQuadTree<Entry<T>> mCenterTree = new PointQuadTree<>(0, 1, 0, 1);
+
+  /** Handed to each item added and kept when it is updated, it orders the candidates. */
+  private long mNextSequence;
+
+  private int mMaxDistance = DEFAULT_MAX_DISTANCE_AT_ZOOM;
+
+  /** The zoom level the clusters are kept for, or -1 before the first pass. */
+  private int mZoom = -1;
+
+  private double mHalfSpan;
+
+  /** The categories the clusters are kept for. */
+  private long mCategories = ALL_CATEGORIES;
+
+  /** The published version of every cluster. */
+  private final Set<Cluster<T>> mClusters = new HashSet<>();
+
+  /** Groups changed since their clusters were last published. */
+  private final Set<Group<T>> mDirty = new LinkedHashSet<>();
+
+  /** Clusters published and replaced since the last {@link #takeChanges()}. */
+  private final Set<Cluster<T>> mAdded = new HashSet<>();
+
+  private final Set<Cluster<T>> mRemoved = new HashSet<>();
+
+  @Override
+  public boolean addItem(T item) {
+    synchronized (mEntries) {
+      return add(item);
+    }
+  }
+
+  @Override
+  public boolean addItems(Collection<T> items) {
+    synchronized (mEntries) {
+      if (mZoom < 0) {
+        // Nothing is clustered yet, so only the tree needs to know.
+        List<Entry<T>> added = new ArrayList<>(items.size());
+        for (T item : items) {
+          if (!mEntries.containsKey(item)) {
+            Entry<T> entry = new Entry<>(item, mNextSequence++);
+            mEntries.put(item, entry);
+            added.add(entry);
+          }
+        }
+        if (added.size() >= mItemTree.size()) {
+          mItemTree.addAll(added);
+        } else {
+          for (Entry<T> entry : added) {
+            mItemTree.add(entry);
+          }
+        }
+        return !added.isEmpty();
+      }
+      boolean changed = false;
+      for (T item : items) {
+        changed |= add(item);
+      }
+      return changed;
+    }
+  }
+
+  @Override
+  public void clearItems() {
+    synchronized (mEntries) {
+      for (Cluster<T> cluster : mClusters) {
+        retract(cluster);
+      }
+      mClusters.clear();
+      mDirty.clear();
+      mEntries.clear();
+      mItemTree.clear();
+      mCenterTree.clear();
+    }
+  }
+
+  @Override
+  public boolean removeItem(T item) {
+    synchronized (mEntries) {
+      return remove(item);
+    }
+  }
+
+  @Override
+  public boolean removeItems(Collection<T> items) {
+    synchronized (mEntries) {
+      boolean changed = false;
+      for (T item : items) {
+        changed |= remove(item);
+      }
+      return changed;
+    }
+  }
+
+  @Override
+  public boolean updateItem(T item) {
+    synchronized (mEntries) {
+      return update(item);
+    }
+  }
+
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    synchronized (mEntries) {
+      boolean updated = false;
+      for (T item : items) {
+        updated |= update(item);
+      }
+      return updated;
+    }
+  }
+
+  @Override
+  public Collection<T> getItems() {
+    synchronized (mEntries) {
+      return new ArrayList<T>(mEntries.keySet());
+    }
+  }
+
+  @Override
+  public void setMaxDistanceBetweenClusteredItems(int maxDistance) {
+    synchronized (mEntries) {
+      if (mMaxDistance != maxDistance) {
+        mMaxDistance = maxDistance;
+        // Cluster everything again on the next pass.
+        mZoom = -1;
+      }
+    }
+  }
+
+  /** Every cluster is published again with the values of the new reducers. */
+  @Override
+  public void addReducer(ClusterReducer<? super T, ?> reducer) {
+    synchronized (mEntries) {
+      super.addReducer(reducer);
+      touchAll();
+    }
+  }
+
+  @Override
+  public void removeReducer(ClusterReducer<? super T, ?> reducer) {
+    synchronized (mEntries) {
+      super.removeReducer(reducer);
+      touchAll();
+    }
+  }
+
+  private void touchAll() {
+    for (Entry<T> entry : mEntries.values()) {
+      if (entry.mGroup != null) {
+        touch(entry.mGroup);
+      }
+    }
+  }
+
+  @Override
+  public int getMaxDistanceBetweenClusteredItems() {
+    synchronized (mEntries) {
+      return mMaxDistance;
+    }
+  }
+
+  /** Clustering is synchronized with the writes, see {@link Algorithm#isClusteringThreadSafe()}. */
+  @Override
+  public boolean isClusteringThreadSafe() {
+    return true;
+  }
+
+  /**
+   * @return the clusters of the given zoom level. Clusters that did not change since the last
+   *     call are the same objects.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom) {
+    return getClusters(zoom, ALL_CATEGORIES);
+  }
+
+  /**
+   * @return the clusters of the items in the given categories. Clusters that did not change
+   *     since the last call for the same categories are the same objects.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    synchronized (mEntries) {
+      int discreteZoom = (int) zoom;
+      if (discreteZoom != mZoom || categories != mCategories) {
+        mCategories = categories;
+        recluster(discreteZoom);
+      }
+      publish();
+      return new HashSet<Cluster<T>>(mClusters);
+    }
+  }
+
+  /**
+   * Returns the clusters replaced since the last call, and forgets them. Clusters both added and
+   * removed in between are left out.
+   */
+  public ClusterChanges<T> takeChanges() {
+    synchronized (mEntries) {
+      publish();
+      ClusterChanges<T> changes =
+          new ClusterChanges<T>(new HashSet<Cluster<T>>(mRemoved), new HashSet<Cluster<T>>(mAdded));
+      mRemoved.clear();
+      mAdded.clear();
+      return changes;
+    }
+  }
+
+  private boolean add(T item) {
+    if (mEntries.containsKey(item)) {
+      return false;
+    }
+    return add(item, mNextSequence++);
+  }
+
+  private boolean add(T item, long sequence) {
+    Entry<T> entry = new Entry<>(item, sequence);
+    mEntries.put(item, entry);
+    mItemTree.add(entry);
+    if (mZoom >= 0 && isShown(entry)) {
+      assign(entry);
+    }
+    return true;
+  }
+
+  /** Moves an item to its new position, keeping its place in the order. */
+  private boolean update(T item) {
+    Entry<T> entry = mEntries.get(item);
+    // Only add the item if it was removed (to help prevent accidental duplicates on map)
+    return entry != null && remove(item) && add(item, entry.mSequence);
+  }
+
+  private boolean remove(T item) {
+    Entry<T> entry = mEntries.remove(item);
+    if (entry == null) {
+      return false;
+    }
+    mItemTree.remove(entry);
+    Group<T> group = entry.mGroup;
+    if (group == null) {
+      return true;
+    }
+    touch(group);
+    if (group.mCenter != entry) {
+      group.mMembers.remove(entry);
+      return true;
+    }
+    // The cluster loses its center, so its other items look for a new one.
+    mCenterTree.remove(entry);
+    group.mMembers.remove(entry);
+    List<Entry<T>> orphans = insertionOrder(group.mMembers);
+    group.mMembers.clear();
+    for (Entry<T> orphan : orphans) {
+      orphan.mGroup = null;
+    }
+    for (Entry<T> orphan : orphans) {
+      assign(orphan);
+    }
+    return true;
+  }
+
+  /**
+   * Puts an unclustered item into the nearest cluster whose span covers it, or makes it a new
+   * center.
+   */
+  private void assign(Entry<T> entry) {
+    Point point = entry.mPoint;
+    Entry<T> nearest = null;
+    double nearestDistance = Double.MAX_VALUE;
+    for (Entry<T> center : mCenterTree.search(span(point))) {
+      double distance = distanceSquared(center.mPoint, point);
+      if (distance < nearestDistance) {
+        nearest = center;
+        nearestDistance = distance;
+      }
+    }
+    if (nearest != null) {
+      join(entry, nearest.mGroup, nearestDistance);
+      return;
+    }
+    // 成为新的中心点, 并接管离它更近的点
+    Group<T> group = new Group<>(entry);
+    mCenterTree.add(entry);
+    join(entry, group, 0);
+    for (Entry<T> other : mItemTree.search(span(point))) {
+      if (other.mGroup == null || other.mGroup == group) {
+        continue;
+      }
+      double distance = distanceSquared(other.mPoint, point);
+      if (distance < other.mDistance) {
+        touch(other.mGroup);
+        other.mGroup.mMembers.remove(other);
+        join(other, group, distance);
+      }
+    }
+  }
+
+  private void join(Entry<T> entry, Group<T> group, double distance) {
+    touch(group);
+    group.mMembers.add(entry);
+    entry.mGroup = group;
+    entry.mDistance = distance;
+  }
+
+  /**
+   * Clusters every item again for the given zoom level, in the order and with the rules of
+   * {@link NonHierarchicalDistanceBasedAlgorithm}.
+   */
+  private void recluster(int zoom) {
+    for (Cluster<T> cluster : mClusters) {
+      retract(cluster);
+    }
+    mClusters.clear();
+    mDirty.clear();
+    mCenterTree.clear();
+    mZoom = zoom;
+    mHalfSpan = mMaxDistance / Math.pow(2.0, zoom) / 256.0 / 2;
+
+    List<Entry<T>> shown = new ArrayList<>(mEntries.size());
+    for (Entry<T> entry : mEntries.values()) {
+      entry.mGroup = null;
+      entry.mDistance = Double.MAX_VALUE;
+      if (isShown(entry)) {
+        shown.add(entry);
+      }
+    }
+    List<Entry<T>> candidates = insertionOrder(shown);
+    Set<Entry<T>> visited = new HashSet<>();
+    for (Entry<T> candidate : candidates) {
+      if (visited.contains(candidate)) {
+        continue;
+      }
+      Group<T> group = new Group<>(candidate);
+      mCenterTree.add(candidate);
+      mDirty.add(group);
+      for (Entry<T> entry : mItemTree.search(span(candidate.mPoint))) {
+        // Items in other categories stay out of every cluster.
+        if (!isShown(entry)) {
+          continue;
+        }
+        visited.add(entry);
+        double distance = distanceSquared(entry.mPoint, candidate.mPoint);
+        if (entry.mGroup != null) {
+          if (entry.mDistance < distance) {
+            continue;
+          }
+          entry.mGroup.mMembers.remove(entry);
+        }
+        group.mMembers.add(entry);
+        entry.mGroup = group;
+        entry.mDistance = distance;
+      }
+    }
+  }
+
+  /**
+   * Sorts entries by their scattered sequence numbers, as {@link
+   * NonHierarchicalDistanceBasedAlgorithm#insertionOrder} sorts its candidates.
+   */
+  private static <T extends ClusterItem> List<Entry<T>> insertionOrder(
+      Collection<Entry<T>> entries) {
+    List<Entry<T>> list = new ArrayList<>(entries);
+    long[] sequences = new long[list.size()];
+    for (int i = 0; i < sequences.length; i++) {
+      sequences[i] = list.get(i).mSequence;
+    }
+    return NonHierarchicalDistanceBasedAlgorithm.scatterOrder(list, sequences);
+  }
+
+  private boolean isShown(Entry<T> entry) {
+    return isShown(entry.mCategories, mCategories);
+  }
+
+  /** Marks a group as changed, withdrawing its published cluster. */
+  private void touch(Group<T> group) {
+    if (mDirty.add(group) && group.mCluster != null) {
+      mClusters.remove(group.mCluster);
+      retract(group.mCluster);
+      group.mCluster = null;
+    }
+  }
+
+  private void retract(Cluster<T> cluster) {
+    if (!mAdded.remove(cluster)) {
+      mRemoved.add(cluster);
+    }
+  }
+
+  /** Publishes a new cluster for every changed group that still has items. */
+  private void publish() {
+    List<ClusterReducer<? super T, ?>> reducers = getReducers();
+    for (Group<T> group : mDirty) {
+      if (group.mMembers.isEmpty()) {
+        continue;
+      }
+      StaticCluster<T> cluster = new StaticCluster<T>(group.mCenter.mPosition,
+          group.mMembers.size(), StaticCluster.CenterMode.FIRST, reducers);
+      for (Entry<T> entry : group.mMembers) {
+        cluster.add(entry.mItem);
+      }
+      group.mCluster = cluster;
+      mClusters.add(cluster);
+      mAdded.add(cluster);
+    }
+    mDirty.clear();
+  }
+
+  private Bounds span(Point point) {
+    return new Bounds(
+        point.x - mHalfSpan, point.x + mHalfSpan, point.y - mHalfSpan, point.y + mHalfSpan);
+  }
+
+  private static double distanceSquared(Point a, Point b) {
+    return (a.x - b.x) * (a.x - b.x) + (a.y - b.y) * (a.y - b.y);
+  }
+
+  /**
+   * 聚合结果的变化
+   * The clusters replaced between two calls to {@link #takeChanges()}: the removed ones are no
+   * longer returned by {@link #getClusters(double)}, the added ones are new.
+   */
+  public static class ClusterChanges<T extends ClusterItem> {
+    private final Set<Cluster<T>> mRemoved;
+    private final Set<Cluster<T>> mAdded;
+
+    ClusterChanges(Set<Cluster<T>> removed, Set<Cluster<T>> added) {
+      mRemoved = removed;
+      mAdded = added;
+    }
+
+    public Set<Cluster<T>> getRemoved() {
+      return mRemoved;
+    }
+
+    public Set<Cluster<T>> getAdded() {
+      return mAdded;
+    }
+
+    public boolean isEmpty() {
+      return mRemoved.isEmpty() && mAdded.isEmpty();
+    }
+  }
+
+  /** A cluster center and the items that belong to it, the center included. */
+  private static final class Group<T extends ClusterItem> {
+    private final Entry<T> mCenter;
+    private final Set<Entry<T>> mMembers = new LinkedHashSet<>();
+
+    /** The published cluster, null while the group is changed. */
+    private StaticCluster<T> mCluster;
+
+    Group(Entry<T> center) {
+      mCenter = center;
+    }
+  }
+
+  /** An item with its projected point and the group it belongs to. */
+  private static final class Entry<T extends ClusterItem> implements PointQuadTree.Item {
+    private final T mItem;
+    private final LatLng mPosition;
+    private final Point mPoint;
+
+    /** The order the item was added in, unique among the items of the algorithm. */
+    private final long mSequence;
+
+    private final long mCategories;
+
+    private Group<T> mGroup;
+
+    /** The squared distance to the center of its group. */
+    private double mDistance = Double.MAX_VALUE;
+
+    Entry(T item, long sequence) {
+      mItem = item;
+      mSequence = sequence;
+      mCategories = getCategories(item);
+      mPosition = item.getPosition();
+      mPoint = PROJECTION.toPoint(mPosition);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
@@ -4,14 +4,22 @@
 
 package com.baidu.mapapi.clusterutil.clustering.algo;
 
+import com.baidu.mapapi.clusterutil.clustering.CategorizedClusterItem;
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
 import com.baidu.mapapi.clusterutil.projection.Bounds;
 import com.baidu.mapapi.clusterutil.projection.Point;
 import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.clusterutil.quadtree.FilteredIndex;
+import com.baidu.mapapi.clusterutil.quadtree.PackedPointQuadTree;
+import com.baidu.mapapi.clusterutil.quadtree.PersistentPointQuadTree;
 import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialHash;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialIndex;
 import com.baidu.mapapi.model.LatLng;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -19,6 +27,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 真正的算法核心类
@@ -26,13 +36,28 @@ import java.util.Set;
  * hierarchical.
  *
  * <p>High level algorithm:<br>
- * 1. Iterate over items in the order they were added (candidate clusters).<br>
+ * 1. Iterate over items in an order scattered from the order they were added (candidate
+ * clusters).<br>
  * 2. Create a cluster with the center of the item. <br>
  * 3. Add all items that are within a certain distance to the cluster. <br>
  * 4. Move any items out of an existing cluster if they are closer to another cluster. <br>
  * 5. Remove those items from the list of candidate clusters.
  *
- * <p>Clusters have the center of the first element (not the centroid of the items within it).
+ * <p>Clusters are placed at the item they were created for by default, see {@link
+ * StaticCluster.CenterMode#FIRST}. {@link #setCenterMode} places them at the centroid or the
+ * weighted centroid of their items instead; items still join by their distance to that first item.
+ *
+ * <p>Items added one after another are often next to each other; the scattered order keeps them
+ * from being tried one after another. The same items added in the same order always make the
+ * same clusters. Results come as a {@link
+ * ClusterSet}; clustering again with nothing changed returns the same set.
+ *
+ * <p>By default the items are kept in a {@link PersistentPointQuadTree} and each pass clusters a
+ * snapshot of it, so adding, removing and updating items never waits for a clustering pass. Any
+ * other {@link SpatialIndex} can be passed in instead.
+ *
+ * <p>Items can be clustered by category, see {@link #getClusters(double, long)}. The default
+ * tree skips the quads holding none of the categories asked for; other indexes test each item.
  *
  * @author zlcd
  */
@@ -44,22 +69,124 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
 
   private int mMaxDistance = DEFAULT_MAX_DISTANCE_AT_ZOOM;
 
-  /** Any modifications should be synchronized on mQuadTree. */
-  private final Collection<QuadItem<T>> mItems = new HashSet<>();
+  /** Batches of at least this many items are bulk loaded into the quad tree. */
+  private static final int BULK_LOAD_THRESHOLD = 1000;
+
+  /** In parallel mode, passes over at least this many candidates are split across threads. */
+  private static final int PARALLEL_THRESHOLD = 50_000;
+
+  private volatile boolean mParallel;
+
+  private volatile StaticCluster.CenterMode mCenterMode = StaticCluster.CenterMode.FIRST;
 
   /** Any modifications should be synchronized on mQuadTree. */
-  private final PointQuadTree<QuadItem<T>> mQuadTree =
-      new PointQuadTree<NonHierarchicalDistanceBasedAlgorithm.QuadItem<T>>(0, 1, 0, 1);
+  private final Map<T, QuadItem<T>> mItems = new HashMap<>();
+
+  /**
+   * Ids handed out so far, and those freed by removed items for the next items to reuse. Ids
+   * stay dense, so a pass keeps its bookkeeping in arrays indexed by id. An id is only reused
+   * once its item is removed, so a pass over a snapshot never sees two items with the same id.
+   * Guarded by mQuadTree.
+   */
+  private int mIdCount;
+
+  private int[] mFreeIds = new int[16];
+
+  private int mFreeIdCount;
+
+  /** Handed to each item added and never reused, it orders the candidates. Guarded by mQuadTree. */
+  private long mNextSequence;
+
+  /**
+   * Bumped by every change to the item set, to the categories clustered, or to how its clusters
+   * are placed. Guarded by mQuadTree.
+   */
+  private long mVersion;
+
+  /** The categories of the last pass. Guarded by mQuadTree. */
+  private long mCategories = ALL_CATEGORIES;
+
+  /** The last result that can be handed out again while nothing changes. */
+  private volatile ClusterSet<T> mLastResult;
+
+  /** The sorted candidates of the last pass over every item, see {@link #getCandidates}. */
+  private volatile Candidates<T> mCandidates;
+
+  /** Bookkeeping arrays kept between passes; a pass running meanwhile makes its own. */
+  private final AtomicReference<PassState<T>> mPassState = new AtomicReference<>();
+
+  /**
+   * Any modifications should be synchronized on mQuadTree. Reads need the lock too unless they
+   * go through a snapshot.
+   */
+  private final SpatialIndex<QuadItem<T>> mQuadTree;
+
+  private static final Bounds WORLD_BOUNDS = new Bounds(0, 1, 0, 1);
 
   private static final SphericalMercatorProjection PROJECTION =
       new SphericalMercatorProjection(1.0d);
 
+  public NonHierarchicalDistanceBasedAlgorithm() {
+    this(new PersistentPointQuadTree<QuadItem<T>>(0, 1, 0, 1));
+  }
+
+  /**
+   * @param index an empty index for the items, covering the unit square [0, 1] x [0, 1] the
+   *     items are projected to. A {@link PackedPointQuadTree} keeps coordinates and quads in
+   *     primitive arrays, for very large item sets; writers then wait for a running clustering
+   *     pass. A {@link com.baidu.mapapi.clusterutil.quadtree.KdTree} suits items loaded once and
+   *     rarely changed.
+   */
+  public NonHierarchicalDistanceBasedAlgorithm(SpatialIndex<QuadItem<T>> index) {
+    mQuadTree = index;
+  }
+
+  /**
+   * @param parallel true to cluster large item sets on the common {@link ForkJoinPool}. The
+   *     clusters are the same as those of a single threaded pass.
+   */
+  public void setParallel(boolean parallel) {
+    mParallel = parallel;
+  }
+
+  /**
+   * 设置聚合点位置的计算方式
+   * Places clusters at their first item, the default, or at the centroid or weighted centroid
+   * of their items. Centroids are summed while items join clusters, so they cost no extra pass.
+   */
+  public void setCenterMode(StaticCluster.CenterMode centerMode) {
+    synchronized (mQuadTree) {
+      mCenterMode = centerMode;
+      mVersion++;
+    }
+  }
+
+  public StaticCluster.CenterMode getCenterMode() {
+    return mCenterMode;
+  }
+
+  @Override
+  public void addReducer(ClusterReducer<? super T, ?> reducer) {
+    synchronized (mQuadTree) {
+      super.addReducer(reducer);
+      mVersion++;
+    }
+  }
+
+  @Override
+  public void removeReducer(ClusterReducer<? super T, ?> reducer) {
+    synchronized (mQuadTree) {
+      super.removeReducer(reducer);
+      mVersion++;
+    }
+  }
+
   @Override
   public boolean addItem(T item) {
     boolean add;
-    QuadItem<T> quadItem = new QuadItem<>(item);
+    QuadItem<T> quadItem = new QuadItem<>(item, this);
     synchronized (this.mQuadTree) {
-      add = this.mItems.add(quadItem);
+      add = put(quadItem);
       if (add) {
         this.mQuadTree.add(quadItem);
       }
@@ -69,13 +196,39 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
 
   @Override
   public boolean addItems(Collection<T> items) {
-    boolean z = false;
+    if (items.size() < BULK_LOAD_THRESHOLD) {
+      boolean z = false;
+      for (T t : items) {
+        if (addItem(t)) {
+          z = true;
+        }
+      }
+      return z;
+    }
+
+    // Project outside the lock, then bulk load the tree in one pass.
+    List<QuadItem<T>> quadItems = new ArrayList<>(items.size());
     for (T t : items) {
-      if (addItem(t)) {
-        z = true;
+      quadItems.add(new QuadItem<>(t, this));
+    }
+    synchronized (mQuadTree) {
+      int existing = mItems.size();
+      List<QuadItem<T>> added = new ArrayList<>(quadItems.size());
+      for (QuadItem<T> quadItem : quadItems) {
+        if (put(quadItem)) {
+          added.add(quadItem);
+        }
       }
+      if (added.size() >= existing) {
+        // Re-packing the existing items costs less than splitting quads one item at a time.
+        mQuadTree.addAll(added);
+      } else {
+        for (QuadItem<T> quadItem : added) {
+          mQuadTree.add(quadItem);
+        }
+      }
+      return !added.isEmpty();
     }
-    return z;
   }
 
   @Override
@@ -83,6 +236,9 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
     synchronized (mQuadTree) {
       mItems.clear();
       mQuadTree.clear();
+      mIdCount = 0;
+      mFreeIdCount = 0;
+      mVersion++;
     }
   }
 
@@ -90,15 +246,9 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
   public boolean removeItem(T item) {
     // QuadItem delegates hashcode() and equals() to its item so,
     //   removing any QuadItem to that item will remove the item
-    boolean remove;
-    QuadItem<T> quadItem = new QuadItem<>(item);
     synchronized (this.mQuadTree) {
-      remove = this.mItems.remove(quadItem);
-      if (remove) {
-        this.mQuadTree.remove(quadItem);
-      }
+      return take(item);
     }
-    return remove;
   }
 
   @Override
@@ -107,9 +257,7 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
     synchronized (this.mQuadTree) {
       z = false;
       for (T t : collection) {
-        QuadItem<T> quadItem = new QuadItem<>(t);
-        if (this.mItems.remove(quadItem)) {
-          this.mQuadTree.remove(quadItem);
+        if (take(t)) {
           z = true;
         }
       }
@@ -117,16 +265,98 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
     return z;
   }
 
+  /**
+   * Moves the item to its new position, keeping its id and its place in the order candidates
+   * are tried in. An item that stays in its leaf of the index is swapped in place.
+   */
   @Override
   public boolean updateItem(T item) {
-    boolean removeItem;
-    synchronized (this.mQuadTree) {
-      removeItem = removeItem(item);
-      if (removeItem) {
-        removeItem = addItem(item);
+    QuadItem<T> quadItem = new QuadItem<>(item, this);
+    synchronized (mQuadTree) {
+      if (!move(quadItem)) {
+        return false;
       }
+      mVersion++;
+      return true;
+    }
+  }
+
+  /**
+   * Moves the items like {@link #updateItem} under one lock, so clusters are invalidated once
+   * for the whole batch.
+   */
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    // Project outside the lock.
+    List<QuadItem<T>> quadItems = new ArrayList<>(items.size());
+    for (T t : items) {
+      quadItems.add(new QuadItem<>(t, this));
+    }
+    boolean updated = false;
+    synchronized (mQuadTree) {
+      for (QuadItem<T> quadItem : quadItems) {
+        updated |= move(quadItem);
+      }
+      if (updated) {
+        mVersion++;
+      }
+    }
+    return updated;
+  }
+
+
+  /**
+   * Stores a new item under a free id. Must hold the lock on mQuadTree.
+   *
+   * @return false if the item was already there.
+   */
+  private boolean put(QuadItem<T> quadItem) {
+    if (mItems.containsKey(quadItem.mClusterItem)) {
+      return false;
     }
-    return removeItem;
+    quadItem.mId = mFreeIdCount > 0 ? mFreeIds[--mFreeIdCount] : mIdCount++;
+    quadItem.mSequence = mNextSequence++;
+    mItems.put(quadItem.mClusterItem, quadItem);
+    mVersion++;
+    return true;
+  }
+
+  /**
+   * Replaces the stored item with its new position, under the same id and sequence. Must hold
+   * the lock on mQuadTree.
+   *
+   * @return false if the item was not there.
+   */
+  private boolean move(QuadItem<T> quadItem) {
+    // Removed first so an equal but new item object replaces the key too.
+    QuadItem<T> old = mItems.remove(quadItem.mClusterItem);
+    if (old == null) {
+      return false;
+    }
+    quadItem.mId = old.mId;
+    quadItem.mSequence = old.mSequence;
+    mItems.put(quadItem.mClusterItem, quadItem);
+    mQuadTree.move(old, quadItem);
+    return true;
+  }
+
+  /**
+   * Removes an item and frees its id. Must hold the lock on mQuadTree.
+   *
+   * @return false if the item was not there.
+   */
+  private boolean take(T item) {
+    QuadItem<T> quadItem = mItems.remove(item);
+    if (quadItem == null) {
+      return false;
+    }
+    mQuadTree.remove(quadItem);
+    if (mFreeIdCount == mFreeIds.length) {
+      mFreeIds = Arrays.copyOf(mFreeIds, mFreeIdCount * 2);
+    }
+    mFreeIds[mFreeIdCount++] = quadItem.mId;
+    mVersion++;
+    return true;
   }
 
 
@@ -137,92 +367,307 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
    */
   @Override
   public Set<? extends Cluster<T>> getClusters(double zoom) {
+    return getClusters(zoom, ALL_CATEGORIES);
+  }
+
+  /**
+   * 按类别聚合
+   * Clusters the items in the given categories in one pass over the index the items are already
+   * in. Results are keyed by the categories; changing them also empties the caches of
+   * subclasses.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    SpatialIndex<QuadItem<T>> snapshot;
+    int idCount;
+    long version;
+    Object key = getResultKey(zoom, categories);
+    synchronized (mQuadTree) {
+      if (categories != mCategories) {
+        mCategories = categories;
+        mVersion++;
+      }
+      idCount = mIdCount;
+      version = mVersion;
+      ClusterSet<T> last = mLastResult;
+      if (last != null && last.isStamped(this, version, key)) {
+        // 没有变化, 返回上一次的结果
+        return last;
+      }
+      snapshot = mQuadTree.snapshot();
+      if (snapshot == null) {
+        return stamp(getClusters(filter(mQuadTree, categories), zoom, idCount, version), zoom,
+            categories, version, key);
+      }
+    }
+    // 对快照聚合, 不阻塞写线程
+    // Cluster a snapshot, writers carry on publishing new versions meanwhile.
+    return stamp(getClusters(filter(snapshot, categories), zoom, idCount, version), zoom,
+        categories, version, key);
+  }
+
+  /**
+   * @return a view of the index showing only the items in the given categories.
+   */
+  private static <T extends ClusterItem> SpatialIndex<QuadItem<T>> filter(
+      SpatialIndex<QuadItem<T>> index, long categories) {
+    return categories == ALL_CATEGORIES
+        ? index
+        : new FilteredIndex<QuadItem<T>>(index, categories);
+  }
+
+  /**
+   * @return what the clusters of a zoom level depend on besides the items, or null if a result
+   *     can't be handed out again.
+   */
+  Object getResultKey(double zoom) {
+    return getHalfSpan(zoom);
+  }
+
+  private Object getResultKey(double zoom, long categories) {
+    Object key = getResultKey(zoom);
+    return key == null || categories == ALL_CATEGORIES ? key : Arrays.asList(key, categories);
+  }
+
+  @SuppressWarnings("unchecked")
+  private ClusterSet<T> stamp(Set<? extends Cluster<T>> clusters, double zoom, long categories,
+      long version, Object key) {
+    if (clusters instanceof ClusterSet) {
+      return (ClusterSet<T>) clusters;
+    }
+    if (key != null && !key.equals(getResultKey(zoom, categories))) {
+      // The settings changed during the pass, the clusters may match neither.
+      key = null;
+    }
+    ClusterSet<T> result = new ClusterSet<T>(clusters, this, version, key);
+    if (key != null) {
+      mLastResult = result;
+    }
+    return result;
+  }
+
+  /**
+   * @param quadTree the tree being clustered, a snapshot unless a packed tree is used
+   * @param idCount ids handed out when the tree was taken, all its items have smaller ones
+   * @param version the version of the item set held by the tree, equal versions hold the same
+   *     items
+   */
+  Set<? extends Cluster<T>> getClusters(
+      SpatialIndex<QuadItem<T>> quadTree, double zoom, int idCount, long version) {
+    final double halfSpan = getHalfSpan(zoom);
+    List<QuadItem<T>> candidates = getCandidates(quadTree, zoom, version);
+    if (useParallelPass(candidates.size())) {
+      return clusterInParallel(quadTree, candidates, halfSpan);
+    }
+    PassState<T> state = obtainPassState(idCount);
+    try {
+      return cluster(quadTree, candidates, halfSpan, state);
+    } finally {
+      recyclePassState(state);
+    }
+  }
+
+  /**
+   * @return half the side of the square around a cluster center whose items join the cluster.
+   */
+  double getHalfSpan(double zoom) {
     final int discreteZoom = (int) zoom;
 
     //定义的可进行聚合的距离
     final double zoomSpecificSpan = mMaxDistance / Math.pow(2.0, discreteZoom) / 256.0;
 
-     //遍历QuadItem时保存被遍历过的Item
-    final Set<QuadItem<T>> visitedCandidates = new HashSet<>();
+    // A fixed span whatever the markers look like; FootprintBasedAlgorithm clusters by the room
+    // each marker takes instead.
+    return zoomSpecificSpan / 2;
+  }
 
-    //保存要返回的cluster簇，每个cluster中包含若干个ClusterItem对象
-    final Set<Cluster<T>> results = new HashSet<>();
+  boolean useParallelPass(int candidateCount) {
+    return mParallel && candidateCount >= PARALLEL_THRESHOLD
+        && candidateCount <= ParallelPass.MAX_CANDIDATES;
+  }
 
-    //Item --> 此Item与所属的cluster中心点的距离
-    final Map<QuadItem<T>, Double> distanceToCluster = new HashMap<>();
+  Set<? extends Cluster<T>> clusterInParallel(
+      SpatialIndex<QuadItem<T>> quadTree, Collection<QuadItem<T>> candidates, double halfSpan) {
+    return new ParallelPass<T>(quadTree, halfSpan, mCenterMode, getReducers())
+        .run(new ArrayList<QuadItem<T>>(candidates));
+  }
 
-    //Item对象 --> 此Item所属的cluster
-    final Map<QuadItem<T>, StaticCluster<T>> itemToCluster = new HashMap<>();
+  /**
+   * @return the bookkeeping for a pass over items with ids below idCount, cleared.
+   */
+  PassState<T> obtainPassState(int idCount) {
+    //按 id 记录每个Item是否被遍历过、与所属cluster中心点的距离、所属的cluster
+    PassState<T> state = mPassState.getAndSet(null);
+    if (state == null) {
+      state = new PassState<>();
+    }
+    state.begin(idCount);
+    return state;
+  }
 
-    synchronized (mQuadTree) {
-      //遍历所有的QuadItem
-      for (QuadItem<T> candidate : getClusteringItems(mQuadTree, zoom)) {
-        if (visitedCandidates.contains(candidate)) {
-          ////如果此Item已经被别的cluster框住了，就不再处理它
-          // Candidate is already part of another cluster.
-          continue;
-        }
+  /** Hands the arrays of a finished pass to the next one. */
+  void recyclePassState(PassState<T> state) {
+    state.end();
+    mPassState.set(state);
+  }
 
-        //这个就是我们说的，根据给定距离生成一个框框
-        Bounds searchBounds = createBoundsFromSpan(candidate.getPoint(), zoomSpecificSpan);
-
-        //search 某边界范围内的clusterItems
-        Collection<QuadItem<T>> clusterItems = mQuadTree.search(searchBounds);
-        if (clusterItems.size() == 1) {
-           // 如果只有一个点，那么这一个点就是一个cluster，QuadItem也实现了Cluster接口，也可以当作Cluster对象
-          // Only the current marker is in range. Just add the single item to the results.
-          results.add(candidate);
-          visitedCandidates.add(candidate);
-          distanceToCluster.put(candidate, 0d);
-          continue;
-        }
-        //如果搜索到多个点,那么就以此item为中心创建一个cluster
-        StaticCluster<T> cluster = new StaticCluster<T>(candidate.mClusterItem.getPosition());
-        results.add(cluster);
-
-        //遍历所有框住的点
-        for (QuadItem<T> clusterItem : clusterItems) {
-          //获取此item与原来的cluster中心的距离(如果之前已经被其他cluster给框住了)
-          Double existingDistance = distanceToCluster.get(clusterItem);
-
-          //获取此item与现在这个cluster中心的距离
-          double distance = distanceSquared(clusterItem.getPoint(), candidate.getPoint());
-          if (existingDistance != null) {
-            // 判断那个距离跟小
-            // Item already belongs to another cluster. Check if it's closer to this cluster.
-            if (existingDistance < distance) {
-              continue;
-            }
-            //如果跟现在的cluster距离更近，则将此item从原来的cluster中移除
-            // Move item to the closer cluster.
-            itemToCluster.get(clusterItem).remove(clusterItem.mClusterItem);
-          }
-          //保存此item到cluster中心的距离
-          distanceToCluster.put(clusterItem, distance);
-          //将此item添加到cluster中
-          cluster.add(clusterItem.mClusterItem);
-          //建立item -- cluster 的map
-          itemToCluster.put(clusterItem, cluster);
-        }
-        //将所有框住过的点添加到已访问的List中
-        visitedCandidates.addAll(clusterItems);
+  /**
+   * The single threaded pass. Items already visited in the state, such as those of clusters a
+   * subclass carries over, are neither tried as centers nor moved.
+   *
+   * @return the clusters of the state once all candidates are tried.
+   */
+  Set<Cluster<T>> cluster(SpatialIndex<QuadItem<T>> quadTree,
+      Collection<QuadItem<T>> candidates, double halfSpan, PassState<T> state) {
+    return cluster(quadTree, candidates, halfSpan, state, null);
+  }
+
+  /**
+   * @param clip the bounds clusters take items from, null for anywhere
+   */
+  Set<Cluster<T>> cluster(SpatialIndex<QuadItem<T>> quadTree,
+      Collection<QuadItem<T>> candidates, double halfSpan, PassState<T> state, Bounds clip) {
+    fill(quadTree, candidates, halfSpan, state, clip);
+    //保存要返回的cluster簇，每个cluster中包含若干个ClusterItem对象
+    // Clusters go into the set once they are filled, so they hash by their final items.
+    return new HashSet<>(state.mClusters);
+  }
+
+  /**
+   * Tries the candidates in order, leaving the clusters in the state in the order they were
+   * found.
+   *
+   * @param clip the bounds clusters take items from, null for anywhere
+   */
+  void fill(SpatialIndex<QuadItem<T>> quadTree,
+      Collection<QuadItem<T>> candidates, double halfSpan, PassState<T> state, Bounds clip) {
+    //框住候选点周围的Item并归入cluster, 每次聚合只创建一次
+    final ClusterVisitor<T> visitor = new ClusterVisitor<>(state, mCenterMode, getReducers());
+
+    //遍历所有的QuadItem
+    for (QuadItem<T> candidate : candidates) {
+      if (state.isVisited(candidate.mId)) {
+        ////如果此Item已经被别的cluster框住了，就不再处理它
+        // Candidate is already part of another cluster.
+        continue;
+      }
+
+      //这个就是我们说的，根据给定距离生成一个框框, search 此范围内的clusterItems
+      Point point = candidate.getPoint();
+      visitor.begin(candidate);
+      if (clip == null) {
+        quadTree.search(
+            point.x - halfSpan, point.x + halfSpan, point.y - halfSpan, point.y + halfSpan,
+            visitor);
+      } else {
+        quadTree.search(
+            Math.max(point.x - halfSpan, clip.minX), Math.min(point.x + halfSpan, clip.maxX),
+            Math.max(point.y - halfSpan, clip.minY), Math.min(point.y + halfSpan, clip.maxY),
+            visitor);
+      }
+      if (!visitor.end()) {
+        // 如果只有一个点，那么这一个点就是一个cluster，QuadItem也实现了Cluster接口，也可以当作Cluster对象
+        // Only the current marker is in range. Just add the single item to the results.
+        state.visit(candidate.mId, 0d, state.add(candidate, candidate));
       }
     }
-    return results;
   }
 
+  /**
+   * 候选顺序按版本缓存
+   * The candidates of a pass over every item, from {@link #getClusteringItems}. They are sorted
+   * once per version of the items and handed to every later pass until the items change.
+   *
+   * @param version the version of the item set held by the tree
+   * @return the candidates, not to be modified.
+   */
+  List<QuadItem<T>> getCandidates(SpatialIndex<QuadItem<T>> quadTree, double zoom, long version) {
+    Candidates<T> cached = mCandidates;
+    if (cached != null && cached.mVersion == version) {
+      return cached.mItems;
+    }
+    Collection<QuadItem<T>> items = getClusteringItems(quadTree, zoom);
+    List<QuadItem<T>> candidates = Collections.unmodifiableList(items instanceof List
+        ? (List<QuadItem<T>>) items
+        : new ArrayList<QuadItem<T>>(items));
+    if (cached == null || cached.mVersion < version) {
+      mCandidates = new Candidates<T>(version, candidates);
+    }
+    return candidates;
+  }
+
+  /**
+   * Passes over every item reuse what this returns while the items don't change, so it must
+   * depend on nothing but the items in the tree.
+   *
+   * @param quadTree the tree being clustered, a snapshot unless a packed tree is used
+   * @return the candidate items, in the order they are tried as cluster centers.
+   */
   public Collection<QuadItem<T>> getClusteringItems(
-      PointQuadTree<QuadItem<T>> quadTree, double discreteZoom) {
-    return mItems;
+      SpatialIndex<QuadItem<T>> quadTree, double discreteZoom) {
+    return insertionOrder(quadTree.search(WORLD_BOUNDS));
+  }
+
+  /**
+   * Sorts the candidates by their scattered sequence numbers, see {@link #scatter(long)}. The
+   * order only depends on the order the items were added.
+   */
+  static <T extends ClusterItem> List<QuadItem<T>> insertionOrder(Collection<QuadItem<T>> items) {
+    List<QuadItem<T>> list =
+        items instanceof List ? (List<QuadItem<T>>) items : new ArrayList<QuadItem<T>>(items);
+    long[] sequences = new long[list.size()];
+    for (int i = 0; i < sequences.length; i++) {
+      sequences[i] = list.get(i).mSequence;
+    }
+    return scatterOrder(list, sequences);
+  }
+
+  /**
+   * Sorts a list by the scattered sequence numbers of its elements.
+   *
+   * @param sequences the sequence number of each element, taken over as the sort keys
+   */
+  static <E> List<E> scatterOrder(List<E> items, long[] sequences) {
+    for (int i = 0; i < sequences.length; i++) {
+      sequences[i] = scatter(sequences[i]);
+    }
+    return sortByKeys(items, sequences);
+  }
+
+  /**
+   * 打散顺序
+   * Mixes a sequence number the way SplitMix64 does, so that items added one after another,
+   * often next to each other, are tried far apart in the order.
+   */
+  static long scatter(long sequence) {
+    long z = sequence * 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * @param keys a key for each element, of which only the high 32 bits are used; ties keep the
+   *     order of the list.
+   */
+  private static <E> List<E> sortByKeys(List<E> list, long[] keys) {
+    int count = list.size();
+    for (int i = 0; i < count; i++) {
+      keys[i] = (keys[i] & 0xffffffff00000000L) | i;
+    }
+    Arrays.sort(keys);
+    List<E> sorted = new ArrayList<E>(count);
+    for (long key : keys) {
+      sorted.add(list.get((int) key));
+    }
+    return sorted;
   }
 
   @Override
   public Collection<T> getItems() {
     final List<T> items = new ArrayList<T>();
     synchronized (mQuadTree) {
-      for (QuadItem<T> quadItem : mItems) {
-        items.add(quadItem.mClusterItem);
-      }
+      items.addAll(mItems.keySet());
     }
     return items;
   }
@@ -238,27 +683,531 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
     return mMaxDistance;
   }
 
-  private double distanceSquared(Point a, Point b) {
+  /** Clustering is synchronized with the writes, see {@link Algorithm#isClusteringThreadSafe()}. */
+  @Override
+  public boolean isClusteringThreadSafe() {
+    return true;
+  }
+
+  private static double distanceSquared(Point a, Point b) {
     return (a.x - b.x) * (a.x - b.x) + (a.y - b.y) * (a.y - b.y);
   }
 
-  private Bounds createBoundsFromSpan(Point p, double span) {
-    // TODO: Use a span that takes into account the visual size of the marker, not just its
-    // LatLng.
-    double halfSpan = span / 2;
-    return new Bounds(p.x - halfSpan, p.x + halfSpan, p.y - halfSpan, p.y + halfSpan);
+  /** The candidates of a pass over every item, in order, and the version they were taken at. */
+  private static final class Candidates<T extends ClusterItem> {
+    private final long mVersion;
+    private final List<QuadItem<T>> mItems;
+
+    private Candidates(long version, List<QuadItem<T>> items) {
+      mVersion = version;
+      mItems = items;
+    }
+  }
+
+  /**
+   * 一次聚合的记录
+   * The bookkeeping of one single threaded pass, in arrays indexed by item id: whether each item
+   * was visited, its squared distance to its cluster's center and the index of its cluster, or of
+   * itself if it stayed alone. The arrays are kept for the next pass and only grow, so a pass
+   * allocates little besides the clusters it returns.
+   */
+  static final class PassState<T extends ClusterItem> {
+    private long[] mVisited = new long[0];
+    private double[] mDistance = new double[0];
+    private int[] mCluster = new int[0];
+    private int mIdCount;
+
+    /** The clusters and single items found so far, indexed by the values of mCluster. */
+    final List<Cluster<T>> mClusters = new ArrayList<>();
+
+    /** The candidate each of mClusters was found around. */
+    final List<QuadItem<T>> mCenters = new ArrayList<>();
+
+    void begin(int idCount) {
+      if (mDistance.length < idCount) {
+        int capacity = Math.max(idCount, mDistance.length + (mDistance.length >> 1));
+        mVisited = new long[(capacity + 63) >> 6];
+        mDistance = new double[capacity];
+        mCluster = new int[capacity];
+      } else {
+        Arrays.fill(mVisited, 0, (idCount + 63) >> 6, 0L);
+      }
+      mIdCount = idCount;
+      mClusters.clear();
+      mCenters.clear();
+    }
+
+    void end() {
+      mClusters.clear();
+      mCenters.clear();
+    }
+
+    /**
+     * @return the index of the cluster, to {@link #visit} its items with.
+     */
+    int add(Cluster<T> cluster, QuadItem<T> center) {
+      mClusters.add(cluster);
+      mCenters.add(center);
+      return mClusters.size() - 1;
+    }
+
+    boolean isVisited(int id) {
+      return (mVisited[id >> 6] & (1L << id)) != 0;
+    }
+
+    void visit(int id, double distance, int cluster) {
+      mVisited[id >> 6] |= 1L << id;
+      mDistance[id] = distance;
+      mCluster[id] = cluster;
+    }
+
+    /**
+     * 沿用上一次聚合的部分cluster
+     * Carries clusters of a pass over the same items into this one, which must just have begun.
+     * Their items count as visited and can't be taken by the clusters of this pass.
+     *
+     * @param kept which of the clusters of previous to carry over, by index
+     */
+    void keep(PassState<T> previous, boolean[] kept) {
+      int[] index = new int[kept.length];
+      for (int i = 0; i < kept.length; i++) {
+        if (kept[i]) {
+          index[i] = add(previous.mClusters.get(i), previous.mCenters.get(i));
+        } else {
+          index[i] = -1;
+        }
+      }
+      int words = (Math.min(mIdCount, previous.mIdCount) + 63) >> 6;
+      for (int word = 0; word < words; word++) {
+        long bits = previous.mVisited[word];
+        while (bits != 0) {
+          int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+          int cluster = index[previous.mCluster[id]];
+          if (cluster >= 0) {
+            visit(id, Double.NEGATIVE_INFINITY, cluster);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * 聚合一个候选点周围的Item
+   * Visits the items around one candidate. The cluster is only created once a second item is
+   * found, so isolated candidates cost no allocation. One instance is reused for a whole pass.
+   */
+  private static class ClusterVisitor<T extends ClusterItem>
+      implements PointQuadTree.Visitor<QuadItem<T>> {
+    private final PassState<T> mState;
+    private final StaticCluster.CenterMode mCenterMode;
+    private final List<ClusterReducer<? super T, ?>> mReducers;
+
+    private QuadItem<T> mCandidate;
+    private QuadItem<T> mFirst;
+    private StaticCluster<T> mCluster;
+    private int mClusterIndex;
+
+    private ClusterVisitor(PassState<T> state, StaticCluster.CenterMode centerMode,
+        List<ClusterReducer<? super T, ?>> reducers) {
+      mState = state;
+      mCenterMode = centerMode;
+      mReducers = reducers;
+    }
+
+    void begin(QuadItem<T> candidate) {
+      mCandidate = candidate;
+      mFirst = null;
+      mCluster = null;
+    }
+
+    /**
+     * @return true if a cluster was created for the candidate.
+     */
+    boolean end() {
+      boolean clustered = mCluster != null;
+      mCandidate = null;
+      mFirst = null;
+      mCluster = null;
+      return clustered;
+    }
+
+    @Override
+    public boolean visit(QuadItem<T> item) {
+      if (mFirst == null) {
+        mFirst = item;
+        return true;
+      }
+      if (mCluster == null) {
+        //如果搜索到多个点,那么就以此item为中心创建一个cluster
+        mCluster = new StaticCluster<T>(
+            mCandidate.mClusterItem.getPosition(), 0, mCenterMode, mReducers);
+        mClusterIndex = mState.add(mCluster, mCandidate);
+        add(mFirst);
+      }
+      add(item);
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(QuadItem<T> clusterItem) {
+      int id = clusterItem.mId;
+
+      //获取此item与现在这个cluster中心的距离
+      Point point = clusterItem.getPoint();
+      double distance = distanceSquared(point, mCandidate.getPoint());
+
+      //获取此item与原来的cluster中心的距离(如果之前已经被其他cluster给框住了)
+      if (mState.isVisited(id)) {
+        // 判断那个距离跟小
+        // Item already belongs to another cluster. Check if it's closer to this cluster.
+        if (mState.mDistance[id] < distance) {
+          return;
+        }
+        //如果跟现在的cluster距离更近，则将此item从原来的cluster中移除
+        // Move item to the closer cluster.
+        Cluster<T> previous = mState.mClusters.get(mState.mCluster[id]);
+        if (previous instanceof StaticCluster) {
+          ((StaticCluster<T>) previous).remove(clusterItem.mClusterItem, point.x, point.y);
+        }
+      }
+      //保存此item到cluster中心的距离, 以及它所属的cluster
+      mState.visit(id, distance, mClusterIndex);
+      //将此item添加到cluster中
+      mCluster.add(clusterItem.mClusterItem, point.x, point.y);
+    }
+  }
+
+  /**
+   * 并行聚合
+   * One clustering pass on the common {@link ForkJoinPool} that finds the same clusters as the
+   * single threaded pass.
+   *
+   * <p>A candidate becomes a cluster center exactly when no earlier center has it within its
+   * span, so the centers are settled in rounds: a candidate within the span of a center is
+   * dropped, one outside the span of every earlier undecided candidate becomes a center, and the
+   * others wait for the next round. The undecided candidates are sorted by grid cell, a quarter of
+   * a span wide, and each round runs over tiles of that order in parallel; a candidate waiting on a
+   * neighbour across a tile border is settled in a later round, once that neighbour is. Then
+   * each center collects, in parallel, the items within its span that no other center is closer
+   * to, later centers winning ties as they do in the single threaded pass.
+   */
+  private static final class ParallelPass<T extends ClusterItem> {
+    private static final byte WAIT = 0;
+    private static final byte CENTER = 1;
+    private static final byte DROPPED = 2;
+
+    /** Bits of a sort key holding the candidate's order. */
+    private static final int ORDER_BITS = 23;
+
+    /** The most candidates a pass can order. */
+    static final int MAX_CANDIDATES = 1 << ORDER_BITS;
+
+    /** Bits of a grid cell's column and row. */
+    private static final int CELL_BITS = 20;
+
+    private final SpatialIndex<QuadItem<T>> mIndex;
+    private final double mHalfSpan;
+    private final StaticCluster.CenterMode mCenterMode;
+    private final List<ClusterReducer<? super T, ?>> mReducers;
+
+    /** Searches are widened by this much, then filtered with the exact span test. */
+    private final double mSlack;
+
+    /** A quarter of the span, so a search wastes little time on cells it barely overlaps. */
+    private final double mCellSize;
+
+    /** The centers settled so far, hashed into cells one span wide. */
+    private final SpatialHash<Center<T>> mCenters;
+
+    /** The undecided candidates, sorted by key: grid cell, then order. */
+    private List<QuadItem<T>> mUndecided;
+    private long[] mKeys;
+    private int mCount;
+
+    ParallelPass(SpatialIndex<QuadItem<T>> index, double halfSpan,
+        StaticCluster.CenterMode centerMode, List<ClusterReducer<? super T, ?>> reducers) {
+      mIndex = index;
+      mHalfSpan = halfSpan;
+      mCenterMode = centerMode;
+      mReducers = reducers;
+      mSlack = halfSpan * 1e-9;
+      mCellSize = Math.max(halfSpan / 2, 1d / (1 << CELL_BITS));
+      mCenters = new SpatialHash<>(2 * halfSpan);
+    }
+
+    Set<Cluster<T>> run(final List<QuadItem<T>> ordered) {
+      final int count = ordered.size();
+      final long[] keys = new long[count];
+      // Set by index from several threads, which an ArrayList allows as its size never changes.
+      final List<QuadItem<T>> undecided =
+          new ArrayList<>(Collections.nCopies(count, (QuadItem<T>) null));
+      int chunks = chunks(count);
+      Chunks.run(chunks, count, new Chunks.Task() {
+        @Override
+        public void run(int from, int to) {
+          for (int i = from; i < to; i++) {
+            Point point = ordered.get(i).getPoint();
+            keys[i] = (cellKey(cell(point.x), cell(point.y)) << ORDER_BITS) | i;
+          }
+        }
+      });
+      Arrays.parallelSort(keys);
+      Chunks.run(chunks, count, new Chunks.Task() {
+        @Override
+        public void run(int from, int to) {
+          for (int i = from; i < to; i++) {
+            undecided.set(i, ordered.get((int) (keys[i] & (MAX_CANDIDATES - 1))));
+          }
+        }
+      });
+      mUndecided = undecided;
+      mKeys = keys;
+      mCount = count;
+
+      // 1. Settle the centers, a round at a time.
+      final List<Center<T>> centers = new ArrayList<>();
+      while (mCount > 0) {
+        final byte[] decisions = new byte[mCount];
+        Chunks.run(chunks(mCount), mCount, new Chunks.Task() {
+          @Override
+          public void run(int from, int to) {
+            CoveringVisitor<T> covering = new CoveringVisitor<>();
+            for (int i = from; i < to; i++) {
+              decisions[i] = decide(i, covering);
+            }
+          }
+        });
+        int kept = 0;
+        for (int i = 0; i < mCount; i++) {
+          if (decisions[i] == WAIT) {
+            mUndecided.set(kept, mUndecided.get(i));
+            mKeys[kept++] = mKeys[i];
+          } else if (decisions[i] == CENTER) {
+            Center<T> center =
+                new Center<T>(mUndecided.get(i), (int) (mKeys[i] & (MAX_CANDIDATES - 1)));
+            mCenters.add(center);
+            centers.add(center);
+          }
+        }
+        mCount = kept;
+      }
+
+      // 2. Fill the clusters.
+      final List<Cluster<T>> clusters =
+          new ArrayList<>(Collections.nCopies(centers.size(), (Cluster<T>) null));
+      Chunks.run(chunks(centers.size()), centers.size(), new Chunks.Task() {
+        @Override
+        public void run(int from, int to) {
+          ClosestVisitor<T> closest = new ClosestVisitor<>();
+          for (int i = from; i < to; i++) {
+            clusters.set(i, collect(centers.get(i), closest));
+          }
+        }
+      });
+      return new HashSet<>(clusters);
+    }
+
+    /**
+     * Decides the undecided candidate at index i of this round.
+     */
+    private byte decide(int i, CoveringVisitor<T> covering) {
+      Point point = mUndecided.get(i).getPoint();
+      double half = mHalfSpan + mSlack;
+      covering.begin(point, mHalfSpan);
+      if (!mCenters.search(
+          point.x - half, point.x + half, point.y - half, point.y + half, covering)) {
+        return DROPPED;
+      }
+      // Within a cell the candidates are in order, so only the earlier ones are looked at.
+      long order = mKeys[i] & (MAX_CANDIDATES - 1);
+      long toX = cell(point.x + half);
+      long fromY = cell(point.y - half);
+      long toY = cell(point.y + half);
+      for (long x = cell(point.x - half); x <= toX; x++) {
+        for (long y = fromY; y <= toY; y++) {
+          long key = cellKey(x, y) << ORDER_BITS;
+          for (int j = lowerBound(key); j < mCount && mKeys[j] < (key | order); j++) {
+            if (covers(mUndecided.get(j).getPoint(), mHalfSpan, point)) {
+              return WAIT;
+            }
+          }
+        }
+      }
+      return CENTER;
+    }
+
+    private Cluster<T> collect(final Center<T> center, final ClosestVisitor<T> closest) {
+      Point point = center.getPoint();
+      final List<QuadItem<T>> items = new ArrayList<>();
+      final int[] found = new int[1];
+      mIndex.search(point.x - mHalfSpan, point.x + mHalfSpan, point.y - mHalfSpan,
+          point.y + mHalfSpan, new PointQuadTree.Visitor<QuadItem<T>>() {
+            @Override
+            public boolean visit(QuadItem<T> item) {
+              found[0]++;
+              if (item == center.mItem || closestCenter(item, closest) == center) {
+                items.add(item);
+              }
+              return true;
+            }
+          });
+      if (found[0] == 1) {
+        // Only the current marker is in range.
+        return center.mItem;
+      }
+      StaticCluster<T> cluster =
+          new StaticCluster<T>(center.mItem.getPosition(), items.size(), mCenterMode, mReducers);
+      for (QuadItem<T> item : items) {
+        Point itemPoint = item.getPoint();
+        cluster.add(item.mClusterItem, itemPoint.x, itemPoint.y);
+      }
+      return cluster;
+    }
+
+    private Center<T> closestCenter(QuadItem<T> item, ClosestVisitor<T> closest) {
+      Point point = item.getPoint();
+      closest.begin(point, mHalfSpan);
+      double half = mHalfSpan + mSlack;
+      mCenters.search(point.x - half, point.x + half, point.y - half, point.y + half, closest);
+      return closest.mClosest;
+    }
+
+    /** @return the index of the first undecided key not below the given one. */
+    private int lowerBound(long key) {
+      int low = 0;
+      int high = mCount;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (mKeys[mid] < key) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private long cell(double coordinate) {
+      return Math.min((1 << CELL_BITS) - 1, Math.max(0, (long) Math.floor(coordinate / mCellSize)));
+    }
+
+    private static long cellKey(long column, long row) {
+      return (column << CELL_BITS) | row;
+    }
+
+    private static int chunks(int count) {
+      return count >= PARALLEL_THRESHOLD / 4
+          ? 4 * Math.max(1, ForkJoinPool.getCommonPoolParallelism())
+          : 1;
+    }
+
+    /**
+     * @return whether the span around {@code center} holds {@code point}, computed as the single
+     *     threaded pass's search does.
+     */
+    static boolean covers(Point center, double halfSpan, Point point) {
+      return center.x - halfSpan <= point.x && point.x <= center.x + halfSpan
+          && center.y - halfSpan <= point.y && point.y <= center.y + halfSpan;
+    }
+  }
+
+  /** A cluster center with its place in the single threaded order. */
+  private static final class Center<T extends ClusterItem> implements PointQuadTree.Item {
+    private final QuadItem<T> mItem;
+    private final int mOrder;
+
+    Center(QuadItem<T> item, int order) {
+      mItem = item;
+      mOrder = order;
+    }
+
+    @Override
+    public Point getPoint() {
+      return mItem.mPoint;
+    }
+  }
+
+  /** Stops at the first center whose span holds a point. */
+  private static final class CoveringVisitor<T extends ClusterItem>
+      implements PointQuadTree.Visitor<Center<T>> {
+    private Point mPoint;
+    private double mHalfSpan;
+
+    void begin(Point point, double halfSpan) {
+      mPoint = point;
+      mHalfSpan = halfSpan;
+    }
+
+    @Override
+    public boolean visit(Center<T> center) {
+      return !ParallelPass.covers(center.getPoint(), mHalfSpan, mPoint);
+    }
+  }
+
+  /** Finds the center closest to a point among those whose span holds it, later ones on ties. */
+  private static final class ClosestVisitor<T extends ClusterItem>
+      implements PointQuadTree.Visitor<Center<T>> {
+    private Point mPoint;
+    private double mHalfSpan;
+    private Center<T> mClosest;
+    private double mDistance;
+
+    void begin(Point point, double halfSpan) {
+      mPoint = point;
+      mHalfSpan = halfSpan;
+      mClosest = null;
+      mDistance = Double.MAX_VALUE;
+    }
+
+    @Override
+    public boolean visit(Center<T> center) {
+      if (!ParallelPass.covers(center.getPoint(), mHalfSpan, mPoint)) {
+        return true;
+      }
+      double distance = distanceSquared(mPoint, center.getPoint());
+      if (distance < mDistance
+          || (distance == mDistance && center.mOrder > mClosest.mOrder)) {
+        mClosest = center;
+        mDistance = distance;
+      }
+      return true;
+    }
   }
 
-  static class QuadItem<T extends ClusterItem> implements PointQuadTree.Item, Cluster<T> {
+  /**
+   * 索引中的条目
+   * An item as stored in the spatial index: the {@link ClusterItem} with its projected point. It
+   * is also the single item cluster returned for an item that has no neighbours.
+   */
+  public static class QuadItem<T extends ClusterItem>
+      implements PointQuadTree.MaskedItem, Cluster<T> {
     private final T mClusterItem;
     private final Point mPoint;
     private final LatLng mPosition;
+    private final long mCategories;
     private Set<T> singletonSet;
 
-    private QuadItem(T item) {
+    /** Dense id, unique among the items of the algorithm holding this one. */
+    private int mId = -1;
+
+    /** The order the item was added in, unique among the items of the algorithm. */
+    long mSequence;
+
+    /** Marker size cached by {@link FootprintBasedAlgorithm}, 0 until it is first needed. */
+    int mFootprint;
+
+    /** The algorithm holding this item, asked for its reducers. */
+    private final AbstractAlgorithm<T> mAlgorithm;
+
+    private QuadItem(T item, AbstractAlgorithm<T> algorithm) {
       mClusterItem = item;
+      mAlgorithm = algorithm;
       mPosition = item.getPosition();
       mPoint = PROJECTION.toPoint(mPosition);
+      mCategories = item instanceof CategorizedClusterItem
+          ? ((CategorizedClusterItem) item).getCategories()
+          : ALL_CATEGORIES;
       singletonSet = Collections.singleton(mClusterItem);
     }
 
@@ -267,6 +1216,14 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
       return mPoint;
     }
 
+    /**
+     * @return the categories of the item when it was added or last updated.
+     */
+    @Override
+    public long getMask() {
+      return mCategories;
+    }
+
     @Override
     public LatLng getPosition() {
       return mPosition;
@@ -282,6 +1239,15 @@ public class NonHierarchicalDistanceBasedAlgorithm<T extends ClusterItem>
       return 1;
     }
 
+    /**
+     * A single item maps its value when asked, or returns null if the algorithm doesn't have the
+     * reducer.
+     */
+    @Override
+    public <A> A getReducedValue(ClusterReducer<? super T, A> reducer) {
+      return mAlgorithm.hasReducer(reducer) ? reducer.map(mClusterItem) : null;
+    }
+
     @Override
     public int hashCode() {
       return mClusterItem.hashCode();
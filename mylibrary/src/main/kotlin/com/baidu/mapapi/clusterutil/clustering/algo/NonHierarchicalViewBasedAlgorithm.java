@@ -1,20 +1,32 @@
 package com.baidu.mapapi.clusterutil.clustering.algo;
 
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
 import com.baidu.mapapi.clusterutil.projection.Bounds;
 import com.baidu.mapapi.clusterutil.projection.Point;
 import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
-import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree;
+import com.baidu.mapapi.clusterutil.quadtree.PersistentPointQuadTree;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialIndex;
 import com.baidu.mapapi.map.MapStatus;
 import com.baidu.mapapi.model.LatLng;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This algorithm works the same way as {@link NonHierarchicalDistanceBasedAlgorithm} but works,
  * only in * visible area. It requires to be reclustered on camera movement because clustering is
  * done only for visible area.
  *
+ * <p>平移时复用上一次的聚合结果
+ * A pass keeps its clusters for the next one. If the camera only panned, clusters lying wholly
+ * inside both the old and the new area are kept, and only the newly exposed strips and a band
+ * along the old edge are clustered again. With {@link #setViewPadding(int)} the clustered area
+ * reaches beyond the screen, so markers are ready before they scroll in and pans shorter than the
+ * padding reuse the whole previous pass.
+ *
  * @author: aking @CreateDate: 2022/4/29 10:51 @UpdateUser: 更新者 @UpdateDate: 2022/4/29
  *     10:51 @UpdateRemark: 更新说明 @Version: 1.0
  */
@@ -28,11 +40,27 @@ public class NonHierarchicalViewBasedAlgorithm<T extends ClusterItem>
 
   private LatLng mMapCenter;
 
+  private volatile int mViewPadding;
+
+  /** The last pass, taken by the pass that reuses it. */
+  private final AtomicReference<LastPass<T>> mLastPass = new AtomicReference<>();
+
   /**
    * @param screenWidth map width in dp
    * @param screenHeight map height in dp
    */
   public NonHierarchicalViewBasedAlgorithm(int screenWidth, int screenHeight) {
+    this(screenWidth, screenHeight, new PersistentPointQuadTree<QuadItem<T>>(0, 1, 0, 1));
+  }
+
+  /**
+   * @param screenWidth map width in dp
+   * @param screenHeight map height in dp
+   * @param index an empty index for the items, covering the unit square
+   */
+  public NonHierarchicalViewBasedAlgorithm(
+      int screenWidth, int screenHeight, SpatialIndex<QuadItem<T>> index) {
+    super(index);
     mViewWidth = screenWidth;
     mViewHeight = screenHeight;
   }
@@ -42,9 +70,72 @@ public class NonHierarchicalViewBasedAlgorithm<T extends ClusterItem>
     mMapCenter = mapStatus.target;
   }
 
+  /** Results depend on where the map is, only a pass that reuses the last one as is matches it. */
+  @Override
+  Object getResultKey(double zoom) {
+    return null;
+  }
+
+  @Override
+  Set<? extends Cluster<T>> getClusters(
+      SpatialIndex<QuadItem<T>> quadTree, double zoom, int idCount, long version) {
+    final double halfSpan = getHalfSpan(zoom);
+    Bounds bounds = getVisibleBounds(zoom);
+    LastPass<T> last = mLastPass.getAndSet(null);
+    if (last != null && (last.mVersion != version || last.mHalfSpan != halfSpan
+        || isWrapped(last.mBounds) || isWrapped(bounds))) {
+      // Other items, another zoom or an area across the date line, cluster everything again.
+      recyclePassState(last.mState);
+      last = null;
+    }
+
+    if (last != null && contains(last.mBounds, getViewBounds(zoom, 0))) {
+      // 平移距离小于padding, 屏幕仍在上次聚合的范围内
+      // The screen is still inside the area of the last pass.
+      mLastPass.set(last);
+      return last.mResults;
+    }
+
+    Bounds overlap = last == null ? null : intersect(last.mBounds, bounds);
+    // Every item inside the overlap shrunk by twice the span belongs to a kept cluster.
+    Bounds inner = overlap == null ? null : inset(overlap, 2 * halfSpan);
+    Collection<QuadItem<T>> candidates;
+    PassState<T> state;
+    if (inner != null) {
+      state = obtainPassState(idCount);
+      state.keep(last.mState, keptClusters(last.mState, overlap, halfSpan));
+      recyclePassState(last.mState);
+      // 只聚合新露出的区域和旧边缘附近的条带
+      // Only the strips between the inner area and the new bounds are clustered again.
+      List<QuadItem<T>> strips = new ArrayList<>();
+      strips.addAll(
+          quadTree.search(new Bounds(bounds.minX, bounds.maxX, bounds.minY, inner.minY)));
+      strips.addAll(
+          quadTree.search(new Bounds(bounds.minX, bounds.maxX, inner.maxY, bounds.maxY)));
+      strips.addAll(
+          quadTree.search(new Bounds(bounds.minX, inner.minX, inner.minY, inner.maxY)));
+      strips.addAll(
+          quadTree.search(new Bounds(inner.maxX, bounds.maxX, inner.minY, inner.maxY)));
+      candidates = insertionOrder(strips);
+    } else {
+      if (last != null) {
+        recyclePassState(last.mState);
+      }
+      candidates = getClusteringItems(quadTree, zoom);
+      if (useParallelPass(candidates.size())) {
+        return clusterInParallel(quadTree, candidates, halfSpan);
+      }
+      state = obtainPassState(idCount);
+    }
+    ClusterSet<T> results = new ClusterSet<T>(
+        cluster(quadTree, candidates, halfSpan, state), this, version, null);
+    mLastPass.set(new LastPass<>(state, bounds, halfSpan, version, results));
+    return results;
+  }
+
   @Override
   public Collection<QuadItem<T>> getClusteringItems(
-      PointQuadTree<QuadItem<T>> quadTree, double discreteZoom) {
+      SpatialIndex<QuadItem<T>> quadTree, double discreteZoom) {
     Bounds visibleBounds = getVisibleBounds(discreteZoom);
     Collection<QuadItem<T>> items = new ArrayList<>();
 
@@ -63,7 +154,7 @@ public class NonHierarchicalViewBasedAlgorithm<T extends ClusterItem>
     }
     items.addAll(quadTree.search(visibleBounds));
 
-    return items;
+    return insertionOrder(items);
   }
 
   @Override
@@ -71,6 +162,17 @@ public class NonHierarchicalViewBasedAlgorithm<T extends ClusterItem>
     return true;
   }
 
+  /**
+   * 设置屏幕外额外聚合的宽度
+   * Clusters items up to padding dp beyond each edge of the screen. Markers are then in place
+   * before they scroll into view, and pans shorter than the padding reuse the last pass as is.
+   *
+   * @param padding padding in dp, 0 by default
+   */
+  public void setViewPadding(int padding) {
+    mViewPadding = padding;
+  }
+
   /**
    * Update view width and height in case map size was changed. You need to recluster all the
    * clusters, to update view state after view size changes.
@@ -83,18 +185,92 @@ public class NonHierarchicalViewBasedAlgorithm<T extends ClusterItem>
     mViewHeight = height;
   }
 
+  /**
+   * @return the clustered area, the screen and its padding.
+   */
   private Bounds getVisibleBounds(double zoom) {
+    return getViewBounds(zoom, mViewPadding);
+  }
+
+  private Bounds getViewBounds(double zoom, int padding) {
     if (mMapCenter == null) {
       return new Bounds(0, 0, 0, 0);
     }
 
     Point p = PROJECTION.toPoint(mMapCenter);
 
-    final double halfWidthSpan = mViewWidth / Math.pow(2, zoom) / 256 / 2;
-    final double halfHeightSpan = mViewHeight / Math.pow(2, zoom) / 256 / 2;
+    final double halfWidthSpan = (mViewWidth / 2.0 + padding) / Math.pow(2, zoom) / 256;
+    final double halfHeightSpan = (mViewHeight / 2.0 + padding) / Math.pow(2, zoom) / 256;
 
     return new Bounds(
         p.x - halfWidthSpan, p.x + halfWidthSpan,
         p.y - halfHeightSpan, p.y + halfHeightSpan);
   }
+
+  /**
+   * @return which clusters of a pass lie wholly inside bounds, their items being within halfSpan
+   *     of their centers.
+   */
+  private static <T extends ClusterItem> boolean[] keptClusters(
+      PassState<T> state, Bounds bounds, double halfSpan) {
+    boolean[] kept = new boolean[state.mClusters.size()];
+    for (int i = 0; i < kept.length; i++) {
+      Cluster<T> cluster = state.mClusters.get(i);
+      Point center = cluster instanceof QuadItem
+          ? ((QuadItem<T>) cluster).getPoint()
+          : PROJECTION.toPoint(((StaticCluster<T>) cluster).getFirstPosition());
+      kept[i] = center.x - halfSpan >= bounds.minX && center.x + halfSpan <= bounds.maxX
+          && center.y - halfSpan >= bounds.minY && center.y + halfSpan <= bounds.maxY;
+    }
+    return kept;
+  }
+
+  private static boolean isWrapped(Bounds bounds) {
+    return bounds.minX < 0 || bounds.maxX > 1;
+  }
+
+  private static boolean contains(Bounds outer, Bounds inner) {
+    return inner.minX >= outer.minX && inner.maxX <= outer.maxX
+        && inner.minY >= outer.minY && inner.maxY <= outer.maxY;
+  }
+
+  /**
+   * @return the intersection of a and b, or null if they don't overlap.
+   */
+  private static Bounds intersect(Bounds a, Bounds b) {
+    double minX = Math.max(a.minX, b.minX);
+    double maxX = Math.min(a.maxX, b.maxX);
+    double minY = Math.max(a.minY, b.minY);
+    double maxY = Math.min(a.maxY, b.maxY);
+    return minX < maxX && minY < maxY ? new Bounds(minX, maxX, minY, maxY) : null;
+  }
+
+  /**
+   * @return bounds shrunk by inset on each side, or null if nothing is left.
+   */
+  private static Bounds inset(Bounds bounds, double inset) {
+    if (bounds.maxX - bounds.minX <= 2 * inset || bounds.maxY - bounds.minY <= 2 * inset) {
+      return null;
+    }
+    return new Bounds(
+        bounds.minX + inset, bounds.maxX - inset, bounds.minY + inset, bounds.maxY - inset);
+  }
+
+  /** 上一次聚合的结果 The clusters of a pass and what they were computed for. */
+  private static class LastPass<T extends ClusterItem> {
+    private final PassState<T> mState;
+    private final Bounds mBounds;
+    private final double mHalfSpan;
+    private final long mVersion;
+    private final ClusterSet<T> mResults;
+
+    private LastPass(PassState<T> state, Bounds bounds, double halfSpan, long version,
+        ClusterSet<T> results) {
+      mState = state;
+      mBounds = bounds;
+      mHalfSpan = halfSpan;
+      mVersion = version;
+      mResults = results;
+    }
+  }
 }
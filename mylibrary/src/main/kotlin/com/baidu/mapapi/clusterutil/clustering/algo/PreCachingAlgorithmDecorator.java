@@ -7,7 +7,10 @@ package com.baidu.mapapi.clusterutil.clustering.algo;
 import androidx.collection.LruCache;
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -23,8 +26,16 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class PreCachingAlgorithmDecorator<T extends ClusterItem> extends AbstractAlgorithm<T> {
   private final Algorithm<T> mAlgorithm;
 
-  private final LruCache<Integer, Set<? extends Cluster<T>>> mCache = new LruCache<Integer, Set<? extends Cluster<T>>>(5);
+  /** Clusters by zoom level and categories, see {@link #cacheKey(int, long)}. */
+  private final LruCache<List<Long>, Set<? extends Cluster<T>>> mCache =
+      new LruCache<List<Long>, Set<? extends Cluster<T>>>(5);
   private final ReadWriteLock mCacheLock = new ReentrantReadWriteLock();
+
+  /**
+   * Bumped by every clear, so a pass that started before a write doesn't cache what it found
+   * after the write cleared the cache. Guarded by mCache.
+   */
+  private long mGeneration;
   private final Executor mExecutor = Executors.newCachedThreadPool();
 
   public PreCachingAlgorithmDecorator(Algorithm<T> algorithm) {
@@ -82,25 +93,68 @@ public class PreCachingAlgorithmDecorator<T extends ClusterItem> extends Abstrac
     return updateItem;
   }
 
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    boolean updateItems = this.mAlgorithm.updateItems(items);
+    if (updateItems) {
+      clearCache();
+    }
+    return updateItems;
+  }
+
+  /**
+   * The wrapped algorithm computes the values, this one only asks each cached cluster for them so
+   * values computed on demand are ready before the clusters are drawn.
+   */
+  @Override
+  public void addReducer(ClusterReducer<? super T, ?> reducer) {
+    super.addReducer(reducer);
+    mAlgorithm.addReducer(reducer);
+    clearCache();
+  }
+
+  @Override
+  public void removeReducer(ClusterReducer<? super T, ?> reducer) {
+    super.removeReducer(reducer);
+    mAlgorithm.removeReducer(reducer);
+    clearCache();
+  }
+
   private void clearCache() {
-    mCache.evictAll();
+    synchronized (mCache) {
+      mGeneration++;
+      mCache.evictAll();
+    }
   }
 
   @Override
   public Set<? extends Cluster<T>> getClusters(double zoom) {
+    return getClusters(zoom, ALL_CATEGORIES);
+  }
+
+  /**
+   * Clusters are cached by categories too, so switching back to categories shown before is
+   * served from the cache.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
 
     int discreteZoom = (int) zoom;
-    Set<? extends Cluster<T>> results = getClustersInternal(discreteZoom);
+    Set<? extends Cluster<T>> results = getClustersInternal(discreteZoom, categories);
 
-    if (mCache.get(discreteZoom + 1) == null) {
-      mExecutor.execute(new PrecacheRunnable(discreteZoom + 1));
+    if (mCache.get(cacheKey(discreteZoom + 1, categories)) == null) {
+      mExecutor.execute(new PrecacheRunnable(discreteZoom + 1, categories));
     }
-    if (mCache.get(discreteZoom - 1) == null) {
-      mExecutor.execute(new PrecacheRunnable(discreteZoom - 1));
+    if (mCache.get(cacheKey(discreteZoom - 1, categories)) == null) {
+      mExecutor.execute(new PrecacheRunnable(discreteZoom - 1, categories));
     }
     return results;
   }
 
+  private static List<Long> cacheKey(int discreteZoom, long categories) {
+    return Arrays.asList((long) discreteZoom, categories);
+  }
+
   @Override
   public Collection<T> getItems() {
     return mAlgorithm.getItems();
@@ -118,30 +172,80 @@ public class PreCachingAlgorithmDecorator<T extends ClusterItem> extends Abstrac
     return mAlgorithm.getMaxDistanceBetweenClusteredItems();
   }
 
-  private Set<? extends Cluster<T>> getClustersInternal(int discreteZoom) {
+  /** The cache is guarded on its own, so only the wrapped algorithm decides. */
+  @Override
+  public boolean isClusteringThreadSafe() {
+    return mAlgorithm.isClusteringThreadSafe();
+  }
+
+  /** The cached clusters are thrown away before the listener is told. */
+  @Override
+  public void setOnClustersChangedListener(final OnClustersChangedListener listener) {
+    if (listener == null) {
+      mAlgorithm.setOnClustersChangedListener(null);
+      return;
+    }
+    mAlgorithm.setOnClustersChangedListener(new OnClustersChangedListener() {
+      @Override
+      public void onClustersChanged() {
+        clearCache();
+        listener.onClustersChanged();
+      }
+    });
+  }
+
+  private Set<? extends Cluster<T>> getClustersInternal(int discreteZoom, long categories) {
+    List<Long> key = cacheKey(discreteZoom, categories);
 
     mCacheLock.readLock().lock();
-    Set<? extends Cluster<T>> results = mCache.get(discreteZoom);
+    Set<? extends Cluster<T>> results = mCache.get(key);
     mCacheLock.readLock().unlock();
 
     if (results == null) {
       mCacheLock.writeLock().lock();
-      results = mCache.get(discreteZoom);
+      results = mCache.get(key);
       if (results == null) {
-        results = mAlgorithm.getClusters(discreteZoom);
+        long generation;
+        synchronized (mCache) {
+          generation = mGeneration;
+        }
+        results = mAlgorithm.getClusters(discreteZoom, categories);
+        reduce(results);
 
-        mCache.put(discreteZoom, results);
+        synchronized (mCache) {
+          if (generation == mGeneration) {
+            mCache.put(key, results);
+          }
+        }
       }
       mCacheLock.writeLock().unlock();
     }
     return results;
   }
 
+  /**
+   * 统计值与聚合结果一起缓存
+   * Has every cluster hold the values of all reducers, so they are cached with it.
+   */
+  private void reduce(Set<? extends Cluster<T>> clusters) {
+    List<ClusterReducer<? super T, ?>> reducers = getReducers();
+    if (reducers.isEmpty()) {
+      return;
+    }
+    for (Cluster<T> cluster : clusters) {
+      for (ClusterReducer<? super T, ?> reducer : reducers) {
+        cluster.getReducedValue(reducer);
+      }
+    }
+  }
+
   private class PrecacheRunnable implements Runnable {
     private final int mZoom;
+    private final long mCategories;
 
-    public PrecacheRunnable(int zoom) {
+    public PrecacheRunnable(int zoom, long categories) {
       mZoom = zoom;
+      mCategories = categories;
     }
 
     @Override
@@ -152,7 +256,7 @@ public class PreCachingAlgorithmDecorator<T extends ClusterItem> extends Abstrac
       } catch (InterruptedException e) {
         // ignore. keep going.
       }
-      getClustersInternal(mZoom);
+      getClustersInternal(mZoom, mCategories);
     }
   }
 }
@@ -11,6 +11,7 @@ package com.baidu.mapapi.clusterutil.clustering.algo;
 
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
 import com.baidu.mapapi.map.MapStatus;
 import java.util.Collection;
 import java.util.Set;
@@ -50,6 +51,11 @@ public class ScreenBasedAlgorithmAdapter<T extends ClusterItem> extends Abstract
     return mAlgorithm.updateItem(item);
   }
 
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    return mAlgorithm.updateItems(items);
+  }
+
   @Override
   public boolean addItem(T item) {
     return mAlgorithm.addItem(item);
@@ -75,6 +81,11 @@ public class ScreenBasedAlgorithmAdapter<T extends ClusterItem> extends Abstract
     return mAlgorithm.getClusters(zoom);
   }
 
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    return mAlgorithm.getClusters(zoom, categories);
+  }
+
   @Override
   public Collection<T> getItems() {
     return mAlgorithm.getItems();
@@ -89,4 +100,24 @@ public class ScreenBasedAlgorithmAdapter<T extends ClusterItem> extends Abstract
   public int getMaxDistanceBetweenClusteredItems() {
     return mAlgorithm.getMaxDistanceBetweenClusteredItems();
   }
+
+  @Override
+  public boolean isClusteringThreadSafe() {
+    return mAlgorithm.isClusteringThreadSafe();
+  }
+
+  @Override
+  public void setOnClustersChangedListener(OnClustersChangedListener listener) {
+    mAlgorithm.setOnClustersChangedListener(listener);
+  }
+
+  @Override
+  public void addReducer(ClusterReducer<? super T, ?> reducer) {
+    mAlgorithm.addReducer(reducer);
+  }
+
+  @Override
+  public void removeReducer(ClusterReducer<? super T, ?> reducer) {
+    mAlgorithm.removeReducer(reducer);
+  }
 }
@@ -6,31 +6,288 @@ package com.baidu.mapapi.clusterutil.clustering.algo;
 
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.clusterutil.clustering.WeightedClusterItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
 import com.baidu.mapapi.model.LatLng;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 
-/** A cluster whose center is determined upon creation.
+/** A cluster whose center is determined upon creation, or follows its items.
  * @author aking*/
 public class StaticCluster<T extends ClusterItem> implements Cluster<T> {
-  private final LatLng mCenter;
-  private final Collection<T> mItems = new LinkedHashSet<T>();
+  private static final SphericalMercatorProjection PROJECTION = new SphericalMercatorProjection(1);
+
+  /**
+   * 聚合点位置的计算方式
+   * Where a cluster is placed.
+   */
+  public enum CenterMode {
+    /** At the position the cluster was created with, usually its first item. */
+    FIRST,
+    /** At the mean of its items, in projected space. */
+    CENTROID,
+    /**
+     * At the mean of its items weighted by {@link WeightedClusterItem#getWeight()}, in projected
+     * space. Other items weigh 1.
+     */
+    WEIGHTED
+  }
+
+  private final LatLng mFirst;
+  private final CenterMode mCenterMode;
+  private final Collection<T> mItems;
+
+  /** Running sums of the projected items, kept unless the center is FIRST. */
+  private double mSumX;
+  private double mSumY;
+  private double mSumWeight;
+
+  /**
+   * Set once an item left through {@link #remove(Object)}. It may have moved since it joined, so
+   * the sums are folded again from the items when next needed.
+   */
+  private boolean mStaleSums;
+
+  /** The center for the current sums, null until asked for. */
+  private LatLng mCenter;
+
+  private final List<ClusterReducer<? super T, ?>> mReducers;
+
+  /**
+   * The value of each reducer for the items so far, accumulated as they join. Null once an item
+   * has left, until the values are asked for and folded again.
+   */
+  private Object[] mReduced;
 
   public StaticCluster(LatLng center) {
+    this(center, 0, CenterMode.FIRST);
+  }
+
+  /**
+   * @param expectedSize number of items the cluster will hold, so its set is sized once.
+   */
+  public StaticCluster(LatLng center, int expectedSize) {
+    this(center, expectedSize, CenterMode.FIRST);
+  }
+
+  /**
+   * @param center the center while the cluster is empty, and always in {@link CenterMode#FIRST}
+   * @param expectedSize number of items the cluster will hold, so its set is sized once.
+   */
+  public StaticCluster(LatLng center, int expectedSize, CenterMode centerMode) {
+    this(center, expectedSize, centerMode,
+        Collections.<ClusterReducer<? super T, ?>>emptyList());
+  }
+
+  /**
+   * @param reducers the reducers to compute as items join, see {@link #getReducedValue}
+   */
+  StaticCluster(LatLng center, int expectedSize, CenterMode centerMode,
+      List<ClusterReducer<? super T, ?>> reducers) {
+    mFirst = center;
     mCenter = center;
+    mCenterMode = centerMode;
+    mItems = new LinkedHashSet<T>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+    mReducers = reducers;
+    mReduced = new Object[reducers.size()];
   }
 
   public boolean add(T t) {
-    return mItems.add(t);
+    if (mCenterMode == CenterMode.FIRST) {
+      if (!mItems.add(t)) {
+        return false;
+      }
+      accumulate(t);
+      return true;
+    }
+    Point point = PROJECTION.toPoint(t.getPosition());
+    return add(t, point.x, point.y);
+  }
+
+  /**
+   * Adds an item whose position the caller has projected already.
+   */
+  boolean add(T t, double x, double y) {
+    if (!mItems.add(t)) {
+      return false;
+    }
+    accumulate(t);
+    if (mCenterMode != CenterMode.FIRST) {
+      double weight = weight(t);
+      mSumX += x * weight;
+      mSumY += y * weight;
+      mSumWeight += weight;
+      mCenter = null;
+    }
+    return true;
+  }
+
+  /**
+   * Adds the items of another cluster with the same center mode, which holds none of these.
+   */
+  void addAll(StaticCluster<T> other) {
+    boolean empty = mItems.isEmpty();
+    mItems.addAll(other.mItems);
+    if (mReduced != null && other.mReduced != null && other.mReducers.equals(mReducers)
+        && !other.mItems.isEmpty()) {
+      for (int i = 0; i < mReduced.length; i++) {
+        mReduced[i] = empty ? other.mReduced[i] : combine(mReducers.get(i), mReduced[i],
+            other.mReduced[i]);
+      }
+    } else if (!other.mItems.isEmpty()) {
+      mReduced = null;
+    }
+    if (mCenterMode != CenterMode.FIRST) {
+      mSumX += other.mSumX;
+      mSumY += other.mSumY;
+      mSumWeight += other.mSumWeight;
+      mStaleSums |= other.mStaleSums;
+      mCenter = null;
+    }
+  }
+
+  /**
+   * @return the position the cluster was created with, whose span holds all its items.
+   */
+  LatLng getFirstPosition() {
+    return mFirst;
   }
 
   @Override
   public LatLng getPosition() {
-    return mCenter;
+    LatLng center = mCenter;
+    if (center == null) {
+      if (mStaleSums) {
+        foldSums();
+      }
+      center = mSumWeight > 0
+          ? PROJECTION.toLatLng(new Point(mSumX / mSumWeight, mSumY / mSumWeight))
+          : mFirst;
+      mCenter = center;
+    }
+    return center;
   }
 
+  /**
+   * Removes an item, which may have moved since it joined. Unless the center is FIRST, it is
+   * found again from the items left when next asked for.
+   */
   public boolean remove(T t) {
-    return mItems.remove(t);
+    if (!mItems.remove(t)) {
+      return false;
+    }
+    mReduced = null;
+    if (mCenterMode != CenterMode.FIRST) {
+      mStaleSums = true;
+      mCenter = null;
+    }
+    return true;
+  }
+
+  /**
+   * Removes an item at the position it joined with, projected by the caller.
+   */
+  boolean remove(T t, double x, double y) {
+    if (!mItems.remove(t)) {
+      return false;
+    }
+    // Values can't be taken apart, they are folded again when next asked for.
+    mReduced = null;
+    if (mCenterMode != CenterMode.FIRST) {
+      double weight = weight(t);
+      mSumX -= x * weight;
+      mSumY -= y * weight;
+      mSumWeight -= weight;
+      mCenter = null;
+      if (mItems.isEmpty()) {
+        // Don't carry rounding errors over to the next items.
+        mSumX = 0;
+        mSumY = 0;
+        mSumWeight = 0;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the value of reducer over the items, or null if the cluster wasn't created with it
+   *     or holds no items.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <A> A getReducedValue(ClusterReducer<? super T, A> reducer) {
+    int index = mReducers.indexOf(reducer);
+    if (index < 0 || mItems.isEmpty()) {
+      return null;
+    }
+    Object[] reduced = mReduced;
+    if (reduced == null) {
+      reduced = new Object[mReducers.size()];
+      boolean first = true;
+      for (T item : mItems) {
+        for (int i = 0; i < reduced.length; i++) {
+          reduced[i] = first ? map(mReducers.get(i), item)
+              : accumulate(mReducers.get(i), reduced[i], item);
+        }
+        first = false;
+      }
+      mReduced = reduced;
+    }
+    return (A) reduced[index];
+  }
+
+  /** Adds an item that just joined to the values, unless they must be folded again anyway. */
+  private void accumulate(T t) {
+    Object[] reduced = mReduced;
+    if (reduced == null) {
+      return;
+    }
+    boolean first = mItems.size() == 1;
+    for (int i = 0; i < reduced.length; i++) {
+      reduced[i] = first ? map(mReducers.get(i), t) : accumulate(mReducers.get(i), reduced[i], t);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends ClusterItem> Object map(ClusterReducer<? super T, ?> reducer, T item) {
+    return ((ClusterReducer<? super T, Object>) reducer).map(item);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends ClusterItem> Object accumulate(
+      ClusterReducer<? super T, ?> reducer, Object value, T item) {
+    return ((ClusterReducer<? super T, Object>) reducer).accumulate(value, item);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends ClusterItem> Object combine(
+      ClusterReducer<? super T, ?> reducer, Object a, Object b) {
+    return ((ClusterReducer<? super T, Object>) reducer).combine(a, b);
+  }
+
+  /** Sums the items at their current positions. */
+  private void foldSums() {
+    mSumX = 0;
+    mSumY = 0;
+    mSumWeight = 0;
+    for (T t : mItems) {
+      Point point = PROJECTION.toPoint(t.getPosition());
+      double weight = weight(t);
+      mSumX += point.x * weight;
+      mSumY += point.y * weight;
+      mSumWeight += weight;
+    }
+    mStaleSums = false;
+  }
+
+  private double weight(T t) {
+    return mCenterMode == CenterMode.WEIGHTED && t instanceof WeightedClusterItem
+        ? ((WeightedClusterItem) t).getWeight()
+        : 1;
   }
 
   @Override
@@ -45,12 +302,12 @@ public class StaticCluster<T extends ClusterItem> implements Cluster<T> {
 
   @Override
   public String toString() {
-    return "StaticCluster{" + "mCenter=" + mCenter + ", mItems.size=" + mItems.size() + '}';
+    return "StaticCluster{" + "mCenter=" + getPosition() + ", mItems.size=" + mItems.size() + '}';
   }
 
   @Override
   public int hashCode() {
-    return mCenter.hashCode() + mItems.hashCode();
+    return getPosition().hashCode() + mItems.hashCode();
   }
 
   @Override
@@ -59,7 +316,7 @@ public class StaticCluster<T extends ClusterItem> implements Cluster<T> {
       return false;
     }
 
-    return ((StaticCluster<?>) other).mCenter.equals(mCenter)
+    return ((StaticCluster<?>) other).getPosition().equals(getPosition())
         && ((StaticCluster<?>) other).mItems.equals(mItems);
   }
 }
@@ -0,0 +1,322 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import androidx.collection.LruCache;
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialIndex;
+import com.baidu.mapapi.map.MapStatus;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按瓦片聚合并缓存
+ * Clusters the visible area tile by tile. The unit square of the {@link
+ * SphericalMercatorProjection} is cut into 2^zoom x 2^zoom tiles of 256 dp, as slippy map tiles
+ * are, and each tile is clustered like {@link NonHierarchicalDistanceBasedAlgorithm} does, from
+ * its own items only. Tiles are kept in an LRU cache, so panning only clusters the tiles never
+ * seen before, and a viewport is assembled from the tiles it overlaps.
+ *
+ * <p>Clusters of neighbouring tiles whose centers are closer than the clustering span are merged
+ * when the tiles are assembled, so clusters don't split along tile edges. A merged cluster is
+ * centered on its largest part and only takes in parts within the span of that center, so
+ * merges don't chain along a dense street. Merging stops at the date line.
+ *
+ * <p>Only the visible tiles are merged, so merges depend on the viewport: a cluster on the edge
+ * of the screen may show as two parts until the neighbouring tile scrolls in, and a larger part
+ * coming into view may take over a cluster that had merged with another one.
+ *
+ * <p>Any change to the items or to the clustering distance empties the cache.
+ */
+public class TileBasedAlgorithm<T extends ClusterItem>
+    extends NonHierarchicalDistanceBasedAlgorithm<T> implements ScreenBasedAlgorithm<T> {
+
+  private static final SphericalMercatorProjection PROJECTION = new SphericalMercatorProjection(1);
+
+  /** Enough tiles for a few screens at a few zoom levels. */
+  private static final int DEFAULT_CACHE_SIZE = 512;
+
+  private int mViewWidth;
+  private int mViewHeight;
+
+  private LatLng mMapCenter;
+
+  /** Tiles by key, see {@link #tileKey(int, int, int)}. Guarded by itself with the fields below. */
+  private final LruCache<Long, Tile<T>> mCache;
+
+  /** What the cached tiles were clustered for. */
+  private long mCacheVersion = -1;
+
+  private double mCacheHalfSpan;
+
+  /**
+   * @param screenWidth map width in dp
+   * @param screenHeight map height in dp
+   */
+  public TileBasedAlgorithm(int screenWidth, int screenHeight) {
+    this(screenWidth, screenHeight, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * @param screenWidth map width in dp
+   * @param screenHeight map height in dp
+   * @param cacheSize the number of tiles kept
+   */
+  public TileBasedAlgorithm(int screenWidth, int screenHeight, int cacheSize) {
+    mViewWidth = screenWidth;
+    mViewHeight = screenHeight;
+    mCache = new LruCache<>(cacheSize);
+  }
+
+  @Override
+  public void onMapStatusChange(MapStatus mapStatus) {
+    mMapCenter = mapStatus.target;
+  }
+
+  @Override
+  public boolean shouldReclusterOnMapMovement() {
+    return true;
+  }
+
+  /**
+   * Update view width and height in case map size was changed. Cached tiles stay valid.
+   *
+   * @param width map width in dp
+   * @param height map height in dp
+   */
+  public void updateViewSize(int width, int height) {
+    mViewWidth = width;
+    mViewHeight = height;
+  }
+
+  /** Results depend on where the map is, each one is new. */
+  @Override
+  Object getResultKey(double zoom) {
+    return null;
+  }
+
+  @Override
+  Set<? extends Cluster<T>> getClusters(
+      SpatialIndex<QuadItem<T>> quadTree, double zoom, int idCount, long version) {
+    final int discreteZoom = (int) zoom;
+    final double halfSpan = getHalfSpan(zoom);
+    final int tiles = 1 << discreteZoom;
+    LatLng mapCenter = mMapCenter;
+    if (mapCenter == null) {
+      return new HashSet<>();
+    }
+    Point center = PROJECTION.toPoint(mapCenter);
+    final double halfWidthSpan = mViewWidth / Math.pow(2, zoom) / 256 / 2;
+    final double halfHeightSpan = mViewHeight / Math.pow(2, zoom) / 256 / 2;
+    int minTileX = (int) Math.floor((center.x - halfWidthSpan) * tiles);
+    int maxTileX = (int) Math.floor((center.x + halfWidthSpan) * tiles);
+    int minTileY = Math.max(0, (int) Math.floor((center.y - halfHeightSpan) * tiles));
+    int maxTileY = Math.min(tiles - 1, (int) Math.floor((center.y + halfHeightSpan) * tiles));
+    // Around the date line the same tile could be reached twice.
+    maxTileX = Math.min(maxTileX, minTileX + tiles - 1);
+
+    List<Tile<T>> visible = new ArrayList<>();
+    synchronized (mCache) {
+      if (mCacheVersion != version || mCacheHalfSpan != halfSpan) {
+        mCache.evictAll();
+        mCacheVersion = version;
+        mCacheHalfSpan = halfSpan;
+      }
+      for (int x = minTileX; x <= maxTileX; x++) {
+        int tileX = ((x % tiles) + tiles) % tiles;
+        for (int y = minTileY; y <= maxTileY; y++) {
+          Long key = tileKey(discreteZoom, tileX, y);
+          Tile<T> tile = mCache.get(key);
+          if (tile == null) {
+            // 只聚合没见过的瓦片
+            // Only tiles never seen before are clustered.
+            tile = clusterTile(quadTree, discreteZoom, tileX, y, halfSpan, idCount);
+            mCache.put(key, tile);
+          }
+          visible.add(tile);
+        }
+      }
+    }
+    return mergeBorders(visible, halfSpan, getCenterMode(), getReducers());
+  }
+
+  private Tile<T> clusterTile(SpatialIndex<QuadItem<T>> quadTree, int zoom, int tileX, int tileY,
+      double halfSpan, int idCount) {
+    int tiles = 1 << zoom;
+    double minX = (double) tileX / tiles;
+    double minY = (double) tileY / tiles;
+    // Tiles own their left and top edges, the last ones the edges of the world too.
+    double maxX = tileX == tiles - 1 ? 1 : Math.nextDown((double) (tileX + 1) / tiles);
+    double maxY = tileY == tiles - 1 ? 1 : Math.nextDown((double) (tileY + 1) / tiles);
+    Bounds bounds = new Bounds(minX, maxX, minY, maxY);
+
+    List<QuadItem<T>> candidates = insertionOrder(quadTree.search(bounds));
+    PassState<T> state = obtainPassState(idCount);
+    try {
+      fill(quadTree, candidates, halfSpan, state, bounds);
+      return new Tile<>(bounds, state.mClusters, state.mCenters);
+    } finally {
+      recyclePassState(state);
+    }
+  }
+
+  /**
+   * 合并瓦片边缘的cluster
+   * Merges the clusters of different tiles whose centers are within halfSpan of each other. Only
+   * clusters that close to the edge of their tile can have such a neighbour. Every part of a
+   * merged cluster is within halfSpan of the center of its largest part.
+   */
+  private Set<Cluster<T>> mergeBorders(List<Tile<T>> tiles, double halfSpan,
+      StaticCluster.CenterMode centerMode, List<ClusterReducer<? super T, ?>> reducers) {
+    Set<Cluster<T>> results = new HashSet<>();
+    // Clusters near a tile edge, in a grid of halfSpan cells.
+    final List<Cluster<T>> border = new ArrayList<>();
+    final List<Long> borderKeys = new ArrayList<>();
+    List<Point> borderPoints = new ArrayList<>();
+    List<Tile<T>> borderTiles = new ArrayList<>();
+    Map<Long, List<Integer>> grid = new HashMap<>();
+    for (Tile<T> tile : tiles) {
+      for (int i = 0; i < tile.mClusters.size(); i++) {
+        Cluster<T> cluster = tile.mClusters.get(i);
+        double x = tile.mX[i];
+        double y = tile.mY[i];
+        Bounds bounds = tile.mBounds;
+        if (x - bounds.minX > halfSpan && bounds.maxX - x > halfSpan
+            && y - bounds.minY > halfSpan && bounds.maxY - y > halfSpan) {
+          results.add(cluster);
+          continue;
+        }
+        long cell = cellKey((long) Math.floor(x / halfSpan), (long) Math.floor(y / halfSpan));
+        List<Integer> members = grid.get(cell);
+        if (members == null) {
+          members = new ArrayList<>(2);
+          grid.put(cell, members);
+        }
+        members.add(border.size());
+        border.add(cluster);
+        borderKeys.add(tile.mKeys[i]);
+        borderPoints.add(new Point(x, y));
+        borderTiles.add(tile);
+      }
+    }
+
+    // 从最大的cluster开始, 只合并在其范围内的cluster
+    // Largest first, each cluster takes in the clusters of other tiles within halfSpan of its
+    // own center. Merging with the neighbours of neighbours would chain clusters across the map.
+    // Clusters of equal size go in the scattered order of their centers, as candidates do.
+    Integer[] order = new Integer[border.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        int bySize = Integer.compare(border.get(b).getSize(), border.get(a).getSize());
+        return bySize != 0 ? bySize : Long.compare(borderKeys.get(a), borderKeys.get(b));
+      }
+    });
+    boolean[] taken = new boolean[border.size()];
+    List<Cluster<T>> parts = new ArrayList<>();
+    for (int i : order) {
+      if (taken[i]) {
+        continue;
+      }
+      taken[i] = true;
+      Cluster<T> largest = border.get(i);
+      parts.clear();
+      parts.add(largest);
+      Point point = borderPoints.get(i);
+      long cellX = (long) Math.floor(point.x / halfSpan);
+      long cellY = (long) Math.floor(point.y / halfSpan);
+      for (long dx = -1; dx <= 1; dx++) {
+        for (long dy = -1; dy <= 1; dy++) {
+          List<Integer> members = grid.get(cellKey(cellX + dx, cellY + dy));
+          if (members == null) {
+            continue;
+          }
+          for (int j : members) {
+            Point other = borderPoints.get(j);
+            if (!taken[j] && borderTiles.get(j) != borderTiles.get(i)
+                && Math.abs(other.x - point.x) <= halfSpan
+                && Math.abs(other.y - point.y) <= halfSpan) {
+              taken[j] = true;
+              parts.add(border.get(j));
+            }
+          }
+        }
+      }
+      if (parts.size() == 1) {
+        results.add(largest);
+        continue;
+      }
+      int size = 0;
+      for (Cluster<T> part : parts) {
+        size += part.getSize();
+      }
+      StaticCluster<T> merged =
+          new StaticCluster<>(largest.getPosition(), size, centerMode, reducers);
+      for (Cluster<T> part : parts) {
+        if (part instanceof StaticCluster) {
+          merged.addAll((StaticCluster<T>) part);
+        } else {
+          // A single item.
+          QuadItem<T> item = (QuadItem<T>) part;
+          merged.add(item.getItems().iterator().next(), item.getPoint().x, item.getPoint().y);
+        }
+      }
+      results.add(merged);
+    }
+    return results;
+  }
+
+  private static long cellKey(long x, long y) {
+    return (x << 32) ^ (y & 0xffffffffL);
+  }
+
+  /**
+   * @return zoom, x and y of a tile packed into a long, 29 bits for each coordinate.
+   */
+  static long tileKey(int zoom, int x, int y) {
+    return ((long) zoom << 58) | ((long) x << 29) | y;
+  }
+
+  /**
+   * 一个瓦片的聚合结果
+   * The clusters of one tile in the order they were found, with their projected centers and the
+   * scattered sequence numbers of the candidates they were found around.
+   */
+  private static class Tile<T extends ClusterItem> {
+    private final Bounds mBounds;
+    private final List<Cluster<T>> mClusters;
+    private final double[] mX;
+    private final double[] mY;
+    private final long[] mKeys;
+
+    private Tile(Bounds bounds, List<Cluster<T>> clusters, List<QuadItem<T>> centers) {
+      mBounds = bounds;
+      mClusters = new ArrayList<>(clusters);
+      mX = new double[mClusters.size()];
+      mY = new double[mClusters.size()];
+      mKeys = new long[mClusters.size()];
+      for (int i = 0; i < mX.length; i++) {
+        Cluster<T> cluster = mClusters.get(i);
+        mKeys[i] = scatter(centers.get(i).mSequence);
+        Point point = cluster instanceof QuadItem
+            ? ((QuadItem<T>) cluster).getPoint()
+            : PROJECTION.toPoint(cluster.getPosition());
+        mX[i] = point.x;
+        mY[i] = point.y;
+      }
+    }
+  }
+}
@@ -0,0 +1,289 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.TimedClusterItem;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按时间窗口聚合
+ * Clusters the items that happened within the last window of time, like {@link
+ * NonHierarchicalDistanceBasedAlgorithm} does. Older items expire on their own: clustering
+ * always shows the items stamped no earlier than now minus the window, with no removal calls
+ * needed. Items stamped ahead of the clock are shown too.
+ *
+ * <p>Items are filed in a timing wheel, a ring of slots one tick long each. When the window
+ * moves on, the items of the slots it left are removed in one batch, and the slot holding the
+ * edge of the window is trimmed to it. Nothing is done while the window passes no item, so
+ * clustering again with nothing expired returns the same {@link ClusterSet}. Expiry happens
+ * when items are added or clustered; an idle algorithm keeps its items until then.
+ *
+ * <p>The algorithm decides by itself when its clusters change, so it should not be wrapped in
+ * a {@link PreCachingAlgorithmDecorator}, whose cache would not see items expire.
+ */
+public class TimeWindowBasedAlgorithm<T extends TimedClusterItem>
+    extends NonHierarchicalDistanceBasedAlgorithm<T> {
+
+  /** Ticks per window unless given. */
+  private static final int DEFAULT_TICKS = 64;
+
+  private final long mWindow;
+
+  private final long mTick;
+
+  /**
+   * The wheel, slot (tick mod slot count) holding the items of that tick. Removed and updated
+   * items leave stale entries behind, dropped when their slot is next trimmed. Guarded by
+   * itself, like everything below; the lock is taken before the quad tree's.
+   */
+  private final List<List<Entry<T>>> mSlots;
+
+  /** The timestamp each item was filed under. */
+  private final Map<T, Long> mTimestamps = new HashMap<>();
+
+  /** The tick holding the edge of the window when it last moved; earlier ones are empty. */
+  private long mEdgeTick = Long.MIN_VALUE;
+
+  /** No item is stamped earlier than this, so the window may move up to here for free. */
+  private long mNextExpiry = Long.MIN_VALUE;
+
+  /**
+   * @param window how long items are shown, in milliseconds
+   */
+  public TimeWindowBasedAlgorithm(long window) {
+    this(window, Math.max(1, window / DEFAULT_TICKS));
+  }
+
+  /**
+   * @param window how long items are shown, in milliseconds
+   * @param tick the time each slot of the wheel covers, in milliseconds. Shorter ticks trim
+   *     fewer items at the edge of the window, longer ones keep a smaller wheel.
+   */
+  public TimeWindowBasedAlgorithm(long window, long tick) {
+    if (window <= 0 || tick <= 0) {
+      throw new IllegalArgumentException("Window and tick must be positive");
+    }
+    mWindow = window;
+    mTick = tick;
+    int slotCount = (int) Math.min(Integer.MAX_VALUE, window / tick + 2);
+    mSlots = new ArrayList<>(slotCount);
+    for (int i = 0; i < slotCount; i++) {
+      mSlots.add(new ArrayList<Entry<T>>());
+    }
+  }
+
+  public long getWindow() {
+    return mWindow;
+  }
+
+  /**
+   * @return the current time in milliseconds, the end of the window.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @return false if the item was already there or is older than the window.
+   */
+  @Override
+  public boolean addItem(T item) {
+    synchronized (mSlots) {
+      long now = currentTimeMillis();
+      advance(now);
+      long timestamp = item.getTimestamp();
+      if (timestamp < now - mWindow || !super.addItem(item)) {
+        return false;
+      }
+      file(item, timestamp);
+      return true;
+    }
+  }
+
+  /**
+   * Items older than the window are left out.
+   */
+  @Override
+  public boolean addItems(Collection<T> items) {
+    synchronized (mSlots) {
+      long now = currentTimeMillis();
+      advance(now);
+      List<T> recent = new ArrayList<>(items.size());
+      for (T item : items) {
+        if (item.getTimestamp() >= now - mWindow) {
+          recent.add(item);
+        }
+      }
+      // Small batches come back through addItem() and are filed there.
+      boolean added = super.addItems(recent);
+      for (T item : recent) {
+        if (!mTimestamps.containsKey(item)) {
+          file(item, item.getTimestamp());
+        }
+      }
+      return added;
+    }
+  }
+
+  @Override
+  public boolean removeItem(T item) {
+    synchronized (mSlots) {
+      if (!super.removeItem(item)) {
+        return false;
+      }
+      mTimestamps.remove(item);
+      return true;
+    }
+  }
+
+  @Override
+  public boolean removeItems(Collection<T> items) {
+    synchronized (mSlots) {
+      boolean removed = super.removeItems(items);
+      for (T item : items) {
+        mTimestamps.remove(item);
+      }
+      return removed;
+    }
+  }
+
+  /**
+   * Files the item under its new timestamp; an item updated to before the window is removed.
+   */
+  @Override
+  public boolean updateItem(T item) {
+    return updateItems(Collections.singletonList(item));
+  }
+
+  @Override
+  public boolean updateItems(Collection<T> items) {
+    synchronized (mSlots) {
+      long now = currentTimeMillis();
+      advance(now);
+      List<T> moved = new ArrayList<>(items.size());
+      List<T> expired = new ArrayList<>();
+      for (T item : items) {
+        Long filed = mTimestamps.get(item);
+        if (filed == null) {
+          continue;
+        }
+        long timestamp = item.getTimestamp();
+        if (timestamp < now - mWindow) {
+          mTimestamps.remove(item);
+          expired.add(item);
+          continue;
+        }
+        if (timestamp != filed) {
+          // The entry under the old timestamp goes stale.
+          file(item, timestamp);
+        }
+        moved.add(item);
+      }
+      boolean removed = !expired.isEmpty() && super.removeItems(expired);
+      return super.updateItems(moved) || removed;
+    }
+  }
+
+  @Override
+  public void clearItems() {
+    synchronized (mSlots) {
+      super.clearItems();
+      mTimestamps.clear();
+      for (List<Entry<T>> slot : mSlots) {
+        slot.clear();
+      }
+      mNextExpiry = Long.MIN_VALUE;
+    }
+  }
+
+  /**
+   * Expires the items older than the window, then clusters the rest.
+   */
+  @Override
+  public Set<? extends Cluster<T>> getClusters(double zoom, long categories) {
+    synchronized (mSlots) {
+      advance(currentTimeMillis());
+    }
+    return super.getClusters(zoom, categories);
+  }
+
+  private void file(T item, long timestamp) {
+    mTimestamps.put(item, timestamp);
+    mSlots.get(slot(Math.floorDiv(timestamp, mTick))).add(new Entry<>(item, timestamp));
+    mNextExpiry = Math.min(mNextExpiry, timestamp);
+  }
+
+  private int slot(long tick) {
+    return (int) Math.floorMod(tick, (long) mSlots.size());
+  }
+
+  /**
+   * Moves the edge of the window to now minus the window, removing the items it passes in one
+   * batch.
+   */
+  private void advance(long now) {
+    long edge = now - mWindow;
+    if (edge <= mNextExpiry) {
+      return;
+    }
+    long edgeTick = Math.floorDiv(edge, mTick);
+    // Slots of the ticks the edge moved over, each at most once. The edge tick itself is trimmed
+    // each time, it was only partly expired.
+    long firstTick = mEdgeTick == Long.MIN_VALUE
+        ? edgeTick - mSlots.size() + 1
+        : Math.max(mEdgeTick, edgeTick - mSlots.size() + 1);
+    List<T> expired = new ArrayList<>();
+    long nextExpiry = edgeTick < Long.MAX_VALUE / mTick ? (edgeTick + 1) * mTick : Long.MAX_VALUE;
+    for (long tick = firstTick; tick <= edgeTick; tick++) {
+      nextExpiry = Math.min(nextExpiry, trim(mSlots.get(slot(tick)), edge, expired));
+    }
+    mEdgeTick = edgeTick;
+    mNextExpiry = nextExpiry;
+    if (!expired.isEmpty()) {
+      super.removeItems(expired);
+    }
+  }
+
+  /**
+   * Drops the items of a slot stamped before the edge into expired, along with stale entries.
+   *
+   * @return the earliest timestamp left in the slot, Long.MAX_VALUE if none.
+   */
+  private long trim(List<Entry<T>> slot, long edge, List<T> expired) {
+    long earliest = Long.MAX_VALUE;
+    int kept = 0;
+    for (int i = 0; i < slot.size(); i++) {
+      Entry<T> entry = slot.get(i);
+      Long filed = mTimestamps.get(entry.mItem);
+      if (filed == null || filed != entry.mTimestamp) {
+        // Removed, or filed again under another timestamp.
+        continue;
+      }
+      if (entry.mTimestamp < edge) {
+        mTimestamps.remove(entry.mItem);
+        expired.add(entry.mItem);
+        continue;
+      }
+      earliest = Math.min(earliest, entry.mTimestamp);
+      slot.set(kept++, entry);
+    }
+    slot.subList(kept, slot.size()).clear();
+    return earliest;
+  }
+
+  /** 时间轮中的一项 An item with the timestamp it was filed under. */
+  private static final class Entry<T> {
+    private final T mItem;
+    private final long mTimestamp;
+
+    Entry(T item, long timestamp) {
+      mItem = item;
+      mTimestamp = timestamp;
+    }
+  }
+}
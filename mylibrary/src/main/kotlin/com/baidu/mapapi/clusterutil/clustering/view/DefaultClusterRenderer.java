@@ -30,6 +30,7 @@ import androidx.annotation.Nullable;
 import com.baidu.mapapi.clusterutil.clustering.Cluster;
 import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
 import com.baidu.mapapi.clusterutil.clustering.ClusterManager;
+import com.baidu.mapapi.clusterutil.clustering.algo.ClusterSet;
 import com.baidu.mapapi.clusterutil.collections.MarkerManager;
 import com.baidu.mapapi.clusterutil.projection.Point;
 import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
@@ -367,6 +368,9 @@ public class DefaultClusterRenderer<T extends ClusterItem> implements ClusterRen
    * Note that always returning true from this method could potentially have negative performance
    * implications as clusters will be re-rendered on each pass even if they don't change.
    *
+   * When both sets are {@link ClusterSet}s from the same unchanged clustering, the check takes
+   * O(1) instead of comparing every cluster.
+   *
    * @param oldClusters The clusters from the previous iteration of the clustering algorithm
    * @param newClusters The clusters from the current iteration of the clustering algorithm
    * @return true if the new clusters should be rendered on the map, and false if they should not. This
@@ -538,6 +542,10 @@ public class DefaultClusterRenderer<T extends ClusterItem> implements ClusterRen
     mItemClickListener = listener;
   }
   private Set<? extends Cluster<T>> immutableOf(Set<? extends Cluster<T>> clusters) {
+    if (clusters instanceof ClusterSet) {
+      // Already unmodifiable, and kept as is so equals can compare stamps.
+      return clusters;
+    }
     return clusters != null ? Collections.unmodifiableSet(clusters) : Collections.emptySet();
   }
 
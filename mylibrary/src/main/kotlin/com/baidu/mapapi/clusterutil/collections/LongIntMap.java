@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.collections;
+
+import java.util.Arrays;
+
+/**
+ * long 到 int 的开放寻址哈希表
+ * A map from long keys to int values in two primitive arrays with linear probing, so neither
+ * keys nor values are boxed and a lookup touches one or two cache lines. {@link #NO_KEY} is
+ * reserved to mark free slots and cannot be used as a key.
+ *
+ * <p>Entries can be walked by slot: {@code for (int slot = 0; slot < map.capacity(); slot++)},
+ * skipping slots whose {@link #keyAt(int)} is {@link #NO_KEY}. This class is not thread safe.
+ */
+public final class LongIntMap {
+
+  /** The key of a free slot. */
+  public static final long NO_KEY = Long.MIN_VALUE;
+
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] mKeys;
+
+  private int[] mValues;
+
+  private int mSize;
+
+  /** Grow once the table is this full. */
+  private int mThreshold;
+
+  public LongIntMap() {
+    this(MIN_CAPACITY / 2);
+  }
+
+  /**
+   * @param expectedSize number of entries the map should hold without growing
+   */
+  public LongIntMap(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  /**
+   * @return the value of the key, or {@code missing} if it has none.
+   */
+  public int get(long key, int missing) {
+    int mask = mKeys.length - 1;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      long existing = mKeys[slot];
+      if (existing == key) {
+        return mValues[slot];
+      }
+      if (existing == NO_KEY) {
+        return missing;
+      }
+    }
+  }
+
+  public boolean containsKey(long key) {
+    int mask = mKeys.length - 1;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      long existing = mKeys[slot];
+      if (existing == key) {
+        return true;
+      }
+      if (existing == NO_KEY) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Sets the value of a key, replacing any previous one.
+   */
+  public void put(long key, int value) {
+    if (key == NO_KEY) {
+      throw new IllegalArgumentException("NO_KEY cannot be used as a key");
+    }
+    int mask = mKeys.length - 1;
+    int slot = hash(key) & mask;
+    while (mKeys[slot] != NO_KEY) {
+      if (mKeys[slot] == key) {
+        mValues[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    mKeys[slot] = key;
+    mValues[slot] = value;
+    if (++mSize > mThreshold) {
+      rehash(mKeys.length * 2);
+    }
+  }
+
+  /**
+   * Adds {@code delta} to the value of a key, which starts from 0 if it has none.
+   *
+   * @return the new value.
+   */
+  public int add(long key, int delta) {
+    if (key == NO_KEY) {
+      throw new IllegalArgumentException("NO_KEY cannot be used as a key");
+    }
+    int mask = mKeys.length - 1;
+    int slot = hash(key) & mask;
+    while (mKeys[slot] != NO_KEY) {
+      if (mKeys[slot] == key) {
+        return mValues[slot] += delta;
+      }
+      slot = (slot + 1) & mask;
+    }
+    mKeys[slot] = key;
+    mValues[slot] = delta;
+    if (++mSize > mThreshold) {
+      rehash(mKeys.length * 2);
+    }
+    return delta;
+  }
+
+  /**
+   * @return whether the key was in the map.
+   */
+  public boolean remove(long key) {
+    int mask = mKeys.length - 1;
+    int slot = hash(key) & mask;
+    while (mKeys[slot] != key) {
+      if (mKeys[slot] == NO_KEY) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    // Shift back the entries after it that would no longer be reachable from their home slot.
+    int free = slot;
+    for (int next = (free + 1) & mask; mKeys[next] != NO_KEY; next = (next + 1) & mask) {
+      int home = hash(mKeys[next]) & mask;
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        mKeys[free] = mKeys[next];
+        mValues[free] = mValues[next];
+        free = next;
+      }
+    }
+    mKeys[free] = NO_KEY;
+    mSize--;
+    return true;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  public void clear() {
+    Arrays.fill(mKeys, NO_KEY);
+    mSize = 0;
+  }
+
+  /**
+   * @return the number of slots, to walk the entries.
+   */
+  public int capacity() {
+    return mKeys.length;
+  }
+
+  /**
+   * @return the key in a slot, or {@link #NO_KEY} if the slot is free.
+   */
+  public long keyAt(int slot) {
+    return mKeys[slot];
+  }
+
+  public int valueAt(int slot) {
+    return mValues[slot];
+  }
+
+  private void rehash(int capacity) {
+    long[] keys = mKeys;
+    int[] values = mValues;
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int i = 0; i < keys.length; i++) {
+      long key = keys[i];
+      if (key != NO_KEY) {
+        int slot = hash(key) & mask;
+        while (mKeys[slot] != NO_KEY) {
+          slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = values[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    mKeys = new long[capacity];
+    Arrays.fill(mKeys, NO_KEY);
+    mValues = new int[capacity];
+    mThreshold = capacity / 2;
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity / 2 < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Spreads the bits of the key, cell keys differ mostly in their low bits.
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+}
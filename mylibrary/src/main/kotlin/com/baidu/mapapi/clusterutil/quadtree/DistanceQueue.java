@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import java.util.Arrays;
+
+/**
+ * 按距离排序的优先队列
+ * A binary min-heap of quads and items keyed by squared distance, used by the best-first nearest
+ * neighbour searches. Entries are kept in parallel primitive arrays, so pushing never allocates
+ * once the arrays have grown. The bounds are only needed by trees whose quads do not carry their
+ * own {@code Bounds}.
+ */
+final class DistanceQueue {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private double[] mKeys = new double[INITIAL_CAPACITY];
+  private Object[] mValues = new Object[INITIAL_CAPACITY];
+  private int[] mTags = new int[INITIAL_CAPACITY];
+  private double[] mMinX = new double[INITIAL_CAPACITY];
+  private double[] mMaxX = new double[INITIAL_CAPACITY];
+  private double[] mMinY = new double[INITIAL_CAPACITY];
+  private double[] mMaxY = new double[INITIAL_CAPACITY];
+  private int mSize;
+
+  /** The entry removed by the last {@link #pop()}. */
+  double topKey;
+  Object topValue;
+  int topTag;
+  double topMinX;
+  double topMaxX;
+  double topMinY;
+  double topMaxY;
+
+  boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  void push(double key, Object value, int tag) {
+    push(key, value, tag, 0, 0, 0, 0);
+  }
+
+  void push(
+      double key, Object value, int tag, double minX, double maxX, double minY, double maxY) {
+    if (mSize == mKeys.length) {
+      int capacity = mSize * 2;
+      mKeys = Arrays.copyOf(mKeys, capacity);
+      mValues = Arrays.copyOf(mValues, capacity);
+      mTags = Arrays.copyOf(mTags, capacity);
+      mMinX = Arrays.copyOf(mMinX, capacity);
+      mMaxX = Arrays.copyOf(mMaxX, capacity);
+      mMinY = Arrays.copyOf(mMinY, capacity);
+      mMaxY = Arrays.copyOf(mMaxY, capacity);
+    }
+    int i = mSize++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (mKeys[parent] <= key) {
+        break;
+      }
+      move(parent, i);
+      i = parent;
+    }
+    set(i, key, value, tag, minX, maxX, minY, maxY);
+  }
+
+  /**
+   * Removes the closest entry and exposes it through the {@code top} fields.
+   */
+  void pop() {
+    topKey = mKeys[0];
+    topValue = mValues[0];
+    topTag = mTags[0];
+    topMinX = mMinX[0];
+    topMaxX = mMaxX[0];
+    topMinY = mMinY[0];
+    topMaxY = mMaxY[0];
+
+    int last = --mSize;
+    if (last > 0) {
+      double key = mKeys[last];
+      int i = 0;
+      while (true) {
+        int child = 2 * i + 1;
+        if (child >= last) {
+          break;
+        }
+        if (child + 1 < last && mKeys[child + 1] < mKeys[child]) {
+          child++;
+        }
+        if (key <= mKeys[child]) {
+          break;
+        }
+        move(child, i);
+        i = child;
+      }
+      move(last, i);
+    }
+    mValues[last] = null;
+  }
+
+  private void move(int from, int to) {
+    set(to, mKeys[from], mValues[from], mTags[from], mMinX[from], mMaxX[from], mMinY[from],
+        mMaxY[from]);
+  }
+
+  private void set(
+      int i, double key, Object value, int tag, double minX, double maxX, double minY,
+      double maxY) {
+    mKeys[i] = key;
+    mValues[i] = value;
+    mTags[i] = tag;
+    mMinX[i] = minX;
+    mMaxX[i] = maxX;
+    mMinY[i] = minY;
+    mMaxY[i] = maxY;
+  }
+
+  /**
+   * @return the squared distance from (x, y) to the closest point of the given bounds.
+   */
+  static double minDistanceSquared(
+      double x, double y, double minX, double maxX, double minY, double maxY) {
+    double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+    double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * @return the squared distance from (x, y) to the farthest point of the given bounds.
+   */
+  static double maxDistanceSquared(
+      double x, double y, double minX, double maxX, double minY, double maxY) {
+    double dx = Math.max(x - minX, maxX - x);
+    double dy = Math.max(y - minY, maxY - y);
+    return dx * dx + dy * dy;
+  }
+}
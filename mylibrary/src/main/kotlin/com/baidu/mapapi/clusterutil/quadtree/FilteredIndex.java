@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按类别过滤的只读索引
+ * A read only view of the items of a {@link SpatialIndex} that are in at least one of the given
+ * categories, see {@link PointQuadTree.MaskedItem}. Nothing is copied: searches go to the index,
+ * which skips whole quads if it is a {@link MaskedSpatialIndex} and otherwise has each item it
+ * finds tested here.
+ */
+public class FilteredIndex<T extends PointQuadTree.Item> implements SpatialIndex<T> {
+
+  private final SpatialIndex<T> mIndex;
+
+  private final long mMask;
+
+  /**
+   * @param index the items to filter, which must not change while the view is searched unless
+   *     the index allows concurrent reads
+   * @param mask the categories shown
+   */
+  public FilteredIndex(SpatialIndex<T> index, long mask) {
+    mIndex = index;
+    mMask = mask;
+  }
+
+  /**
+   * @return the categories of an item, all of them if it is not a {@link
+   *     PointQuadTree.MaskedItem}.
+   */
+  public static long getMask(Object item) {
+    return item instanceof PointQuadTree.MaskedItem
+        ? ((PointQuadTree.MaskedItem) item).getMask()
+        : -1L;
+  }
+
+  @Override
+  public void add(T item) {
+    throw readOnly();
+  }
+
+  @Override
+  public void addAll(Collection<T> items) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean remove(T item) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean move(T oldItem, T newItem) {
+    throw readOnly();
+  }
+
+  @Override
+  public void clear() {
+    throw readOnly();
+  }
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException("A filtered index is read only");
+  }
+
+  /**
+   * @return the number of items shown, counted by a search over everything.
+   */
+  @Override
+  public int size() {
+    final int[] count = new int[1];
+    search(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        Double.POSITIVE_INFINITY, new PointQuadTree.Visitor<T>() {
+          @Override
+          public boolean visit(T item) {
+            count[0]++;
+            return true;
+          }
+        });
+    return count[0];
+  }
+
+  @Override
+  public Collection<T> search(Bounds searchBounds) {
+    final List<T> results = new ArrayList<T>();
+    search(searchBounds.minX, searchBounds.maxX, searchBounds.minY, searchBounds.maxY,
+        new PointQuadTree.Visitor<T>() {
+          @Override
+          public boolean visit(T item) {
+            return results.add(item);
+          }
+        });
+    return results;
+  }
+
+  @Override
+  public boolean search(double minX, double maxX, double minY, double maxY,
+      PointQuadTree.Visitor<? super T> visitor) {
+    if (mIndex instanceof MaskedSpatialIndex) {
+      return ((MaskedSpatialIndex<T>) mIndex).search(minX, maxX, minY, maxY, mMask, visitor);
+    }
+    return mIndex.search(minX, maxX, minY, maxY, filter(visitor));
+  }
+
+  /**
+   * Asks the index for more and more of the closest items until enough of them are shown.
+   */
+  @Override
+  public List<T> nearest(double x, double y, int k) {
+    List<T> results = new ArrayList<T>();
+    if (k <= 0) {
+      return results;
+    }
+    int wanted = k;
+    while (true) {
+      List<T> nearest = mIndex.nearest(x, y, wanted);
+      results.clear();
+      for (T item : nearest) {
+        if ((getMask(item) & mMask) != 0) {
+          results.add(item);
+          if (results.size() == k) {
+            return results;
+          }
+        }
+      }
+      if (nearest.size() < wanted || wanted == Integer.MAX_VALUE) {
+        return results;
+      }
+      wanted = (int) Math.min(Integer.MAX_VALUE, 2L * wanted);
+    }
+  }
+
+  @Override
+  public Collection<T> searchRadius(double x, double y, double radius) {
+    final List<T> results = new ArrayList<T>();
+    searchRadius(x, y, radius, new PointQuadTree.Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return results.add(item);
+      }
+    });
+    return results;
+  }
+
+  @Override
+  public boolean searchRadius(
+      double x, double y, double radius, PointQuadTree.Visitor<? super T> visitor) {
+    return mIndex.searchRadius(x, y, radius, filter(visitor));
+  }
+
+  /**
+   * @return a view of a snapshot of the index, or null if the index cannot take one.
+   */
+  @Override
+  public SpatialIndex<T> snapshot() {
+    SpatialIndex<T> snapshot = mIndex.snapshot();
+    return snapshot == null ? null : new FilteredIndex<T>(snapshot, mMask);
+  }
+
+  private PointQuadTree.Visitor<T> filter(final PointQuadTree.Visitor<? super T> visitor) {
+    final long mask = mMask;
+    return new PointQuadTree.Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return (getMask(item) & mask) == 0 || visitor.visit(item);
+      }
+    };
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 静态 KD 树
+ * A balanced 2-d tree stored implicitly in flat arrays: the middle item of a range splits it, on
+ * x at even depths and on y at odd depths, and ranges of at most {@link #LEAF_SIZE} items are
+ * scanned. There are no node objects, only one slot per item, and a search visits O(log n)
+ * ranges plus the items it finds.
+ *
+ * <p>Meant for items loaded in bulk and then only read. Adding and removing are cheap, but the
+ * next search rebuilds the whole tree in O(n log n). Items are not checked for duplicates; the
+ * clustering algorithms keep their items unique already. This class is not thread safe, search
+ * a {@link #snapshot()} from other threads.
+ *
+ * <p>Ranges keep no category masks: filtered by a {@link FilteredIndex}, each item found is
+ * tested on its own.
+ */
+public class KdTree<T extends PointQuadTree.Item> implements SpatialIndex<T> {
+
+  /** Ranges of at most this many items are scanned rather than split. */
+  static final int LEAF_SIZE = 8;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private Object[] mItems;
+
+  private double[] mX;
+
+  private double[] mY;
+
+  private int mSize;
+
+  /** Whether items were added or removed since the tree was last built. */
+  private boolean mDirty;
+
+  /** Whether a snapshot shares the arrays, which must then be copied before the next write. */
+  private boolean mShared;
+
+  /** Whether this is a snapshot, which cannot be written. */
+  private final boolean mFrozen;
+
+  public KdTree() {
+    mItems = new Object[INITIAL_CAPACITY];
+    mX = new double[INITIAL_CAPACITY];
+    mY = new double[INITIAL_CAPACITY];
+    mFrozen = false;
+  }
+
+  private KdTree(Object[] items, double[] x, double[] y, int size) {
+    mItems = items;
+    mX = x;
+    mY = y;
+    mSize = size;
+    mFrozen = true;
+  }
+
+  @Override
+  public void add(T item) {
+    checkWritable();
+    prepareWrite(mSize + 1);
+    Point point = item.getPoint();
+    mItems[mSize] = item;
+    mX[mSize] = point.x;
+    mY[mSize] = point.y;
+    mSize++;
+    mDirty = true;
+  }
+
+  @Override
+  public void addAll(Collection<T> items) {
+    checkWritable();
+    prepareWrite(mSize + items.size());
+    for (T item : items) {
+      Point point = item.getPoint();
+      mItems[mSize] = item;
+      mX[mSize] = point.x;
+      mY[mSize] = point.y;
+      mSize++;
+    }
+    mDirty = true;
+  }
+
+  @Override
+  public boolean remove(T item) {
+    checkWritable();
+    Point point = item.getPoint();
+    int index = mDirty ? indexOf(item) : indexOf(item, point.x, point.y, 0, mSize, 0);
+    if (index < 0) {
+      return false;
+    }
+    prepareWrite(mSize);
+    int last = --mSize;
+    swap(index, last);
+    mItems[last] = null;
+    mDirty = true;
+    return true;
+  }
+
+  /**
+   * The tree is rebuilt on the next search after any write, so a move is a removal and an
+   * insertion.
+   */
+  @Override
+  public boolean move(T oldItem, T newItem) {
+    if (!remove(oldItem)) {
+      return false;
+    }
+    add(newItem);
+    return true;
+  }
+
+  private int indexOf(Object item) {
+    for (int i = 0; i < mSize; i++) {
+      if (mItems[i].equals(item)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds an item by walking down to its point.
+   */
+  private int indexOf(Object item, double x, double y, int lo, int hi, int depth) {
+    while (hi - lo > LEAF_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      if (mX[mid] == x && mY[mid] == y && mItems[mid].equals(item)) {
+        return mid;
+      }
+      double split = (depth & 1) == 0 ? mX[mid] : mY[mid];
+      double value = (depth & 1) == 0 ? x : y;
+      if (value == split) {
+        // Items equal to the split may sit on either side.
+        int found = indexOf(item, x, y, lo, mid, depth + 1);
+        if (found >= 0) {
+          return found;
+        }
+        lo = mid + 1;
+      } else if (value < split) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+      depth++;
+    }
+    for (int i = lo; i < hi; i++) {
+      if (mItems[i].equals(item)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void clear() {
+    checkWritable();
+    if (mShared) {
+      mItems = new Object[INITIAL_CAPACITY];
+      mX = new double[INITIAL_CAPACITY];
+      mY = new double[INITIAL_CAPACITY];
+      mShared = false;
+    } else {
+      Arrays.fill(mItems, 0, mSize, null);
+    }
+    mSize = 0;
+    mDirty = false;
+  }
+
+  @Override
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @return a read only view of the current items. The arrays are shared until the next write,
+   *     which copies them.
+   */
+  @Override
+  public KdTree<T> snapshot() {
+    if (mFrozen) {
+      return this;
+    }
+    ensureBuilt();
+    mShared = true;
+    return new KdTree<T>(mItems, mX, mY, mSize);
+  }
+
+  @Override
+  public Collection<T> search(Bounds searchBounds) {
+    final List<T> results = new ArrayList<T>();
+    search(searchBounds.minX, searchBounds.maxX, searchBounds.minY, searchBounds.maxY,
+        new PointQuadTree.Visitor<T>() {
+          @Override
+          public boolean visit(T item) {
+            return results.add(item);
+          }
+        });
+    return results;
+  }
+
+  @Override
+  public boolean search(double minX, double maxX, double minY, double maxY,
+      PointQuadTree.Visitor<? super T> visitor) {
+    ensureBuilt();
+    return search(0, mSize, 0, minX, maxX, minY, maxY, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean search(int lo, int hi, int depth, double minX, double maxX, double minY,
+      double maxY, PointQuadTree.Visitor<? super T> visitor) {
+    while (hi - lo > LEAF_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      double x = mX[mid];
+      double y = mY[mid];
+      if (minX <= x && x <= maxX && minY <= y && y <= maxY && !visitor.visit((T) mItems[mid])) {
+        return false;
+      }
+      boolean even = (depth & 1) == 0;
+      double split = even ? x : y;
+      boolean left = (even ? minX : minY) <= split;
+      boolean right = split <= (even ? maxX : maxY);
+      if (left && right) {
+        if (!search(lo, mid, depth + 1, minX, maxX, minY, maxY, visitor)) {
+          return false;
+        }
+        lo = mid + 1;
+      } else if (left) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+      depth++;
+    }
+    for (int i = lo; i < hi; i++) {
+      double x = mX[i];
+      double y = mY[i];
+      if (minX <= x && x <= maxX && minY <= y && y <= maxY && !visitor.visit((T) mItems[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<T> nearest(double x, double y, int k) {
+    ensureBuilt();
+    k = Math.min(k, mSize);
+    final List<T> results = new ArrayList<T>(Math.max(0, k));
+    if (k <= 0) {
+      return results;
+    }
+    Neighbours neighbours = new Neighbours(k);
+    nearest(0, mSize, 0, x, y, neighbours);
+    int[] closest = neighbours.sorted();
+    for (int index : closest) {
+      results.add((T) mItems[index]);
+    }
+    return results;
+  }
+
+  private void nearest(int lo, int hi, int depth, double x, double y, Neighbours neighbours) {
+    if (hi - lo <= LEAF_SIZE) {
+      for (int i = lo; i < hi; i++) {
+        neighbours.offer(PointQuadTree.distanceSquared(mX[i], mY[i], x, y), i);
+      }
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    neighbours.offer(PointQuadTree.distanceSquared(mX[mid], mY[mid], x, y), mid);
+    double diff = (depth & 1) == 0 ? x - mX[mid] : y - mY[mid];
+    // Closer side first, the other one only if the split line is closer than the k-th item.
+    if (diff < 0) {
+      nearest(lo, mid, depth + 1, x, y, neighbours);
+      if (diff * diff < neighbours.worst()) {
+        nearest(mid + 1, hi, depth + 1, x, y, neighbours);
+      }
+    } else {
+      nearest(mid + 1, hi, depth + 1, x, y, neighbours);
+      if (diff * diff < neighbours.worst()) {
+        nearest(lo, mid, depth + 1, x, y, neighbours);
+      }
+    }
+  }
+
+  @Override
+  public Collection<T> searchRadius(double x, double y, double radius) {
+    final List<T> results = new ArrayList<T>();
+    searchRadius(x, y, radius, new PointQuadTree.Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return results.add(item);
+      }
+    });
+    return results;
+  }
+
+  @Override
+  public boolean searchRadius(
+      double x, double y, double radius, PointQuadTree.Visitor<? super T> visitor) {
+    ensureBuilt();
+    return searchRadius(0, mSize, 0, x, y, radius, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean searchRadius(int lo, int hi, int depth, double x, double y, double radius,
+      PointQuadTree.Visitor<? super T> visitor) {
+    double radiusSquared = radius * radius;
+    while (hi - lo > LEAF_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      if (PointQuadTree.distanceSquared(mX[mid], mY[mid], x, y) <= radiusSquared
+          && !visitor.visit((T) mItems[mid])) {
+        return false;
+      }
+      boolean even = (depth & 1) == 0;
+      double split = even ? mX[mid] : mY[mid];
+      double value = even ? x : y;
+      boolean left = value - radius <= split;
+      boolean right = split <= value + radius;
+      if (left && right) {
+        if (!searchRadius(lo, mid, depth + 1, x, y, radius, visitor)) {
+          return false;
+        }
+        lo = mid + 1;
+      } else if (left) {
+        hi = mid;
+      } else {
+        lo = mid + 1;
+      }
+      depth++;
+    }
+    for (int i = lo; i < hi; i++) {
+      if (PointQuadTree.distanceSquared(mX[i], mY[i], x, y) <= radiusSquared
+          && !visitor.visit((T) mItems[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void ensureBuilt() {
+    if (mDirty) {
+      build(0, mSize, 0);
+      mDirty = false;
+    }
+  }
+
+  /**
+   * Arranges items [lo, hi) so that the middle one splits the others at the given depth, then
+   * does the same for both halves.
+   */
+  private void build(int lo, int hi, int depth) {
+    while (hi - lo > LEAF_SIZE) {
+      int mid = (lo + hi) >>> 1;
+      select(lo, hi - 1, mid, (depth & 1) == 0 ? mX : mY);
+      build(lo, mid, depth + 1);
+      lo = mid + 1;
+      depth++;
+    }
+  }
+
+  /**
+   * Quickselect: moves the k-th smallest key of [left, right] to k, with smaller or equal keys
+   * before it and greater or equal ones after it.
+   */
+  private void select(int left, int right, int k, double[] keys) {
+    while (right > left) {
+      int mid = (left + right) >>> 1;
+      if (keys[mid] < keys[left]) {
+        swap(left, mid);
+      }
+      if (keys[right] < keys[left]) {
+        swap(left, right);
+      }
+      if (keys[right] < keys[mid]) {
+        swap(mid, right);
+      }
+      double pivot = keys[mid];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (keys[i] < pivot) {
+          i++;
+        }
+        while (keys[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private void swap(int i, int j) {
+    Object item = mItems[i];
+    mItems[i] = mItems[j];
+    mItems[j] = item;
+    double x = mX[i];
+    mX[i] = mX[j];
+    mX[j] = x;
+    double y = mY[i];
+    mY[i] = mY[j];
+    mY[j] = y;
+  }
+
+  /**
+   * Makes the arrays private to this tree and large enough for the given number of items.
+   */
+  private void prepareWrite(int capacity) {
+    if (mShared || capacity > mItems.length) {
+      int length = Math.max(capacity, mShared ? mItems.length : mItems.length * 2);
+      mItems = Arrays.copyOf(mItems, length);
+      mX = Arrays.copyOf(mX, length);
+      mY = Arrays.copyOf(mY, length);
+      mShared = false;
+    }
+  }
+
+  private void checkWritable() {
+    if (mFrozen) {
+      throw new UnsupportedOperationException("A kd tree snapshot is read only");
+    }
+  }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+/**
+ * 按类别搜索的空间索引
+ * A {@link SpatialIndex} that keeps, for each of its quads, the categories of the items below
+ * it, so a search for some categories skips the quads holding none of them instead of testing
+ * their items. See {@link PointQuadTree.MaskedItem}.
+ */
+public interface MaskedSpatialIndex<T extends PointQuadTree.Item> extends SpatialIndex<T> {
+
+  /**
+   * Visit the items within the given bounds that are in at least one of the given categories.
+   * Items that are not {@link PointQuadTree.MaskedItem}s are in every category.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  boolean search(double minX, double maxX, double minY, double maxY, long mask,
+      PointQuadTree.Visitor<? super T> visitor);
+}
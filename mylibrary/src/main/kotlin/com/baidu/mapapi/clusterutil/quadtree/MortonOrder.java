@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import java.util.Arrays;
+
+/**
+ * Z 序(Morton)编码工具
+ * Morton (Z-order) codes used to bulk load the quad trees. A code holds the quadrant chosen at
+ * each of the first {@link #LEVELS} levels of the tree, two bits per level, most significant
+ * first. The quadrants are computed with the same midpoints the trees use, so sorting by code
+ * groups every quad's items into one contiguous run.
+ */
+final class MortonOrder {
+
+  /** Number of tree levels encoded in a code, two bits each. */
+  static final int LEVELS = 31;
+
+  private static final int RADIX_BITS = 8;
+
+  private static final int RADIX = 1 << RADIX_BITS;
+
+  private MortonOrder() {}
+
+  /**
+   * @return the Morton code of (x, y) inside the given root bounds.
+   */
+  static long code(double x, double y, double minX, double maxX, double minY, double maxY) {
+    long code = 0;
+    for (int level = 0; level < LEVELS; level++) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      int quad;
+      if (y < midY) {
+        maxY = midY;
+        quad = 0;
+      } else {
+        minY = midY;
+        quad = 2;
+      }
+      if (x < midX) {
+        maxX = midX;
+      } else {
+        minX = midX;
+        quad++;
+      }
+      code = (code << 2) | quad;
+    }
+    return code;
+  }
+
+  /**
+   * Stable LSD radix sort of the first {@code count} codes. The codes are sorted in place.
+   *
+   * @return the original index of each sorted code.
+   */
+  static int[] sort(long[] codes, int count) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    long[] codeBuffer = new long[count];
+    int[] orderBuffer = new int[count];
+    int[] offsets = new int[RADIX + 1];
+    for (int shift = 0; shift < LEVELS * 2; shift += RADIX_BITS) {
+      Arrays.fill(offsets, 0);
+      for (int i = 0; i < count; i++) {
+        offsets[(int) ((codes[i] >>> shift) & (RADIX - 1)) + 1]++;
+      }
+      if (count == 0 || offsets[(int) ((codes[0] >>> shift) & (RADIX - 1)) + 1] == count) {
+        // Every code shares this digit.
+        continue;
+      }
+      for (int digit = 0; digit < RADIX; digit++) {
+        offsets[digit + 1] += offsets[digit];
+      }
+      for (int i = 0; i < count; i++) {
+        int position = offsets[(int) ((codes[i] >>> shift) & (RADIX - 1))]++;
+        codeBuffer[position] = codes[i];
+        orderBuffer[position] = order[i];
+      }
+      System.arraycopy(codeBuffer, 0, codes, 0, count);
+      int[] swap = order;
+      order = orderBuffer;
+      orderBuffer = swap;
+    }
+    return order;
+  }
+
+  /**
+   * @return the bit shift of the quadrant chosen at the given depth.
+   */
+  static int shift(int depth) {
+    return 2 * (LEVELS - 1 - depth);
+  }
+
+  /**
+   * Finds the end of a quadrant's run within sorted codes that share every quadrant above
+   * {@code shift}.
+   *
+   * @return the first index in [lo, hi) whose quadrant is greater than {@code quad}, or hi.
+   */
+  static int quadrantEnd(long[] codes, int lo, int hi, int shift, int quad) {
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if ((int) ((codes[mid] >>> shift) & 3) <= quad) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
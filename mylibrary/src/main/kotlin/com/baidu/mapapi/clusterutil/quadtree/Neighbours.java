@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+/**
+ * 最近邻候选堆
+ * The k closest items seen so far, in a max-heap on their squared distance. Items are referred
+ * to by an int index chosen by the caller.
+ */
+final class Neighbours {
+  private final double[] mDistances;
+  private final int[] mIndexes;
+  private int mSize;
+
+  Neighbours(int k) {
+    mDistances = new double[k];
+    mIndexes = new int[k];
+  }
+
+  /**
+   * @return the squared distance an item must beat to be kept.
+   */
+  double worst() {
+    return mSize < mDistances.length ? Double.POSITIVE_INFINITY : mDistances[0];
+  }
+
+  void offer(double distance, int index) {
+    if (mSize < mDistances.length) {
+      int i = mSize++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (mDistances[parent] >= distance) {
+          break;
+        }
+        mDistances[i] = mDistances[parent];
+        mIndexes[i] = mIndexes[parent];
+        i = parent;
+      }
+      mDistances[i] = distance;
+      mIndexes[i] = index;
+    } else if (distance < mDistances[0]) {
+      siftDown(distance, index, mSize);
+    }
+  }
+
+  private void siftDown(double distance, int index, int size) {
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && mDistances[child + 1] > mDistances[child]) {
+        child++;
+      }
+      if (distance >= mDistances[child]) {
+        break;
+      }
+      mDistances[i] = mDistances[child];
+      mIndexes[i] = mIndexes[child];
+      i = child;
+    }
+    mDistances[i] = distance;
+    mIndexes[i] = index;
+  }
+
+  /**
+   * @return the indexes, closest first. Empties the heap.
+   */
+  int[] sorted() {
+    int[] sorted = new int[mSize];
+    for (int last = mSize - 1; last >= 0; last--) {
+      sorted[last] = mIndexes[0];
+      siftDown(mDistances[last], mIndexes[last], last);
+    }
+    mSize = 0;
+    return sorted;
+  }
+}
@@ -0,0 +1,1116 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.BUCKET_TOLERANCE;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.MAX_DEPTH;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.MAX_ELEMENTS;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.MERGE_THRESHOLD;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.distanceSquared;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Aggregate;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Stats;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Visitor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 紧凑型四叉树
+ * A quad tree like {@link PointQuadTree} that keeps its quads and items in flat primitive arrays
+ * instead of one object per quad and one set entry per item. The coordinates of every item are
+ * copied into a {@code double[]} on insert, so searches never call {@link
+ * PointQuadTree.Item#getPoint()}.
+ *
+ * <p>Quads are split with the same thresholds and midpoints as {@link PointQuadTree}, so both
+ * trees return the same items for the same search. Items of a bucket leaf, whose items share
+ * one point, are not checked for duplicates and are found by a scan on removal; the clustering
+ * algorithms keep their items unique already. This class is not thread safe.
+ *
+ * <p>Quads don't keep the categories of their items, so a {@link FilteredIndex} over this tree
+ * tests every item a search finds against its mask. Only {@link PersistentPointQuadTree} skips
+ * whole quads by category.
+ */
+public class PackedPointQuadTree<T extends PointQuadTree.Item> implements QuadTreeIndex<T> {
+
+  private static final int NO_NODE = -1;
+
+  private static final int NO_ITEM = -1;
+
+  private static final int INITIAL_NODE_CAPACITY = 64;
+
+  private static final int INITIAL_ITEM_CAPACITY = 256;
+
+  /** The bounds of the root quad. */
+  private final double mMinX;
+  private final double mMaxX;
+  private final double mMinY;
+  private final double mMaxY;
+
+  /** How far apart two items may be and still share a bucket. */
+  private final double mBucketToleranceX;
+  private final double mBucketToleranceY;
+
+  /** Index of the first of the four consecutive child quads, or {@link #NO_NODE} for a leaf. */
+  private int[] mNodeChild = new int[INITIAL_NODE_CAPACITY];
+
+  /** Slot of the first item stored in a leaf, or {@link #NO_ITEM}. */
+  private int[] mNodeHead = new int[INITIAL_NODE_CAPACITY];
+
+  /** Number of items in a quad and all of its children. */
+  private int[] mNodeSize = new int[INITIAL_NODE_CAPACITY];
+
+  /** Sum of the coordinates of the items in a quad and all of its children. */
+  private double[] mNodeSumX = new double[INITIAL_NODE_CAPACITY];
+  private double[] mNodeSumY = new double[INITIAL_NODE_CAPACITY];
+
+  /** The shared point of a bucket leaf, NaN for any other quad. */
+  private double[] mNodeBucketX = new double[INITIAL_NODE_CAPACITY];
+  private double[] mNodeBucketY = new double[INITIAL_NODE_CAPACITY];
+
+  private int mNodeCount;
+
+  /** Head of the list of child blocks freed by collapsing quads, chained through mNodeChild. */
+  private int mFreeNode = NO_NODE;
+
+  /** Quads visited by the last descent, root first. */
+  private final int[] mPath = new int[MAX_DEPTH + 1];
+
+  /** The items, indexed by slot. */
+  private Object[] mItems = new Object[INITIAL_ITEM_CAPACITY];
+
+  private double[] mItemX = new double[INITIAL_ITEM_CAPACITY];
+
+  private double[] mItemY = new double[INITIAL_ITEM_CAPACITY];
+
+  /** Next slot in the same leaf, or the next free slot for removed items. */
+  private int[] mItemNext = new int[INITIAL_ITEM_CAPACITY];
+
+  /** High water mark of used slots. */
+  private int mItemCount;
+
+  /** Head of the list of slots freed by {@link #remove(Item)}. */
+  private int mFreeItem = NO_ITEM;
+
+  /**
+   * Creates a new quad tree with specified bounds.
+   */
+  public PackedPointQuadTree(double minX, double maxX, double minY, double maxY) {
+    mMinX = minX;
+    mMaxX = maxX;
+    mMinY = minY;
+    mMaxY = maxY;
+    mBucketToleranceX = (maxX - minX) * BUCKET_TOLERANCE;
+    mBucketToleranceY = (maxY - minY) * BUCKET_TOLERANCE;
+    resetRoot();
+  }
+
+  public PackedPointQuadTree(Bounds bounds) {
+    this(bounds.minX, bounds.maxX, bounds.minY, bounds.maxY);
+  }
+
+  /**
+   * @return the number of items in the tree.
+   */
+  @Override
+  public int size() {
+    return mNodeSize[0];
+  }
+
+  /**
+   * Insert an item.
+   */
+  @Override
+  public void add(T item) {
+    Point point = item.getPoint();
+    double x = point.x;
+    double y = point.y;
+    if (!(mMinX <= x && x <= mMaxX && mMinY <= y && y <= mMaxY)) {
+      return;
+    }
+    double minX = mMinX;
+    double maxX = mMaxX;
+    double minY = mMinY;
+    double maxY = mMaxY;
+    int node = 0;
+    int depth = 0;
+    mPath[0] = node;
+    while (mNodeChild[node] != NO_NODE) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      int quad;
+      if (y < midY) {
+        maxY = midY;
+        quad = 0;
+      } else {
+        minY = midY;
+        quad = 2;
+      }
+      if (x < midX) {
+        maxX = midX;
+      } else {
+        minX = midX;
+        quad++;
+      }
+      node = mNodeChild[node] + quad;
+      mPath[++depth] = node;
+    }
+
+    if (isBucket(node)) {
+      if (isCoincident(x, y, mNodeBucketX[node], mNodeBucketY[node])) {
+        int slot = allocItem(item, x, y);
+        mItemNext[slot] = mNodeHead[node];
+        mNodeHead[node] = slot;
+        addToPath(depth, 1, x, y);
+        return;
+      }
+      // A different point turns the bucket back into an ordinary leaf.
+      mNodeBucketX[node] = Double.NaN;
+    }
+
+    // Leaves behave like a LinkedHashSet: no duplicates, insertion order kept.
+    int tail = NO_ITEM;
+    for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if (mItems[slot].equals(item)) {
+        return;
+      }
+      tail = slot;
+    }
+    int slot = allocItem(item, x, y);
+    if (tail == NO_ITEM) {
+      mNodeHead[node] = slot;
+    } else {
+      mItemNext[tail] = slot;
+    }
+    addToPath(depth, 1, x, y);
+    if (mNodeSize[node] > MAX_ELEMENTS && depth < MAX_DEPTH) {
+      split(node, depth, minX, maxX, minY, maxY);
+    }
+  }
+
+  /**
+   * Adds to the item count and coordinate sums of the quads on the last descent.
+   */
+  private void addToPath(int depth, int count, double x, double y) {
+    for (int i = 0; i <= depth; i++) {
+      int node = mPath[i];
+      mNodeSize[node] += count;
+      mNodeSumX[node] += x;
+      mNodeSumY[node] += y;
+    }
+  }
+
+  /**
+   * Split a leaf quad, moving its items into four new children. A leaf whose items all share one
+   * point becomes a bucket instead.
+   */
+  private void split(int node, int depth, double minX, double maxX, double minY, double maxY) {
+    if (makeBucket(node)) {
+      return;
+    }
+    final int first = allocNodes();
+    mNodeChild[node] = first;
+
+    final double midX = (minX + maxX) / 2;
+    final double midY = (minY + maxY) / 2;
+
+    int tail0 = NO_ITEM;
+    int tail1 = NO_ITEM;
+    int tail2 = NO_ITEM;
+    int tail3 = NO_ITEM;
+    int slot = mNodeHead[node];
+    mNodeHead[node] = NO_ITEM;
+    while (slot != NO_ITEM) {
+      int next = mItemNext[slot];
+      mItemNext[slot] = NO_ITEM;
+      int quad = (mItemY[slot] < midY ? 0 : 2) + (mItemX[slot] < midX ? 0 : 1);
+      int child = first + quad;
+      int tail;
+      switch (quad) {
+        case 0:
+          tail = tail0;
+          tail0 = slot;
+          break;
+        case 1:
+          tail = tail1;
+          tail1 = slot;
+          break;
+        case 2:
+          tail = tail2;
+          tail2 = slot;
+          break;
+        default:
+          tail = tail3;
+          tail3 = slot;
+          break;
+      }
+      if (tail == NO_ITEM) {
+        mNodeHead[child] = slot;
+      } else {
+        mItemNext[tail] = slot;
+      }
+      mNodeSize[child]++;
+      mNodeSumX[child] += mItemX[slot];
+      mNodeSumY[child] += mItemY[slot];
+      slot = next;
+    }
+
+    int childDepth = depth + 1;
+    if (childDepth < MAX_DEPTH) {
+      if (mNodeSize[first] > MAX_ELEMENTS) {
+        split(first, childDepth, minX, midX, minY, midY);
+      }
+      if (mNodeSize[first + 1] > MAX_ELEMENTS) {
+        split(first + 1, childDepth, midX, maxX, minY, midY);
+      }
+      if (mNodeSize[first + 2] > MAX_ELEMENTS) {
+        split(first + 2, childDepth, minX, midX, midY, maxY);
+      }
+      if (mNodeSize[first + 3] > MAX_ELEMENTS) {
+        split(first + 3, childDepth, midX, maxX, midY, maxY);
+      }
+    }
+  }
+
+  private boolean isBucket(int node) {
+    return !Double.isNaN(mNodeBucketX[node]);
+  }
+
+  /**
+   * @return whether the leaf is, or has now become, a bucket.
+   */
+  private boolean makeBucket(int node) {
+    if (isBucket(node)) {
+      return true;
+    }
+    int head = mNodeHead[node];
+    if (head == NO_ITEM) {
+      return false;
+    }
+    for (int slot = mItemNext[head]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if (!isCoincident(mItemX[slot], mItemY[slot], mItemX[head], mItemY[head])) {
+        return false;
+      }
+    }
+    mNodeBucketX[node] = mItemX[head];
+    mNodeBucketY[node] = mItemY[head];
+    return true;
+  }
+
+  private boolean isCoincident(double x1, double y1, double x2, double y2) {
+    return Math.abs(x1 - x2) <= mBucketToleranceX && Math.abs(y1 - y2) <= mBucketToleranceY;
+  }
+
+  /**
+   * Insert a batch of items. The items are sorted in Morton order, stored in that order so each
+   * leaf's items sit next to each other in the arrays, and the quads are built from the sorted
+   * runs in a single pass. Items already in the tree are re-packed together with the new ones.
+   */
+  @Override
+  public void addAll(Collection<T> items) {
+    int count = size() + items.size();
+    Object[] all = new Object[count];
+    double[] xs = new double[count];
+    double[] ys = new double[count];
+    count = 0;
+    for (int slot = 0; slot < mItemCount; slot++) {
+      if (mItems[slot] != null) {
+        all[count] = mItems[slot];
+        xs[count] = mItemX[slot];
+        ys[count] = mItemY[slot];
+        count++;
+      }
+    }
+    for (T item : items) {
+      Point point = item.getPoint();
+      double x = point.x;
+      double y = point.y;
+      if (mMinX <= x && x <= mMaxX && mMinY <= y && y <= mMaxY) {
+        all[count] = item;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+      }
+    }
+
+    long[] codes = new long[count];
+    for (int i = 0; i < count; i++) {
+      codes[i] = MortonOrder.code(xs[i], ys[i], mMinX, mMaxX, mMinY, mMaxY);
+    }
+    int[] order = MortonOrder.sort(codes, count);
+
+    clear();
+    if (count > mItems.length) {
+      mItems = new Object[count];
+      mItemX = new double[count];
+      mItemY = new double[count];
+      mItemNext = new int[count];
+    }
+    for (int i = 0; i < count; i++) {
+      mItems[i] = all[order[i]];
+      mItemX[i] = xs[order[i]];
+      mItemY[i] = ys[order[i]];
+    }
+    mItemCount = count;
+    build(0, 0, 0, count, codes, mMinX, mMaxX, mMinY, mMaxY);
+  }
+
+  /**
+   * Builds a quad from the Morton sorted slots [lo, hi).
+   */
+  private void build(
+      int node,
+      int depth,
+      int lo,
+      int hi,
+      long[] codes,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY) {
+    if (hi - lo > MAX_ELEMENTS && codes[lo] == codes[hi - 1]) {
+      // Items with the same code are closer than the bucket tolerance, no need to go deeper.
+      for (int slot = lo; slot < hi; slot++) {
+        mItemNext[slot] = slot + 1 < hi ? slot + 1 : NO_ITEM;
+        mNodeSumX[node] += mItemX[slot];
+        mNodeSumY[node] += mItemY[slot];
+      }
+      mNodeHead[node] = lo;
+      mNodeSize[node] = hi - lo;
+      mNodeBucketX[node] = mItemX[lo];
+      mNodeBucketY[node] = mItemY[lo];
+      return;
+    }
+    if (hi - lo <= MAX_ELEMENTS || depth >= MAX_DEPTH || depth >= MortonOrder.LEVELS) {
+      int tail = NO_ITEM;
+      for (int slot = lo; slot < hi; slot++) {
+        mItemNext[slot] = NO_ITEM;
+        if (containsItem(mNodeHead[node], mItems[slot])) {
+          freeItem(slot);
+          continue;
+        }
+        if (tail == NO_ITEM) {
+          mNodeHead[node] = slot;
+        } else {
+          mItemNext[tail] = slot;
+        }
+        tail = slot;
+        mNodeSize[node]++;
+        mNodeSumX[node] += mItemX[slot];
+        mNodeSumY[node] += mItemY[slot];
+      }
+      if (mNodeSize[node] > MAX_ELEMENTS && depth < MAX_DEPTH) {
+        // Past the resolution of the Morton code, fall back to splitting.
+        split(node, depth, minX, maxX, minY, maxY);
+      }
+      return;
+    }
+
+    final int first = allocNodes();
+    mNodeChild[node] = first;
+    final double midX = (minX + maxX) / 2;
+    final double midY = (minY + maxY) / 2;
+    final int shift = MortonOrder.shift(depth);
+    final int childDepth = depth + 1;
+
+    int start = lo;
+    int end = MortonOrder.quadrantEnd(codes, start, hi, shift, 0);
+    build(first, childDepth, start, end, codes, minX, midX, minY, midY);
+    start = end;
+    end = MortonOrder.quadrantEnd(codes, start, hi, shift, 1);
+    build(first + 1, childDepth, start, end, codes, midX, maxX, minY, midY);
+    start = end;
+    end = MortonOrder.quadrantEnd(codes, start, hi, shift, 2);
+    build(first + 2, childDepth, start, end, codes, minX, midX, midY, maxY);
+    build(first + 3, childDepth, end, hi, codes, midX, maxX, midY, maxY);
+    mNodeSize[node] =
+        mNodeSize[first] + mNodeSize[first + 1] + mNodeSize[first + 2] + mNodeSize[first + 3];
+    mNodeSumX[node] =
+        mNodeSumX[first] + mNodeSumX[first + 1] + mNodeSumX[first + 2] + mNodeSumX[first + 3];
+    mNodeSumY[node] =
+        mNodeSumY[first] + mNodeSumY[first + 1] + mNodeSumY[first + 2] + mNodeSumY[first + 3];
+  }
+
+  private boolean containsItem(int head, Object item) {
+    for (int slot = head; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if (mItems[slot].equals(item)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remove the given item from the set.
+   *
+   * @return whether the item was removed.
+   */
+  @Override
+  public boolean remove(T item) {
+    Point point = item.getPoint();
+    double x = point.x;
+    double y = point.y;
+    if (!(mMinX <= x && x <= mMaxX && mMinY <= y && y <= mMaxY)) {
+      return false;
+    }
+    double minX = mMinX;
+    double maxX = mMaxX;
+    double minY = mMinY;
+    double maxY = mMaxY;
+    int node = 0;
+    int depth = 0;
+    mPath[0] = node;
+    while (mNodeChild[node] != NO_NODE) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      int quad;
+      if (y < midY) {
+        maxY = midY;
+        quad = 0;
+      } else {
+        minY = midY;
+        quad = 2;
+      }
+      if (x < midX) {
+        maxX = midX;
+      } else {
+        minX = midX;
+        quad++;
+      }
+      node = mNodeChild[node] + quad;
+      mPath[++depth] = node;
+    }
+
+    int previous = NO_ITEM;
+    for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if (mItems[slot].equals(item)) {
+        if (previous == NO_ITEM) {
+          mNodeHead[node] = mItemNext[slot];
+        } else {
+          mItemNext[previous] = mItemNext[slot];
+        }
+        freeItem(slot);
+        addToPath(depth, -1, -x, -y);
+        // Collapse the highest quad that became small enough; that covers the ones below it.
+        for (int i = 0; i < depth; i++) {
+          if (mNodeSize[mPath[i]] <= MERGE_THRESHOLD) {
+            collapse(mPath[i]);
+            break;
+          }
+        }
+        return true;
+      }
+      previous = slot;
+    }
+    return false;
+  }
+
+  /**
+   * Replace an item with an equal one at another point. If both points fall in the same leaf
+   * the item keeps its slot and only its coordinates and the sums above it change.
+   *
+   * @return whether the old item was there.
+   */
+  @Override
+  public boolean move(T oldItem, T newItem) {
+    Point from = oldItem.getPoint();
+    Point to = newItem.getPoint();
+    double x = from.x;
+    double y = from.y;
+    if (!(mMinX <= x && x <= mMaxX && mMinY <= y && y <= mMaxY)) {
+      return false;
+    }
+    if (mMinX <= to.x && to.x <= mMaxX && mMinY <= to.y && to.y <= mMaxY) {
+      double minX = mMinX;
+      double maxX = mMaxX;
+      double minY = mMinY;
+      double maxY = mMaxY;
+      int node = 0;
+      int depth = 0;
+      mPath[0] = node;
+      boolean sameLeaf = true;
+      while (mNodeChild[node] != NO_NODE) {
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        if ((y < midY) != (to.y < midY) || (x < midX) != (to.x < midX)) {
+          sameLeaf = false;
+          break;
+        }
+        int quad;
+        if (y < midY) {
+          maxY = midY;
+          quad = 0;
+        } else {
+          minY = midY;
+          quad = 2;
+        }
+        if (x < midX) {
+          maxX = midX;
+        } else {
+          minX = midX;
+          quad++;
+        }
+        node = mNodeChild[node] + quad;
+        mPath[++depth] = node;
+      }
+      if (sameLeaf && (!isBucket(node)
+          || isCoincident(to.x, to.y, mNodeBucketX[node], mNodeBucketY[node]))) {
+        for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+          if (mItems[slot].equals(oldItem)) {
+            // 同一叶子内原地移动
+            // Moves within the leaf, in place.
+            mItems[slot] = newItem;
+            mItemX[slot] = to.x;
+            mItemY[slot] = to.y;
+            addToPath(depth, 0, to.x - x, to.y - y);
+            return true;
+          }
+        }
+        return false;
+      }
+    }
+    if (!remove(oldItem)) {
+      return false;
+    }
+    add(newItem);
+    return true;
+  }
+
+  /**
+   * Removes all points from the quadTree
+   */
+  @Override
+  public void clear() {
+    Arrays.fill(mItems, 0, mItemCount, null);
+    mItemCount = 0;
+    mFreeItem = NO_ITEM;
+    resetRoot();
+  }
+
+  /**
+   * Search for all items within a given bounds.
+   */
+  @Override
+  public Collection<T> search(Bounds searchBounds) {
+    final List<T> results = new ArrayList<T>();
+    search(0, mMinX, mMaxX, mMinY, mMaxY, searchBounds, results);
+    return results;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void search(
+      int node,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      Bounds searchBounds,
+      List<T> results) {
+    if (!searchBounds.intersects(minX, maxX, minY, maxY)) {
+      return;
+    }
+
+    int first = mNodeChild[node];
+    if (first != NO_NODE) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      search(first, minX, midX, minY, midY, searchBounds, results);
+      search(first + 1, midX, maxX, minY, midY, searchBounds, results);
+      search(first + 2, minX, midX, midY, maxY, searchBounds, results);
+      search(first + 3, midX, maxX, midY, maxY, searchBounds, results);
+      return;
+    }
+
+    boolean containsQuad =
+        minX >= searchBounds.minX
+            && maxX <= searchBounds.maxX
+            && minY >= searchBounds.minY
+            && maxY <= searchBounds.maxY;
+    if (!containsQuad && isBucket(node)) {
+      double bucketX = mNodeBucketX[node];
+      double bucketY = mNodeBucketY[node];
+      if (!searchBounds.intersects(bucketX - mBucketToleranceX, bucketX + mBucketToleranceX,
+          bucketY - mBucketToleranceY, bucketY + mBucketToleranceY)) {
+        return;
+      }
+      containsQuad = searchBounds.minX <= bucketX - mBucketToleranceX
+          && bucketX + mBucketToleranceX <= searchBounds.maxX
+          && searchBounds.minY <= bucketY - mBucketToleranceY
+          && bucketY + mBucketToleranceY <= searchBounds.maxY;
+    }
+    for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if (containsQuad || searchBounds.contains(mItemX[slot], mItemY[slot])) {
+        results.add((T) mItems[slot]);
+      }
+    }
+  }
+
+  /**
+   * Visit all items within the given bounds. Never allocates.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean search(
+      double minX, double maxX, double minY, double maxY, Visitor<? super T> visitor) {
+    return search(0, mMinX, mMaxX, mMinY, mMaxY, minX, maxX, minY, maxY, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean search(
+      int node,
+      double nodeMinX,
+      double nodeMaxX,
+      double nodeMinY,
+      double nodeMaxY,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      Visitor<? super T> visitor) {
+    if (!(minX < nodeMaxX && nodeMinX < maxX && minY < nodeMaxY && nodeMinY < maxY)) {
+      return true;
+    }
+
+    int first = mNodeChild[node];
+    if (first != NO_NODE) {
+      double midX = (nodeMinX + nodeMaxX) / 2;
+      double midY = (nodeMinY + nodeMaxY) / 2;
+      return search(first, nodeMinX, midX, nodeMinY, midY, minX, maxX, minY, maxY, visitor)
+          && search(first + 1, midX, nodeMaxX, nodeMinY, midY, minX, maxX, minY, maxY, visitor)
+          && search(first + 2, nodeMinX, midX, midY, nodeMaxY, minX, maxX, minY, maxY, visitor)
+          && search(first + 3, midX, nodeMaxX, midY, nodeMaxY, minX, maxX, minY, maxY, visitor);
+    }
+
+    boolean containsQuad =
+        nodeMinX >= minX && nodeMaxX <= maxX && nodeMinY >= minY && nodeMaxY <= maxY;
+    if (!containsQuad && isBucket(node)) {
+      // Test the bucket's point once rather than every item sharing it.
+      double bucketX = mNodeBucketX[node];
+      double bucketY = mNodeBucketY[node];
+      if (bucketX + mBucketToleranceX < minX || bucketX - mBucketToleranceX > maxX
+          || bucketY + mBucketToleranceY < minY || bucketY - mBucketToleranceY > maxY) {
+        return true;
+      }
+      containsQuad = minX <= bucketX - mBucketToleranceX && bucketX + mBucketToleranceX <= maxX
+          && minY <= bucketY - mBucketToleranceY && bucketY + mBucketToleranceY <= maxY;
+    }
+    for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if (containsQuad
+          || (minX <= mItemX[slot] && mItemX[slot] <= maxX
+              && minY <= mItemY[slot] && mItemY[slot] <= maxY)) {
+        if (!visitor.visit((T) mItems[slot])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the k items closest to (x, y), expanding quads best-first by their minimum distance to
+   * the point.
+   *
+   * @return up to k items, closest first.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<T> nearest(double x, double y, int k) {
+    final List<T> results = new ArrayList<T>(Math.max(0, Math.min(k, 64)));
+    if (k <= 0) {
+      return results;
+    }
+    // Quads are tagged with their index, items with -(slot + 1).
+    DistanceQueue queue = new DistanceQueue();
+    pushQuad(queue, 0, x, y, mMinX, mMaxX, mMinY, mMaxY);
+    while (!queue.isEmpty()) {
+      queue.pop();
+      int tag = queue.topTag;
+      if (tag < 0) {
+        results.add((T) mItems[-tag - 1]);
+        if (results.size() == k) {
+          break;
+        }
+        continue;
+      }
+      int first = mNodeChild[tag];
+      if (first != NO_NODE) {
+        double minX = queue.topMinX;
+        double maxX = queue.topMaxX;
+        double minY = queue.topMinY;
+        double maxY = queue.topMaxY;
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        pushQuad(queue, first, x, y, minX, midX, minY, midY);
+        pushQuad(queue, first + 1, x, y, midX, maxX, minY, midY);
+        pushQuad(queue, first + 2, x, y, minX, midX, midY, maxY);
+        pushQuad(queue, first + 3, x, y, midX, maxX, midY, maxY);
+      } else {
+        // The items of a bucket are equally close, only the ones still needed are queued.
+        int remaining = isBucket(tag) ? k - results.size() : Integer.MAX_VALUE;
+        for (int slot = mNodeHead[tag]; slot != NO_ITEM && remaining-- > 0;
+            slot = mItemNext[slot]) {
+          queue.push(distanceSquared(mItemX[slot], mItemY[slot], x, y), null, -slot - 1);
+        }
+      }
+    }
+    return results;
+  }
+
+  private static void pushQuad(
+      DistanceQueue queue,
+      int node,
+      double x,
+      double y,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY) {
+    queue.push(
+        DistanceQueue.minDistanceSquared(x, y, minX, maxX, minY, maxY),
+        null,
+        node,
+        minX,
+        maxX,
+        minY,
+        maxY);
+  }
+
+  @Override
+  public int count(Bounds bounds) {
+    Aggregate aggregate = new Aggregate();
+    aggregate(0, mMinX, mMaxX, mMinY, mMaxY,
+        bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, aggregate);
+    return aggregate.count;
+  }
+
+  @Override
+  public Point centroid(Bounds bounds) {
+    Aggregate aggregate = new Aggregate();
+    aggregate(0, mMinX, mMaxX, mMinY, mMaxY,
+        bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, aggregate);
+    return aggregate.centroid();
+  }
+
+  private void aggregate(
+      int node,
+      double nodeMinX,
+      double nodeMaxX,
+      double nodeMinY,
+      double nodeMaxY,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      Aggregate result) {
+    if (!(minX < nodeMaxX && nodeMinX < maxX && minY < nodeMaxY && nodeMinY < maxY)) {
+      return;
+    }
+    if (nodeMinX >= minX && nodeMaxX <= maxX && nodeMinY >= minY && nodeMaxY <= maxY) {
+      result.add(mNodeSize[node], mNodeSumX[node], mNodeSumY[node]);
+      return;
+    }
+
+    int first = mNodeChild[node];
+    if (first != NO_NODE) {
+      double midX = (nodeMinX + nodeMaxX) / 2;
+      double midY = (nodeMinY + nodeMaxY) / 2;
+      aggregate(first, nodeMinX, midX, nodeMinY, midY, minX, maxX, minY, maxY, result);
+      aggregate(first + 1, midX, nodeMaxX, nodeMinY, midY, minX, maxX, minY, maxY, result);
+      aggregate(first + 2, nodeMinX, midX, midY, nodeMaxY, minX, maxX, minY, maxY, result);
+      aggregate(first + 3, midX, nodeMaxX, midY, nodeMaxY, minX, maxX, minY, maxY, result);
+      return;
+    }
+
+    if (isBucket(node)) {
+      double bucketX = mNodeBucketX[node];
+      double bucketY = mNodeBucketY[node];
+      if (bucketX + mBucketToleranceX < minX || bucketX - mBucketToleranceX > maxX
+          || bucketY + mBucketToleranceY < minY || bucketY - mBucketToleranceY > maxY) {
+        return;
+      }
+      if (minX <= bucketX - mBucketToleranceX && bucketX + mBucketToleranceX <= maxX
+          && minY <= bucketY - mBucketToleranceY && bucketY + mBucketToleranceY <= maxY) {
+        result.add(mNodeSize[node], mNodeSumX[node], mNodeSumY[node]);
+        return;
+      }
+    }
+    for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      double x = mItemX[slot];
+      double y = mItemY[slot];
+      if (minX <= x && x <= maxX && minY <= y && y <= maxY) {
+        result.add(1, x, y);
+      }
+    }
+  }
+
+  /**
+   * Search for all items within a given distance of (x, y).
+   */
+  @Override
+  public Collection<T> searchRadius(double x, double y, double radius) {
+    final List<T> results = new ArrayList<T>();
+    searchRadius(x, y, radius, new Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return results.add(item);
+      }
+    });
+    return results;
+  }
+
+  /**
+   * Visit all items within a given distance of (x, y), skipping quads farther than the radius.
+   * Never allocates.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean searchRadius(double x, double y, double radius, Visitor<? super T> visitor) {
+    return searchRadius(0, mMinX, mMaxX, mMinY, mMaxY, x, y, radius * radius, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean searchRadius(
+      int node,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      double x,
+      double y,
+      double radiusSquared,
+      Visitor<? super T> visitor) {
+    if (DistanceQueue.minDistanceSquared(x, y, minX, maxX, minY, maxY) > radiusSquared) {
+      return true;
+    }
+
+    int first = mNodeChild[node];
+    if (first != NO_NODE) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      return searchRadius(first, minX, midX, minY, midY, x, y, radiusSquared, visitor)
+          && searchRadius(first + 1, midX, maxX, minY, midY, x, y, radiusSquared, visitor)
+          && searchRadius(first + 2, minX, midX, midY, maxY, x, y, radiusSquared, visitor)
+          && searchRadius(first + 3, midX, maxX, midY, maxY, x, y, radiusSquared, visitor);
+    }
+
+    boolean containsQuad = false;
+    if (isBucket(node)) {
+      double bucketMinX = mNodeBucketX[node] - mBucketToleranceX;
+      double bucketMaxX = mNodeBucketX[node] + mBucketToleranceX;
+      double bucketMinY = mNodeBucketY[node] - mBucketToleranceY;
+      double bucketMaxY = mNodeBucketY[node] + mBucketToleranceY;
+      if (DistanceQueue.minDistanceSquared(x, y, bucketMinX, bucketMaxX, bucketMinY, bucketMaxY)
+          > radiusSquared) {
+        return true;
+      }
+      containsQuad =
+          DistanceQueue.maxDistanceSquared(x, y, bucketMinX, bucketMaxX, bucketMinY, bucketMaxY)
+              <= radiusSquared;
+    }
+    for (int slot = mNodeHead[node]; slot != NO_ITEM; slot = mItemNext[slot]) {
+      if ((containsQuad || distanceSquared(mItemX[slot], mItemY[slot], x, y) <= radiusSquared)
+          && !visitor.visit((T) mItems[slot])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Merge all quads below the given one back into it.
+   */
+  private void collapse(int node) {
+    int first = mNodeChild[node];
+    mNodeChild[node] = NO_NODE;
+    mNodeHead[node] = NO_ITEM;
+    mNodeBucketX[node] = Double.NaN;
+    int tail = NO_ITEM;
+    for (int child = first; child < first + 4; child++) {
+      tail = detach(child, node, tail);
+    }
+    freeNodes(first);
+  }
+
+  /**
+   * Moves every item under {@code node} to the end of {@code target}'s list, releasing child
+   * blocks on the way.
+   *
+   * @return the new tail of the target's list.
+   */
+  private int detach(int node, int target, int tail) {
+    int first = mNodeChild[node];
+    if (first != NO_NODE) {
+      for (int child = first; child < first + 4; child++) {
+        tail = detach(child, target, tail);
+      }
+      freeNodes(first);
+      return tail;
+    }
+    int slot = mNodeHead[node];
+    if (slot == NO_ITEM) {
+      return tail;
+    }
+    if (tail == NO_ITEM) {
+      mNodeHead[target] = slot;
+    } else {
+      mItemNext[tail] = slot;
+    }
+    while (mItemNext[slot] != NO_ITEM) {
+      slot = mItemNext[slot];
+    }
+    return slot;
+  }
+
+  /**
+   * Re-packs the tree: every quad whose subtree fits in a leaf is collapsed, items are re-laid
+   * out in Morton order and the arrays are trimmed to what is in use.
+   */
+  @Override
+  public void compact() {
+    addAll(Collections.<T>emptyList());
+    int nodes = Math.max(mNodeCount, INITIAL_NODE_CAPACITY);
+    mNodeChild = Arrays.copyOf(mNodeChild, nodes);
+    mNodeHead = Arrays.copyOf(mNodeHead, nodes);
+    mNodeSize = Arrays.copyOf(mNodeSize, nodes);
+    mNodeSumX = Arrays.copyOf(mNodeSumX, nodes);
+    mNodeSumY = Arrays.copyOf(mNodeSumY, nodes);
+    mNodeBucketX = Arrays.copyOf(mNodeBucketX, nodes);
+    mNodeBucketY = Arrays.copyOf(mNodeBucketY, nodes);
+    int items = Math.max(mItemCount, INITIAL_ITEM_CAPACITY);
+    mItems = Arrays.copyOf(mItems, items);
+    mItemX = Arrays.copyOf(mItemX, items);
+    mItemY = Arrays.copyOf(mItemY, items);
+    mItemNext = Arrays.copyOf(mItemNext, items);
+  }
+
+  @Override
+  public Stats getStats() {
+    Stats stats = new Stats();
+    collectStats(0, 0, stats);
+    return stats;
+  }
+
+  private void collectStats(int node, int depth, Stats stats) {
+    stats.nodeCount++;
+    stats.depth = Math.max(stats.depth, depth);
+    int first = mNodeChild[node];
+    if (first != NO_NODE) {
+      for (int child = first; child < first + 4; child++) {
+        collectStats(child, depth + 1, stats);
+      }
+    } else {
+      stats.leafCount++;
+      if (mNodeSize[node] == 0) {
+        stats.emptyLeafCount++;
+      } else {
+        stats.itemCount += mNodeSize[node];
+      }
+      if (isBucket(node)) {
+        stats.bucketCount++;
+      }
+    }
+  }
+
+  /**
+   * @return null, readers of a packed quad tree must hold the writers' lock.
+   */
+  @Override
+  public SpatialIndex<T> snapshot() {
+    return null;
+  }
+
+  private void resetRoot() {
+    mFreeNode = NO_NODE;
+    mNodeCount = 1;
+    mNodeChild[0] = NO_NODE;
+    mNodeHead[0] = NO_ITEM;
+    mNodeSize[0] = 0;
+    mNodeSumX[0] = 0;
+    mNodeSumY[0] = 0;
+    mNodeBucketX[0] = Double.NaN;
+  }
+
+  /**
+   * Allocates four consecutive empty leaf quads.
+   *
+   * @return the index of the first one.
+   */
+  private int allocNodes() {
+    if (mFreeNode != NO_NODE) {
+      int first = mFreeNode;
+      mFreeNode = mNodeChild[first];
+      for (int i = first; i < first + 4; i++) {
+        mNodeChild[i] = NO_NODE;
+        mNodeHead[i] = NO_ITEM;
+        mNodeSize[i] = 0;
+        mNodeSumX[i] = 0;
+        mNodeSumY[i] = 0;
+        mNodeBucketX[i] = Double.NaN;
+      }
+      return first;
+    }
+    int first = mNodeCount;
+    int required = first + 4;
+    if (required > mNodeChild.length) {
+      int capacity = Math.max(required, mNodeChild.length * 2);
+      mNodeChild = Arrays.copyOf(mNodeChild, capacity);
+      mNodeHead = Arrays.copyOf(mNodeHead, capacity);
+      mNodeSize = Arrays.copyOf(mNodeSize, capacity);
+      mNodeSumX = Arrays.copyOf(mNodeSumX, capacity);
+      mNodeSumY = Arrays.copyOf(mNodeSumY, capacity);
+      mNodeBucketX = Arrays.copyOf(mNodeBucketX, capacity);
+      mNodeBucketY = Arrays.copyOf(mNodeBucketY, capacity);
+    }
+    for (int i = first; i < required; i++) {
+      mNodeChild[i] = NO_NODE;
+      mNodeHead[i] = NO_ITEM;
+      mNodeSize[i] = 0;
+      mNodeSumX[i] = 0;
+      mNodeSumY[i] = 0;
+      mNodeBucketX[i] = Double.NaN;
+    }
+    mNodeCount = required;
+    return first;
+  }
+
+  private void freeNodes(int first) {
+    mNodeChild[first] = mFreeNode;
+    mFreeNode = first;
+  }
+
+  private int allocItem(T item, double x, double y) {
+    int slot;
+    if (mFreeItem != NO_ITEM) {
+      slot = mFreeItem;
+      mFreeItem = mItemNext[slot];
+    } else {
+      if (mItemCount == mItems.length) {
+        int capacity = mItems.length * 2;
+        mItems = Arrays.copyOf(mItems, capacity);
+        mItemX = Arrays.copyOf(mItemX, capacity);
+        mItemY = Arrays.copyOf(mItemY, capacity);
+        mItemNext = Arrays.copyOf(mItemNext, capacity);
+      }
+      slot = mItemCount++;
+    }
+    mItems[slot] = item;
+    mItemX[slot] = x;
+    mItemY[slot] = y;
+    mItemNext[slot] = NO_ITEM;
+    return slot;
+  }
+
+  private void freeItem(int slot) {
+    mItems[slot] = null;
+    mItemNext[slot] = mFreeItem;
+    mFreeItem = slot;
+  }
+}
@@ -0,0 +1,884 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.BUCKET_TOLERANCE;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.ITEM;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.MAX_DEPTH;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.MAX_ELEMENTS;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.MERGE_THRESHOLD;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.QUAD;
+import static com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.distanceSquared;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Aggregate;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Item;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Stats;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree.Visitor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 可快照的四叉树
+ * A quad tree like {@link PointQuadTree} whose quads are immutable. Every change copies the quads
+ * on the path from the root to the changed leaf and then publishes the new root, so {@link
+ * #snapshot()} is O(1) and a snapshot never changes, whatever is written afterwards.
+ *
+ * <p>Writes must be serialized by the caller. Reads need no lock: each search works on the root
+ * it started with, and a snapshot lets several searches see the same version. Quads are split,
+ * bucketed and collapsed with the same thresholds as {@link PointQuadTree}.
+ *
+ * <p>Each quad also keeps the categories of its items, see {@link PointQuadTree.MaskedItem}, so
+ * searches for some categories skip the quads holding none of them.
+ */
+public class PersistentPointQuadTree<T extends PointQuadTree.Item>
+    implements QuadTreeIndex<T>, MaskedSpatialIndex<T> {
+
+  private static final Object[] NO_ITEMS = new Object[0];
+
+  private static final Node EMPTY = new Node(null, NO_ITEMS, 0, 0, 0, 0, Double.NaN, Double.NaN);
+
+  /** The bounds of the root quad. */
+  private final double mMinX;
+  private final double mMaxX;
+  private final double mMinY;
+  private final double mMaxY;
+
+  /** How far apart two items may be and still share a bucket. */
+  private final double mBucketToleranceX;
+  private final double mBucketToleranceY;
+
+  /** Whether this is a snapshot, which cannot be written. */
+  private final boolean mFrozen;
+
+  /** Searches with this mask show every item, even those in no category. */
+  private static final long NO_FILTER = -1L;
+
+  /** The latest version of the tree. */
+  private volatile Node mRoot;
+
+  /**
+   * Creates a new quad tree with specified bounds.
+   */
+  public PersistentPointQuadTree(double minX, double maxX, double minY, double maxY) {
+    this(minX, maxX, minY, maxY, EMPTY, false);
+  }
+
+  public PersistentPointQuadTree(Bounds bounds) {
+    this(bounds.minX, bounds.maxX, bounds.minY, bounds.maxY);
+  }
+
+  private PersistentPointQuadTree(
+      double minX, double maxX, double minY, double maxY, Node root, boolean frozen) {
+    mMinX = minX;
+    mMaxX = maxX;
+    mMinY = minY;
+    mMaxY = maxY;
+    mBucketToleranceX = (maxX - minX) * BUCKET_TOLERANCE;
+    mBucketToleranceY = (maxY - minY) * BUCKET_TOLERANCE;
+    mFrozen = frozen;
+    mRoot = root;
+  }
+
+  /**
+   * @return a read only view of the current version of the tree, which later writes do not
+   *     affect.
+   */
+  @Override
+  public PersistentPointQuadTree<T> snapshot() {
+    return mFrozen ? this : new PersistentPointQuadTree<T>(mMinX, mMaxX, mMinY, mMaxY, mRoot, true);
+  }
+
+  /**
+   * @return the number of items in the tree.
+   */
+  @Override
+  public int size() {
+    return mRoot.count;
+  }
+
+  /**
+   * Insert an item.
+   */
+  @Override
+  public void add(T item) {
+    checkWritable();
+    Point point = item.getPoint();
+    if (mMinX <= point.x && point.x <= mMaxX && mMinY <= point.y && point.y <= mMaxY) {
+      mRoot = insert(mRoot, 0, mMinX, mMaxX, mMinY, mMaxY, item, point.x, point.y);
+    }
+  }
+
+  /**
+   * @return the new version of the quad, or the same one if the item was already there.
+   */
+  private Node insert(
+      Node node,
+      int depth,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      T item,
+      double x,
+      double y) {
+    if (node.children != null) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      int quad = (y < midY ? 0 : 2) + (x < midX ? 0 : 1);
+      Node child = node.children[quad];
+      Node newChild = insert(child, depth + 1,
+          (quad & 1) == 0 ? minX : midX, (quad & 1) == 0 ? midX : maxX,
+          quad < 2 ? minY : midY, quad < 2 ? midY : maxY, item, x, y);
+      if (newChild == child) {
+        return node;
+      }
+      Node[] children = node.children.clone();
+      children[quad] = newChild;
+      return new Node(children, null, node.count + 1, node.mask | FilteredIndex.getMask(item),
+          node.sumX + x, node.sumY + y, Double.NaN, Double.NaN);
+    }
+
+    Object[] items = node.items;
+    for (Object other : items) {
+      if (other.equals(item)) {
+        return node;
+      }
+    }
+    Object[] newItems = Arrays.copyOf(items, items.length + 1);
+    newItems[items.length] = item;
+    if (node.isBucket() && isCoincident(x, y, node.bucketX, node.bucketY)) {
+      return new Node(null, newItems, newItems.length, node.mask | FilteredIndex.getMask(item),
+          node.sumX + x, node.sumY + y, node.bucketX, node.bucketY);
+    }
+    return build(newItems, depth, minX, maxX, minY, maxY);
+  }
+
+  /**
+   * Builds a quad holding the given items: a leaf, a bucket if they all share one point, or four
+   * children otherwise.
+   */
+  private Node build(
+      Object[] items, int depth, double minX, double maxX, double minY, double maxY) {
+    int count = items.length;
+    if (count == 0) {
+      return EMPTY;
+    }
+    if (count <= MAX_ELEMENTS || depth >= MAX_DEPTH) {
+      return leaf(items, Double.NaN, Double.NaN);
+    }
+    Point first = ((Item) items[0]).getPoint();
+    if (isBucket(items, first)) {
+      return leaf(items, first.x, first.y);
+    }
+
+    double midX = (minX + maxX) / 2;
+    double midY = (minY + maxY) / 2;
+    byte[] quads = new byte[count];
+    int[] sizes = new int[4];
+    for (int i = 0; i < count; i++) {
+      Point point = ((Item) items[i]).getPoint();
+      int quad = (point.y < midY ? 0 : 2) + (point.x < midX ? 0 : 1);
+      quads[i] = (byte) quad;
+      sizes[quad]++;
+    }
+    Object[][] parts = new Object[4][];
+    for (int quad = 0; quad < 4; quad++) {
+      parts[quad] = sizes[quad] == 0 ? NO_ITEMS : new Object[sizes[quad]];
+      sizes[quad] = 0;
+    }
+    for (int i = 0; i < count; i++) {
+      parts[quads[i]][sizes[quads[i]]++] = items[i];
+    }
+    Node[] children = new Node[4];
+    children[0] = build(parts[0], depth + 1, minX, midX, minY, midY);
+    children[1] = build(parts[1], depth + 1, midX, maxX, minY, midY);
+    children[2] = build(parts[2], depth + 1, minX, midX, midY, maxY);
+    children[3] = build(parts[3], depth + 1, midX, maxX, midY, maxY);
+    return new Node(children, null, count, maskOf(children),
+        children[0].sumX + children[1].sumX + children[2].sumX + children[3].sumX,
+        children[0].sumY + children[1].sumY + children[2].sumY + children[3].sumY,
+        Double.NaN, Double.NaN);
+  }
+
+  /**
+   * @return a leaf holding the given items, with their categories and coordinate sums.
+   */
+  private static Node leaf(Object[] items, double bucketX, double bucketY) {
+    long mask = 0;
+    double sumX = 0;
+    double sumY = 0;
+    for (Object item : items) {
+      Point point = ((Item) item).getPoint();
+      mask |= FilteredIndex.getMask(item);
+      sumX += point.x;
+      sumY += point.y;
+    }
+    return new Node(null, items, items.length, mask, sumX, sumY, bucketX, bucketY);
+  }
+
+  private static long maskOf(Node[] children) {
+    return children[0].mask | children[1].mask | children[2].mask | children[3].mask;
+  }
+
+  private static long maskOf(Object[] items) {
+    long mask = 0;
+    for (Object item : items) {
+      mask |= FilteredIndex.getMask(item);
+    }
+    return mask;
+  }
+
+  private boolean isBucket(Object[] items, Point first) {
+    for (int i = 1; i < items.length; i++) {
+      Point point = ((Item) items[i]).getPoint();
+      if (!isCoincident(point.x, point.y, first.x, first.y)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isCoincident(double x1, double y1, double x2, double y2) {
+    return Math.abs(x1 - x2) <= mBucketToleranceX && Math.abs(y1 - y2) <= mBucketToleranceY;
+  }
+
+  /**
+   * Insert a batch of items. The new version is built from scratch in one pass and published
+   * once, so readers never see half of the batch.
+   */
+  @Override
+  public void addAll(Collection<T> items) {
+    checkWritable();
+    Set<Object> all = new LinkedHashSet<>();
+    collect(mRoot, all);
+    for (T item : items) {
+      Point point = item.getPoint();
+      if (mMinX <= point.x && point.x <= mMaxX && mMinY <= point.y && point.y <= mMaxY) {
+        all.add(item);
+      }
+    }
+    mRoot = build(all.toArray(), 0, mMinX, mMaxX, mMinY, mMaxY);
+  }
+
+  private static void collect(Node node, Collection<Object> results) {
+    if (node.children != null) {
+      for (Node child : node.children) {
+        collect(child, results);
+      }
+    } else {
+      results.addAll(Arrays.asList(node.items));
+    }
+  }
+
+  private static int collect(Node node, Object[] results, int index) {
+    if (node.children != null) {
+      for (Node child : node.children) {
+        index = collect(child, results, index);
+      }
+      return index;
+    }
+    System.arraycopy(node.items, 0, results, index, node.items.length);
+    return index + node.items.length;
+  }
+
+  /**
+   * Remove the given item from the set.
+   *
+   * @return whether the item was removed.
+   */
+  @Override
+  public boolean remove(T item) {
+    checkWritable();
+    Point point = item.getPoint();
+    if (!(mMinX <= point.x && point.x <= mMaxX && mMinY <= point.y && point.y <= mMaxY)) {
+      return false;
+    }
+    Node root = mRoot;
+    Node newRoot = remove(root, mMinX, mMaxX, mMinY, mMaxY, item, point.x, point.y);
+    if (newRoot == root) {
+      return false;
+    }
+    mRoot = newRoot;
+    return true;
+  }
+
+  /**
+   * @return the new version of the quad, or the same one if the item was not found.
+   */
+  private Node remove(
+      Node node, double minX, double maxX, double minY, double maxY, T item, double x, double y) {
+    if (node.children != null) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      int quad = (y < midY ? 0 : 2) + (x < midX ? 0 : 1);
+      Node child = node.children[quad];
+      Node newChild = remove(child,
+          (quad & 1) == 0 ? minX : midX, (quad & 1) == 0 ? midX : maxX,
+          quad < 2 ? minY : midY, quad < 2 ? midY : maxY, item, x, y);
+      if (newChild == child) {
+        return node;
+      }
+      Node[] children = node.children.clone();
+      children[quad] = newChild;
+      int count = node.count - 1;
+      if (count <= MERGE_THRESHOLD) {
+        return collapse(children, count);
+      }
+      return new Node(children, null, count, maskOf(children), node.sumX - x, node.sumY - y,
+          Double.NaN, Double.NaN);
+    }
+
+    Object[] items = node.items;
+    for (int i = 0; i < items.length; i++) {
+      if (items[i].equals(item)) {
+        if (items.length == 1) {
+          return EMPTY;
+        }
+        Object[] newItems = new Object[items.length - 1];
+        System.arraycopy(items, 0, newItems, 0, i);
+        System.arraycopy(items, i + 1, newItems, i, newItems.length - i);
+        return new Node(null, newItems, newItems.length, maskOf(newItems), node.sumX - x,
+            node.sumY - y, node.bucketX, node.bucketY);
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Replace an item with an equal one at another point. If both points fall in the same leaf
+   * only the quads on the path to it are copied, with the item swapped in the leaf; the tree
+   * keeps its shape.
+   *
+   * @return whether the old item was there.
+   */
+  @Override
+  public boolean move(T oldItem, T newItem) {
+    checkWritable();
+    Point from = oldItem.getPoint();
+    Point to = newItem.getPoint();
+    if (!(mMinX <= from.x && from.x <= mMaxX && mMinY <= from.y && from.y <= mMaxY)) {
+      return false;
+    }
+    if (mMinX <= to.x && to.x <= mMaxX && mMinY <= to.y && to.y <= mMaxY) {
+      Node root = mRoot;
+      Node newRoot = move(root, mMinX, mMaxX, mMinY, mMaxY, oldItem, from.x, from.y, newItem,
+          to.x, to.y);
+      if (newRoot != null) {
+        if (newRoot == root) {
+          return false;
+        }
+        mRoot = newRoot;
+        return true;
+      }
+    }
+    if (!remove(oldItem)) {
+      return false;
+    }
+    add(newItem);
+    return true;
+  }
+
+  /**
+   * @return the new version of the quad, the same one if the old item was not found, or null if
+   *     the new point is outside the leaf holding the old one.
+   */
+  private Node move(Node node, double minX, double maxX, double minY, double maxY, T oldItem,
+      double x1, double y1, T newItem, double x2, double y2) {
+    if (node.children != null) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      int quad = (y1 < midY ? 0 : 2) + (x1 < midX ? 0 : 1);
+      if (quad != (y2 < midY ? 0 : 2) + (x2 < midX ? 0 : 1)) {
+        return null;
+      }
+      Node child = node.children[quad];
+      Node newChild = move(child,
+          (quad & 1) == 0 ? minX : midX, (quad & 1) == 0 ? midX : maxX,
+          quad < 2 ? minY : midY, quad < 2 ? midY : maxY, oldItem, x1, y1, newItem, x2, y2);
+      if (newChild == null || newChild == child) {
+        return newChild;
+      }
+      Node[] children = node.children.clone();
+      children[quad] = newChild;
+      return new Node(children, null, node.count, maskOf(children), node.sumX - x1 + x2,
+          node.sumY - y1 + y2, Double.NaN, Double.NaN);
+    }
+
+    if (node.isBucket() && !isCoincident(x2, y2, node.bucketX, node.bucketY)) {
+      // The bucket may have to split.
+      return null;
+    }
+    Object[] items = node.items;
+    for (int i = 0; i < items.length; i++) {
+      if (items[i].equals(oldItem)) {
+        Object[] newItems = items.clone();
+        newItems[i] = newItem;
+        return new Node(null, newItems, newItems.length, maskOf(newItems), node.sumX - x1 + x2,
+            node.sumY - y1 + y2, node.bucketX, node.bucketY);
+      }
+    }
+    return node;
+  }
+
+  /**
+   * @return a leaf holding every item under the given children.
+   */
+  private static Node collapse(Node[] children, int count) {
+    if (count == 0) {
+      return EMPTY;
+    }
+    Object[] items = new Object[count];
+    int index = 0;
+    for (Node child : children) {
+      index = collect(child, items, index);
+    }
+    return leaf(items, Double.NaN, Double.NaN);
+  }
+
+  /**
+   * Removes all points from the quadTree
+   */
+  @Override
+  public void clear() {
+    checkWritable();
+    mRoot = EMPTY;
+  }
+
+  /**
+   * Collapse every quad whose subtree fits in a single leaf.
+   */
+  @Override
+  public void compact() {
+    checkWritable();
+    mRoot = compact(mRoot);
+  }
+
+  private static Node compact(Node node) {
+    if (node.children == null) {
+      return node;
+    }
+    if (node.count <= MAX_ELEMENTS) {
+      return collapse(node.children, node.count);
+    }
+    Node[] children = null;
+    for (int quad = 0; quad < 4; quad++) {
+      Node child = compact(node.children[quad]);
+      if (child != node.children[quad]) {
+        if (children == null) {
+          children = node.children.clone();
+        }
+        children[quad] = child;
+      }
+    }
+    return children == null
+        ? node
+        : new Node(children, null, node.count, node.mask, node.sumX, node.sumY, Double.NaN,
+            Double.NaN);
+  }
+
+  @Override
+  public Stats getStats() {
+    Stats stats = new Stats();
+    collectStats(mRoot, 0, stats);
+    return stats;
+  }
+
+  private static void collectStats(Node node, int depth, Stats stats) {
+    stats.nodeCount++;
+    stats.depth = Math.max(stats.depth, depth);
+    if (node.children != null) {
+      for (Node child : node.children) {
+        collectStats(child, depth + 1, stats);
+      }
+      return;
+    }
+    stats.leafCount++;
+    if (node.count == 0) {
+      stats.emptyLeafCount++;
+    } else {
+      stats.itemCount += node.count;
+    }
+    if (node.isBucket()) {
+      stats.bucketCount++;
+    }
+  }
+
+  /**
+   * Search for all items within a given bounds.
+   */
+  @Override
+  public Collection<T> search(Bounds searchBounds) {
+    final List<T> results = new ArrayList<T>();
+    search(searchBounds.minX, searchBounds.maxX, searchBounds.minY, searchBounds.maxY,
+        new Visitor<T>() {
+          @Override
+          public boolean visit(T item) {
+            return results.add(item);
+          }
+        });
+    return results;
+  }
+
+  /**
+   * Visit all items within the given bounds, in the version of the tree current when the search
+   * starts.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean search(
+      double minX, double maxX, double minY, double maxY, Visitor<? super T> visitor) {
+    return search(
+        mRoot, mMinX, mMaxX, mMinY, mMaxY, minX, maxX, minY, maxY, NO_FILTER, visitor);
+  }
+
+  /**
+   * Visit the items within the given bounds that are in at least one of the given categories,
+   * skipping the quads holding none of them.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean search(double minX, double maxX, double minY, double maxY, long mask,
+      final Visitor<? super T> visitor) {
+    if (mask == NO_FILTER) {
+      // Items in no category aren't shown either.
+      return search(minX, maxX, minY, maxY, new Visitor<T>() {
+        @Override
+        public boolean visit(T item) {
+          return FilteredIndex.getMask(item) == 0 || visitor.visit(item);
+        }
+      });
+    }
+    return search(mRoot, mMinX, mMaxX, mMinY, mMaxY, minX, maxX, minY, maxY, mask, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean search(
+      Node node,
+      double nodeMinX,
+      double nodeMaxX,
+      double nodeMinY,
+      double nodeMaxY,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      long mask,
+      Visitor<? super T> visitor) {
+    if (!(minX < nodeMaxX && nodeMinX < maxX && minY < nodeMaxY && nodeMinY < maxY)) {
+      return true;
+    }
+    if (mask != NO_FILTER && (node.mask & mask) == 0) {
+      // 子树中没有所选类别的条目
+      // None of the items below are in the categories searched for.
+      return true;
+    }
+
+    Node[] children = node.children;
+    if (children != null) {
+      double midX = (nodeMinX + nodeMaxX) / 2;
+      double midY = (nodeMinY + nodeMaxY) / 2;
+      return search(children[0], nodeMinX, midX, nodeMinY, midY, minX, maxX, minY, maxY, mask,
+              visitor)
+          && search(children[1], midX, nodeMaxX, nodeMinY, midY, minX, maxX, minY, maxY, mask,
+              visitor)
+          && search(children[2], nodeMinX, midX, midY, nodeMaxY, minX, maxX, minY, maxY, mask,
+              visitor)
+          && search(children[3], midX, nodeMaxX, midY, nodeMaxY, minX, maxX, minY, maxY, mask,
+              visitor);
+    }
+
+    boolean containsQuad =
+        nodeMinX >= minX && nodeMaxX <= maxX && nodeMinY >= minY && nodeMaxY <= maxY;
+    if (!containsQuad && node.isBucket()) {
+      // Test the bucket's point once rather than every item sharing it.
+      double bucketX = node.bucketX;
+      double bucketY = node.bucketY;
+      if (bucketX + mBucketToleranceX < minX || bucketX - mBucketToleranceX > maxX
+          || bucketY + mBucketToleranceY < minY || bucketY - mBucketToleranceY > maxY) {
+        return true;
+      }
+      containsQuad = minX <= bucketX - mBucketToleranceX && bucketX + mBucketToleranceX <= maxX
+          && minY <= bucketY - mBucketToleranceY && bucketY + mBucketToleranceY <= maxY;
+    }
+    for (Object item : node.items) {
+      if (!containsQuad) {
+        Point point = ((Item) item).getPoint();
+        if (!(minX <= point.x && point.x <= maxX && minY <= point.y && point.y <= maxY)) {
+          continue;
+        }
+      }
+      if (mask != NO_FILTER && (FilteredIndex.getMask(item) & mask) == 0) {
+        continue;
+      }
+      if (!visitor.visit((T) item)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the k items closest to (x, y), expanding quads best-first by their minimum distance to
+   * the point.
+   *
+   * @return up to k items, closest first.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<T> nearest(double x, double y, int k) {
+    final List<T> results = new ArrayList<T>(Math.max(0, Math.min(k, 64)));
+    if (k <= 0) {
+      return results;
+    }
+    DistanceQueue queue = new DistanceQueue();
+    pushQuad(queue, mRoot, x, y, mMinX, mMaxX, mMinY, mMaxY);
+    while (!queue.isEmpty()) {
+      queue.pop();
+      if (queue.topTag == ITEM) {
+        results.add((T) queue.topValue);
+        if (results.size() == k) {
+          break;
+        }
+        continue;
+      }
+      Node node = (Node) queue.topValue;
+      if (node.children != null) {
+        double minX = queue.topMinX;
+        double maxX = queue.topMaxX;
+        double minY = queue.topMinY;
+        double maxY = queue.topMaxY;
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        pushQuad(queue, node.children[0], x, y, minX, midX, minY, midY);
+        pushQuad(queue, node.children[1], x, y, midX, maxX, minY, midY);
+        pushQuad(queue, node.children[2], x, y, minX, midX, midY, maxY);
+        pushQuad(queue, node.children[3], x, y, midX, maxX, midY, maxY);
+      } else {
+        // The items of a bucket are equally close, only the ones still needed are queued.
+        int remaining = node.isBucket() ? k - results.size() : Integer.MAX_VALUE;
+        for (Object item : node.items) {
+          if (remaining-- == 0) {
+            break;
+          }
+          Point point = ((Item) item).getPoint();
+          queue.push(distanceSquared(point.x, point.y, x, y), item, ITEM);
+        }
+      }
+    }
+    return results;
+  }
+
+  private static void pushQuad(
+      DistanceQueue queue,
+      Node node,
+      double x,
+      double y,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY) {
+    if (node.count > 0) {
+      queue.push(DistanceQueue.minDistanceSquared(x, y, minX, maxX, minY, maxY), node, QUAD,
+          minX, maxX, minY, maxY);
+    }
+  }
+
+  @Override
+  public int count(Bounds bounds) {
+    Aggregate aggregate = new Aggregate();
+    aggregate(mRoot, mMinX, mMaxX, mMinY, mMaxY,
+        bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, aggregate);
+    return aggregate.count;
+  }
+
+  @Override
+  public Point centroid(Bounds bounds) {
+    Aggregate aggregate = new Aggregate();
+    aggregate(mRoot, mMinX, mMaxX, mMinY, mMaxY,
+        bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, aggregate);
+    return aggregate.centroid();
+  }
+
+  private void aggregate(
+      Node node,
+      double nodeMinX,
+      double nodeMaxX,
+      double nodeMinY,
+      double nodeMaxY,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      Aggregate result) {
+    if (node.count == 0
+        || !(minX < nodeMaxX && nodeMinX < maxX && minY < nodeMaxY && nodeMinY < maxY)) {
+      return;
+    }
+    if (nodeMinX >= minX && nodeMaxX <= maxX && nodeMinY >= minY && nodeMaxY <= maxY) {
+      result.add(node.count, node.sumX, node.sumY);
+      return;
+    }
+
+    Node[] children = node.children;
+    if (children != null) {
+      double midX = (nodeMinX + nodeMaxX) / 2;
+      double midY = (nodeMinY + nodeMaxY) / 2;
+      aggregate(children[0], nodeMinX, midX, nodeMinY, midY, minX, maxX, minY, maxY, result);
+      aggregate(children[1], midX, nodeMaxX, nodeMinY, midY, minX, maxX, minY, maxY, result);
+      aggregate(children[2], nodeMinX, midX, midY, nodeMaxY, minX, maxX, minY, maxY, result);
+      aggregate(children[3], midX, nodeMaxX, midY, nodeMaxY, minX, maxX, minY, maxY, result);
+      return;
+    }
+
+    if (node.isBucket()) {
+      double bucketX = node.bucketX;
+      double bucketY = node.bucketY;
+      if (bucketX + mBucketToleranceX < minX || bucketX - mBucketToleranceX > maxX
+          || bucketY + mBucketToleranceY < minY || bucketY - mBucketToleranceY > maxY) {
+        return;
+      }
+      if (minX <= bucketX - mBucketToleranceX && bucketX + mBucketToleranceX <= maxX
+          && minY <= bucketY - mBucketToleranceY && bucketY + mBucketToleranceY <= maxY) {
+        result.add(node.count, node.sumX, node.sumY);
+        return;
+      }
+    }
+    for (Object item : node.items) {
+      Point point = ((Item) item).getPoint();
+      if (minX <= point.x && point.x <= maxX && minY <= point.y && point.y <= maxY) {
+        result.add(1, point.x, point.y);
+      }
+    }
+  }
+
+  /**
+   * Search for all items within a given distance of (x, y).
+   */
+  @Override
+  public Collection<T> searchRadius(double x, double y, double radius) {
+    final List<T> results = new ArrayList<T>();
+    searchRadius(x, y, radius, new Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return results.add(item);
+      }
+    });
+    return results;
+  }
+
+  /**
+   * Visit all items within a given distance of (x, y), skipping quads farther than the radius.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean searchRadius(double x, double y, double radius, Visitor<? super T> visitor) {
+    return searchRadius(mRoot, mMinX, mMaxX, mMinY, mMaxY, x, y, radius * radius, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean searchRadius(
+      Node node,
+      double minX,
+      double maxX,
+      double minY,
+      double maxY,
+      double x,
+      double y,
+      double radiusSquared,
+      Visitor<? super T> visitor) {
+    if (DistanceQueue.minDistanceSquared(x, y, minX, maxX, minY, maxY) > radiusSquared) {
+      return true;
+    }
+
+    Node[] children = node.children;
+    if (children != null) {
+      double midX = (minX + maxX) / 2;
+      double midY = (minY + maxY) / 2;
+      return searchRadius(children[0], minX, midX, minY, midY, x, y, radiusSquared, visitor)
+          && searchRadius(children[1], midX, maxX, minY, midY, x, y, radiusSquared, visitor)
+          && searchRadius(children[2], minX, midX, midY, maxY, x, y, radiusSquared, visitor)
+          && searchRadius(children[3], midX, maxX, midY, maxY, x, y, radiusSquared, visitor);
+    }
+
+    boolean containsQuad = false;
+    if (node.isBucket()) {
+      double bucketMinX = node.bucketX - mBucketToleranceX;
+      double bucketMaxX = node.bucketX + mBucketToleranceX;
+      double bucketMinY = node.bucketY - mBucketToleranceY;
+      double bucketMaxY = node.bucketY + mBucketToleranceY;
+      if (DistanceQueue.minDistanceSquared(x, y, bucketMinX, bucketMaxX, bucketMinY, bucketMaxY)
+          > radiusSquared) {
+        return true;
+      }
+      containsQuad =
+          DistanceQueue.maxDistanceSquared(x, y, bucketMinX, bucketMaxX, bucketMinY, bucketMaxY)
+              <= radiusSquared;
+    }
+    for (Object item : node.items) {
+      Point point = ((Item) item).getPoint();
+      if ((containsQuad || distanceSquared(point.x, point.y, x, y) <= radiusSquared)
+          && !visitor.visit((T) item)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkWritable() {
+    if (mFrozen) {
+      throw new UnsupportedOperationException("A quad tree snapshot is read only");
+    }
+  }
+
+  /**
+   * An immutable quad.
+   */
+  private static final class Node {
+    /** The four child quads, or null for a leaf. */
+    final Node[] children;
+
+    /** The items of a leaf, never modified once the node is published. */
+    final Object[] items;
+
+    /** Number of items in this quad and all of its children. */
+    final int count;
+
+    /** The categories of the items in this quad and all of its children, or-ed together. */
+    final long mask;
+
+    /** Sum of the coordinates of the items in this quad and all of its children. */
+    final double sumX;
+    final double sumY;
+
+    /** The shared point of a bucket leaf, NaN for any other quad. */
+    final double bucketX;
+    final double bucketY;
+
+    Node(Node[] children, Object[] items, int count, long mask, double sumX, double sumY,
+        double bucketX, double bucketY) {
+      this.children = children;
+      this.items = items;
+      this.count = count;
+      this.mask = mask;
+      this.sumX = sumX;
+      this.sumY = sumY;
+      this.bucketX = bucketX;
+      this.bucketY = bucketY;
+    }
+
+    boolean isBucket() {
+      return !Double.isNaN(bucketX);
+    }
+  }
+}
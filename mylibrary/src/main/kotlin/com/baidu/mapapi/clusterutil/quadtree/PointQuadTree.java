@@ -16,7 +16,7 @@ import java.util.Set;
  * A quad tree which tracks items with a Point geometry. See http://en.wikipedia.org/wiki/Quadtree
  * for details on the data structure. This class is not thread safe.
  */
-public class PointQuadTree<T extends PointQuadTree.Item> {
+public class PointQuadTree<T extends PointQuadTree.Item> implements QuadTreeIndex<T> {
   public interface Item {
     /**
      * 获取坐标接口
@@ -25,6 +25,31 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
     Point getPoint();
   }
 
+  /**
+   * 带类别的条目
+   * An item in one or more categories, one bit each. {@link FilteredIndex} only shows the items
+   * in the categories it is given, and indexes implementing {@link MaskedSpatialIndex} skip the
+   * quads holding none of them. Items that are not MaskedItems are in every category.
+   */
+  public interface MaskedItem extends Item {
+    /**
+     * @return the categories of the item as a bit mask, fixed while the item is indexed.
+     */
+    long getMask();
+  }
+
+  /**
+   * 搜索回调
+   * Receives the items found by {@link #search(double, double, double, double, Visitor)}.
+   */
+  public interface Visitor<T> {
+    /**
+     * @param item an item inside the search bounds
+     * @return true to continue the search, false to stop it.
+     */
+    boolean visit(T item);
+  }
+
   /**
    * The bounds of this quad.
    */
@@ -38,7 +63,7 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
   /**
    * Maximum number of elements to store in a quad before splitting.
    */
-  private final static int MAX_ELEMENTS = 50;
+  final static int MAX_ELEMENTS = 50;
 
   /**
    * The elements inside this quad, if any.
@@ -48,13 +73,53 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
   /**
    * Maximum depth.
    */
-  private final static int MAX_DEPTH = 40;
+  final static int MAX_DEPTH = 40;
+
+  /**
+   * A quad whose subtree drops to this many items after a removal is collapsed into a leaf. Kept
+   * well below {@link #MAX_ELEMENTS} so a quad does not split and merge on every move.
+   */
+  final static int MERGE_THRESHOLD = MAX_ELEMENTS / 2;
+
+  /**
+   * Items closer than this fraction of the root's width and height are treated as sharing one
+   * point: a leaf holding only such items becomes a bucket, which never splits. In the unit
+   * projection used by the clustering algorithms this is about 4 cm.
+   */
+  final static double BUCKET_TOLERANCE = 1e-9;
+
+  /** Results of a move within one quad tree. */
+  private static final int MOVE_DONE = 0;
+  private static final int MOVE_NOT_FOUND = 1;
+  private static final int MOVE_ELSEWHERE = 2;
+
+  /** {@link DistanceQueue} tags. */
+  static final int QUAD = 0;
+  static final int ITEM = 1;
 
   /**
    * Child quads.
    */
   private List<PointQuadTree<T>> mChildren = null;
 
+  /**
+   * Number of items in this quad and all of its children.
+   */
+  private int mCount;
+
+  /**
+   * Sum of the coordinates of the items in this quad and all of its children.
+   */
+  private double mSumX;
+  private double mSumY;
+
+  /**
+   * The shared point of a bucket leaf, whose items all lie within the bucket tolerance of it.
+   * NaN for any other quad.
+   */
+  private double mBucketX = Double.NaN;
+  private double mBucketY;
+
   /**
    * Creates a new quad tree with specified bounds.
    */
@@ -78,6 +143,7 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
   /**
    * Insert an item.
    */
+  @Override
   public void add(T item) {
     Point point = item.getPoint();
     if (this.mBounds.contains(point.x, point.y)) {
@@ -85,44 +151,200 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
     }
   }
 
-  private void insert(double x, double y, T item) {
+  /**
+   * @return the number of items in the tree.
+   */
+  @Override
+  public int size() {
+    return mCount;
+  }
+
+  private boolean insert(double x, double y, T item) {
     if (this.mChildren != null) {
+      boolean added;
       if (y < mBounds.midY) {
         if (x < mBounds.midX) { // top left
-          mChildren.get(0).insert(x, y, item);
+          added = mChildren.get(0).insert(x, y, item);
         } else { // top right
-          mChildren.get(1).insert(x, y, item);
+          added = mChildren.get(1).insert(x, y, item);
         }
       } else {
         if (x < mBounds.midX) { // bottom left
-          mChildren.get(2).insert(x, y, item);
+          added = mChildren.get(2).insert(x, y, item);
         } else {
-          mChildren.get(3).insert(x, y, item);
+          added = mChildren.get(3).insert(x, y, item);
         }
       }
-      return;
+      if (added) {
+        mCount++;
+        mSumX += x;
+        mSumY += y;
+      }
+      return added;
     }
     if (mItems == null) {
       mItems = new LinkedHashSet<>();
     }
-    mItems.add(item);
-    if (mItems.size() > MAX_ELEMENTS && mDepth < MAX_DEPTH) {
+    if (!mItems.add(item)) {
+      return false;
+    }
+    mCount++;
+    mSumX += x;
+    mSumY += y;
+    if (isBucket() && !isCoincident(x, y, mBucketX, mBucketY)) {
+      // A different point turns the bucket back into an ordinary leaf.
+      mBucketX = Double.NaN;
+    }
+    if (mItems.size() > MAX_ELEMENTS && mDepth < MAX_DEPTH && !makeBucket()) {
       split();
     }
+    return true;
+  }
+
+  private boolean isBucket() {
+    return !Double.isNaN(mBucketX);
   }
 
   /**
-   * Split this quad.
+   * Turns this leaf into a bucket if all of its items share one point, so that hundreds of items
+   * at one address do not split the quad all the way down to {@link #MAX_DEPTH}.
+   *
+   * @return whether this leaf is a bucket.
    */
-  private void split() {
+  private boolean makeBucket() {
+    if (isBucket()) {
+      return true;
+    }
+    Point first = null;
+    for (T item : mItems) {
+      Point point = item.getPoint();
+      if (first == null) {
+        first = point;
+      } else if (!isCoincident(point.x, point.y, first.x, first.y)) {
+        return false;
+      }
+    }
+    mBucketX = first.x;
+    mBucketY = first.y;
+    return true;
+  }
+
+  private boolean isCoincident(double x1, double y1, double x2, double y2) {
+    return Math.abs(x1 - x2) <= bucketToleranceX() && Math.abs(y1 - y2) <= bucketToleranceY();
+  }
+
+  private double bucketToleranceX() {
+    return (mBounds.maxX - mBounds.minX) * Math.scalb(BUCKET_TOLERANCE, mDepth);
+  }
+
+  private double bucketToleranceY() {
+    return (mBounds.maxY - mBounds.minY) * Math.scalb(BUCKET_TOLERANCE, mDepth);
+  }
+
+  /**
+   * Insert a batch of items. The items are sorted in Morton order and the quads are built from
+   * the sorted runs in a single pass, so no quad is split more than once. Items already in the
+   * tree are re-packed together with the new ones, which makes this worthwhile only when the
+   * batch is large compared to the tree.
+   */
+  @Override
+  public void addAll(Collection<T> items) {
+    List<T> all = new ArrayList<T>();
+    collect(all);
+    for (T item : items) {
+      Point point = item.getPoint();
+      if (mBounds.contains(point.x, point.y)) {
+        all.add(item);
+      }
+    }
+
+    int count = all.size();
+    long[] codes = new long[count];
+    for (int i = 0; i < count; i++) {
+      Point point = all.get(i).getPoint();
+      codes[i] =
+          MortonOrder.code(point.x, point.y, mBounds.minX, mBounds.maxX, mBounds.minY, mBounds.maxY);
+    }
+    int[] order = MortonOrder.sort(codes, count);
+    List<T> sorted = new ArrayList<T>(count);
+    for (int i = 0; i < count; i++) {
+      sorted.add(all.get(order[i]));
+    }
+
+    clear();
+    build(sorted, codes, 0, count);
+  }
+
+  /**
+   * Builds this quad from items [lo, hi) of a Morton sorted list.
+   */
+  private void build(List<T> sorted, long[] codes, int lo, int hi) {
+    // Items with the same code are closer than the bucket tolerance, no need to go deeper.
+    if (hi - lo <= MAX_ELEMENTS || codes[lo] == codes[hi - 1]
+        || mDepth >= MAX_DEPTH || mDepth >= MortonOrder.LEVELS) {
+      if (mItems == null) {
+        mItems = new LinkedHashSet<>();
+      }
+      mItems.addAll(sorted.subList(lo, hi));
+      mCount = mItems.size();
+      for (T item : mItems) {
+        mSumX += item.getPoint().x;
+        mSumY += item.getPoint().y;
+      }
+      if (mItems.size() > MAX_ELEMENTS && mDepth < MAX_DEPTH && !makeBucket()) {
+        // Past the resolution of the Morton code, fall back to splitting.
+        split();
+      }
+      return;
+    }
+
+    createChildren();
+
+    int shift = MortonOrder.shift(mDepth);
+    int start = lo;
+    for (int quad = 0; quad < 4; quad++) {
+      int end = MortonOrder.quadrantEnd(codes, start, hi, shift, quad);
+      mChildren.get(quad).build(sorted, codes, start, end);
+      mCount += mChildren.get(quad).mCount;
+      mSumX += mChildren.get(quad).mSumX;
+      mSumY += mChildren.get(quad).mSumY;
+      start = end;
+    }
+  }
+
+  /**
+   * Adds every item in this quad to the given collection.
+   */
+  private void collect(Collection<T> results) {
+    if (mChildren != null) {
+      for (PointQuadTree<T> quad : mChildren) {
+        quad.collect(results);
+      }
+    } else if (mItems != null) {
+      results.addAll(mItems);
+    }
+  }
+
+  private void createChildren() {
     mChildren = new ArrayList<PointQuadTree<T>>(4);
     mChildren.add(new PointQuadTree<T>(mBounds.minX, mBounds.midX, mBounds.minY, mBounds.midY, mDepth + 1));
     mChildren.add(new PointQuadTree<T>(mBounds.midX, mBounds.maxX, mBounds.minY, mBounds.midY, mDepth + 1));
     mChildren.add(new PointQuadTree<T>(mBounds.minX, mBounds.midX, mBounds.midY, mBounds.maxY, mDepth + 1));
     mChildren.add(new PointQuadTree<T>(mBounds.midX, mBounds.maxX, mBounds.midY, mBounds.maxY, mDepth + 1));
+  }
+
+  /**
+   * Split this quad.
+   */
+  private void split() {
+    createChildren();
 
     Set<T> items = mItems;
     mItems = null;
+    mCount = 0;
+    mSumX = 0;
+    mSumY = 0;
+    mBucketX = Double.NaN;
 
     for (T item : items) {
       // re-insert items into child quads.
@@ -135,6 +357,7 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
    *
    * @return whether the item was removed.
    */
+  @Override
   public boolean remove(T item) {
     Point point = item.getPoint();
     if (this.mBounds.contains(point.x, point.y)) {
@@ -146,24 +369,149 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
 
   private boolean remove(double x, double y, T item) {
     if (this.mChildren != null) {
+      boolean removed;
       if (y < mBounds.midY) {
         if (x < mBounds.midX) { // top left
-          return mChildren.get(0).remove(x, y, item);
+          removed = mChildren.get(0).remove(x, y, item);
         } else { // top right
-          return mChildren.get(1).remove(x, y, item);
+          removed = mChildren.get(1).remove(x, y, item);
         }
       } else {
         if (x < mBounds.midX) { // bottom left
-          return mChildren.get(2).remove(x, y, item);
+          removed = mChildren.get(2).remove(x, y, item);
         } else {
-          return mChildren.get(3).remove(x, y, item);
+          removed = mChildren.get(3).remove(x, y, item);
+        }
+      }
+      if (removed) {
+        mCount--;
+        mSumX -= x;
+        mSumY -= y;
+        if (mCount <= MERGE_THRESHOLD) {
+          collapse();
         }
       }
+      return removed;
     } else {
-      if (mItems == null) {
+      if (mItems == null || !mItems.remove(item)) {
         return false;
+      }
+      mCount--;
+      mSumX -= x;
+      mSumY -= y;
+      return true;
+    }
+  }
+
+  /**
+   * Replace an item with an equal one at another point, in place if both points fall in the same
+   * leaf.
+   *
+   * @return whether the old item was there.
+   */
+  @Override
+  public boolean move(T oldItem, T newItem) {
+    Point from = oldItem.getPoint();
+    Point to = newItem.getPoint();
+    if (mBounds.contains(from.x, from.y) && mBounds.contains(to.x, to.y)) {
+      int moved = move(from.x, from.y, oldItem, to.x, to.y, newItem);
+      if (moved != MOVE_ELSEWHERE) {
+        return moved == MOVE_DONE;
+      }
+    }
+    if (!remove(oldItem)) {
+      return false;
+    }
+    add(newItem);
+    return true;
+  }
+
+  /**
+   * @return MOVE_DONE, MOVE_NOT_FOUND, or MOVE_ELSEWHERE if the new point leaves the leaf.
+   */
+  private int move(double x1, double y1, T oldItem, double x2, double y2, T newItem) {
+    if (mChildren != null) {
+      int quad = (y1 < mBounds.midY ? 0 : 2) + (x1 < mBounds.midX ? 0 : 1);
+      if (quad != (y2 < mBounds.midY ? 0 : 2) + (x2 < mBounds.midX ? 0 : 1)) {
+        return MOVE_ELSEWHERE;
+      }
+      int moved = mChildren.get(quad).move(x1, y1, oldItem, x2, y2, newItem);
+      if (moved == MOVE_DONE) {
+        mSumX += x2 - x1;
+        mSumY += y2 - y1;
+      }
+      return moved;
+    }
+    if (isBucket() && !isCoincident(x2, y2, mBucketX, mBucketY)) {
+      // The bucket may have to split.
+      return MOVE_ELSEWHERE;
+    }
+    if (mItems == null || !mItems.remove(oldItem)) {
+      return MOVE_NOT_FOUND;
+    }
+    mItems.add(newItem);
+    mSumX += x2 - x1;
+    mSumY += y2 - y1;
+    return MOVE_DONE;
+  }
+
+  /**
+   * Merge all child quads back into this one.
+   */
+  private void collapse() {
+    Set<T> items = new LinkedHashSet<>();
+    collect(items);
+    mChildren = null;
+    mItems = items.isEmpty() ? null : items;
+    mBucketX = Double.NaN;
+  }
+
+  /**
+   * Collapse every quad whose subtree fits in a single leaf and release empty leaves' item sets.
+   * Removals already collapse quads that drop well below the split threshold; this also catches
+   * quads that are only slightly under it.
+   */
+  @Override
+  public void compact() {
+    if (mChildren != null) {
+      if (mCount <= MAX_ELEMENTS) {
+        collapse();
+      } else {
+        for (int i = 0; i < 4; i++) {
+          mChildren.get(i).compact();
+        }
+      }
+    } else if (mItems != null && mItems.isEmpty()) {
+      mItems = null;
+    }
+  }
+
+  /**
+   * @return the current shape of the tree, to check that churn does not degrade it.
+   */
+  @Override
+  public Stats getStats() {
+    Stats stats = new Stats();
+    collectStats(stats);
+    return stats;
+  }
+
+  private void collectStats(Stats stats) {
+    stats.nodeCount++;
+    stats.depth = Math.max(stats.depth, mDepth);
+    if (mChildren != null) {
+      for (int i = 0; i < 4; i++) {
+        mChildren.get(i).collectStats(stats);
+      }
+    } else {
+      stats.leafCount++;
+      if (mItems == null || mItems.isEmpty()) {
+        stats.emptyLeafCount++;
       } else {
-        return mItems.remove(item);
+        stats.itemCount += mItems.size();
+      }
+      if (isBucket()) {
+        stats.bucketCount++;
       }
     }
   }
@@ -171,8 +519,13 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
   /**
    * Removes all points from the quadTree
    */
+  @Override
   public void clear() {
     mChildren = null;
+    mCount = 0;
+    mSumX = 0;
+    mSumY = 0;
+    mBucketX = Double.NaN;
     if (mItems != null) {
       mItems.clear();
     }
@@ -181,13 +534,247 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
   /**
    * Search for all items within a given bounds.
    */
+  @Override
   public Collection<T> search(Bounds searchBounds) {
     final List<T> results = new ArrayList<T>();
     search(searchBounds, results);
     return results;
   }
 
-  private void search(Bounds searchBounds, Collection<T> results) {
+  /**
+   * Visit all items within the given bounds, without collecting them. Quads are walked without
+   * allocating; only iterating a leaf's item set may allocate, use {@link PackedPointQuadTree}
+   * when that matters.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean search(
+      double minX, double maxX, double minY, double maxY, Visitor<? super T> visitor) {
+    if (!mBounds.intersects(minX, maxX, minY, maxY)) {
+      return true;
+    }
+
+    if (this.mChildren != null) {
+      for (int i = 0; i < 4; i++) {
+        if (!mChildren.get(i).search(minX, maxX, minY, maxY, visitor)) {
+          return false;
+        }
+      }
+    } else if (mItems != null) {
+      boolean containsQuad =
+          mBounds.minX >= minX && mBounds.maxX <= maxX
+              && mBounds.minY >= minY && mBounds.maxY <= maxY;
+      if (isBucket() && !containsQuad) {
+        // Test the bucket's point once rather than every item sharing it.
+        double toleranceX = bucketToleranceX();
+        double toleranceY = bucketToleranceY();
+        if (mBucketX + toleranceX < minX || mBucketX - toleranceX > maxX
+            || mBucketY + toleranceY < minY || mBucketY - toleranceY > maxY) {
+          return true;
+        }
+        containsQuad = minX <= mBucketX - toleranceX && mBucketX + toleranceX <= maxX
+            && minY <= mBucketY - toleranceY && mBucketY + toleranceY <= maxY;
+      }
+      for (T item : mItems) {
+        Point point = item.getPoint();
+        if (containsQuad
+            || (minX <= point.x && point.x <= maxX && minY <= point.y && point.y <= maxY)) {
+          if (!visitor.visit(item)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Counts the items within the given bounds. Quads inside the bounds answer from the number of
+   * items they hold, so only the quads crossing the edge of the bounds are searched.
+   */
+  @Override
+  public int count(Bounds bounds) {
+    Aggregate aggregate = new Aggregate();
+    aggregate(bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, aggregate);
+    return aggregate.count;
+  }
+
+  /**
+   * The mean position of the items within the given bounds, found like {@link #count(Bounds)}
+   * from the coordinate sums the quads keep.
+   *
+   * @return the centroid, or null if no item is inside the bounds.
+   */
+  @Override
+  public Point centroid(Bounds bounds) {
+    Aggregate aggregate = new Aggregate();
+    aggregate(bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, aggregate);
+    return aggregate.centroid();
+  }
+
+  /**
+   * Adds up the items within the given bounds into {@code result}.
+   */
+  private void aggregate(double minX, double maxX, double minY, double maxY, Aggregate result) {
+    if (!mBounds.intersects(minX, maxX, minY, maxY)) {
+      return;
+    }
+    if (mBounds.minX >= minX && mBounds.maxX <= maxX
+        && mBounds.minY >= minY && mBounds.maxY <= maxY) {
+      result.add(mCount, mSumX, mSumY);
+      return;
+    }
+
+    if (this.mChildren != null) {
+      for (int i = 0; i < 4; i++) {
+        mChildren.get(i).aggregate(minX, maxX, minY, maxY, result);
+      }
+    } else if (mItems != null) {
+      if (isBucket()) {
+        double toleranceX = bucketToleranceX();
+        double toleranceY = bucketToleranceY();
+        if (mBucketX + toleranceX < minX || mBucketX - toleranceX > maxX
+            || mBucketY + toleranceY < minY || mBucketY - toleranceY > maxY) {
+          return;
+        }
+        if (minX <= mBucketX - toleranceX && mBucketX + toleranceX <= maxX
+            && minY <= mBucketY - toleranceY && mBucketY + toleranceY <= maxY) {
+          result.add(mCount, mSumX, mSumY);
+          return;
+        }
+      }
+      for (T item : mItems) {
+        Point point = item.getPoint();
+        if (minX <= point.x && point.x <= maxX && minY <= point.y && point.y <= maxY) {
+          result.add(1, point.x, point.y);
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the k items closest to (x, y). Quads are expanded best-first by their minimum distance to
+   * the point, so only quads that can still hold one of the k closest items are visited.
+   *
+   * @return up to k items, closest first.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<T> nearest(double x, double y, int k) {
+    final List<T> results = new ArrayList<T>(Math.max(0, Math.min(k, 64)));
+    if (k <= 0) {
+      return results;
+    }
+    DistanceQueue queue = new DistanceQueue();
+    queue.push(minDistanceSquared(x, y), this, QUAD);
+    while (!queue.isEmpty()) {
+      queue.pop();
+      if (queue.topTag == ITEM) {
+        results.add((T) queue.topValue);
+        if (results.size() == k) {
+          break;
+        }
+        continue;
+      }
+      PointQuadTree<T> quad = (PointQuadTree<T>) queue.topValue;
+      if (quad.mChildren != null) {
+        for (int i = 0; i < 4; i++) {
+          PointQuadTree<T> child = quad.mChildren.get(i);
+          queue.push(child.minDistanceSquared(x, y), child, QUAD);
+        }
+      } else if (quad.mItems != null) {
+        // The items of a bucket are equally close, only the ones still needed are queued.
+        int remaining = quad.isBucket() ? k - results.size() : Integer.MAX_VALUE;
+        for (T item : quad.mItems) {
+          if (remaining-- == 0) {
+            break;
+          }
+          Point point = item.getPoint();
+          queue.push(distanceSquared(point.x, point.y, x, y), item, ITEM);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Search for all items within a given distance of (x, y).
+   */
+  @Override
+  public Collection<T> searchRadius(double x, double y, double radius) {
+    final List<T> results = new ArrayList<T>();
+    searchRadius(x, y, radius, new Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return results.add(item);
+      }
+    });
+    return results;
+  }
+
+  /**
+   * Visit all items within a given distance of (x, y). Quads farther than the radius from the
+   * point are skipped, even when they intersect the circle's bounding box.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  @Override
+  public boolean searchRadius(double x, double y, double radius, Visitor<? super T> visitor) {
+    double radiusSquared = radius * radius;
+    if (minDistanceSquared(x, y) > radiusSquared) {
+      return true;
+    }
+
+    if (this.mChildren != null) {
+      for (int i = 0; i < 4; i++) {
+        if (!mChildren.get(i).searchRadius(x, y, radius, visitor)) {
+          return false;
+        }
+      }
+    } else if (mItems != null) {
+      boolean containsQuad = false;
+      if (isBucket()) {
+        double minX = mBucketX - bucketToleranceX();
+        double maxX = mBucketX + bucketToleranceX();
+        double minY = mBucketY - bucketToleranceY();
+        double maxY = mBucketY + bucketToleranceY();
+        if (DistanceQueue.minDistanceSquared(x, y, minX, maxX, minY, maxY) > radiusSquared) {
+          return true;
+        }
+        containsQuad =
+            DistanceQueue.maxDistanceSquared(x, y, minX, maxX, minY, maxY) <= radiusSquared;
+      }
+      for (T item : mItems) {
+        Point point = item.getPoint();
+        if ((containsQuad || distanceSquared(point.x, point.y, x, y) <= radiusSquared)
+            && !visitor.visit(item)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return null, readers of a mutable quad tree must hold the writers' lock; see
+   *     {@link PersistentPointQuadTree} for a tree that can be read without it.
+   */
+  @Override
+  public SpatialIndex<T> snapshot() {
+    return null;
+  }
+
+  private double minDistanceSquared(double x, double y) {
+    return DistanceQueue.minDistanceSquared(
+        x, y, mBounds.minX, mBounds.maxX, mBounds.minY, mBounds.maxY);
+  }
+
+  static double distanceSquared(double x1, double y1, double x2, double y2) {
+    return (x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2);
+  }
+
+  private void search(Bounds searchBounds, final Collection<T> results) {
     if (!mBounds.intersects(searchBounds)) {
       return;
     }
@@ -197,7 +784,15 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
         quad.search(searchBounds, results);
       }
     } else if (mItems != null) {
-      if (searchBounds.contains(mBounds)) {
+      if (isBucket() && !searchBounds.contains(mBounds)) {
+        search(searchBounds.minX, searchBounds.maxX, searchBounds.minY, searchBounds.maxY,
+            new Visitor<T>() {
+              @Override
+              public boolean visit(T item) {
+                return results.add(item);
+              }
+            });
+      } else if (searchBounds.contains(mBounds)) {
         results.addAll(mItems);
       } else {
         for (T item : mItems) {
@@ -208,4 +803,54 @@ public class PointQuadTree<T extends PointQuadTree.Item> {
       }
     }
   }
+
+  /**
+   * Number of items and sum of their coordinates, collected by {@link #aggregate}.
+   */
+  static final class Aggregate {
+    int count;
+    double sumX;
+    double sumY;
+
+    void add(int count, double sumX, double sumY) {
+      this.count += count;
+      this.sumX += sumX;
+      this.sumY += sumY;
+    }
+
+    Point centroid() {
+      return count == 0 ? null : new Point(sumX / count, sumY / count);
+    }
+  }
+
+  /**
+   * 四叉树统计信息
+   * A snapshot of the shape of a quad tree.
+   */
+  public static class Stats {
+    /** Depth of the deepest quad, the root being 0. */
+    public int depth;
+    /** Number of quads, including the root. */
+    public int nodeCount;
+    /** Number of quads without children. */
+    public int leafCount;
+    /** Number of leaves holding no item. */
+    public int emptyLeafCount;
+    /** Number of items stored in the leaves. */
+    public int itemCount;
+    /** Number of leaves whose items all share one point. */
+    public int bucketCount;
+
+    @Override
+    public String toString() {
+      return "Stats{"
+          + "depth=" + depth
+          + ", nodeCount=" + nodeCount
+          + ", leafCount=" + leafCount
+          + ", emptyLeafCount=" + emptyLeafCount
+          + ", itemCount=" + itemCount
+          + ", bucketCount=" + bucketCount
+          + '}';
+    }
+  }
 }
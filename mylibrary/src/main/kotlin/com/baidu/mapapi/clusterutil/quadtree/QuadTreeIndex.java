@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+
+/**
+ * 四叉树索引接口
+ * A {@link SpatialIndex} built as a quad tree whose quads keep the number and coordinate sums of
+ * the items below them. Implemented by {@link PointQuadTree}, {@link PackedPointQuadTree} and
+ * {@link PersistentPointQuadTree}, which split, bucket and collapse quads with the same
+ * thresholds.
+ */
+public interface QuadTreeIndex<T extends PointQuadTree.Item> extends SpatialIndex<T> {
+
+  /**
+   * Counts the items within the given bounds. Quads inside the bounds answer from the number of
+   * items they hold, so only the quads crossing the edge of the bounds are searched.
+   */
+  int count(Bounds bounds);
+
+  /**
+   * The mean position of the items within the given bounds, found like {@link #count(Bounds)}
+   * from the coordinate sums the quads keep.
+   *
+   * @return the centroid, or null if no item is inside the bounds.
+   */
+  Point centroid(Bounds bounds);
+
+  /**
+   * Collapse every quad whose subtree fits in a single leaf and release what empty quads hold.
+   */
+  void compact();
+
+  /**
+   * @return the current shape of the tree, to check that churn does not degrade it.
+   */
+  PointQuadTree.Stats getStats();
+}
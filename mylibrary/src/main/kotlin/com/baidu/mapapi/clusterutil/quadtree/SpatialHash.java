@@ -0,0 +1,519 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import com.baidu.mapapi.clusterutil.collections.LongIntMap;
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 均匀网格空间哈希
+ * A uniform grid of square cells, only storing the cells that hold items. A cell is found by its
+ * column and row packed into a {@code long} and looked up in a {@link LongIntMap}, so a search
+ * costs a few array reads per cell it overlaps, however dense the data is around it.
+ *
+ * <p>Pick a cell about as large as the searches made most often; for the clustering algorithms
+ * that is the clustering span, {@code maxDistance / 2^zoom / 256} in the unit projection, at the
+ * zoom levels the map is used at. Much smaller cells make large searches visit many cells, much
+ * larger ones make small searches scan many items.
+ *
+ * <p>Items are not checked for duplicates, the clustering algorithms keep their items unique
+ * already. This class is not thread safe.
+ *
+ * <p>Cells keep no category masks, so a {@link FilteredIndex} tests the items of every cell
+ * searched one at a time.
+ */
+public class SpatialHash<T extends PointQuadTree.Item> implements SpatialIndex<T> {
+
+  private static final int NONE = -1;
+
+  private static final int INITIAL_CELL_CAPACITY = 64;
+
+  private static final int INITIAL_ITEM_CAPACITY = 256;
+
+  private final double mCellSize;
+
+  /** Cell key to cell index. */
+  private final LongIntMap mCellIndex = new LongIntMap();
+
+  /** First item slot of a cell, or the next free cell for unused cells. */
+  private int[] mCellHead = new int[INITIAL_CELL_CAPACITY];
+
+  private int[] mCellItems = new int[INITIAL_CELL_CAPACITY];
+
+  private int[] mCellX = new int[INITIAL_CELL_CAPACITY];
+
+  private int[] mCellY = new int[INITIAL_CELL_CAPACITY];
+
+  private int mCellCount;
+
+  private int mFreeCell = NONE;
+
+  /** The range of cells that have held items, searches never look outside of it. */
+  private int mMinCellX = Integer.MAX_VALUE;
+  private int mMaxCellX = Integer.MIN_VALUE;
+  private int mMinCellY = Integer.MAX_VALUE;
+  private int mMaxCellY = Integer.MIN_VALUE;
+
+  private Object[] mItems = new Object[INITIAL_ITEM_CAPACITY];
+
+  private double[] mItemX = new double[INITIAL_ITEM_CAPACITY];
+
+  private double[] mItemY = new double[INITIAL_ITEM_CAPACITY];
+
+  /** Next slot in the same cell, or the next free slot for removed items. */
+  private int[] mItemNext = new int[INITIAL_ITEM_CAPACITY];
+
+  private int mItemCount;
+
+  private int mFreeItem = NONE;
+
+  private int mSize;
+
+  /**
+   * @param cellSize width and height of a cell, in the items' coordinates
+   */
+  public SpatialHash(double cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+    }
+    mCellSize = cellSize;
+  }
+
+  public double getCellSize() {
+    return mCellSize;
+  }
+
+  @Override
+  public void add(T item) {
+    Point point = item.getPoint();
+    int cellX = cell(point.x);
+    int cellY = cell(point.y);
+    int cell = cellFor(cellX, cellY);
+    int slot = allocItem(item, point.x, point.y);
+    mItemNext[slot] = mCellHead[cell];
+    mCellHead[cell] = slot;
+    mCellItems[cell]++;
+    mSize++;
+  }
+
+  /**
+   * Adds the items cell by cell, so the items of a cell sit next to each other in memory and a
+   * search walks them in order.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void addAll(Collection<T> items) {
+    Object[] array = items.toArray();
+    int[] cells = new int[array.length];
+    for (int i = 0; i < array.length; i++) {
+      Point point = ((T) array[i]).getPoint();
+      cells[i] = cellFor(cell(point.x), cell(point.y));
+    }
+    // Counting sort by cell into fresh slots at the end of the arrays.
+    int[] offsets = new int[mCellCount + 1];
+    for (int cell : cells) {
+      offsets[cell + 1]++;
+    }
+    for (int cell = 0; cell < mCellCount; cell++) {
+      offsets[cell + 1] += offsets[cell];
+    }
+    ensureItemCapacity(mItemCount + array.length);
+    int base = mItemCount;
+    mItemCount += array.length;
+    for (int i = 0; i < array.length; i++) {
+      T item = (T) array[i];
+      int cell = cells[i];
+      int slot = base + offsets[cell]++;
+      mItems[slot] = item;
+      mItemX[slot] = item.getPoint().x;
+      mItemY[slot] = item.getPoint().y;
+      mItemNext[slot] = mCellHead[cell];
+      mCellHead[cell] = slot;
+      mCellItems[cell]++;
+    }
+    mSize += array.length;
+  }
+
+  /**
+   * Swaps the item in place if both points share a cell.
+   */
+  @Override
+  public boolean move(T oldItem, T newItem) {
+    Point from = oldItem.getPoint();
+    Point to = newItem.getPoint();
+    if (cell(from.x) == cell(to.x) && cell(from.y) == cell(to.y)) {
+      int cell = mCellIndex.get(key(cell(from.x), cell(from.y)), NONE);
+      if (cell == NONE) {
+        return false;
+      }
+      for (int slot = mCellHead[cell]; slot != NONE; slot = mItemNext[slot]) {
+        if (mItems[slot].equals(oldItem)) {
+          mItems[slot] = newItem;
+          mItemX[slot] = to.x;
+          mItemY[slot] = to.y;
+          return true;
+        }
+      }
+      return false;
+    }
+    if (!remove(oldItem)) {
+      return false;
+    }
+    add(newItem);
+    return true;
+  }
+
+  @Override
+  public boolean remove(T item) {
+    Point point = item.getPoint();
+    long key = key(cell(point.x), cell(point.y));
+    int cell = mCellIndex.get(key, NONE);
+    if (cell == NONE) {
+      return false;
+    }
+    int previous = NONE;
+    for (int slot = mCellHead[cell]; slot != NONE; slot = mItemNext[slot]) {
+      if (mItems[slot].equals(item)) {
+        if (previous == NONE) {
+          mCellHead[cell] = mItemNext[slot];
+        } else {
+          mItemNext[previous] = mItemNext[slot];
+        }
+        freeItem(slot);
+        mSize--;
+        if (--mCellItems[cell] == 0) {
+          mCellIndex.remove(key);
+          mCellHead[cell] = mFreeCell;
+          mFreeCell = cell;
+        }
+        return true;
+      }
+      previous = slot;
+    }
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    mCellIndex.clear();
+    mCellCount = 0;
+    mFreeCell = NONE;
+    mMinCellX = Integer.MAX_VALUE;
+    mMaxCellX = Integer.MIN_VALUE;
+    mMinCellY = Integer.MAX_VALUE;
+    mMaxCellY = Integer.MIN_VALUE;
+    Arrays.fill(mItems, 0, mItemCount, null);
+    mItemCount = 0;
+    mFreeItem = NONE;
+    mSize = 0;
+  }
+
+  @Override
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @return null, readers must hold the writers' lock.
+   */
+  @Override
+  public SpatialIndex<T> snapshot() {
+    return null;
+  }
+
+  @Override
+  public Collection<T> search(Bounds searchBounds) {
+    final List<T> results = new ArrayList<T>();
+    search(searchBounds.minX, searchBounds.maxX, searchBounds.minY, searchBounds.maxY,
+        new PointQuadTree.Visitor<T>() {
+          @Override
+          public boolean visit(T item) {
+            return results.add(item);
+          }
+        });
+    return results;
+  }
+
+  @Override
+  public boolean search(double minX, double maxX, double minY, double maxY,
+      PointQuadTree.Visitor<? super T> visitor) {
+    if (mSize == 0 || !(minX <= maxX && minY <= maxY)) {
+      return true;
+    }
+    int fromX = Math.max(cell(minX), mMinCellX);
+    int toX = Math.min(cell(maxX), mMaxCellX);
+    int fromY = Math.max(cell(minY), mMinCellY);
+    int toY = Math.min(cell(maxY), mMaxCellY);
+    if (fromX > toX || fromY > toY) {
+      return true;
+    }
+    if ((long) (toX - fromX + 1) * (toY - fromY + 1) > mCellIndex.size()) {
+      // Fewer cells hold items than the search covers, go through those instead.
+      for (int i = 0; i < mCellIndex.capacity(); i++) {
+        if (mCellIndex.keyAt(i) != LongIntMap.NO_KEY) {
+          int cell = mCellIndex.valueAt(i);
+          if (fromX <= mCellX[cell] && mCellX[cell] <= toX
+              && fromY <= mCellY[cell] && mCellY[cell] <= toY
+              && !searchCell(cell, minX, maxX, minY, maxY, visitor)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    for (int cellY = fromY; cellY <= toY; cellY++) {
+      for (int cellX = fromX; cellX <= toX; cellX++) {
+        int cell = mCellIndex.get(key(cellX, cellY), NONE);
+        if (cell != NONE && !searchCell(cell, minX, maxX, minY, maxY, visitor)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean searchCell(int cell, double minX, double maxX, double minY, double maxY,
+      PointQuadTree.Visitor<? super T> visitor) {
+    double cellMinX = mCellX[cell] * mCellSize;
+    double cellMinY = mCellY[cell] * mCellSize;
+    boolean containsCell = minX <= cellMinX && cellMinX + mCellSize <= maxX
+        && minY <= cellMinY && cellMinY + mCellSize <= maxY;
+    for (int slot = mCellHead[cell]; slot != NONE; slot = mItemNext[slot]) {
+      if ((containsCell
+              || (minX <= mItemX[slot] && mItemX[slot] <= maxX
+                  && minY <= mItemY[slot] && mItemY[slot] <= maxY))
+          && !visitor.visit((T) mItems[slot])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<T> nearest(double x, double y, int k) {
+    k = Math.min(k, mSize);
+    final List<T> results = new ArrayList<T>(Math.max(0, k));
+    if (k <= 0) {
+      return results;
+    }
+    Neighbours neighbours = new Neighbours(k);
+    long centerX = cellOf(x);
+    long centerY = cellOf(y);
+    // Walk square rings of cells outwards until no closer item can be left.
+    for (long ring = 0; ; ring++) {
+      double reach = (ring - 1) * mCellSize;
+      if (ring > 0 && reach > 0 && neighbours.worst() <= reach * reach) {
+        break;
+      }
+      if (centerX - ring + 1 <= mMinCellX && mMaxCellX <= centerX + ring - 1
+          && centerY - ring + 1 <= mMinCellY && mMaxCellY <= centerY + ring - 1) {
+        // Every cell has been looked at.
+        break;
+      }
+      if ((2 * ring + 1) * (2 * ring + 1) > 4L * mCellIndex.size() + 64) {
+        // The rings are now mostly empty, look at the remaining cells directly.
+        for (int i = 0; i < mCellIndex.capacity(); i++) {
+          if (mCellIndex.keyAt(i) != LongIntMap.NO_KEY) {
+            int cell = mCellIndex.valueAt(i);
+            if (Math.max(Math.abs(mCellX[cell] - centerX), Math.abs(mCellY[cell] - centerY))
+                >= ring) {
+              nearestInCell(cell, x, y, neighbours);
+            }
+          }
+        }
+        break;
+      }
+      if (ring == 0) {
+        nearestInCell(centerX, centerY, x, y, neighbours);
+        continue;
+      }
+      for (long cellX = centerX - ring; cellX <= centerX + ring; cellX++) {
+        nearestInCell(cellX, centerY - ring, x, y, neighbours);
+        nearestInCell(cellX, centerY + ring, x, y, neighbours);
+      }
+      for (long cellY = centerY - ring + 1; cellY < centerY + ring; cellY++) {
+        nearestInCell(centerX - ring, cellY, x, y, neighbours);
+        nearestInCell(centerX + ring, cellY, x, y, neighbours);
+      }
+    }
+    for (int slot : neighbours.sorted()) {
+      results.add((T) mItems[slot]);
+    }
+    return results;
+  }
+
+  private void nearestInCell(long cellX, long cellY, double x, double y, Neighbours neighbours) {
+    if (cellX < mMinCellX || cellX > mMaxCellX || cellY < mMinCellY || cellY > mMaxCellY) {
+      return;
+    }
+    int cell = mCellIndex.get(key((int) cellX, (int) cellY), NONE);
+    if (cell != NONE) {
+      nearestInCell(cell, x, y, neighbours);
+    }
+  }
+
+  private void nearestInCell(int cell, double x, double y, Neighbours neighbours) {
+    double cellMinX = mCellX[cell] * mCellSize;
+    double cellMinY = mCellY[cell] * mCellSize;
+    if (DistanceQueue.minDistanceSquared(
+            x, y, cellMinX, cellMinX + mCellSize, cellMinY, cellMinY + mCellSize)
+        >= neighbours.worst()) {
+      return;
+    }
+    for (int slot = mCellHead[cell]; slot != NONE; slot = mItemNext[slot]) {
+      neighbours.offer(PointQuadTree.distanceSquared(mItemX[slot], mItemY[slot], x, y), slot);
+    }
+  }
+
+  @Override
+  public Collection<T> searchRadius(double x, double y, double radius) {
+    final List<T> results = new ArrayList<T>();
+    searchRadius(x, y, radius, new PointQuadTree.Visitor<T>() {
+      @Override
+      public boolean visit(T item) {
+        return results.add(item);
+      }
+    });
+    return results;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean searchRadius(
+      double x, double y, double radius, PointQuadTree.Visitor<? super T> visitor) {
+    if (mSize == 0) {
+      return true;
+    }
+    int fromX = Math.max(cell(x - radius), mMinCellX);
+    int toX = Math.min(cell(x + radius), mMaxCellX);
+    int fromY = Math.max(cell(y - radius), mMinCellY);
+    int toY = Math.min(cell(y + radius), mMaxCellY);
+    double radiusSquared = radius * radius;
+    for (int cellY = fromY; cellY <= toY; cellY++) {
+      for (int cellX = fromX; cellX <= toX; cellX++) {
+        int cell = mCellIndex.get(key(cellX, cellY), NONE);
+        if (cell == NONE) {
+          continue;
+        }
+        double cellMinX = cellX * mCellSize;
+        double cellMinY = cellY * mCellSize;
+        double cellMaxX = cellMinX + mCellSize;
+        double cellMaxY = cellMinY + mCellSize;
+        if (DistanceQueue.minDistanceSquared(x, y, cellMinX, cellMaxX, cellMinY, cellMaxY)
+            > radiusSquared) {
+          continue;
+        }
+        boolean containsCell =
+            DistanceQueue.maxDistanceSquared(x, y, cellMinX, cellMaxX, cellMinY, cellMaxY)
+                <= radiusSquared;
+        for (int slot = mCellHead[cell]; slot != NONE; slot = mItemNext[slot]) {
+          if ((containsCell
+                  || PointQuadTree.distanceSquared(mItemX[slot], mItemY[slot], x, y)
+                      <= radiusSquared)
+              && !visitor.visit((T) mItems[slot])) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private int cell(double coordinate) {
+    return (int) cellOf(coordinate);
+  }
+
+  /**
+   * @return the column or row of a coordinate, clamped to the int range.
+   */
+  private long cellOf(double coordinate) {
+    return (long) Math.max(Integer.MIN_VALUE + 1,
+        Math.min(Integer.MAX_VALUE, Math.floor(coordinate / mCellSize)));
+  }
+
+  /**
+   * Packs a cell's column and row into a map key.
+   */
+  static long key(int cellX, int cellY) {
+    return ((long) cellX << 32) | (cellY & 0xffffffffL);
+  }
+
+  /**
+   * @return the index of a cell, which is created if it holds no items yet.
+   */
+  private int cellFor(int cellX, int cellY) {
+    long key = key(cellX, cellY);
+    int cell = mCellIndex.get(key, NONE);
+    if (cell == NONE) {
+      cell = allocCell(cellX, cellY);
+      mCellIndex.put(key, cell);
+    }
+    return cell;
+  }
+
+  private int allocCell(int cellX, int cellY) {
+    int cell;
+    if (mFreeCell != NONE) {
+      cell = mFreeCell;
+      mFreeCell = mCellHead[cell];
+    } else {
+      if (mCellCount == mCellHead.length) {
+        int capacity = mCellCount * 2;
+        mCellHead = Arrays.copyOf(mCellHead, capacity);
+        mCellItems = Arrays.copyOf(mCellItems, capacity);
+        mCellX = Arrays.copyOf(mCellX, capacity);
+        mCellY = Arrays.copyOf(mCellY, capacity);
+      }
+      cell = mCellCount++;
+    }
+    mCellHead[cell] = NONE;
+    mCellItems[cell] = 0;
+    mCellX[cell] = cellX;
+    mCellY[cell] = cellY;
+    mMinCellX = Math.min(mMinCellX, cellX);
+    mMaxCellX = Math.max(mMaxCellX, cellX);
+    mMinCellY = Math.min(mMinCellY, cellY);
+    mMaxCellY = Math.max(mMaxCellY, cellY);
+    return cell;
+  }
+
+  private int allocItem(T item, double x, double y) {
+    int slot;
+    if (mFreeItem != NONE) {
+      slot = mFreeItem;
+      mFreeItem = mItemNext[slot];
+    } else {
+      ensureItemCapacity(mItemCount + 1);
+      slot = mItemCount++;
+    }
+    mItems[slot] = item;
+    mItemX[slot] = x;
+    mItemY[slot] = y;
+    return slot;
+  }
+
+  private void ensureItemCapacity(int capacity) {
+    if (capacity > mItems.length) {
+      capacity = Math.max(capacity, mItems.length * 2);
+      mItems = Arrays.copyOf(mItems, capacity);
+      mItemX = Arrays.copyOf(mItemX, capacity);
+      mItemY = Arrays.copyOf(mItemY, capacity);
+      mItemNext = Arrays.copyOf(mItemNext, capacity);
+    }
+  }
+
+  private void freeItem(int slot) {
+    mItems[slot] = null;
+    mItemNext[slot] = mFreeItem;
+    mFreeItem = slot;
+  }
+}
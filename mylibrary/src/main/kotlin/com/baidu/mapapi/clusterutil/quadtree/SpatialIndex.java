@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Baidu, Inc. All Rights Reserved.
+ */
+
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 空间索引接口
+ * A set of items with a point geometry that can be searched by area and by distance. Implemented
+ * by {@link PointQuadTree} and its variants for data that changes, by {@link KdTree} for data
+ * loaded in bulk and then only read, and by {@link SpatialHash} for fixed size searches.
+ */
+public interface SpatialIndex<T extends PointQuadTree.Item> {
+
+  /**
+   * Insert an item.
+   */
+  void add(T item);
+
+  /**
+   * Insert a batch of items, usually faster than adding them one by one.
+   */
+  void addAll(Collection<T> items);
+
+  /**
+   * Remove the given item from the set.
+   *
+   * @return whether the item was removed.
+   */
+  boolean remove(T item);
+
+  /**
+   * Replace an item with an equal one at another point, such as the same object with a new
+   * position. Where both points fall in the same leaf the item is swapped in place, otherwise it
+   * is removed and inserted again.
+   *
+   * @return whether the old item was there; the new one is only added if so.
+   */
+  boolean move(T oldItem, T newItem);
+
+  /**
+   * Removes all items.
+   */
+  void clear();
+
+  /**
+   * @return the number of items in the index.
+   */
+  int size();
+
+  /**
+   * Search for all items within a given bounds.
+   */
+  Collection<T> search(Bounds searchBounds);
+
+  /**
+   * Visit all items within the given bounds, without collecting them.
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  boolean search(
+      double minX, double maxX, double minY, double maxY, PointQuadTree.Visitor<? super T> visitor);
+
+  /**
+   * Find the k items closest to (x, y).
+   *
+   * @return up to k items, closest first.
+   */
+  List<T> nearest(double x, double y, int k);
+
+  /**
+   * Search for all items within a given distance of (x, y).
+   */
+  Collection<T> searchRadius(double x, double y, double radius);
+
+  /**
+   * Visit all items within a given distance of (x, y).
+   *
+   * @return false if the visitor stopped the search early, true otherwise.
+   */
+  boolean searchRadius(double x, double y, double radius, PointQuadTree.Visitor<? super T> visitor);
+
+  /**
+   * @return a read only view of the current items that later writes do not change, or null if
+   *     the index cannot take one cheaply; readers must then hold the writers' lock while they
+   *     search.
+   */
+  SpatialIndex<T> snapshot();
+}
@@ -0,0 +1,58 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.CategoryFilterTest.randomItems;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.CategoryFilterTest.TestItem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times switching categories with {@link Algorithm#getClusters(double, long)} against reloading
+ * the items in them. Run with {@code -Pbenchmark}.
+ */
+public class CategoryFilterBenchmark {
+
+  @Test
+  public void switchCategories() {
+    List<TestItem> items = randomItems(new Random(167), 300_000);
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> reloaded =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    long[] toggles = {0xfff, 0xffe, 0x001, 0x007, 0x0f0, 0xfff};
+    for (int run = 0; run < 2; run++) {
+      long filterTime = 0;
+      long reloadTime = 0;
+      for (long categories : toggles) {
+        long start = System.nanoTime();
+        int filterClusters = algorithm.getClusters(10, categories).size();
+        filterTime += System.nanoTime() - start;
+
+        // What switching categories took before: reload the items in them.
+        List<TestItem> shown = new ArrayList<>();
+        for (TestItem item : items) {
+          if ((item.getCategories() & categories) != 0) {
+            shown.add(item);
+          }
+        }
+        start = System.nanoTime();
+        reloaded.clearItems();
+        reloaded.addItems(shown);
+        int reloadClusters = reloaded.getClusters(10).size();
+        reloadTime += System.nanoTime() - start;
+        if (run == 1) {
+          System.out.printf("categories %03x: %d items, filter %d clusters, reload %d clusters%n",
+              categories, shown.size(), filterClusters, reloadClusters);
+        }
+      }
+      if (run == 1) {
+        System.out.printf("%d items, %d switches at zoom 10: filter %d ms, clear and reload %d "
+                + "ms%n", items.size(), toggles.length, filterTime / 1_000_000,
+            reloadTime / 1_000_000);
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.CategorizedClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.quadtree.PackedPointQuadTree;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that clustering by category shows exactly the items in the categories asked for, with
+ * and without quads that know their categories, and in the algorithms that cluster the shown
+ * items only.
+ */
+public class CategoryFilterTest {
+
+  private static final int CATEGORIES = 12;
+
+  @Test
+  public void showsOnlyItemsInCategories() {
+    List<TestItem> items = randomItems(new Random(163), 40_000);
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> pruned =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> filtered =
+        new NonHierarchicalDistanceBasedAlgorithm<>(
+            new PackedPointQuadTree<NonHierarchicalDistanceBasedAlgorithm.QuadItem<TestItem>>(
+                0, 1, 0, 1));
+    GridBasedAlgorithm<TestItem> grid = new GridBasedAlgorithm<>();
+    HierarchicalDistanceBasedAlgorithm<TestItem> hierarchical =
+        new HierarchicalDistanceBasedAlgorithm<>();
+    IncrementalDistanceBasedAlgorithm<TestItem> incremental =
+        new IncrementalDistanceBasedAlgorithm<>();
+    pruned.addItems(items);
+    filtered.addItems(items);
+    grid.addItems(items);
+    hierarchical.addItems(items);
+    incremental.addItems(items);
+
+    for (long categories : new long[] {1, 0b1010_0000_0110, 0xfff, 0, Algorithm.ALL_CATEGORIES}) {
+      Set<TestItem> expected = new HashSet<>();
+      for (TestItem item : items) {
+        if (categories == Algorithm.ALL_CATEGORIES || (item.mCategories & categories) != 0) {
+          expected.add(item);
+        }
+      }
+      for (int zoom : new int[] {4, 10}) {
+        Set<? extends Cluster<TestItem>> clusters = pruned.getClusters(zoom, categories);
+        assertEquals(expected, itemsOf(clusters));
+        // Pruning whole quads and testing each item make the same clusters.
+        assertEquals(clusters, filtered.getClusters(zoom, categories));
+        assertEquals(expected, itemsOf(grid.getClusters(zoom, categories)));
+        assertEquals(expected, itemsOf(hierarchical.getClusters(zoom, categories)));
+        // The shown items keep their order, so they are seeded as in the other pass.
+        assertEquals(itemSets(clusters), itemSets(incremental.getClusters(zoom, categories)));
+      }
+    }
+
+    // Items added in a category not shown stay out of the clusters.
+    List<TestItem> hidden = new ArrayList<>();
+    for (TestItem item : randomItems(new Random(167), 200)) {
+      hidden.add(new TestItem(
+          item.getPosition().latitude, item.getPosition().longitude, item.mCategories & ~1L));
+    }
+    Set<TestItem> shown = itemsOf(incremental.getClusters(10, 1));
+    incremental.addItems(hidden);
+    assertEquals(shown, itemsOf(incremental.getClusters(10, 1)));
+    hierarchical.addItems(hidden);
+    hierarchical.awaitBuild();
+    assertEquals(shown, itemsOf(hierarchical.getClusters(10, 1)));
+
+    // Back to the categories of the first pass, and the result is stamped for them.
+    Set<? extends Cluster<TestItem>> first = pruned.getClusters(10, 1);
+    assertTrue(pruned.getClusters(10, 1) == first);
+    assertTrue(!first.equals(pruned.getClusters(10, 2)));
+  }
+
+  private static Set<TestItem> itemsOf(Set<? extends Cluster<TestItem>> clusters) {
+    Set<TestItem> items = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      for (TestItem item : cluster.getItems()) {
+        assertTrue(items.add(item));
+      }
+    }
+    return items;
+  }
+
+  private static Set<Set<TestItem>> itemSets(Set<? extends Cluster<TestItem>> clusters) {
+    Set<Set<TestItem>> sets = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      sets.add(new HashSet<>(cluster.getItems()));
+    }
+    return sets;
+  }
+
+  static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      // Each category around a city of its own, a few items in two categories.
+      int category = random.nextInt(CATEGORIES);
+      long categories = 1L << category;
+      if (i % 20 == 0) {
+        categories |= 1L << random.nextInt(CATEGORIES);
+      }
+      items.add(new TestItem(20 + (category % 4) * 4 + random.nextGaussian() * 2,
+          105 + (category / 4) * 5 + random.nextGaussian() * 2, categories));
+    }
+    return items;
+  }
+
+  static class TestItem implements CategorizedClusterItem {
+    private final LatLng mPosition;
+    private final long mCategories;
+
+    TestItem(double lat, double lng, long categories) {
+      mPosition = new LatLng(lat, lng);
+      mCategories = categories;
+    }
+
+    @Override
+    public long getCategories() {
+      return mCategories;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.ClusterReducer;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that every algorithm hands out the values of its reducers with its clusters, equal to
+ * reducing the items of each cluster afterwards.
+ */
+public class ClusterReducerTest {
+
+  private static final ClusterReducer<TestItem, Integer> TICKETS =
+      new ClusterReducer<TestItem, Integer>() {
+        @Override
+        public Integer map(TestItem item) {
+          return item.mTickets;
+        }
+
+        @Override
+        public Integer accumulate(Integer value, TestItem item) {
+          return value + item.mTickets;
+        }
+
+        @Override
+        public Integer combine(Integer a, Integer b) {
+          return a + b;
+        }
+      };
+
+  private static final ClusterReducer<ClusterItem, Integer> MAX_SEVERITY =
+      new ClusterReducer<ClusterItem, Integer>() {
+        @Override
+        public Integer map(ClusterItem item) {
+          return ((TestItem) item).mSeverity;
+        }
+
+        @Override
+        public Integer accumulate(Integer value, ClusterItem item) {
+          return Math.max(value, ((TestItem) item).mSeverity);
+        }
+
+        @Override
+        public Integer combine(Integer a, Integer b) {
+          return Math.max(a, b);
+        }
+      };
+
+  @Test
+  public void algorithmsReduceClusters() {
+    List<TestItem> items = randomItems(new Random(137), 60_000);
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> parallel =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    parallel.setParallel(true);
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> centroid =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    centroid.setCenterMode(StaticCluster.CenterMode.CENTROID);
+    List<Algorithm<TestItem>> algorithms = new ArrayList<>();
+    algorithms.add(new NonHierarchicalDistanceBasedAlgorithm<TestItem>());
+    algorithms.add(parallel);
+    algorithms.add(centroid);
+    algorithms.add(new GridBasedAlgorithm<TestItem>());
+    algorithms.add(new HierarchicalDistanceBasedAlgorithm<TestItem>());
+    algorithms.add(new IncrementalDistanceBasedAlgorithm<TestItem>());
+    algorithms.add(new PreCachingAlgorithmDecorator<>(
+        new NonHierarchicalDistanceBasedAlgorithm<TestItem>()));
+
+    for (Algorithm<TestItem> algorithm : algorithms) {
+      algorithm.addItems(items);
+      // Clusters found before the reducers were added are not kept.
+      algorithm.getClusters(7);
+      algorithm.addReducer(TICKETS);
+      algorithm.addReducer(MAX_SEVERITY);
+      awaitBuild(algorithm);
+      for (int zoom : new int[] {5, 9}) {
+        assertReduced(algorithm.getClusters(zoom), true);
+      }
+      // Items leaving clusters are reduced again.
+      algorithm.removeItems(items.subList(0, 5_000));
+      algorithm.addItems(randomItems(new Random(139), 2_000));
+      awaitBuild(algorithm);
+      assertReduced(algorithm.getClusters(9), true);
+
+      algorithm.removeReducer(TICKETS);
+      awaitBuild(algorithm);
+      for (Cluster<TestItem> cluster : algorithm.getClusters(9)) {
+        assertNull(cluster.getReducedValue(TICKETS));
+      }
+      assertReduced(algorithm.getClusters(9), false);
+    }
+  }
+
+  /** The hierarchical algorithm serves its last hierarchy until the rebuild ends. */
+  private static void awaitBuild(Algorithm<TestItem> algorithm) {
+    if (algorithm instanceof HierarchicalDistanceBasedAlgorithm) {
+      ((HierarchicalDistanceBasedAlgorithm<TestItem>) algorithm).awaitBuild();
+    }
+  }
+
+  private static void assertReduced(Set<? extends Cluster<TestItem>> clusters, boolean tickets) {
+    assertTrue(!clusters.isEmpty());
+    for (Cluster<TestItem> cluster : clusters) {
+      int sum = 0;
+      int max = Integer.MIN_VALUE;
+      for (TestItem item : cluster.getItems()) {
+        sum += item.mTickets;
+        max = Math.max(max, item.mSeverity);
+      }
+      if (tickets) {
+        assertEquals(Integer.valueOf(sum), cluster.getReducedValue(TICKETS));
+      }
+      assertEquals(Integer.valueOf(max), cluster.getReducedValue(MAX_SEVERITY));
+    }
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (LatLng position : TestItems.randomPositions(random, count)) {
+      items.add(new TestItem(position.latitude, position.longitude,
+          random.nextInt(20), random.nextInt(5)));
+    }
+    return items;
+  }
+
+  private static class TestItem implements ClusterItem {
+    private final LatLng mPosition;
+    private final int mTickets;
+    private final int mSeverity;
+
+    TestItem(double lat, double lng, int tickets, int severity) {
+      mPosition = new LatLng(lat, lng);
+      mTickets = tickets;
+      mSeverity = severity;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.FootprintBasedAlgorithmTest.CLUSTER_SIZE;
+import static com.baidu.mapapi.clusterutil.clustering.algo.FootprintBasedAlgorithmTest.overlaps;
+import static com.baidu.mapapi.clusterutil.clustering.algo.FootprintBasedAlgorithmTest.randomItems;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.algo.FootprintBasedAlgorithmTest.TestItem;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Compares how many markers {@link FootprintBasedAlgorithm} draws, how many of them overlap and
+ * how long it takes with {@link NonHierarchicalDistanceBasedAlgorithm}. Run with
+ * {@code -Pbenchmark}.
+ */
+public class FootprintBasedAlgorithmBenchmark {
+
+  @Test
+  public void againstDistanceBased() {
+    List<TestItem> items = randomItems(new Random(139), 200_000);
+    FootprintBasedAlgorithm<TestItem> footprint = new FootprintBasedAlgorithm<>(2);
+    footprint.setClusterSize(CLUSTER_SIZE, CLUSTER_SIZE);
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> distance =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    footprint.addItems(items);
+    distance.addItems(items);
+    for (int run = 0; run < 2; run++) {
+      for (int zoom : new int[] {6, 10, 14}) {
+        long start = System.nanoTime();
+        Set<? extends Cluster<TestItem>> distanceClusters = distance.getClusters(zoom);
+        long distanceTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        Set<? extends Cluster<TestItem>> footprintClusters = footprint.getClusters(zoom);
+        long footprintTime = System.nanoTime() - start;
+        if (run == 1) {
+          System.out.printf("%d items, zoom %d: distance %d markers (%d overlapping pairs) in %d "
+                  + "ms, footprint %d markers (%d overlapping pairs) in %d ms%n", items.size(),
+              zoom, distanceClusters.size(), overlaps(distanceClusters, zoom),
+              distanceTime / 1_000_000, footprintClusters.size(),
+              overlaps(footprintClusters, zoom), footprintTime / 1_000_000);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.SizedClusterItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that the markers of {@link FootprintBasedAlgorithm} never overlap and hold every item
+ * once.
+ */
+public class FootprintBasedAlgorithmTest {
+
+  private static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
+  static final int CLUSTER_SIZE = 40;
+
+  @Test
+  public void markersDontOverlap() {
+    List<TestItem> items = randomItems(new Random(137), 40_000);
+    FootprintBasedAlgorithm<TestItem> algorithm = new FootprintBasedAlgorithm<>(2);
+    algorithm.setClusterSize(CLUSTER_SIZE, CLUSTER_SIZE);
+    algorithm.addItems(items);
+
+    for (int zoom = 3; zoom <= 18; zoom += 3) {
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(zoom);
+      Set<TestItem> seen = new HashSet<>();
+      for (Cluster<TestItem> cluster : clusters) {
+        assertEquals(cluster.getSize(), cluster.getItems().size());
+        for (TestItem item : cluster.getItems()) {
+          assertTrue(seen.add(item));
+        }
+      }
+      assertEquals(new HashSet<>(items), seen);
+      assertEquals(0, overlaps(clusters, zoom));
+      // Zoomed in far enough, every item gets its own marker.
+      if (zoom == 18) {
+        assertTrue(clusters.size() > items.size() * 9 / 10);
+      }
+    }
+  }
+
+  /** @return the number of pairs of markers whose icons overlap, found by a sweep along x. */
+  static int overlaps(Set<? extends Cluster<TestItem>> clusters, int zoom) {
+    double unit = 1 / Math.pow(2, zoom) / 256;
+    // Boxes as min x, max x, min y, max y.
+    double[][] boxes = new double[clusters.size()][];
+    double maxWidth = 0;
+    int i = 0;
+    for (Cluster<TestItem> cluster : clusters) {
+      Point point = PROJECTION.toPoint(cluster.getPosition());
+      int width = CLUSTER_SIZE;
+      int height = CLUSTER_SIZE;
+      if (cluster.getSize() == 1) {
+        TestItem item = cluster.getItems().iterator().next();
+        width = item.getMarkerWidth();
+        height = item.getMarkerHeight();
+      }
+      boxes[i++] = new double[] {point.x - width * unit / 2, point.x + width * unit / 2,
+          point.y - height * unit, point.y};
+      maxWidth = Math.max(maxWidth, width * unit);
+    }
+    Arrays.sort(boxes, new Comparator<double[]>() {
+      @Override
+      public int compare(double[] a, double[] b) {
+        return Double.compare(a[0], b[0]);
+      }
+    });
+    int overlaps = 0;
+    for (int a = 0; a < boxes.length; a++) {
+      for (int b = a + 1; b < boxes.length && boxes[b][0] < boxes[a][0] + maxWidth; b++) {
+        // Allow for rounding, the algorithm measures from the anchor.
+        double slack = unit * 1e-6;
+        if (boxes[b][0] < boxes[a][1] - slack && boxes[a][0] < boxes[b][1] - slack
+            && boxes[b][2] < boxes[a][3] - slack && boxes[a][2] < boxes[b][3] - slack) {
+          overlaps++;
+        }
+      }
+    }
+    return overlaps;
+  }
+
+  static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (LatLng position : TestItems.randomPositions(random, count)) {
+      // Of a few icon sizes.
+      items.add(new TestItem(
+          position.latitude, position.longitude, 24 + 12 * random.nextInt(4)));
+    }
+    return items;
+  }
+
+  static class TestItem implements SizedClusterItem {
+    private final LatLng mPosition;
+    private final int mSize;
+
+    TestItem(double lat, double lng, int size) {
+      mPosition = new LatLng(lat, lng);
+      mSize = size;
+    }
+
+    @Override
+    public int getMarkerWidth() {
+      return mSize;
+    }
+
+    @Override
+    public int getMarkerHeight() {
+      return mSize + 8;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
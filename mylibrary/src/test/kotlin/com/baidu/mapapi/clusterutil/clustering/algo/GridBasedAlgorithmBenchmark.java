@@ -0,0 +1,43 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times {@link GridBasedAlgorithm} serial and parallel on a million items. Run with
+ * {@code -Pbenchmark}.
+ */
+public class GridBasedAlgorithmBenchmark {
+
+  private static final int BENCHMARK_ITEMS = 1_000_000;
+
+  @Test
+  public void serialAndParallel() {
+    List<TestItem> items = randomItems(new Random(61), BENCHMARK_ITEMS);
+    GridBasedAlgorithm<TestItem> serial = new GridBasedAlgorithm<>();
+    GridBasedAlgorithm<TestItem> parallel = new GridBasedAlgorithm<>(true);
+    serial.addItems(items);
+    parallel.addItems(items);
+    for (int zoom : new int[] {3, 10}) {
+      for (int run = 0; run < 3; run++) {
+        long start = System.nanoTime();
+        int serialClusters = serial.getClusters(zoom).size();
+        long serialTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        int parallelClusters = parallel.getClusters(zoom).size();
+        long parallelTime = System.nanoTime() - start;
+        assertEquals(serialClusters, parallelClusters);
+        if (run == 2) {
+          System.out.printf("GridBasedAlgorithm, %d items, zoom %d: %d clusters, serial %d ms, "
+                  + "parallel %d ms%n", items.size(), zoom, serialClusters,
+              serialTime / 1_000_000, parallelTime / 1_000_000);
+        }
+      }
+    }
+  }
+}
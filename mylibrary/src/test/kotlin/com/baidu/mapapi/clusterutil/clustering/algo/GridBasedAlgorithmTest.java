@@ -0,0 +1,64 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.model.LatLng;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks {@link GridBasedAlgorithm} against grouping the items by cell directly, serial and
+ * parallel. {@link GridBasedAlgorithmBenchmark} times both.
+ */
+public class GridBasedAlgorithmTest {
+
+  @Test
+  public void clustersMatchCells() {
+    List<TestItem> items = randomItems(new Random(59), 120_000);
+    GridBasedAlgorithm<TestItem> serial = new GridBasedAlgorithm<>();
+    GridBasedAlgorithm<TestItem> parallel = new GridBasedAlgorithm<>(true);
+    serial.addItems(items);
+    parallel.addItems(items);
+
+    for (int zoom = 0; zoom <= 12; zoom += 3) {
+      Set<? extends Cluster<TestItem>> clusters = serial.getClusters(zoom);
+      assertEquals(clusters, parallel.getClusters(zoom));
+
+      long numCells = (long) Math.ceil(256 * Math.pow(2, zoom) / 100);
+      SphericalMercatorProjection proj = new SphericalMercatorProjection(numCells);
+      Map<LatLng, Set<TestItem>> cells = new HashMap<>();
+      for (TestItem item : items) {
+        Point point = proj.toPoint(item.getPosition());
+        LatLng center =
+            proj.toLatLng(new Point(Math.floor(point.x) + .5, Math.floor(point.y) + .5));
+        Set<TestItem> cell = cells.get(center);
+        if (cell == null) {
+          cell = new HashSet<>();
+          cells.put(center, cell);
+        }
+        cell.add(item);
+      }
+      assertEquals(cells.size(), clusters.size());
+      int total = 0;
+      for (Cluster<TestItem> cluster : clusters) {
+        assertEquals(cells.get(cluster.getPosition()), new HashSet<>(cluster.getItems()));
+        total += cluster.getSize();
+      }
+      assertEquals(items.size(), total);
+    }
+
+    serial.clearItems();
+    assertTrue(serial.getClusters(5).isEmpty());
+  }
+}
@@ -0,0 +1,81 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.model.LatLng;
+import com.baidu.mapapi.model.LatLngBounds;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times {@link HierarchicalDistanceBasedAlgorithm} lookups, whole and fractional zoom, against
+ * clustering again with {@link NonHierarchicalDistanceBasedAlgorithm}. Run with
+ * {@code -Pbenchmark}.
+ */
+public class HierarchicalDistanceBasedAlgorithmBenchmark {
+
+  private static final int BENCHMARK_ITEMS = 200_000;
+
+  @Test
+  public void lookupsAgainstReclustering() {
+    List<TestItem> items = randomItems(new Random(79), BENCHMARK_ITEMS);
+    LatLngBounds viewport = new LatLngBounds.Builder()
+        .include(new LatLng(18, 108)).include(new LatLng(22, 114)).build();
+    for (int run = 0; run < 2; run++) {
+      long start = System.nanoTime();
+      HierarchicalDistanceBasedAlgorithm<TestItem> hierarchical =
+          new HierarchicalDistanceBasedAlgorithm<>();
+      hierarchical.addItems(items);
+      hierarchical.getClusters(HierarchicalDistanceBasedAlgorithm.MIN_ZOOM);
+      long build = System.nanoTime() - start;
+      NonHierarchicalDistanceBasedAlgorithm<TestItem> flat =
+          new NonHierarchicalDistanceBasedAlgorithm<>();
+      flat.addItems(items);
+      for (int zoom : new int[] {5, 10, 15}) {
+        start = System.nanoTime();
+        int flatClusters = flat.getClusters(zoom).size();
+        long flatTime = System.nanoTime() - start;
+        hierarchical.setVisibleBounds(null);
+        start = System.nanoTime();
+        int worldClusters = hierarchical.getClusters(zoom).size();
+        long worldTime = System.nanoTime() - start;
+        hierarchical.setVisibleBounds(viewport);
+        start = System.nanoTime();
+        int viewportClusters = hierarchical.getClusters(zoom).size();
+        long viewportTime = System.nanoTime() - start;
+        if (run == 1) {
+          System.out.printf("%d items, zoom %d: non hierarchical %d clusters in %d ms, "
+                  + "hierarchical %d clusters in %.2f ms, viewport %d clusters in %.3f ms%n",
+              items.size(), zoom, flatClusters, flatTime / 1_000_000, worldClusters,
+              worldTime / 1e6, viewportClusters, viewportTime / 1e6);
+        }
+      }
+      // A pinch zoom from 10 to 12, one query a frame.
+      hierarchical.setVisibleBounds(viewport);
+      long pinchTime = 0;
+      int frames = 0;
+      for (double zoom = 10; zoom <= 12; zoom += 0.05) {
+        start = System.nanoTime();
+        hierarchical.getClusters(zoom);
+        pinchTime += System.nanoTime() - start;
+        frames++;
+      }
+      // The non hierarchical algorithm only changes its clusters at whole levels.
+      start = System.nanoTime();
+      for (int zoom = 10; zoom <= 12; zoom++) {
+        flat.getClusters(zoom);
+      }
+      long reclusterTime = System.nanoTime() - start;
+      if (run == 1) {
+        System.out.printf("%d items, pinch zoom 10 to 12: viewport at fractional zoom %.3f ms "
+                + "a frame, non hierarchical recluster %.1f ms a level%n", items.size(),
+            pinchTime / 1e6 / frames, reclusterTime / 1e6 / 3);
+        System.out.printf("%d items: hierarchy of %d levels built in %d ms%n", items.size(),
+            HierarchicalDistanceBasedAlgorithm.MAX_ZOOM + 2
+                - HierarchicalDistanceBasedAlgorithm.MIN_ZOOM, build / 1_000_000);
+      }
+    }
+  }
+}
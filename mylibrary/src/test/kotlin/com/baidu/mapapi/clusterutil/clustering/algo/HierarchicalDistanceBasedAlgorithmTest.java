@@ -0,0 +1,205 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.model.LatLng;
+import com.baidu.mapapi.model.LatLngBounds;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Checks that every level of {@link HierarchicalDistanceBasedAlgorithm} holds each item once,
+ * and that viewport lookups and rebuilds return the right clusters.
+ */
+public class HierarchicalDistanceBasedAlgorithmTest {
+
+  @Test
+  public void levelsPartitionItems() {
+    List<TestItem> items = randomItems(new Random(67), 30_000);
+    HierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new HierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+
+    int[] counts = algorithm.getClusterCounts();
+    assertEquals(items.size(), counts[counts.length - 1]);
+    int previous = 0;
+    for (int zoom = HierarchicalDistanceBasedAlgorithm.MIN_ZOOM;
+        zoom <= HierarchicalDistanceBasedAlgorithm.MAX_ZOOM + 1; zoom++) {
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(zoom);
+      int clusterCount = counts[zoom - HierarchicalDistanceBasedAlgorithm.MIN_ZOOM];
+      assertEquals(clusterCount, clusters.size());
+      // Zooming in only ever splits clusters.
+      assertTrue(clusterCount >= previous);
+      previous = clusterCount;
+      Set<TestItem> seen = new HashSet<>();
+      for (Cluster<TestItem> cluster : clusters) {
+        assertEquals(cluster.getSize(), cluster.getItems().size());
+        for (TestItem item : cluster.getItems()) {
+          assertTrue(seen.add(item));
+        }
+      }
+      assertEquals(new HashSet<>(items), seen);
+    }
+    // Lower zoom levels share the clusters of MIN_ZOOM.
+    assertEquals(counts[0], algorithm.getClusters(0).size());
+  }
+
+  @Test
+  public void viewportAndRebuild() {
+    List<TestItem> items = randomItems(new Random(71), 20_000);
+    HierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new HierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    Set<? extends Cluster<TestItem>> world = algorithm.getClusters(8);
+
+    LatLngBounds bounds = new LatLngBounds.Builder()
+        .include(new LatLng(15, 100)).include(new LatLng(25, 115)).build();
+    algorithm.setVisibleBounds(bounds);
+    Set<Cluster<TestItem>> expected = new HashSet<>();
+    for (Cluster<TestItem> cluster : world) {
+      if (bounds.contains(cluster.getPosition())) {
+        expected.add(cluster);
+      }
+    }
+    assertTrue(!expected.isEmpty());
+    assertEquals(expected, algorithm.getClusters(8));
+
+    algorithm.setVisibleBounds(null);
+    List<TestItem> added = randomItems(new Random(73), 1_000);
+    for (TestItem item : added) {
+      algorithm.addItem(item);
+    }
+    algorithm.removeItem(items.get(0));
+    algorithm.awaitBuild();
+    int total = 0;
+    for (Cluster<TestItem> cluster : algorithm.getClusters(8)) {
+      total += cluster.getSize();
+    }
+    assertEquals(items.size() + added.size() - 1, total);
+
+    algorithm.clearItems();
+    algorithm.awaitBuild();
+    assertTrue(algorithm.getClusters(8).isEmpty());
+  }
+
+  @Test
+  public void removalKeepsOtherClusters() {
+    List<TestItem> items = randomItems(new Random(197), 20_000);
+    HierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new HierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    Set<? extends Cluster<TestItem>> beforeClusters = algorithm.getClusters(8);
+    Set<Set<TestItem>> before = itemSets(beforeClusters);
+
+    // The others keep their place in the seeding order, so only clusters near it change.
+    algorithm.removeItem(items.get(1_000));
+    algorithm.awaitBuild();
+    Set<? extends Cluster<TestItem>> afterClusters = algorithm.getClusters(8);
+    Set<Set<TestItem>> after = itemSets(afterClusters);
+    after.removeAll(before);
+    assertTrue(after.size() < 10);
+    // The clusters of the new build equal the old ones they match, so a renderer keeps them.
+    Set<Cluster<TestItem>> changed = new HashSet<Cluster<TestItem>>(afterClusters);
+    changed.removeAll(beforeClusters);
+    assertTrue(changed.size() < 10);
+  }
+
+  @Test
+  public void listenerToldOfRebuilds() throws InterruptedException {
+    List<TestItem> items = randomItems(new Random(199), 20_000);
+    HierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new HierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    assertEquals(items.size(), itemCount(algorithm.getClusters(10)));
+    final Semaphore told = new Semaphore(0);
+    algorithm.setOnClustersChangedListener(new Algorithm.OnClustersChangedListener() {
+      @Override
+      public void onClustersChanged() {
+        told.release();
+      }
+    });
+
+    // Like the cluster manager: no awaitBuild(), the clusters are asked for again when told.
+    List<TestItem> added = randomItems(new Random(211), 500);
+    algorithm.addItems(added);
+    algorithm.getClusters(10);
+    int count;
+    do {
+      assertTrue(told.tryAcquire(30, TimeUnit.SECONDS));
+      count = itemCount(algorithm.getClusters(10));
+    } while (count != items.size() + added.size());
+
+    algorithm.setOnClustersChangedListener(null);
+    // The first build may have told it too.
+    told.drainPermits();
+    algorithm.removeItem(items.get(0));
+    algorithm.awaitBuild();
+    assertTrue(!told.tryAcquire(100, TimeUnit.MILLISECONDS));
+  }
+
+  private static int itemCount(Set<? extends Cluster<TestItem>> clusters) {
+    int count = 0;
+    for (Cluster<TestItem> cluster : clusters) {
+      count += cluster.getSize();
+    }
+    return count;
+  }
+
+  @Test
+  public void fractionalZoom() {
+    List<TestItem> items = randomItems(new Random(151), 30_000);
+    HierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new HierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+
+    int previous = 0;
+    for (double zoom = 8; zoom < 10; zoom += 0.125) {
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(zoom);
+      Set<TestItem> seen = new HashSet<>();
+      for (Cluster<TestItem> cluster : clusters) {
+        assertEquals(cluster.getSize(), cluster.getItems().size());
+        for (TestItem item : cluster.getItems()) {
+          assertTrue(seen.add(item));
+        }
+      }
+      assertEquals(new HashSet<>(items), seen);
+      // Clusters split a few at a time while zooming in.
+      assertTrue(clusters.size() >= previous);
+      previous = clusters.size();
+    }
+    assertTrue(previous <= algorithm.getClusters(10).size());
+    assertTrue(algorithm.getClusters(8.5).size() > algorithm.getClusters(8).size());
+
+    LatLngBounds bounds = new LatLngBounds.Builder()
+        .include(new LatLng(15, 100)).include(new LatLng(25, 115)).build();
+    Set<Cluster<TestItem>> expected = new HashSet<>();
+    for (Cluster<TestItem> cluster : algorithm.getClusters(8.5)) {
+      if (bounds.contains(cluster.getPosition())) {
+        expected.add(new StaticCluster<TestItem>(cluster.getPosition()));
+      }
+    }
+    algorithm.setVisibleBounds(bounds);
+    Set<Cluster<TestItem>> actual = new HashSet<>();
+    for (Cluster<TestItem> cluster : algorithm.getClusters(8.5)) {
+      actual.add(new StaticCluster<TestItem>(cluster.getPosition()));
+    }
+    assertEquals(expected, actual);
+  }
+
+  private static Set<Set<TestItem>> itemSets(Set<? extends Cluster<TestItem>> clusters) {
+    Set<Set<TestItem>> itemSets = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      itemSets.add(new HashSet<>(cluster.getItems()));
+    }
+    return itemSets;
+  }
+}
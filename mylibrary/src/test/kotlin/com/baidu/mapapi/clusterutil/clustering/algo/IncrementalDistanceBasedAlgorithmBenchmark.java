@@ -0,0 +1,70 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.IncrementalDistanceBasedAlgorithmTest.ZOOM;
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times {@link IncrementalDistanceBasedAlgorithm} on a live feed against clustering again with
+ * {@link NonHierarchicalDistanceBasedAlgorithm}. Run with {@code -Pbenchmark}.
+ */
+public class IncrementalDistanceBasedAlgorithmBenchmark {
+
+  @Test
+  public void liveFeed() {
+    Random random = new Random(89);
+    List<TestItem> items = randomItems(random, 300_000);
+    IncrementalDistanceBasedAlgorithm<TestItem> incremental =
+        new IncrementalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> full =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    incremental.addItems(items);
+    full.addItems(items);
+    incremental.getClusters(ZOOM);
+    incremental.takeChanges();
+    full.getClusters(ZOOM);
+
+    int rounds = 20;
+    long incrementalTime = 0;
+    long fullTime = 0;
+    int changed = 0;
+    for (int round = 0; round < rounds; round++) {
+      // A second of a live feed: a few dozen moves.
+      List<TestItem> gone = new ArrayList<>();
+      List<TestItem> moved = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        int index = random.nextInt(items.size());
+        TestItem item = items.get(index);
+        TestItem next = new TestItem(item.getPosition().latitude + random.nextGaussian() * 0.01,
+            item.getPosition().longitude + random.nextGaussian() * 0.01);
+        items.set(index, next);
+        gone.add(item);
+        moved.add(next);
+      }
+      long start = System.nanoTime();
+      incremental.removeItems(gone);
+      incremental.addItems(moved);
+      // The renderer only needs the changes.
+      changed += incremental.takeChanges().getAdded().size();
+      incrementalTime += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      full.removeItems(gone);
+      full.addItems(moved);
+      full.getClusters(ZOOM);
+      fullTime += System.nanoTime() - start;
+    }
+    long start = System.nanoTime();
+    int clusters = incremental.getClusters(ZOOM).size();
+    long all = System.nanoTime() - start;
+    System.out.printf("%d items, %d clusters, 40 moves per update: incremental %.2f ms "
+            + "(%d clusters changed), all incremental clusters %.1f ms, full recluster %.0f ms%n",
+        items.size(), clusters, incrementalTime / 1e6 / rounds, changed / rounds, all / 1e6,
+        fullTime / 1e6 / rounds);
+  }
+}
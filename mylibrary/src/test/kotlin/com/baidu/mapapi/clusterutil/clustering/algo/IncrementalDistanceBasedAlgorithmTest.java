@@ -0,0 +1,120 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that {@link IncrementalDistanceBasedAlgorithm} keeps valid clusters and reports exactly
+ * the replaced ones while items come and go.
+ */
+public class IncrementalDistanceBasedAlgorithmTest {
+
+  private static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
+  static final int ZOOM = 9;
+
+  @Test
+  public void patchesClusters() {
+    Random random = new Random(83);
+    List<TestItem> items = randomItems(random, 20_000);
+    IncrementalDistanceBasedAlgorithm<TestItem> algorithm =
+        new IncrementalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    Set<Cluster<TestItem>> previous = new HashSet<>(algorithm.getClusters(ZOOM));
+    assertClusters(previous, items);
+    algorithm.takeChanges();
+
+    for (int round = 0; round < 50; round++) {
+      for (int i = 0; i < 40; i++) {
+        if (random.nextBoolean() && !items.isEmpty()) {
+          assertTrue(algorithm.removeItem(items.remove(random.nextInt(items.size()))));
+        } else {
+          TestItem item = randomItems(random, 2).get(random.nextInt(2));
+          items.add(item);
+          assertTrue(algorithm.addItem(item));
+        }
+      }
+      Set<Cluster<TestItem>> clusters = new HashSet<>(algorithm.getClusters(ZOOM));
+      assertClusters(clusters, items);
+
+      IncrementalDistanceBasedAlgorithm.ClusterChanges<TestItem> changes =
+          algorithm.takeChanges();
+      Set<Cluster<TestItem>> patched = new HashSet<>(previous);
+      assertTrue(patched.containsAll(changes.getRemoved()));
+      patched.removeAll(changes.getRemoved());
+      patched.addAll(changes.getAdded());
+      assertEquals(clusters, patched);
+      // Most clusters are untouched by a few dozen changes.
+      assertTrue(changes.getAdded().size() < clusters.size() / 10);
+      previous = clusters;
+    }
+    assertTrue(algorithm.takeChanges().isEmpty());
+
+    // A new zoom level replaces everything.
+    Set<? extends Cluster<TestItem>> zoomedIn = algorithm.getClusters(ZOOM + 2);
+    assertClusters(new HashSet<Cluster<TestItem>>(zoomedIn), items);
+    assertEquals(previous, algorithm.takeChanges().getRemoved());
+
+    algorithm.clearItems();
+    assertTrue(algorithm.getClusters(ZOOM + 2).isEmpty());
+    assertEquals(new HashSet<Cluster<TestItem>>(zoomedIn), algorithm.takeChanges().getRemoved());
+  }
+
+  @Test
+  public void reclustersLikeNonHierarchical() {
+    Random random = new Random(89);
+    List<TestItem> items = randomItems(random, 20_000);
+    IncrementalDistanceBasedAlgorithm<TestItem> algorithm =
+        new IncrementalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> reference =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    reference.addItems(items);
+    // Updated items keep their place in the order in both.
+    for (TestItem item : items.subList(0, 100)) {
+      assertTrue(algorithm.updateItem(item));
+      assertTrue(reference.updateItem(item));
+    }
+    // Each zoom level clusters every item again, seeded in the order they were added.
+    for (int zoom : new int[] {ZOOM, ZOOM + 2, ZOOM - 3}) {
+      assertEquals(itemSets(reference.getClusters(zoom)), itemSets(algorithm.getClusters(zoom)));
+    }
+  }
+
+  private static Set<Set<TestItem>> itemSets(Set<? extends Cluster<TestItem>> clusters) {
+    Set<Set<TestItem>> sets = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      sets.add(new HashSet<>(cluster.getItems()));
+    }
+    return sets;
+  }
+
+  /** Each item is in one cluster, within the span of its center. */
+  private static void assertClusters(Set<Cluster<TestItem>> clusters, List<TestItem> items) {
+    double halfSpan = 100 / Math.pow(2, ZOOM) / 256 / 2;
+    Set<TestItem> seen = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      assertTrue(cluster.getSize() > 0);
+      Point center = PROJECTION.toPoint(cluster.getPosition());
+      for (TestItem item : cluster.getItems()) {
+        assertTrue(seen.add(item));
+        Point point = PROJECTION.toPoint(item.getPosition());
+        assertTrue(Math.abs(point.x - center.x) <= halfSpan);
+        assertTrue(Math.abs(point.y - center.y) <= halfSpan);
+      }
+    }
+    assertEquals(new HashSet<>(items), seen);
+  }
+}
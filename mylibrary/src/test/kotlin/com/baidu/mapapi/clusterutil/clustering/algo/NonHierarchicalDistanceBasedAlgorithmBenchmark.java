@@ -0,0 +1,48 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Times {@link NonHierarchicalDistanceBasedAlgorithm} sequential and parallel on growing item
+ * sets. Run with {@code -Pbenchmark}.
+ */
+public class NonHierarchicalDistanceBasedAlgorithmBenchmark {
+
+  @Test
+  public void sequentialAndParallel() {
+    System.out.printf("Common pool parallelism %d%n", ForkJoinPool.getCommonPoolParallelism());
+    for (int count : new int[] {100_000, 500_000, 1_000_000}) {
+      List<TestItem> items = randomItems(new Random(101), count);
+      NonHierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+          new NonHierarchicalDistanceBasedAlgorithm<>();
+      algorithm.addItems(items);
+      for (int run = 0; run < 2; run++) {
+        // Changing the center mode bumps the version, so each pass runs rather than returning
+        // the last result.
+        algorithm.setCenterMode(StaticCluster.CenterMode.FIRST);
+        algorithm.setParallel(false);
+        long start = System.nanoTime();
+        int sequentialClusters = algorithm.getClusters(10).size();
+        long sequentialTime = System.nanoTime() - start;
+        algorithm.setCenterMode(StaticCluster.CenterMode.FIRST);
+        algorithm.setParallel(true);
+        start = System.nanoTime();
+        int parallelClusters = algorithm.getClusters(10).size();
+        long parallelTime = System.nanoTime() - start;
+        assertEquals(sequentialClusters, parallelClusters);
+        if (run == 1) {
+          System.out.printf("%d items, zoom 10: %d clusters, sequential %d ms, parallel %d ms, "
+                  + "speedup %.2f%n", count, sequentialClusters, sequentialTime / 1_000_000,
+              parallelTime / 1_000_000, (double) sequentialTime / parallelTime);
+        }
+      }
+    }
+  }
+}
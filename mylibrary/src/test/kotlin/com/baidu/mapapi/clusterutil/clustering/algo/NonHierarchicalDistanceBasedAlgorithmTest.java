@@ -0,0 +1,246 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialIndex;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that the parallel mode of {@link NonHierarchicalDistanceBasedAlgorithm} finds the same
+ * clusters as the single threaded pass.
+ */
+public class NonHierarchicalDistanceBasedAlgorithmTest {
+
+  @Test
+  public void parallelMatchesSequential() {
+    List<TestItem> items = randomItems(new Random(97), 120_000);
+    // Items sharing a point.
+    for (int i = 0; i < 200; i++) {
+      items.add(new TestItem(21, 111));
+    }
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> sequential =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> parallel =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    parallel.setParallel(true);
+    sequential.addItems(items);
+    parallel.addItems(items);
+
+    for (int zoom = 3; zoom <= 18; zoom += 3) {
+      // Clusters are filled after they are put in the set, so hash them again to compare.
+      Set<Cluster<TestItem>> expected = new HashSet<>(sequential.getClusters(zoom));
+      Set<Cluster<TestItem>> actual = new HashSet<>(parallel.getClusters(zoom));
+      assertEquals(expected.size(), actual.size());
+      assertEquals(expected, actual);
+    }
+
+    // Removed items give their ids to the next ones added.
+    List<TestItem> removed = new ArrayList<>(items.subList(0, 30_000));
+    sequential.removeItems(removed);
+    parallel.removeItems(removed);
+    List<TestItem> added = randomItems(new Random(103), 40_000);
+    sequential.addItems(added);
+    parallel.addItems(added);
+    for (int zoom = 4; zoom <= 16; zoom += 4) {
+      Set<Cluster<TestItem>> expected = new HashSet<>(sequential.getClusters(zoom));
+      assertEquals(expected, new HashSet<>(parallel.getClusters(zoom)));
+      int total = 0;
+      for (Cluster<TestItem> cluster : expected) {
+        total += cluster.getSize();
+      }
+      assertEquals(items.size() - removed.size() + added.size(), total);
+    }
+  }
+
+  @Test
+  public void centerModes() {
+    SphericalMercatorProjection projection = new SphericalMercatorProjection(1);
+    List<TestItem> items = randomItems(new Random(131), 60_000);
+    for (StaticCluster.CenterMode mode : StaticCluster.CenterMode.values()) {
+      NonHierarchicalDistanceBasedAlgorithm<TestItem> sequential =
+          new NonHierarchicalDistanceBasedAlgorithm<>();
+      NonHierarchicalDistanceBasedAlgorithm<TestItem> parallel =
+          new NonHierarchicalDistanceBasedAlgorithm<>();
+      sequential.setCenterMode(mode);
+      parallel.setCenterMode(mode);
+      parallel.setParallel(true);
+      sequential.addItems(items);
+      parallel.addItems(items);
+
+      Set<Set<TestItem>> sequentialItems = new HashSet<>();
+      for (Cluster<TestItem> cluster : sequential.getClusters(8)) {
+        sequentialItems.add(new HashSet<>(cluster.getItems()));
+        double x = 0;
+        double y = 0;
+        double weight = 0;
+        for (TestItem item : cluster.getItems()) {
+          Point point = projection.toPoint(item.getPosition());
+          double itemWeight = mode == StaticCluster.CenterMode.WEIGHTED ? item.getWeight() : 1;
+          x += point.x * itemWeight;
+          y += point.y * itemWeight;
+          weight += itemWeight;
+        }
+        Point center = projection.toPoint(cluster.getPosition());
+        if (mode == StaticCluster.CenterMode.FIRST) {
+          // The position of one of its items.
+          boolean found = false;
+          for (TestItem item : cluster.getItems()) {
+            found |= item.getPosition().equals(cluster.getPosition());
+          }
+          assertTrue(found);
+        } else {
+          assertEquals(x / weight, center.x, 1e-12);
+          assertEquals(y / weight, center.y, 1e-12);
+        }
+      }
+      // Placing clusters doesn't change which items they hold.
+      Set<Set<TestItem>> parallelItems = new HashSet<>();
+      for (Cluster<TestItem> cluster : parallel.getClusters(8)) {
+        parallelItems.add(new HashSet<>(cluster.getItems()));
+      }
+      assertEquals(sequentialItems, parallelItems);
+    }
+  }
+
+  @Test
+  public void removingMovedItem() {
+    SphericalMercatorProjection projection = new SphericalMercatorProjection(1);
+    MovingItem first = new MovingItem(new LatLng(10, 100));
+    MovingItem moving = new MovingItem(new LatLng(20, 110));
+    MovingItem last = new MovingItem(new LatLng(30, 120));
+    for (StaticCluster.CenterMode mode : StaticCluster.CenterMode.values()) {
+      StaticCluster<MovingItem> cluster = new StaticCluster<>(first.mPosition, 3, mode);
+      cluster.add(first);
+      cluster.add(moving);
+      cluster.add(last);
+      cluster.getPosition();
+      // Moved after it joined, removed at its new position.
+      moving.mPosition = new LatLng(-40, -60);
+      assertTrue(cluster.remove(moving));
+      assertEquals(2, cluster.getSize());
+      Point center = projection.toPoint(cluster.getPosition());
+      if (mode == StaticCluster.CenterMode.FIRST) {
+        assertEquals(first.mPosition, cluster.getPosition());
+      } else {
+        Point a = projection.toPoint(first.mPosition);
+        Point b = projection.toPoint(last.mPosition);
+        assertEquals((a.x + b.x) / 2, center.x, 1e-12);
+        assertEquals((a.y + b.y) / 2, center.y, 1e-12);
+      }
+      moving.mPosition = new LatLng(20, 110);
+    }
+  }
+
+  @Test
+  public void deterministicAndStamped() {
+    // Equal items in separate objects, whose identity hashes differ.
+    List<TestItem> items = randomItems(new Random(157), 50_000);
+    List<TestItem> copies = randomItems(new Random(157), 50_000);
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> other =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    other.addItems(copies);
+    assertEquals(summary(algorithm.getClusters(9)), summary(other.getClusters(9)));
+
+    // Nothing changed: the same set, recognised without comparing clusters.
+    Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(9);
+    Set<? extends Cluster<TestItem>> again = algorithm.getClusters(9);
+    assertTrue(again == clusters);
+    assertTrue(stamped(again).hasSameStamp(stamped(clusters)));
+    // The same items in another algorithm are clustered the same, but compared in full.
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> fresh =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    fresh.addItems(items);
+    Set<? extends Cluster<TestItem>> freshClusters = fresh.getClusters(9);
+    assertTrue(!stamped(freshClusters).hasSameStamp(stamped(clusters)));
+    assertEquals(clusters, freshClusters);
+
+    // Any change gives a new stamp.
+    algorithm.setMaxDistanceBetweenClusteredItems(120);
+    assertTrue(!stamped(algorithm.getClusters(9)).hasSameStamp(stamped(clusters)));
+    algorithm.setMaxDistanceBetweenClusteredItems(100);
+    assertEquals(clusters, algorithm.getClusters(9));
+    algorithm.removeItem(items.get(0));
+    assertTrue(!stamped(algorithm.getClusters(9)).hasSameStamp(stamped(clusters)));
+  }
+
+  @Test
+  public void candidatesSortedOncePerVersion() {
+    List<TestItem> items = randomItems(new Random(163), 20_000);
+    final int[] sorts = new int[1];
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> algorithm =
+        new NonHierarchicalDistanceBasedAlgorithm<TestItem>() {
+          @Override
+          public Collection<QuadItem<TestItem>> getClusteringItems(
+              SpatialIndex<QuadItem<TestItem>> quadTree, double discreteZoom) {
+            sorts[0]++;
+            return super.getClusteringItems(quadTree, discreteZoom);
+          }
+        };
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> fresh =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    algorithm.addItems(items);
+    fresh.addItems(items);
+    for (int zoom = 4; zoom <= 16; zoom += 4) {
+      assertEquals(fresh.getClusters(zoom), algorithm.getClusters(zoom));
+    }
+    assertEquals(1, sorts[0]);
+
+    // A change of the items sorts them again.
+    algorithm.removeItem(items.get(0));
+    fresh.removeItem(items.get(0));
+    assertEquals(fresh.getClusters(8), algorithm.getClusters(8));
+    assertEquals(fresh.getClusters(12), algorithm.getClusters(12));
+    assertEquals(2, sorts[0]);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ClusterSet<TestItem> stamped(Set<? extends Cluster<TestItem>> clusters) {
+    return (ClusterSet<TestItem>) (Set<?>) clusters;
+  }
+
+  /** @return the position and size of each cluster, which don't depend on item identity. */
+  private static Set<String> summary(Set<? extends Cluster<TestItem>> clusters) {
+    Set<String> summary = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      summary.add(cluster.getPosition().latitude + "," + cluster.getPosition().longitude + ","
+          + cluster.getSize());
+    }
+    return summary;
+  }
+
+  private static class MovingItem implements ClusterItem {
+    private LatLng mPosition;
+
+    MovingItem(LatLng position) {
+      mPosition = position;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
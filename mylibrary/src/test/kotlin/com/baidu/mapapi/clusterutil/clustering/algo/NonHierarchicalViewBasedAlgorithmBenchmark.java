@@ -0,0 +1,69 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalViewBasedAlgorithmTest.HEIGHT;
+import static com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalViewBasedAlgorithmTest.PADDING;
+import static com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalViewBasedAlgorithmTest.PROJECTION;
+import static com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalViewBasedAlgorithmTest.WIDTH;
+import static com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalViewBasedAlgorithmTest.moveTo;
+import static com.baidu.mapapi.clusterutil.clustering.algo.NonHierarchicalViewBasedAlgorithmTest.pan;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times short pans with {@link NonHierarchicalViewBasedAlgorithm} against clustering the whole
+ * area again. Run with {@code -Pbenchmark}.
+ */
+public class NonHierarchicalViewBasedAlgorithmBenchmark {
+
+  @Test
+  public void shortPans() {
+    // A city's worth of items.
+    Random random = new Random(109);
+    List<TestItem> items = new ArrayList<>();
+    for (int i = 0; i < 1_000_000; i++) {
+      items.add(new TestItem(
+          20 + random.nextGaussian() * 0.3, 110 + random.nextGaussian() * 0.3));
+    }
+    NonHierarchicalViewBasedAlgorithm<TestItem> reusing =
+        new NonHierarchicalViewBasedAlgorithm<>(WIDTH, HEIGHT);
+    reusing.setViewPadding(PADDING);
+    reusing.addItems(items);
+    NonHierarchicalViewBasedAlgorithm<TestItem> fresh =
+        new NonHierarchicalViewBasedAlgorithm<>(WIDTH, HEIGHT);
+    fresh.setViewPadding(PADDING);
+    fresh.addItems(items);
+    int zoom = 12;
+
+    Point center = PROJECTION.toPoint(new LatLng(20, 110));
+    int rounds = 30;
+    long reusingTime = 0;
+    long freshTime = 0;
+    int clusters = 0;
+    for (int round = -5; round < rounds; round++) {
+      // 150 dp swipes around the city center.
+      center = pan(center, (round & 2) == 0 ? 150 : -150, (round & 1) == 0 ? 120 : -120, zoom);
+      moveTo(reusing, center);
+      moveTo(fresh, center);
+      long start = System.nanoTime();
+      clusters = reusing.getClusters(zoom).size();
+      long time = System.nanoTime() - start;
+      // A new item makes the other one cluster everything again.
+      fresh.addItem(new TestItem(-60, round));
+      long freshStart = System.nanoTime();
+      fresh.getClusters(zoom);
+      if (round >= 0) {
+        reusingTime += time;
+        freshTime += System.nanoTime() - freshStart;
+      }
+    }
+    System.out.printf("%d items, %d clusters on screen, 150 dp pans: reusing %.2f ms, "
+            + "whole area %.2f ms%n", items.size(), clusters, reusingTime / 1e6 / rounds,
+        freshTime / 1e6 / rounds);
+  }
+}
@@ -0,0 +1,146 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.clusterutil.quadtree.PackedPointQuadTree;
+import com.baidu.mapapi.map.MapStatus;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that {@link NonHierarchicalViewBasedAlgorithm} keeps valid clusters covering the
+ * clustered area while the camera pans, reusing the clusters of the last pass.
+ */
+public class NonHierarchicalViewBasedAlgorithmTest {
+
+  static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
+  static final int WIDTH = 1080;
+  static final int HEIGHT = 1920;
+  static final int PADDING = 100;
+  private static final int ZOOM = 11;
+
+  @Test
+  public void pansReuseClusters() {
+    List<TestItem> items = randomItems(new Random(107), 100_000);
+    NonHierarchicalViewBasedAlgorithm<TestItem> algorithm =
+        new NonHierarchicalViewBasedAlgorithm<>(WIDTH, HEIGHT);
+    algorithm.setViewPadding(PADDING);
+    algorithm.addItems(items);
+
+    Point center = PROJECTION.toPoint(new LatLng(20, 110));
+    moveTo(algorithm, center);
+    Set<? extends Cluster<TestItem>> previous = algorithm.getClusters(ZOOM);
+    assertClusters(previous, items, center);
+
+    // Shorter than the padding: the last pass is returned as is.
+    center = pan(center, 40, 60);
+    moveTo(algorithm, center);
+    assertSame(previous, algorithm.getClusters(ZOOM));
+
+    for (int i = 0; i < 10; i++) {
+      center = pan(center, 150 - 30 * i, 300);
+      moveTo(algorithm, center);
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(ZOOM);
+      assertClusters(clusters, items, center);
+      Set<Cluster<TestItem>> kept = new HashSet<Cluster<TestItem>>(clusters);
+      kept.retainAll(previous);
+      // Most of the screen was on the last one.
+      assertTrue(kept.size() > clusters.size() / 2);
+      previous = clusters;
+    }
+
+    // New items invalidate the last pass.
+    List<TestItem> added = new ArrayList<>();
+    LatLng position = PROJECTION.toLatLng(center);
+    for (int i = 0; i < 50; i++) {
+      added.add(new TestItem(position.latitude + i * 1e-4, position.longitude));
+    }
+    algorithm.addItems(added);
+    items.addAll(added);
+    assertClusters(algorithm.getClusters(ZOOM), items, center);
+  }
+
+  @Test
+  public void sameClustersWithEachIndex() {
+    List<TestItem> items = randomItems(new Random(109), 50_000);
+    List<NonHierarchicalViewBasedAlgorithm<TestItem>> algorithms = new ArrayList<>();
+    algorithms.add(new NonHierarchicalViewBasedAlgorithm<TestItem>(WIDTH, HEIGHT));
+    algorithms.add(new NonHierarchicalViewBasedAlgorithm<TestItem>(WIDTH, HEIGHT,
+        new PackedPointQuadTree<NonHierarchicalDistanceBasedAlgorithm.QuadItem<TestItem>>(
+            0, 1, 0, 1)));
+    for (NonHierarchicalViewBasedAlgorithm<TestItem> algorithm : algorithms) {
+      algorithm.setViewPadding(PADDING);
+      algorithm.addItems(items);
+    }
+
+    // Candidates are tried in the order the items were added, whatever order the index keeps.
+    Point center = PROJECTION.toPoint(new LatLng(20, 110));
+    for (int i = 0; i < 5; i++) {
+      for (NonHierarchicalViewBasedAlgorithm<TestItem> algorithm : algorithms) {
+        moveTo(algorithm, center);
+      }
+      assertEquals(algorithms.get(0).getClusters(ZOOM), algorithms.get(1).getClusters(ZOOM));
+      center = pan(center, 200, 300);
+    }
+  }
+
+  static void moveTo(NonHierarchicalViewBasedAlgorithm<TestItem> algorithm, Point center) {
+    algorithm.onMapStatusChange(
+        new MapStatus.Builder().target(PROJECTION.toLatLng(center)).zoom(ZOOM).build());
+  }
+
+  private static Point pan(Point center, int dx, int dy) {
+    return pan(center, dx, dy, ZOOM);
+  }
+
+  static Point pan(Point center, int dx, int dy, int zoom) {
+    double scale = Math.pow(2, zoom) * 256;
+    return new Point(center.x + dx / scale, center.y + dy / scale);
+  }
+
+  /**
+   * Each item is in at most one cluster, within the span of its center, and every item in the
+   * clustered area is in one.
+   */
+  private static void assertClusters(
+      Set<? extends Cluster<TestItem>> clusters, List<TestItem> items, Point center) {
+    double halfSpan = 100 / Math.pow(2, ZOOM) / 256 / 2;
+    Set<TestItem> seen = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      assertTrue(cluster.getSize() > 0);
+      Point clusterCenter = PROJECTION.toPoint(cluster.getPosition());
+      for (TestItem item : cluster.getItems()) {
+        assertTrue(seen.add(item));
+        Point point = PROJECTION.toPoint(item.getPosition());
+        assertTrue(Math.abs(point.x - clusterCenter.x) <= halfSpan);
+        assertTrue(Math.abs(point.y - clusterCenter.y) <= halfSpan);
+      }
+    }
+    double scale = Math.pow(2, ZOOM) * 256;
+    double halfWidth = (WIDTH / 2.0 + PADDING) / scale;
+    double halfHeight = (HEIGHT / 2.0 + PADDING) / scale;
+    int inside = 0;
+    for (TestItem item : items) {
+      Point point = PROJECTION.toPoint(item.getPosition());
+      if (Math.abs(point.x - center.x) <= halfWidth && Math.abs(point.y - center.y) <= halfHeight) {
+        assertTrue(seen.contains(item));
+        inside++;
+      }
+    }
+    assertTrue(inside > 0);
+  }
+}
@@ -0,0 +1,67 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import com.baidu.mapapi.clusterutil.clustering.WeightedClusterItem;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Random items shared by the algorithm tests and benchmarks. */
+final class TestItems {
+
+  private TestItems() {
+  }
+
+  /**
+   * @return positions mostly within one country, a few spread over the world.
+   */
+  static List<LatLng> randomPositions(Random random, int count) {
+    List<LatLng> positions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      if (i % 10 == 0) {
+        positions.add(
+            new LatLng(random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180));
+      } else {
+        positions.add(
+            new LatLng(20 + random.nextGaussian() * 8, 110 + random.nextGaussian() * 10));
+      }
+    }
+    return positions;
+  }
+
+  /**
+   * @return items at {@link #randomPositions}.
+   */
+  static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (LatLng position : randomPositions(random, count)) {
+      items.add(new TestItem(position.latitude, position.longitude));
+    }
+    return items;
+  }
+
+  static class TestItem implements WeightedClusterItem {
+    private final LatLng mPosition;
+
+    TestItem(double lat, double lng) {
+      mPosition = new LatLng(lat, lng);
+    }
+
+    @Override
+    public double getWeight() {
+      // Anything that differs between items.
+      return 1 + Math.abs(mPosition.latitude) % 3;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
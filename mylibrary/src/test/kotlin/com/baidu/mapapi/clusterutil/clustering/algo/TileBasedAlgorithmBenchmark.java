@@ -0,0 +1,64 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TileBasedAlgorithmTest.HEIGHT;
+import static com.baidu.mapapi.clusterutil.clustering.algo.TileBasedAlgorithmTest.PROJECTION;
+import static com.baidu.mapapi.clusterutil.clustering.algo.TileBasedAlgorithmTest.WIDTH;
+import static com.baidu.mapapi.clusterutil.clustering.algo.TileBasedAlgorithmTest.moveTo;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times pans over cached tiles with {@link TileBasedAlgorithm} against clustering the viewport
+ * again with {@link NonHierarchicalViewBasedAlgorithm}. Run with {@code -Pbenchmark}.
+ */
+public class TileBasedAlgorithmBenchmark {
+
+  @Test
+  public void pansOverCachedTiles() {
+    // A city's worth of items.
+    Random random = new Random(127);
+    List<TestItem> items = new ArrayList<>();
+    for (int i = 0; i < 1_000_000; i++) {
+      items.add(new TestItem(
+          20 + random.nextGaussian() * 0.3, 110 + random.nextGaussian() * 0.3));
+    }
+    TileBasedAlgorithm<TestItem> tiled = new TileBasedAlgorithm<>(WIDTH, HEIGHT);
+    tiled.addItems(items);
+    NonHierarchicalViewBasedAlgorithm<TestItem> view =
+        new NonHierarchicalViewBasedAlgorithm<>(WIDTH, HEIGHT);
+    view.addItems(items);
+    int zoom = 12;
+
+    Point center = PROJECTION.toPoint(new LatLng(20, 110));
+    double step = 150 / Math.pow(2, zoom) / 256;
+    int rounds = 40;
+    long tiledTime = 0;
+    long viewTime = 0;
+    int clusters = 0;
+    for (int round = -8; round < rounds; round++) {
+      // 150 dp swipes back and forth around the city center.
+      Point moved = new Point(center.x + step * ((round & 3) - 1.5),
+          center.y + step * (((round >> 2) & 1) - 0.5));
+      moveTo(tiled, moved);
+      moveTo(view, moved);
+      long start = System.nanoTime();
+      clusters = tiled.getClusters(zoom).size();
+      long time = System.nanoTime() - start;
+      start = System.nanoTime();
+      view.getClusters(zoom);
+      if (round >= 0) {
+        tiledTime += time;
+        viewTime += System.nanoTime() - start;
+      }
+    }
+    System.out.printf("%d items, %d clusters on screen, pans over seen tiles: tiled %.2f ms, "
+            + "viewport %.2f ms%n", items.size(), clusters, tiledTime / 1e6 / rounds,
+        viewTime / 1e6 / rounds);
+  }
+}
@@ -0,0 +1,173 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TestItems.randomItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.algo.TestItems.TestItem;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.projection.SphericalMercatorProjection;
+import com.baidu.mapapi.map.MapStatus;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that {@link TileBasedAlgorithm} covers the viewport with each item in one cluster,
+ * merges clusters across tile edges and empties its cache on changes.
+ */
+public class TileBasedAlgorithmTest {
+
+  static final SphericalMercatorProjection PROJECTION =
+      new SphericalMercatorProjection(1.0d);
+
+  static final int WIDTH = 1080;
+  static final int HEIGHT = 1920;
+  private static final int ZOOM = 11;
+
+  @Test
+  public void coversViewport() {
+    List<TestItem> items = randomItems(new Random(113), 100_000);
+    TileBasedAlgorithm<TestItem> algorithm = new TileBasedAlgorithm<>(WIDTH, HEIGHT);
+    algorithm.addItems(items);
+    Point center = PROJECTION.toPoint(new LatLng(20, 110));
+    for (int i = 0; i < 8; i++) {
+      moveTo(algorithm, center);
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(ZOOM);
+      assertCovered(clusters, items, center);
+      // Cached tiles give the same clusters.
+      assertEquals(clusters, algorithm.getClusters(ZOOM));
+      center = new Point(center.x + 0.0003, center.y + 0.0002);
+    }
+
+    TestItem added = new TestItem(PROJECTION.toLatLng(center).latitude,
+        PROJECTION.toLatLng(center).longitude);
+    algorithm.addItem(added);
+    items.add(added);
+    assertCovered(algorithm.getClusters(ZOOM), items, center);
+  }
+
+  @Test
+  public void mergesAcrossTileEdges() {
+    TileBasedAlgorithm<TestItem> algorithm = new TileBasedAlgorithm<>(WIDTH, HEIGHT);
+    // x = 0.5 is an edge at every zoom, a few dp either side of it.
+    TestItem west = new TestItem(10, -0.001);
+    TestItem east = new TestItem(10, 0.001);
+    algorithm.addItems(Arrays.asList(west, east));
+    algorithm.onMapStatusChange(new MapStatus.Builder().target(new LatLng(10, 0)).build());
+    Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(ZOOM);
+    assertEquals(1, clusters.size());
+    assertEquals(2, clusters.iterator().next().getSize());
+  }
+
+  @Test
+  public void mergesDontChain() {
+    TileBasedAlgorithm<TestItem> algorithm = new TileBasedAlgorithm<>(WIDTH, HEIGHT);
+    // A street along the edge at x = 0.5, its items a few dp either side of it in turn.
+    double scale = Math.pow(2, ZOOM) * 256;
+    Point center = PROJECTION.toPoint(new LatLng(10, 0));
+    List<TestItem> street = new ArrayList<>();
+    for (int i = -25; i <= 25; i++) {
+      LatLng position = PROJECTION.toLatLng(
+          new Point(center.x + (i % 2 == 0 ? 3 : -3) / scale, center.y + i * 30 / scale));
+      street.add(new TestItem(position.latitude, position.longitude));
+    }
+    algorithm.addItems(street);
+    moveTo(algorithm, center);
+    Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(ZOOM);
+    assertCovered(clusters, street, center);
+    // Each part is within the span of the merged center, its items within the span of the part.
+    double halfSpan = 100 / scale / 2;
+    for (Cluster<TestItem> cluster : clusters) {
+      Point clusterCenter = PROJECTION.toPoint(cluster.getPosition());
+      for (TestItem item : cluster.getItems()) {
+        Point point = PROJECTION.toPoint(item.getPosition());
+        assertTrue(Math.abs(point.x - clusterCenter.x) <= 2 * halfSpan * (1 + 1e-9));
+        assertTrue(Math.abs(point.y - clusterCenter.y) <= 2 * halfSpan * (1 + 1e-9));
+      }
+    }
+    assertTrue(clusters.size() > 1);
+  }
+
+  @Test
+  public void mergesDontDependOnIdentity() {
+    // Two items west of the edge at x = 0.5, too far apart to cluster, each within the span of
+    // one east of it. Whichever west item comes first takes the east one.
+    double scale = Math.pow(2, ZOOM) * 256;
+    Point center = PROJECTION.toPoint(new LatLng(10, 0));
+    center = new Point(center.x, (Math.floor(center.y * (1 << ZOOM)) + 0.5) / (1 << ZOOM));
+    Set<String> expected = null;
+    for (int i = 0; i < 20; i++) {
+      // New objects each time, whose identity hashes differ.
+      List<TestItem> items = Arrays.asList(
+          item(new Point(center.x - 20 / scale, center.y - 48 / scale)),
+          item(new Point(center.x - 20 / scale, center.y + 48 / scale)),
+          item(new Point(center.x + 20 / scale, center.y)));
+      TileBasedAlgorithm<TestItem> algorithm = new TileBasedAlgorithm<>(WIDTH, HEIGHT);
+      algorithm.addItems(items);
+      moveTo(algorithm, center);
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(ZOOM);
+      assertEquals(2, clusters.size());
+      Set<String> summary = summary(clusters);
+      if (expected == null) {
+        expected = summary;
+      }
+      assertEquals(expected, summary);
+    }
+  }
+
+  static void moveTo(ScreenBasedAlgorithm<TestItem> algorithm, Point center) {
+    algorithm.onMapStatusChange(
+        new MapStatus.Builder().target(PROJECTION.toLatLng(center)).build());
+  }
+
+  /** Each item is in at most one cluster, and every item on screen is in one. */
+  private static void assertCovered(
+      Set<? extends Cluster<TestItem>> clusters, List<TestItem> items, Point center) {
+    Set<TestItem> seen = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      assertTrue(cluster.getSize() > 0);
+      for (TestItem item : cluster.getItems()) {
+        assertTrue(seen.add(item));
+      }
+    }
+    double scale = Math.pow(2, ZOOM) * 256;
+    int inside = 0;
+    for (TestItem item : items) {
+      Point point = PROJECTION.toPoint(item.getPosition());
+      if (Math.abs(point.x - center.x) <= WIDTH / 2.0 / scale
+          && Math.abs(point.y - center.y) <= HEIGHT / 2.0 / scale) {
+        assertTrue(seen.contains(item));
+        inside++;
+      }
+    }
+    assertTrue(inside > 0);
+  }
+
+  private static TestItem item(Point point) {
+    LatLng position = PROJECTION.toLatLng(point);
+    return new TestItem(position.latitude, position.longitude);
+  }
+
+  /** @return the position, size and items of each cluster, which don't depend on identity. */
+  private static Set<String> summary(Set<? extends Cluster<TestItem>> clusters) {
+    Set<String> summary = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      List<String> items = new ArrayList<>();
+      for (TestItem item : cluster.getItems()) {
+        items.add(item.getPosition().latitude + "," + item.getPosition().longitude);
+      }
+      Collections.sort(items);
+      summary.add(cluster.getPosition().latitude + "," + cluster.getPosition().longitude + ","
+          + cluster.getSize() + items);
+    }
+    return summary;
+  }
+}
@@ -0,0 +1,91 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.TimeWindowBasedAlgorithmTest.MINUTE;
+import static com.baidu.mapapi.clusterutil.clustering.algo.TimeWindowBasedAlgorithmTest.randomItem;
+import static org.junit.Assert.assertEquals;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.TimeWindowBasedAlgorithmTest.TestItem;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times {@link TimeWindowBasedAlgorithm} on a live feed against removing expired items one by
+ * one. Run with {@code -Pbenchmark}.
+ */
+public class TimeWindowBasedAlgorithmBenchmark {
+
+  @Test
+  public void liveWindow() {
+    Random random = new Random(179);
+    final long[] now = {0};
+    final long window = 10 * MINUTE;
+    TimeWindowBasedAlgorithm<TestItem> wheel =
+        new TimeWindowBasedAlgorithm<TestItem>(window, 1_000) {
+          @Override
+          protected long currentTimeMillis() {
+            return now[0];
+          }
+        };
+    // Not wrapped in a PreCachingAlgorithmDecorator, whose background passes would run during
+    // the timings; it would also empty its cache on every removal.
+    NonHierarchicalDistanceBasedAlgorithm<TestItem> removals =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+
+    // 100 reports a second, ten minutes of them in the window.
+    int perSecond = 100;
+    ArrayDeque<TestItem> queue = new ArrayDeque<>();
+    List<TestItem> initial = new ArrayList<>();
+    for (long time = -window; time < 0; time += 1000 / perSecond) {
+      initial.add(randomItem(random, time));
+    }
+    wheel.addItems(initial);
+    removals.addItems(initial);
+    queue.addAll(initial);
+
+    // Adding and expiring items, then clustering.
+    long wheelUpdate = 0;
+    long wheelCluster = 0;
+    long removalUpdate = 0;
+    long removalCluster = 0;
+    int seconds = 60;
+    for (int second = 0; second < seconds; second++) {
+      now[0] += 1000;
+      List<TestItem> arrivals = new ArrayList<>();
+      for (int i = 0; i < perSecond; i++) {
+        arrivals.add(randomItem(random, now[0] - random.nextInt(1000)));
+      }
+
+      // Adding moves the window, so the items it left expire here.
+      long start = System.nanoTime();
+      wheel.addItems(arrivals);
+      wheelUpdate += System.nanoTime() - start;
+      start = System.nanoTime();
+      int wheelClusters = wheel.getClusters(10).size();
+      wheelCluster += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      removals.addItems(arrivals);
+      queue.addAll(arrivals);
+      while (!queue.isEmpty() && queue.peek().getTimestamp() < now[0] - window) {
+        removals.removeItem(queue.poll());
+      }
+      removalUpdate += System.nanoTime() - start;
+      start = System.nanoTime();
+      int removalClusters = removals.getClusters(10).size();
+      removalCluster += System.nanoTime() - start;
+
+      assertEquals(queue.size(), wheel.getItems().size());
+      assertEquals(removalClusters, wheelClusters);
+      if (second == seconds - 1) {
+        System.out.printf("%d items in a %d minute window, %d arrivals a second, %d seconds at "
+                + "zoom 10: wheel adds and expires in %.1f ms, clusters in %d ms; removing one "
+                + "by one takes %.1f ms, clustering %d ms%n", queue.size(), window / MINUTE,
+            perSecond, seconds, wheelUpdate / 1e6, wheelCluster / 1_000_000,
+            removalUpdate / 1e6, removalCluster / 1_000_000);
+      }
+    }
+  }
+}
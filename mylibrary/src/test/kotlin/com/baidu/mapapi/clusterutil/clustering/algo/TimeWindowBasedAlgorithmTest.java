@@ -0,0 +1,124 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.TimedClusterItem;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that {@link TimeWindowBasedAlgorithm} clusters exactly the items of the window as the
+ * clock moves.
+ */
+public class TimeWindowBasedAlgorithmTest {
+
+  static final long MINUTE = 60_000;
+
+  @Test
+  public void clustersItemsOfWindow() {
+    Random random = new Random(173);
+    final long[] now = {1_000_000};
+    TimeWindowBasedAlgorithm<TestItem> algorithm =
+        new TimeWindowBasedAlgorithm<TestItem>(10 * MINUTE, 7_000) {
+          @Override
+          protected long currentTimeMillis() {
+            return now[0];
+          }
+        };
+    Set<TestItem> live = new HashSet<>();
+    for (int step = 0; step < 300; step++) {
+      // Reports arrive a little late, some too late to be shown.
+      List<TestItem> batch = new ArrayList<>();
+      int count = step % 10 == 0 ? 1_500 : random.nextInt(40);
+      for (int i = 0; i < count; i++) {
+        batch.add(randomItem(random, now[0] - (long) (random.nextDouble() * 12 * MINUTE)));
+      }
+      if (step % 2 == 0) {
+        algorithm.addItems(batch);
+      } else {
+        for (TestItem item : batch) {
+          algorithm.addItem(item);
+        }
+      }
+      live.addAll(batch);
+      if (step % 7 == 3 && !live.isEmpty()) {
+        TestItem removed = live.iterator().next();
+        algorithm.removeItem(removed);
+        live.remove(removed);
+      }
+      if (step % 11 == 5 && !live.isEmpty()) {
+        // Restamped to now, it is shown for a whole window again.
+        TestItem moved = live.iterator().next();
+        moved.mTimestamp = now[0];
+        algorithm.updateItem(moved);
+      }
+
+      now[0] += (long) (random.nextDouble() * 20_000);
+      Set<TestItem> expected = new HashSet<>();
+      for (TestItem item : live) {
+        if (item.mTimestamp >= now[0] - 10 * MINUTE) {
+          expected.add(item);
+        }
+      }
+      Set<? extends Cluster<TestItem>> clusters = algorithm.getClusters(8);
+      assertEquals(expected, itemsOf(clusters));
+      live.retainAll(expected);
+      assertEquals(expected, new HashSet<>(algorithm.getItems()));
+      // Nothing more to expire within the same millisecond.
+      assertTrue(algorithm.getClusters(8) == clusters);
+    }
+
+    // Far in the future, everything expired.
+    now[0] += 60 * MINUTE;
+    assertEquals(0, algorithm.getClusters(8).size());
+    assertTrue(!algorithm.addItem(randomItem(random, now[0] - 11 * MINUTE)));
+  }
+
+  private static Set<TestItem> itemsOf(Set<? extends Cluster<TestItem>> clusters) {
+    Set<TestItem> items = new HashSet<>();
+    for (Cluster<TestItem> cluster : clusters) {
+      for (TestItem item : cluster.getItems()) {
+        assertTrue(items.add(item));
+      }
+    }
+    return items;
+  }
+
+  static TestItem randomItem(Random random, long timestamp) {
+    return new TestItem(
+        30 + random.nextGaussian() * 3, 114 + random.nextGaussian() * 3, timestamp);
+  }
+
+  static class TestItem implements TimedClusterItem {
+    private final LatLng mPosition;
+    private long mTimestamp;
+
+    TestItem(double lat, double lng, long timestamp) {
+      mPosition = new LatLng(lat, lng);
+      mTimestamp = timestamp;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return mTimestamp;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
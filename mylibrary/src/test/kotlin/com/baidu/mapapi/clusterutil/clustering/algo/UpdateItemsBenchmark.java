@@ -0,0 +1,90 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static com.baidu.mapapi.clusterutil.clustering.algo.UpdateItemsTest.drive;
+import static com.baidu.mapapi.clusterutil.clustering.algo.UpdateItemsTest.randomVehicles;
+import static org.junit.Assert.assertEquals;
+
+import com.baidu.mapapi.clusterutil.clustering.algo.UpdateItemsTest.Vehicle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times updating a fleet of vehicles that report at once, in a batch, one by one and by removing
+ * and adding each. Run with {@code -Pbenchmark}.
+ */
+public class UpdateItemsBenchmark {
+
+  @Test
+  public void fleetReports() {
+    Random random = new Random(193);
+    List<Vehicle> vehicles = randomVehicles(random, 20_000);
+    NonHierarchicalDistanceBasedAlgorithm<Vehicle> batched =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<Vehicle> oneByOne =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    NonHierarchicalDistanceBasedAlgorithm<Vehicle> removeAdd =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    // Only updated here, never asked for clusters, so no background pass runs in the timings.
+    PreCachingAlgorithmDecorator<Vehicle> cachedBatched =
+        new PreCachingAlgorithmDecorator<>(new NonHierarchicalDistanceBasedAlgorithm<Vehicle>());
+    PreCachingAlgorithmDecorator<Vehicle> cachedOneByOne =
+        new PreCachingAlgorithmDecorator<>(new NonHierarchicalDistanceBasedAlgorithm<Vehicle>());
+    List<Algorithm<Vehicle>> algorithms = new ArrayList<>();
+    Collections.addAll(algorithms, batched, oneByOne, removeAdd, cachedBatched, cachedOneByOne);
+    for (Algorithm<Vehicle> algorithm : algorithms) {
+      algorithm.addItems(vehicles);
+    }
+
+    // A report every 2 seconds, some 20 meters on. The first rounds warm up.
+    int warmUp = 5;
+    int rounds = 30;
+    long[] times = new long[algorithms.size()];
+    for (int round = 0; round < warmUp + rounds; round++) {
+      for (Vehicle vehicle : vehicles) {
+        vehicle.setPosition(drive(random, vehicle.getPosition()));
+      }
+      long[] start = new long[algorithms.size() + 1];
+      start[0] = System.nanoTime();
+      batched.updateItems(vehicles);
+      start[1] = System.nanoTime();
+      for (Vehicle vehicle : vehicles) {
+        oneByOne.updateItem(vehicle);
+      }
+      start[2] = System.nanoTime();
+      // What updateItem did before: remove the item, then add it as a new one.
+      for (Vehicle vehicle : vehicles) {
+        removeAdd.removeItem(vehicle);
+        removeAdd.addItem(vehicle);
+      }
+      start[3] = System.nanoTime();
+      cachedBatched.updateItems(vehicles);
+      start[4] = System.nanoTime();
+      for (Vehicle vehicle : vehicles) {
+        cachedOneByOne.updateItem(vehicle);
+      }
+      start[5] = System.nanoTime();
+      if (round >= warmUp) {
+        for (int i = 0; i < times.length; i++) {
+          times[i] += start[i + 1] - start[i];
+        }
+      }
+    }
+    assertEquals(batched.getClusters(12).size(), oneByOne.getClusters(12).size());
+    // Re-added items go to the end of the order, so only the items match here.
+    assertEquals(vehicles.size(), removeAdd.getItems().size());
+
+    String[] names = {"updateItems", "updateItem", "remove and add", "cached updateItems",
+        "cached updateItem"};
+    StringBuilder report = new StringBuilder();
+    report.append(vehicles.size()).append(" vehicles, ").append(rounds).append(" rounds:");
+    for (int i = 0; i < times.length; i++) {
+      report.append(String.format(" %s %.0f updates/s (%.1f ms a round)%s", names[i],
+          (double) rounds * vehicles.size() * 1e9 / times[i], times[i] / 1e6 / rounds,
+          i < times.length - 1 ? "," : ""));
+    }
+    System.out.println(report);
+  }
+}
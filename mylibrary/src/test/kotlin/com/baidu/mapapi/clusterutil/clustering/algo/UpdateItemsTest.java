@@ -0,0 +1,125 @@
+package com.baidu.mapapi.clusterutil.clustering.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.clustering.Cluster;
+import com.baidu.mapapi.clusterutil.clustering.ClusterItem;
+import com.baidu.mapapi.clusterutil.quadtree.PackedPointQuadTree;
+import com.baidu.mapapi.clusterutil.quadtree.PointQuadTree;
+import com.baidu.mapapi.map.BitmapDescriptor;
+import com.baidu.mapapi.model.LatLng;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that updating items in a batch clusters them like updating them one by one and like
+ * adding them afresh, with each index.
+ */
+public class UpdateItemsTest {
+
+  @Test
+  public void batchMatchesOneByOne() {
+    Random random = new Random(191);
+    List<Vehicle> vehicles = randomVehicles(random, 5_000);
+    List<Vehicle> twins = new ArrayList<>();
+    for (Vehicle vehicle : vehicles) {
+      twins.add(new Vehicle(vehicle.mPosition));
+    }
+    List<NonHierarchicalDistanceBasedAlgorithm<Vehicle>> batched = new ArrayList<>();
+    batched.add(new NonHierarchicalDistanceBasedAlgorithm<Vehicle>());
+    batched.add(new NonHierarchicalDistanceBasedAlgorithm<Vehicle>(
+        new PackedPointQuadTree<NonHierarchicalDistanceBasedAlgorithm.QuadItem<Vehicle>>(
+            0, 1, 0, 1)));
+    batched.add(new NonHierarchicalDistanceBasedAlgorithm<Vehicle>(
+        new PointQuadTree<NonHierarchicalDistanceBasedAlgorithm.QuadItem<Vehicle>>(0, 1, 0, 1)));
+    NonHierarchicalDistanceBasedAlgorithm<Vehicle> oneByOne =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    for (NonHierarchicalDistanceBasedAlgorithm<Vehicle> algorithm : batched) {
+      algorithm.addItems(vehicles);
+    }
+    oneByOne.addItems(twins);
+
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < vehicles.size(); i++) {
+        // Most drive on a little, some jump across the map.
+        LatLng position = round % 5 == 4 && i % 7 == 0
+            ? randomPosition(random)
+            : drive(random, vehicles.get(i).mPosition);
+        vehicles.get(i).mPosition = position;
+        twins.get(i).mPosition = position;
+      }
+      for (NonHierarchicalDistanceBasedAlgorithm<Vehicle> algorithm : batched) {
+        assertTrue(algorithm.updateItems(vehicles));
+      }
+      for (Vehicle twin : twins) {
+        assertTrue(oneByOne.updateItem(twin));
+      }
+    }
+
+    // Moved items keep their place in the order, so adding them afresh clusters them the same.
+    NonHierarchicalDistanceBasedAlgorithm<Vehicle> fresh =
+        new NonHierarchicalDistanceBasedAlgorithm<>();
+    fresh.addItems(vehicles);
+    for (int zoom : new int[] {6, 11, 15}) {
+      Set<? extends Cluster<Vehicle>> expected = fresh.getClusters(zoom);
+      for (NonHierarchicalDistanceBasedAlgorithm<Vehicle> algorithm : batched) {
+        assertEquals(expected, algorithm.getClusters(zoom));
+      }
+      assertEquals(expected.size(), oneByOne.getClusters(zoom).size());
+    }
+
+    // Nothing to update leaves the clusters as they were.
+    NonHierarchicalDistanceBasedAlgorithm<Vehicle> algorithm = batched.get(0);
+    Set<? extends Cluster<Vehicle>> clusters = algorithm.getClusters(11);
+    assertTrue(!algorithm.updateItems(Collections.singletonList(new Vehicle(new LatLng(0, 0)))));
+    assertTrue(algorithm.getClusters(11) == clusters);
+    assertTrue(algorithm.updateItems(vehicles.subList(0, 1)));
+    assertTrue(algorithm.getClusters(11) != clusters);
+  }
+
+  static List<Vehicle> randomVehicles(Random random, int count) {
+    List<Vehicle> vehicles = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      vehicles.add(new Vehicle(randomPosition(random)));
+    }
+    return vehicles;
+  }
+
+  /** Somewhere in a city some 60 km across. */
+  private static LatLng randomPosition(Random random) {
+    return new LatLng(39.9 + (random.nextDouble() - 0.5) * 0.5,
+        116.4 + (random.nextDouble() - 0.5) * 0.7);
+  }
+
+  static LatLng drive(Random random, LatLng position) {
+    return new LatLng(position.latitude + (random.nextDouble() - 0.5) * 4e-4,
+        position.longitude + (random.nextDouble() - 0.5) * 4e-4);
+  }
+
+  static class Vehicle implements ClusterItem {
+    private LatLng mPosition;
+
+    Vehicle(LatLng position) {
+      mPosition = position;
+    }
+
+    void setPosition(LatLng position) {
+      mPosition = position;
+    }
+
+    @Override
+    public LatLng getPosition() {
+      return mPosition;
+    }
+
+    @Override
+    public BitmapDescriptor getBitmapDescriptor() {
+      return null;
+    }
+  }
+}
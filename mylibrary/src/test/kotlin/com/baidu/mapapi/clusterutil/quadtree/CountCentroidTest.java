@@ -0,0 +1,103 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks {@link PointQuadTree#count(Bounds)} and {@link PointQuadTree#centroid(Bounds)} against
+ * the items a search returns, after adds, removes, splits and collapses.
+ */
+public class CountCentroidTest {
+
+  @Test
+  public void matchesSearch() {
+    Random random = new Random(53);
+    List<TestItem> items = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    // One address holding many items becomes a bucket.
+    for (int i = 0; i < 500; i++) {
+      items.add(new TestItem(0.3, 0.7));
+    }
+
+    PointQuadTree<TestItem> bulk = new PointQuadTree<>(0, 1, 0, 1);
+    bulk.addAll(items);
+    PackedPointQuadTree<TestItem> packedBulk = new PackedPointQuadTree<>(0, 1, 0, 1);
+    packedBulk.addAll(items);
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    PersistentPointQuadTree<TestItem> persistent = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : items) {
+      reference.add(item);
+      packed.add(item);
+      persistent.add(item);
+    }
+
+    for (QuadTreeIndex<TestItem> tree : Arrays.<QuadTreeIndex<TestItem>>asList(
+        bulk, packedBulk, reference, packed, persistent)) {
+      // Removing most items collapses quads on the way.
+      for (int i = 0; i < items.size(); i++) {
+        if (i % 4 != 0) {
+          assertTrue(tree.remove(items.get(i)));
+        }
+      }
+      for (int i = 0; i < 300; i++) {
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        double span = random.nextDouble() * 0.3;
+        Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+        assertAggregate(tree.search(bounds), tree, bounds);
+      }
+      assertAggregate(tree.search(new Bounds(0.29, 0.31, 0.69, 0.71)), tree,
+          new Bounds(0.29, 0.31, 0.69, 0.71));
+      assertEquals(tree.size(), tree.count(new Bounds(0, 1, 0, 1)));
+      assertEquals(0, tree.count(new Bounds(2, 3, 2, 3)));
+      assertNull(tree.centroid(new Bounds(2, 3, 2, 3)));
+
+      tree.clear();
+      assertEquals(0, tree.count(new Bounds(0, 1, 0, 1)));
+    }
+  }
+
+  private static void assertAggregate(
+      Collection<TestItem> expected, QuadTreeIndex<TestItem> tree, Bounds bounds) {
+    assertEquals(expected.size(), tree.count(bounds));
+    Point centroid = tree.centroid(bounds);
+    if (expected.isEmpty()) {
+      assertNull(centroid);
+      return;
+    }
+    double sumX = 0;
+    double sumY = 0;
+    for (TestItem item : expected) {
+      sumX += item.getPoint().x;
+      sumY += item.getPoint().y;
+    }
+    assertEquals(sumX / expected.size(), centroid.x, 1e-9);
+    assertEquals(sumY / expected.size(), centroid.y, 1e-9);
+  }
+
+  private static class TestItem implements PointQuadTree.Item {
+    private final Point mPoint;
+
+    TestItem(double x, double y) {
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks {@link KdTree} against brute force, including after writes and next to snapshots.
+ */
+public class KdTreeTest {
+
+  @Test
+  public void searchMatchesBruteForce() {
+    Random random = new Random(37);
+    List<TestItem> items = randomItems(random, 20_000);
+    // Plenty of ties on the split coordinates.
+    for (int i = 0; i < 500; i++) {
+      items.add(new TestItem(0.5, random.nextInt(10) / 10d));
+    }
+    KdTree<TestItem> tree = new KdTree<>();
+    tree.addAll(items.subList(0, 10_000));
+    for (TestItem item : items.subList(10_000, items.size())) {
+      tree.add(item);
+    }
+    for (int i = 0; i < items.size(); i += 4) {
+      assertTrue(tree.remove(items.get(i)));
+    }
+    assertTrue(!tree.remove(items.get(0)));
+    List<TestItem> remaining = new ArrayList<>();
+    for (int i = 0; i < items.size(); i++) {
+      if (i % 4 != 0) {
+        remaining.add(items.get(i));
+      }
+    }
+    assertEquals(remaining.size(), tree.size());
+
+    for (int i = 0; i < 200; i++) {
+      double x = random.nextDouble();
+      double y = random.nextDouble();
+      double span = random.nextDouble() * 0.1;
+      Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+      assertEquals(inside(remaining, bounds), new HashSet<>(tree.search(bounds)));
+    }
+    // Removing by walking down to the point also finds items sitting on a split.
+    for (TestItem item : remaining) {
+      assertTrue(tree.remove(item));
+      if (tree.size() % 1000 == 0) {
+        tree.search(new Bounds(0, 0, 0, 0));
+      }
+    }
+    assertEquals(0, tree.size());
+  }
+
+  @Test
+  public void snapshotKeepsItsItems() {
+    Random random = new Random(41);
+    List<TestItem> items = randomItems(random, 5_000);
+    KdTree<TestItem> tree = new KdTree<>();
+    tree.addAll(items);
+    KdTree<TestItem> snapshot = tree.snapshot();
+
+    for (TestItem item : items.subList(0, 2_500)) {
+      assertTrue(tree.remove(item));
+    }
+    tree.addAll(randomItems(random, 100));
+    Bounds all = new Bounds(0, 1, 0, 1);
+    assertEquals(new HashSet<>(items), new HashSet<>(snapshot.search(all)));
+    assertEquals(2_600, tree.search(all).size());
+    assertEquals(10, snapshot.nearest(0.5, 0.5, 10).size());
+    tree.clear();
+    assertEquals(items.size(), snapshot.size());
+  }
+
+  private static HashSet<TestItem> inside(List<TestItem> items, Bounds bounds) {
+    HashSet<TestItem> results = new HashSet<>();
+    for (TestItem item : items) {
+      if (bounds.contains(item.getPoint())) {
+        results.add(item);
+      }
+    }
+    return results;
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  private static class TestItem implements PointQuadTree.Item {
+    private final Point mPoint;
+
+    TestItem(double x, double y) {
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks that {@link SpatialIndex#move} leaves each index holding what removing and adding again
+ * would, whether the item stays in its leaf, leaves it, or goes in or out of a bucket.
+ */
+public class MoveTest {
+
+  private static final Bounds WORLD = new Bounds(0, 1, 0, 1);
+
+  @Test
+  public void moveMatchesRemoveAndAdd() {
+    Random random = new Random(181);
+    List<TestItem> initial = new ArrayList<>();
+    for (int i = 0; i < 5_000; i++) {
+      initial.add(new TestItem(i, random.nextDouble(), random.nextDouble()));
+    }
+    // One address holding many items becomes a bucket.
+    for (int i = 5_000; i < 5_300; i++) {
+      initial.add(new TestItem(i, 0.3, 0.7));
+    }
+
+    PointQuadTree<TestItem> bulk = new PointQuadTree<>(0, 1, 0, 1);
+    bulk.addAll(initial);
+    PackedPointQuadTree<TestItem> packedBulk = new PackedPointQuadTree<>(0, 1, 0, 1);
+    packedBulk.addAll(initial);
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    PersistentPointQuadTree<TestItem> persistent = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : initial) {
+      reference.add(item);
+      packed.add(item);
+      persistent.add(item);
+    }
+    SpatialHash<TestItem> hash = new SpatialHash<>(0.05);
+    hash.addAll(initial);
+    KdTree<TestItem> kdTree = new KdTree<>();
+    kdTree.addAll(initial);
+    PersistentPointQuadTree<TestItem> snapshot = persistent.snapshot();
+
+    for (SpatialIndex<TestItem> index : new SpatialIndex[] {
+        bulk, packedBulk, reference, packed, persistent, hash, kdTree}) {
+      List<TestItem> items = new ArrayList<>(initial);
+      for (int step = 0; step < 20_000; step++) {
+        int i = random.nextInt(items.size());
+        TestItem item = items.get(i);
+        double x;
+        double y;
+        switch (step % 5) {
+          case 0:
+            // Anywhere.
+            x = random.nextDouble();
+            y = random.nextDouble();
+            break;
+          case 1:
+            // Into the bucket, or out of it if already there.
+            x = item.mPoint.x == 0.3 ? random.nextDouble() : 0.3;
+            y = item.mPoint.y == 0.7 ? random.nextDouble() : 0.7;
+            break;
+          default:
+            // A vehicle a few meters on, most often in the same leaf.
+            x = clamp(item.mPoint.x + (random.nextDouble() - 0.5) * 1e-4);
+            y = clamp(item.mPoint.y + (random.nextDouble() - 0.5) * 1e-4);
+            break;
+        }
+        TestItem moved = new TestItem(item.mId, x, y);
+        assertTrue(index.move(item, moved));
+        items.set(i, moved);
+      }
+      // The old position is gone, so an item not there is not moved.
+      TestItem absent = new TestItem(-1, 0.5, 0.5);
+      assertTrue(!index.move(absent, new TestItem(-1, 0.5, 0.6)));
+
+      assertEquals(items.size(), index.size());
+      assertEquals(new HashSet<>(items), new HashSet<>(index.search(WORLD)));
+      for (int i = 0; i < 200; i++) {
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        double span = random.nextDouble() * 0.2;
+        Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+        Set<TestItem> expected = new HashSet<>();
+        for (TestItem item : items) {
+          if (bounds.contains(item.mPoint)) {
+            expected.add(item);
+          }
+        }
+        Set<TestItem> found = new HashSet<>(index.search(bounds));
+        assertEquals(expected, found);
+        // Found by position, so these are the moved items and not the old ones.
+        for (TestItem item : found) {
+          assertTrue(bounds.contains(item.mPoint));
+        }
+        if (index instanceof QuadTreeIndex) {
+          assertAggregate(expected, (QuadTreeIndex<TestItem>) index, bounds);
+        }
+      }
+    }
+
+    // Moves in place copy the path, so the snapshot still has the items where they were.
+    assertEquals(new HashSet<>(initial), new HashSet<>(snapshot.search(WORLD)));
+    for (TestItem item : snapshot.search(WORLD)) {
+      assertTrue(item == initial.get(item.mId));
+    }
+  }
+
+  private static double clamp(double value) {
+    return Math.max(0, Math.min(1, value));
+  }
+
+  private static void assertAggregate(
+      Set<TestItem> expected, QuadTreeIndex<TestItem> tree, Bounds bounds) {
+    assertEquals(expected.size(), tree.count(bounds));
+    Point centroid = tree.centroid(bounds);
+    if (expected.isEmpty()) {
+      assertNull(centroid);
+      return;
+    }
+    double sumX = 0;
+    double sumY = 0;
+    for (TestItem item : expected) {
+      sumX += item.mPoint.x;
+      sumY += item.mPoint.y;
+    }
+    assertEquals(sumX / expected.size(), centroid.x, 1e-9);
+    assertEquals(sumY / expected.size(), centroid.y, 1e-9);
+  }
+
+  /** Equal by id, like a vehicle at its latest position. */
+  private static class TestItem implements PointQuadTree.Item {
+    private final int mId;
+    private final Point mPoint;
+
+    TestItem(int id, double x, double y) {
+      mId = id;
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof TestItem && ((TestItem) o).mId == mId;
+    }
+
+    @Override
+    public int hashCode() {
+      return mId;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static com.baidu.mapapi.clusterutil.quadtree.NearestNeighbourTest.boxThenFilter;
+import static com.baidu.mapapi.clusterutil.quadtree.NearestNeighbourTest.sortByDistance;
+import static com.baidu.mapapi.clusterutil.quadtree.NearestNeighbourTest.trees;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.quadtree.NearestNeighbourTest.TestItem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times the kNN and radius queries against the box-search-then-filter approach they replace, on
+ * a city of items. Run with {@code -Pbenchmark}.
+ */
+public class NearestNeighbourBenchmark {
+
+  private static final int ITEMS = 200_000;
+
+  private static final int QUERIES = 500;
+
+  @Test
+  public void nearestAndRadiusQueries() {
+    Random random = new Random(9);
+    // A city of roughly 80 x 80 km in the unit projection used by the algorithms.
+    double citySpan = 80_000 / 40_075_000d;
+    List<TestItem> items = new ArrayList<>(ITEMS);
+    for (int i = 0; i < ITEMS; i++) {
+      double x = 0.8 + random.nextDouble() * citySpan;
+      double y = 0.4 + random.nextDouble() * citySpan;
+      items.add(new TestItem(x, y));
+    }
+    double[] xs = new double[QUERIES];
+    double[] ys = new double[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      xs[i] = 0.8 + random.nextDouble() * citySpan;
+      ys[i] = 0.4 + random.nextDouble() * citySpan;
+    }
+    double radius = 500 / 40_075_000d;
+
+    for (SpatialIndex<TestItem> tree : trees(items)) {
+      String name = tree.getClass().getSimpleName();
+      for (int round = 0; round < 3; round++) {
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES / 10; i++) {
+          // What app code did before: take everything, sort, keep the head.
+          sortByDistance(tree.search(new Bounds(0, 1, 0, 1)), xs[i], ys[i]).subList(0, 5);
+        }
+        long sortAll = (System.nanoTime() - start) * 10 / QUERIES / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+          tree.nearest(xs[i], ys[i], 5);
+        }
+        long nearest = (System.nanoTime() - start) / QUERIES;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+          boxThenFilter(tree, xs[i], ys[i], radius);
+        }
+        long box = (System.nanoTime() - start) / QUERIES;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+          tree.searchRadius(xs[i], ys[i], radius);
+        }
+        long circle = (System.nanoTime() - start) / QUERIES;
+
+        if (round == 2) {
+          System.out.printf(
+              "%s, %d items: k=5 sort-all %d us, nearest %d ns; 500 m box+filter %d ns,"
+                  + " searchRadius %d ns%n",
+              name, ITEMS, sortAll, nearest, box, circle);
+        }
+      }
+    }
+  }
+}
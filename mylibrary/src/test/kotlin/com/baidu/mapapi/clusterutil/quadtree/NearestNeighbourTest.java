@@ -0,0 +1,126 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks the kNN and radius queries against brute force. {@link NearestNeighbourBenchmark} times
+ * them against the box-search-then-filter approach they replace.
+ */
+public class NearestNeighbourTest {
+
+  @Test
+  public void nearestMatchesBruteForce() {
+    Random random = new Random(3);
+    List<TestItem> items = randomItems(random, 20_000);
+    for (SpatialIndex<TestItem> tree : trees(items)) {
+      for (int i = 0; i < 50; i++) {
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        List<TestItem> expected = sortByDistance(items, x, y).subList(0, 10);
+        List<TestItem> actual = tree.nearest(x, y, 10);
+        assertEquals(distances(expected, x, y), distances(actual, x, y));
+      }
+      assertEquals(items.size(), tree.nearest(0.5, 0.5, items.size() + 5).size());
+      assertEquals(0, tree.nearest(0.5, 0.5, 0).size());
+    }
+  }
+
+  @Test
+  public void radiusMatchesBruteForce() {
+    Random random = new Random(5);
+    List<TestItem> items = randomItems(random, 20_000);
+    for (SpatialIndex<TestItem> tree : trees(items)) {
+      for (int i = 0; i < 50; i++) {
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        double radius = random.nextDouble() * 0.05;
+        assertEquals(
+            new HashSet<>(boxThenFilter(tree, x, y, radius)),
+            new HashSet<>(tree.searchRadius(x, y, radius)));
+      }
+    }
+  }
+
+  static List<SpatialIndex<TestItem>> trees(List<TestItem> items) {
+    List<SpatialIndex<TestItem>> trees = new ArrayList<>();
+    trees.add(new PointQuadTree<TestItem>(0, 1, 0, 1));
+    trees.add(new PackedPointQuadTree<TestItem>(0, 1, 0, 1));
+    trees.add(new PersistentPointQuadTree<TestItem>(0, 1, 0, 1));
+    trees.add(new KdTree<TestItem>());
+    for (SpatialIndex<TestItem> tree : trees) {
+      for (TestItem item : items) {
+        tree.add(item);
+      }
+    }
+    return trees;
+  }
+
+  static List<TestItem> boxThenFilter(
+      SpatialIndex<TestItem> tree, double x, double y, double radius) {
+    List<TestItem> results = new ArrayList<>();
+    Bounds box = new Bounds(x - radius, x + radius, y - radius, y + radius);
+    for (TestItem item : tree.search(box)) {
+      if (distance(item, x, y) <= radius * radius) {
+        results.add(item);
+      }
+    }
+    return results;
+  }
+
+  static List<TestItem> sortByDistance(
+      Collection<TestItem> items, final double x, final double y) {
+    List<TestItem> sorted = new ArrayList<>(items);
+    Collections.sort(sorted, new Comparator<TestItem>() {
+      @Override
+      public int compare(TestItem a, TestItem b) {
+        return Double.compare(distance(a, x, y), distance(b, x, y));
+      }
+    });
+    return sorted;
+  }
+
+  private static List<Double> distances(List<TestItem> items, double x, double y) {
+    List<Double> distances = new ArrayList<>();
+    for (TestItem item : items) {
+      distances.add(distance(item, x, y));
+    }
+    return distances;
+  }
+
+  private static double distance(TestItem item, double x, double y) {
+    Point point = item.getPoint();
+    return (point.x - x) * (point.x - x) + (point.y - y) * (point.y - y);
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  static class TestItem implements PointQuadTree.Item {
+    private final Point mPoint;
+
+    TestItem(double x, double y) {
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Prints the heap {@link PointQuadTree} and {@link PackedPointQuadTree} take per item. Heap
+ * measured around {@link System#gc()} is only a hint, so nothing is asserted; run with
+ * {@code -Pbenchmark}.
+ */
+public class PackedPointQuadTreeBenchmark {
+
+  private static final int MEMORY_ITEMS = 200_000;
+
+  @Test
+  public void memoryPerItem() {
+    List<TestItem> items = randomItems(new Random(7), MEMORY_ITEMS);
+
+    long before = usedMemory();
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : items) {
+      reference.add(item);
+    }
+    long referenceBytes = usedMemory() - before;
+
+    before = usedMemory();
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : items) {
+      packed.add(item);
+    }
+    long packedBytes = usedMemory() - before;
+
+    // Keep both trees reachable until they have been measured.
+    System.out.printf(
+        "PointQuadTree: %.1f bytes/item, PackedPointQuadTree: %.1f bytes/item (%d items)%n",
+        (double) referenceBytes / reference.search(new Bounds(0, 1, 0, 1)).size(),
+        (double) packedBytes / packed.size(), MEMORY_ITEMS);
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static class TestItem implements PointQuadTree.Item {
+    private final Point mPoint;
+
+    TestItem(double x, double y) {
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
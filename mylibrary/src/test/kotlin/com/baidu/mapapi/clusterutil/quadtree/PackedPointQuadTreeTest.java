@@ -0,0 +1,204 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Compares {@link PackedPointQuadTree} with {@link PointQuadTree}: same search results. See
+ * {@link PackedPointQuadTreeBenchmark} for the heap they take.
+ */
+public class PackedPointQuadTreeTest {
+
+  @Test
+  public void searchMatchesPointQuadTree() {
+    Random random = new Random(42);
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    List<TestItem> items = randomItems(random, 20_000);
+    for (TestItem item : items) {
+      reference.add(item);
+      packed.add(item);
+    }
+    for (int i = 0; i < items.size(); i += 3) {
+      assertEquals(reference.remove(items.get(i)), packed.remove(items.get(i)));
+    }
+    assertTrue(!packed.remove(items.get(0)));
+
+    for (int i = 0; i < 200; i++) {
+      double x = random.nextDouble();
+      double y = random.nextDouble();
+      double span = random.nextDouble() * 0.2;
+      Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+      assertEquals(
+          new HashSet<>(reference.search(bounds)), new HashSet<>(packed.search(bounds)));
+    }
+
+    packed.clear();
+    assertEquals(0, packed.size());
+    assertEquals(0, packed.search(new Bounds(0, 1, 0, 1)).size());
+  }
+
+  @Test
+  public void bulkLoadMatchesIncrementalAdd() {
+    Random random = new Random(11);
+    List<TestItem> items = randomItems(random, 30_000);
+    // Coincident points exercise the fallback past the Morton code's resolution.
+    TestItem shared = new TestItem(0.25, 0.75);
+    for (int i = 0; i < 200; i++) {
+      items.add(new TestItem(shared.getPoint().x, shared.getPoint().y));
+    }
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : items) {
+      reference.add(item);
+    }
+    PointQuadTree<TestItem> bulk = new PointQuadTree<>(0, 1, 0, 1);
+    bulk.addAll(items.subList(0, 100));
+    bulk.addAll(items.subList(100, items.size()));
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    packed.addAll(items.subList(0, 100));
+    packed.addAll(items.subList(100, items.size()));
+    assertEquals(items.size(), packed.size());
+
+    for (int i = 0; i < 200; i++) {
+      double x = random.nextDouble();
+      double y = random.nextDouble();
+      double span = random.nextDouble() * 0.1;
+      Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+      HashSet<TestItem> expected = new HashSet<>(reference.search(bounds));
+      assertEquals(expected, new HashSet<>(bulk.search(bounds)));
+      assertEquals(expected, new HashSet<>(packed.search(bounds)));
+    }
+    for (TestItem item : items) {
+      assertTrue(bulk.remove(item));
+      assertTrue(packed.remove(item));
+    }
+    assertEquals(0, packed.size());
+  }
+
+  @Test
+  public void churnCollapsesEmptyQuads() {
+    Random random = new Random(13);
+    List<TestItem> items = randomItems(random, 10_000);
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : items) {
+      reference.add(item);
+      packed.add(item);
+    }
+    // Everything drifts into one corner, like a fleet heading to a depot.
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < items.size(); i++) {
+        TestItem item = items.get(i);
+        TestItem moved = new TestItem(item.getPoint().x * 0.8, item.getPoint().y * 0.8);
+        assertTrue(reference.remove(item));
+        assertTrue(packed.remove(item));
+        reference.add(moved);
+        packed.add(moved);
+        items.set(i, moved);
+      }
+    }
+
+    PointQuadTree<TestItem> fresh = new PointQuadTree<>(0, 1, 0, 1);
+    fresh.addAll(items);
+    PointQuadTree.Stats freshStats = fresh.getStats();
+    for (QuadTreeIndex<TestItem> tree : Arrays.<QuadTreeIndex<TestItem>>asList(reference, packed)) {
+      PointQuadTree.Stats churned = tree.getStats();
+      assertEquals(items.size(), churned.itemCount);
+      assertEquals(items.size(), tree.size());
+      assertTrue(churned.toString(), churned.nodeCount <= freshStats.nodeCount * 2);
+      tree.compact();
+      assertTrue(tree.getStats().nodeCount <= freshStats.nodeCount);
+      assertEquals(new HashSet<>(fresh.search(new Bounds(0, 0.01, 0, 0.01))),
+          new HashSet<>(tree.search(new Bounds(0, 0.01, 0, 0.01))));
+      for (TestItem item : items) {
+        assertTrue(tree.remove(item));
+      }
+      assertEquals(1, tree.getStats().nodeCount);
+    }
+  }
+
+  @Test
+  public void coincidentItemsShareOneBucket() {
+    Random random = new Random(17);
+    List<TestItem> items = randomItems(random, 5_000);
+    // A building whose meters all share one geocode, a few of them a rounding error apart.
+    List<TestItem> building = new ArrayList<>();
+    for (int i = 0; i < 5_000; i++) {
+      building.add(new TestItem(0.4 + (i % 3) * 1e-12, 0.6));
+    }
+    List<TestItem> all = new ArrayList<>(items);
+    all.addAll(building);
+
+    PointQuadTree<TestItem> bulk = new PointQuadTree<>(0, 1, 0, 1);
+    bulk.addAll(all);
+    PackedPointQuadTree<TestItem> packedBulk = new PackedPointQuadTree<>(0, 1, 0, 1);
+    packedBulk.addAll(all);
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    PersistentPointQuadTree<TestItem> persistent = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    for (TestItem item : all) {
+      reference.add(item);
+      packed.add(item);
+      persistent.add(item);
+    }
+
+    Bounds around = new Bounds(0.39, 0.41, 0.59, 0.61);
+    Bounds cut = new Bounds(0.4 + 0.5e-12, 0.5, 0, 1);
+    for (QuadTreeIndex<TestItem> tree : Arrays.<QuadTreeIndex<TestItem>>asList(
+        bulk, packedBulk, reference, packed, persistent)) {
+      PointQuadTree.Stats stats = tree.getStats();
+      assertEquals(1, stats.bucketCount);
+      assertTrue(stats.toString(), stats.depth < 12);
+      assertTrue(new HashSet<>(tree.search(around)).containsAll(building));
+      // A search edge between the rounding errors still tests each item.
+      int expected = 0;
+      for (TestItem item : all) {
+        expected += cut.contains(item.getPoint()) ? 1 : 0;
+      }
+      assertEquals(expected, tree.search(cut).size());
+      assertEquals(5, tree.nearest(0.4, 0.6, 5).size());
+      assertEquals(building.size(), tree.searchRadius(0.4, 0.6, 1e-6).size());
+
+      // A different point next door splits the bucket.
+      TestItem neighbour = new TestItem(0.4 + 1e-6, 0.6);
+      tree.add(neighbour);
+      assertEquals(1, tree.getStats().bucketCount);
+      assertEquals(building.size() + 1, tree.searchRadius(0.4, 0.6, 2e-6).size());
+      assertTrue(tree.remove(neighbour));
+      for (TestItem item : building) {
+        assertTrue(tree.remove(item));
+      }
+      assertEquals(items.size(), tree.size());
+    }
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  private static class TestItem implements PointQuadTree.Item {
+    private final Point mPoint;
+
+    TestItem(double x, double y) {
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Checks that {@link PersistentPointQuadTree} behaves like {@link PointQuadTree}, that its
+ * snapshots stay put while the tree is written and that searches by category skip the right
+ * quads.
+ */
+public class PersistentPointQuadTreeTest {
+
+  private static final Bounds WORLD = new Bounds(0, 1, 0, 1);
+
+  @Test
+  public void searchMatchesPointQuadTree() {
+    Random random = new Random(21);
+    PointQuadTree<TestItem> reference = new PointQuadTree<>(0, 1, 0, 1);
+    PersistentPointQuadTree<TestItem> persistent = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    List<TestItem> items = randomItems(random, 20_000);
+    persistent.addAll(items.subList(0, 5_000));
+    for (TestItem item : items.subList(0, 5_000)) {
+      reference.add(item);
+    }
+    for (TestItem item : items.subList(5_000, items.size())) {
+      reference.add(item);
+      persistent.add(item);
+    }
+    persistent.add(items.get(0));
+    assertEquals(items.size(), persistent.size());
+    for (int i = 0; i < items.size(); i += 3) {
+      assertEquals(reference.remove(items.get(i)), persistent.remove(items.get(i)));
+    }
+    assertTrue(!persistent.remove(items.get(0)));
+    assertEquals(reference.size(), persistent.size());
+
+    for (int i = 0; i < 200; i++) {
+      double x = random.nextDouble();
+      double y = random.nextDouble();
+      double span = random.nextDouble() * 0.2;
+      Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+      assertEquals(
+          new HashSet<>(reference.search(bounds)), new HashSet<>(persistent.search(bounds)));
+    }
+
+    persistent.compact();
+    assertEquals(reference.size(), persistent.getStats().itemCount);
+    persistent.clear();
+    assertEquals(0, persistent.search(WORLD).size());
+  }
+
+  @Test
+  public void snapshotIgnoresLaterWrites() {
+    Random random = new Random(23);
+    PersistentPointQuadTree<TestItem> tree = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    List<TestItem> items = randomItems(random, 2_000);
+    tree.addAll(items);
+    PersistentPointQuadTree<TestItem> snapshot = tree.snapshot();
+
+    for (TestItem item : items.subList(0, 1_000)) {
+      assertTrue(tree.remove(item));
+    }
+    tree.addAll(randomItems(random, 500));
+    tree.add(new TestItem(0.5, 0.5));
+
+    assertEquals(items.size(), snapshot.size());
+    assertEquals(new HashSet<>(items), new HashSet<>(snapshot.search(WORLD)));
+    assertEquals(1_501, tree.search(WORLD).size());
+    try {
+      snapshot.add(new TestItem(0.5, 0.5));
+      fail();
+    } catch (UnsupportedOperationException expected) {
+      // Snapshots are read only.
+    }
+  }
+
+  @Test
+  public void maskedSearchMatchesFilteredSearch() {
+    Random random = new Random(37);
+    PersistentPointQuadTree<TestItem> tree = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    List<TestItem> items = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      // Categories in clumps, so whole quads hold none of some categories.
+      double x = random.nextDouble();
+      double y = random.nextDouble();
+      items.add(new TestItem(x, y, 1L << ((int) (x * 4) + 4 * (int) (y * 3))));
+    }
+    items.add(new TestItem(0.5, 0.5, 0));
+    tree.addAll(items.subList(0, 10_000));
+    for (TestItem item : items.subList(10_000, items.size())) {
+      tree.add(item);
+    }
+    for (int i = 0; i < items.size(); i += 5) {
+      tree.remove(items.get(i));
+    }
+    tree.compact();
+
+    for (long mask : new long[] {1, 0x30, 0xfff, 0, -1}) {
+      for (int i = 0; i < 50; i++) {
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        double span = random.nextDouble() * 0.5;
+        Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+        HashSet<TestItem> expected = new HashSet<>();
+        for (TestItem item : tree.search(bounds)) {
+          if ((item.mMask & mask) != 0) {
+            expected.add(item);
+          }
+        }
+        assertEquals(expected, new HashSet<>(new FilteredIndex<>(tree, mask).search(bounds)));
+      }
+    }
+  }
+
+  @Test
+  public void readersNeverSeeATornTree() throws InterruptedException {
+    final PersistentPointQuadTree<TestItem> tree = new PersistentPointQuadTree<>(0, 1, 0, 1);
+    final List<TestItem> items = randomItems(new Random(29), 5_000);
+    tree.addAll(items);
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Random random = new Random(31);
+        // Moves keep the size constant, so a reader seeing a half applied move would notice.
+        while (!done.get()) {
+          int i = random.nextInt(items.size());
+          TestItem moved = new TestItem(random.nextDouble(), random.nextDouble());
+          tree.remove(items.get(i));
+          tree.add(moved);
+          items.set(i, moved);
+        }
+      }
+    });
+    writer.start();
+    try {
+      long end = System.currentTimeMillis() + 300;
+      int passes = 0;
+      while (System.currentTimeMillis() < end || passes < 20) {
+        PersistentPointQuadTree<TestItem> snapshot = tree.snapshot();
+        int size = snapshot.size();
+        assertTrue(size == items.size() || size == items.size() - 1);
+        assertEquals(size, snapshot.search(WORLD).size());
+        assertEquals(size, snapshot.getStats().itemCount);
+        passes++;
+      }
+    } finally {
+      done.set(true);
+      writer.join();
+    }
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  private static class TestItem implements PointQuadTree.MaskedItem {
+    private final Point mPoint;
+    private final long mMask;
+
+    TestItem(double x, double y) {
+      this(x, y, -1L);
+    }
+
+    TestItem(double x, double y, long mask) {
+      mPoint = new Point(x, y);
+      mMask = mask;
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+
+    @Override
+    public long getMask() {
+      return mMask;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static com.baidu.mapapi.clusterutil.quadtree.SpatialHashTest.SPAN;
+import static com.baidu.mapapi.clusterutil.quadtree.SpatialHashTest.clusteredItems;
+import static com.baidu.mapapi.clusterutil.quadtree.SpatialHashTest.uniformItems;
+import static org.junit.Assert.assertEquals;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import com.baidu.mapapi.clusterutil.quadtree.SpatialHashTest.TestItem;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Times {@link SpatialHash} against the trees on uniform and on clustered data. Run with
+ * {@code -Pbenchmark}.
+ */
+public class SpatialHashBenchmark {
+
+  private static final int BENCHMARK_ITEMS = 200_000;
+
+  private static final int BENCHMARK_QUERIES = 20_000;
+
+  @Test
+  public void uniformAndClustered() {
+    Random random = new Random(47);
+    List<TestItem> uniform = uniformItems(random, BENCHMARK_ITEMS);
+    List<TestItem> clustered = clusteredItems(random, BENCHMARK_ITEMS);
+    // The first run warms up the JIT.
+    for (int run = 0; run < 2; run++) {
+      benchmark("uniform", uniform, random, run == 1);
+      benchmark("clustered", clustered, random, run == 1);
+    }
+  }
+
+  private static void benchmark(
+      String name, List<TestItem> items, Random random, boolean print) {
+    PointQuadTree<TestItem> tree = new PointQuadTree<>(0, 1, 0, 1);
+    PackedPointQuadTree<TestItem> packed = new PackedPointQuadTree<>(0, 1, 0, 1);
+    KdTree<TestItem> kd = new KdTree<>();
+    SpatialHash<TestItem> hash = new SpatialHash<>(SPAN);
+    double[] queries = new double[BENCHMARK_QUERIES * 2];
+    for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+      // Search around the items, as the clustering pass does.
+      Point point = items.get(random.nextInt(items.size())).getPoint();
+      queries[2 * i] = point.x;
+      queries[2 * i + 1] = point.y;
+    }
+    int expected = -1;
+    List<SpatialIndex<TestItem>> indexes =
+        Arrays.<SpatialIndex<TestItem>>asList(tree, packed, kd, hash);
+    for (SpatialIndex<TestItem> index : indexes) {
+      long start = System.nanoTime();
+      index.addAll(items);
+      long add = System.nanoTime() - start;
+      start = System.nanoTime();
+      int found = 0;
+      for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+        double x = queries[2 * i];
+        double y = queries[2 * i + 1];
+        found += index.search(new Bounds(x - SPAN / 2, x + SPAN / 2, y - SPAN / 2, y + SPAN / 2))
+            .size();
+      }
+      long search = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+        index.nearest(queries[2 * i], queries[2 * i + 1], 8);
+      }
+      long nearest = System.nanoTime() - start;
+      if (print) {
+        System.out.printf("%s, %s: addAll %.0f ns/item, span search %.2f us, nearest(8) %.2f us%n",
+            name, index.getClass().getSimpleName(), (double) add / items.size(),
+            search / 1000d / BENCHMARK_QUERIES, nearest / 1000d / BENCHMARK_QUERIES);
+      }
+      if (expected >= 0) {
+        assertEquals(expected, found);
+      }
+      expected = found;
+    }
+  }
+}
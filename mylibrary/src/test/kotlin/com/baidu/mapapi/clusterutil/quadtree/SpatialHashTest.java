@@ -0,0 +1,127 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.projection.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks {@link SpatialHash} against brute force. {@link SpatialHashBenchmark} times it against
+ * the trees.
+ */
+public class SpatialHashTest {
+
+  /** The clustering span at zoom 10 for the default 100 pixel distance. */
+  static final double SPAN = 100d / (1 << 10) / 256;
+
+  @Test
+  public void searchMatchesBruteForce() {
+    Random random = new Random(43);
+    List<TestItem> items = clusteredItems(random, 20_000);
+    items.addAll(uniformItems(random, 5_000));
+    // Far outside the usual world, and on cell edges.
+    items.add(new TestItem(-3.5, 7.25));
+    for (int i = 0; i < 100; i++) {
+      items.add(new TestItem(SPAN * (i % 10), SPAN * 4));
+    }
+    SpatialHash<TestItem> hash = new SpatialHash<>(SPAN);
+    hash.addAll(items.subList(0, 10_000));
+    for (TestItem item : items.subList(10_000, items.size())) {
+      hash.add(item);
+    }
+    for (int i = 0; i < items.size(); i += 3) {
+      assertTrue(hash.remove(items.get(i)));
+    }
+    assertTrue(!hash.remove(items.get(0)));
+    List<TestItem> remaining = new ArrayList<>();
+    for (int i = 0; i < items.size(); i++) {
+      if (i % 3 != 0) {
+        remaining.add(items.get(i));
+      }
+    }
+    assertEquals(remaining.size(), hash.size());
+
+    for (int i = 0; i < 300; i++) {
+      double x = random.nextDouble();
+      double y = random.nextDouble();
+      double span = random.nextDouble() * (i % 2 == 0 ? SPAN * 5 : 0.3);
+      Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+      HashSet<TestItem> expected = new HashSet<>();
+      HashSet<TestItem> expectedRadius = new HashSet<>();
+      for (TestItem item : remaining) {
+        if (bounds.contains(item.getPoint())) {
+          expected.add(item);
+        }
+        if (PointQuadTree.distanceSquared(item.getPoint().x, item.getPoint().y, x, y)
+            <= span * span) {
+          expectedRadius.add(item);
+        }
+      }
+      assertEquals(expected, new HashSet<>(hash.search(bounds)));
+      assertEquals(expectedRadius, new HashSet<>(hash.searchRadius(x, y, span)));
+
+      List<TestItem> nearest = hash.nearest(x, y, 7);
+      assertEquals(7, nearest.size());
+      double worst = distance(nearest.get(6), x, y);
+      int closer = 0;
+      for (TestItem item : remaining) {
+        closer += distance(item, x, y) < worst ? 1 : 0;
+      }
+      assertTrue(closer < 7);
+    }
+    assertEquals(1, hash.nearest(-10, 10, 1).size());
+    assertEquals(remaining.size(), hash.nearest(0.5, 0.5, Integer.MAX_VALUE).size());
+    assertEquals(remaining.size(), hash.search(new Bounds(-100, 100, -100, 100)).size());
+
+    hash.clear();
+    assertEquals(0, hash.size());
+    assertEquals(0, hash.nearest(0.5, 0.5, 3).size());
+  }
+
+  private static double distance(TestItem item, double x, double y) {
+    return PointQuadTree.distanceSquared(item.getPoint().x, item.getPoint().y, x, y);
+  }
+
+  static List<TestItem> uniformItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  /** A few dense cities, like real point of interest data. */
+  static List<TestItem> clusteredItems(Random random, int count) {
+    double[] cities = new double[40];
+    for (int i = 0; i < cities.length; i++) {
+      cities[i] = 0.1 + random.nextDouble() * 0.8;
+    }
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int city = random.nextInt(cities.length / 2) * 2;
+      double spread = SPAN * (1 + (city % 8));
+      items.add(new TestItem(cities[city] + random.nextGaussian() * spread,
+          cities[city + 1] + random.nextGaussian() * spread));
+    }
+    return items;
+  }
+
+  static class TestItem implements PointQuadTree.Item {
+    private final Point mPoint;
+
+    TestItem(double x, double y) {
+      mPoint = new Point(x, y);
+    }
+
+    @Override
+    public Point getPoint() {
+      return mPoint;
+    }
+  }
+}
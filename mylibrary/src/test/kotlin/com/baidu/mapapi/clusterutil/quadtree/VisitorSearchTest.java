@@ -0,0 +1,107 @@
+package com.baidu.mapapi.clusterutil.quadtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.baidu.mapapi.clusterutil.projection.Bounds;
+import com.baidu.mapapi.clusterutil.quadtree.NearestNeighbourTest.TestItem;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Checks the visitor search of each index against brute force, and that a visitor returning
+ * false stops it.
+ */
+public class VisitorSearchTest {
+
+  @Test
+  public void visitsItemsInBounds() {
+    Random random = new Random(173);
+    List<TestItem> items = randomItems(random, 20_000);
+    for (SpatialIndex<TestItem> index : indexes(items)) {
+      for (int i = 0; i < 100; i++) {
+        double x = random.nextDouble();
+        double y = random.nextDouble();
+        double span = random.nextDouble() * (i % 2 == 0 ? 0.01 : 0.3);
+        Bounds bounds = new Bounds(x - span, x + span, y - span, y + span);
+        Set<TestItem> expected = new HashSet<>();
+        for (TestItem item : items) {
+          if (bounds.contains(item.getPoint())) {
+            expected.add(item);
+          }
+        }
+        CountingVisitor visitor = new CountingVisitor(Integer.MAX_VALUE);
+        assertTrue(index.search(bounds.minX, bounds.maxX, bounds.minY, bounds.maxY, visitor));
+        // Each item visited once.
+        assertEquals(expected.size(), visitor.mVisited.size());
+        assertEquals(expected, new HashSet<>(visitor.mVisited));
+        assertEquals(expected, new HashSet<>(index.search(bounds)));
+      }
+      // Nothing in bounds, and empty bounds.
+      assertTrue(index.search(2, 3, 2, 3, new CountingVisitor(0)));
+      assertTrue(index.search(0.6, 0.4, 0, 1, new CountingVisitor(0)));
+    }
+  }
+
+  @Test
+  public void visitorStopsSearch() {
+    Random random = new Random(179);
+    List<TestItem> items = randomItems(random, 20_000);
+    // Items sharing a point, kept together in one quad or cell.
+    for (int i = 0; i < 100; i++) {
+      items.add(new TestItem(0.25, 0.75));
+    }
+    for (SpatialIndex<TestItem> index : indexes(items)) {
+      for (int stop : new int[] {1, 2, 50, 5_000}) {
+        CountingVisitor visitor = new CountingVisitor(stop);
+        assertTrue(!index.search(0, 1, 0, 1, visitor));
+        assertEquals(stop, visitor.mVisited.size());
+      }
+      CountingVisitor shared = new CountingVisitor(10);
+      assertTrue(!index.search(0.25 - 1e-9, 0.25 + 1e-9, 0.75 - 1e-9, 0.75 + 1e-9, shared));
+      assertEquals(10, shared.mVisited.size());
+
+      // Stopping on the last item still reports the stop.
+      CountingVisitor last = new CountingVisitor(items.size());
+      assertTrue(!index.search(0, 1, 0, 1, last));
+      assertEquals(items.size(), last.mVisited.size());
+    }
+  }
+
+  private static List<SpatialIndex<TestItem>> indexes(List<TestItem> items) {
+    List<SpatialIndex<TestItem>> indexes = NearestNeighbourTest.trees(items);
+    SpatialHash<TestItem> hash = new SpatialHash<>(0.01);
+    hash.addAll(items);
+    indexes.add(hash);
+    return indexes;
+  }
+
+  private static List<TestItem> randomItems(Random random, int count) {
+    List<TestItem> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(new TestItem(random.nextDouble(), random.nextDouble()));
+    }
+    return items;
+  }
+
+  /** Collects the items it visits, and stops the search once it has visited enough. */
+  private static class CountingVisitor implements PointQuadTree.Visitor<TestItem> {
+    private final int mStop;
+    private final List<TestItem> mVisited = new ArrayList<>();
+
+    CountingVisitor(int stop) {
+      mStop = stop;
+    }
+
+    @Override
+    public boolean visit(TestItem item) {
+      assertTrue(mVisited.size() < mStop);
+      mVisited.add(item);
+      return mVisited.size() < mStop;
+    }
+  }
+}